@@ -10,14 +10,17 @@ import arc.util.io.*;
 import arc.util.serialization.*;
 
 import java.io.*;
+import java.nio.*;
 import java.text.*;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.zip.*;
 
 import static arc.Core.*;
 
 public class Settings{
-    protected final static byte typeBool = 0, typeInt = 1, typeLong = 2, typeFloat = 3, typeString = 4, typeBinary = 5;
+    protected final static byte typeBool = 0, typeInt = 1, typeLong = 2, typeFloat = 3, typeString = 4, typeBinary = 5, typeRemoved = 6;
+    protected final static int journalHeader = 0x534a4e4c;
 
     //general state data
     protected Fi dataDirectory;
@@ -31,6 +34,21 @@ public class Settings{
     protected boolean loaded = false;
     protected ExecutorService executor = Threads.executor(1);
 
+    //journal state, only used if journal mode is enabled
+    protected boolean journal;
+    protected float compactRatio = 0.5f;
+    protected long compactMinSize = 64 * 1024;
+    /** Keys that have changed since the last save. */
+    protected ObjectSet<String> dirty = new ObjectSet<>();
+    /** Keys that have been saved since the background compaction started. */
+    protected ObjectSet<String> compactDirty = new ObjectSet<>();
+    /** The size of the latest record of each key in the journal. */
+    protected ObjectIntMap<String> recordSizes = new ObjectIntMap<>();
+    protected long journalSize, garbageSize;
+    protected boolean rewrite, compacting;
+    protected ByteBufferWrites journalWrites = new ByteBufferWrites(1024);
+    protected CRC32 crc = new CRC32();
+
     //IO utility objects
     protected ByteArrayOutputStream byteStream = new ByteArrayOutputStream(32);
     protected ReusableByteInStream byteInputStream = new ReusableByteInStream();
@@ -62,6 +80,26 @@ public class Settings{
         this.shouldAutosave = autosave;
     }
 
+    /**
+     * Sets whether values are saved to an append-only journal, instead of rewriting the whole settings file on every save.
+     * Only the keys that have changed are appended, each in a record with a checksum. The journal is compacted in the background
+     * once most of it is made of records that have been replaced, and if it is damaged, everything before the first invalid record is kept.
+     * If there is no journal yet, the regular settings file is loaded and converted. Must be called before loading.
+     * Default value: false.
+     */
+    public void setJournal(boolean journal){
+        this.journal = journal;
+    }
+
+    /**
+     * Sets when the journal is compacted: once it is bigger than minSize, and the ratio of bytes in replaced records to its size is above ratio.
+     * Default values: 64KB, 0.5.
+     */
+    public void setCompaction(long minSize, float ratio){
+        this.compactMinSize = minSize;
+        this.compactRatio = ratio;
+    }
+
     public boolean modified(){
         return modified;
     }
@@ -120,6 +158,30 @@ public class Settings{
 
     /** Loads a settings file into {@link #values} using the specified appName. */
     public synchronized void loadValues(){
+        if(journal){
+            Fi file = getJournalFile(), temp = getJournalTempFile();
+
+            //a compaction was interrupted after deleting the old journal, but the new one is complete
+            if(!file.exists() && temp.exists()){
+                temp.moveTo(file);
+            }
+
+            if(file.exists()){
+                try{
+                    loadJournal(file);
+                    writeLog("Loaded " + values.size() + " values from journal (" + journalSize + " bytes)");
+                    return;
+                }catch(Throwable e){
+                    Log.err("Failed to load settings journal, attempting to load settings file.", e);
+                    writeLog("Failed to load journal " + file + ":\n" + Strings.getStackTrace(e));
+                    values.clear();
+                }
+            }
+
+            //the journal is written from scratch on the next save
+            rewrite = true;
+        }
+
         //don't load settings files if neither of them exist
         if(!getSettingsFile().exists() && !getBackupSettingsFile().exists()){
             writeLog("No settings files found: " + getSettingsFile().absolutePath() + " and " + getBackupSettingsFile().absolutePath());
@@ -205,8 +267,78 @@ public class Settings{
         }
     }
 
+    /**
+     * Loads the records of a journal file into {@link #values}.
+     * Everything after the first record that is incomplete or has the wrong checksum is discarded, and the file is truncated to match.
+     */
+    public synchronized void loadJournal(Fi file) throws IOException{
+        byte[] data = file.readBytes();
+        ByteBufferReads reads = new ByteBufferReads(data);
+        ByteBuffer buffer = reads.buffer;
+        CRC32 crc = new CRC32();
+
+        if(data.length < 4 || buffer.getInt() != journalHeader){
+            throw new IOException("Invalid settings journal header.");
+        }
+
+        recordSizes.clear();
+        garbageSize = 0;
+        int valid = 4;
+
+        while(buffer.remaining() >= 8){
+            int length = buffer.getInt(), checksum = buffer.getInt(), start = buffer.position();
+            if(length <= 0 || length > buffer.remaining()) break;
+
+            crc.reset();
+            crc.update(data, start, length);
+            if((int)crc.getValue() != checksum) break;
+
+            String key;
+            Object value;
+            try{
+                key = reads.lstr();
+                byte type = reads.b();
+                switch(type){
+                    case typeBool: value = reads.bool(); break;
+                    case typeInt: value = reads.vi(); break;
+                    case typeLong: value = reads.vl(); break;
+                    case typeFloat: value = reads.f(); break;
+                    case typeString: value = reads.lstr(); break;
+                    case typeBinary: value = reads.b(reads.v()); break;
+                    case typeRemoved: value = null; break;
+                    default: throw new IOException("Unknown type: " + type);
+                }
+            }catch(IOException | RuntimeException e){
+                break;
+            }
+            if(key == null || buffer.position() != start + length) break;
+
+            if(value == null){
+                values.remove(key);
+            }else{
+                values.put(key, value);
+            }
+            countRecord(key, value, length + 8);
+            valid = start + length;
+        }
+
+        journalSize = valid;
+
+        if(valid < data.length){
+            writeLog("Discarded " + (data.length - valid) + " bytes of journal " + file + " after the last valid record");
+            try(RandomAccessFile raf = new RandomAccessFile(file.file(), "rw")){
+                raf.setLength(valid);
+            }
+        }
+    }
+
     /** Saves all entries from {@link #values} into the correct location. */
     public synchronized void saveValues(){
+        if(journal){
+            saveJournal();
+            return;
+        }
+
         Fi file = getSettingsFile();
 
         try(DataOutputStream stream = new DataOutputStream(file.write(false, 8192))){
@@ -253,6 +385,216 @@ public class Settings{
         });
     }
 
+    /** Appends the keys that have changed to the journal, and starts a compaction in the background if needed. */
+    protected void saveJournal(){
+        Fi file = getJournalFile();
+
+        if(rewrite || !file.exists()){
+            //a running compaction starts over once it is done
+            if(!compacting) compact();
+            return;
+        }
+
+        if(dirty.isEmpty()) return;
+
+        journalWrites.reset();
+        IntSeq sizes = new IntSeq(dirty.size);
+        for(String key : dirty){
+            sizes.add(writeRecord(journalWrites, crc, key, values.get(key)));
+        }
+
+        try(OutputStream stream = file.write(true)){
+            stream.write(journalWrites.buffer.array(), 0, journalWrites.size());
+        }catch(Throwable e){
+            throw new RuntimeException("Error writing preferences journal: " + file, e);
+        }
+
+        int i = 0;
+        for(String key : dirty){
+            countRecord(key, values.get(key), sizes.get(i++));
+            if(compacting) compactDirty.add(key);
+        }
+        journalSize += journalWrites.size();
+
+        writeLog("Appended " + dirty.size + " values; " + journalSize + " bytes");
+        dirty.clear();
+
+        if(!compacting && journalSize > compactMinSize && garbageSize > journalSize * compactRatio){
+            compactAsync();
+        }
+    }
+
+    /**
+     * Rewrites the journal so that it only contains the current values.
+     * If a compaction is already running in the background, it is redone once it finishes.
+     */
+    public synchronized void compact(){
+        if(compacting){
+            rewrite = true;
+            return;
+        }
+
+        Fi file = getJournalFile(), temp = getJournalTempFile();
+        ObjectIntMap<String> sizes = new ObjectIntMap<>();
+        try{
+            long size = writeJournal(temp, values, sizes, journalWrites, crc);
+            replaceJournal(file, temp);
+
+            recordSizes = sizes;
+            journalSize = size;
+            garbageSize = 0;
+            rewrite = false;
+            dirty.clear();
+            writeLog("Compacted journal to " + values.size() + " values; " + size + " bytes");
+        }catch(Throwable e){
+            //if the old journal has already been deleted, the new one is loaded instead
+            if(file.exists()) temp.delete();
+            throw new RuntimeException("Error compacting preferences journal: " + file, e);
+        }
+    }
+
+    /** Writes the current values to a new journal in the background. Keys that are saved in the meantime are added before it replaces the journal. */
+    protected void compactAsync(){
+        Fi file = getJournalFile(), temp = getJournalTempFile();
+        HashMap<String, Object> snapshot = new HashMap<>(values);
+        compacting = true;
+        compactDirty.clear();
+
+        executor.submit(() -> {
+            ObjectIntMap<String> sizes = new ObjectIntMap<>();
+            ByteBufferWrites writes = new ByteBufferWrites(1024);
+            CRC32 crc = new CRC32();
+            try{
+                long size = writeJournal(temp, snapshot, sizes, writes, crc);
+
+                synchronized(this){
+                    compacting = false;
+
+                    if(rewrite){
+                        temp.delete();
+                        compact();
+                        return;
+                    }
+
+                    writes.reset();
+                    IntSeq dirtySizes = new IntSeq(compactDirty.size);
+                    for(String key : compactDirty){
+                        dirtySizes.add(writeRecord(writes, crc, key, values.get(key)));
+                    }
+                    try(FileOutputStream stream = new FileOutputStream(temp.file(), true)){
+                        stream.write(writes.buffer.array(), 0, writes.size());
+                        stream.getFD().sync();
+                    }
+                    replaceJournal(file, temp);
+
+                    ObjectIntMap<String> previous = recordSizes;
+                    recordSizes = sizes;
+                    garbageSize = 0;
+                    int i = 0;
+                    for(String key : compactDirty){
+                        countRecord(key, values.get(key), dirtySizes.get(i++));
+                    }
+                    journalSize = size + writes.size();
+                    compactDirty.clear();
+                    writeLog("Compacted journal in background from " + previous.size + " to " + recordSizes.size + " values; " + journalSize + " bytes");
+                }
+            }catch(Throwable e){
+                synchronized(this){
+                    compacting = false;
+                    compactDirty.clear();
+                }
+                if(file.exists()) temp.delete();
+                Log.err("Failed to compact settings journal.", e);
+                writeLog("Failed to compact journal " + file + ":\n" + Strings.getStackTrace(e));
+            }
+        });
+    }
+
+    /** Writes a new journal with the specified values, and waits until it is on disk. @return the size of the journal. */
+    protected long writeJournal(Fi file, Map<String, Object> values, ObjectIntMap<String> sizes, ByteBufferWrites writes, CRC32 crc) throws IOException{
+        long size = 0;
+        try(FileOutputStream stream = (FileOutputStream)file.write(false)){
+            writes.reset();
+            writes.i(journalHeader);
+
+            for(Map.Entry<String, Object> entry : values.entrySet()){
+                sizes.put(entry.getKey(), writeRecord(writes, crc, entry.getKey(), entry.getValue()));
+
+                if(writes.size() >= 64 * 1024){
+                    stream.write(writes.buffer.array(), 0, writes.size());
+                    size += writes.size();
+                    writes.reset();
+                }
+            }
+
+            stream.write(writes.buffer.array(), 0, writes.size());
+            size += writes.size();
+            stream.getFD().sync();
+        }
+        return size;
+    }
+
+    /** Replaces the journal with a new one. If this is interrupted, the new journal is used on the next load. */
+    protected void replaceJournal(Fi file, Fi temp){
+        //renaming can't replace an existing file on all platforms
+        file.delete();
+        temp.moveTo(file);
+    }
+
+    /**
+     * Appends a journal record of a key and its value, or that it has been removed if the value is null.
+     * Records are made of the length of the data, its CRC32, the key, the type of the value, and the value.
+     * @return the size of the record.
+     */
+    protected int writeRecord(ByteBufferWrites writes, CRC32 crc, String key, @Nullable Object value){
+        int start = writes.size();
+        //length and checksum, which are written once the rest is
+        writes.l(0);
+        writes.lstr(key);
+
+        if(value instanceof Boolean){
+            writes.b(typeBool);
+            writes.bool((Boolean)value);
+        }else if(value instanceof Integer){
+            writes.b(typeInt);
+            writes.vi((Integer)value);
+        }else if(value instanceof Long){
+            writes.b(typeLong);
+            writes.vl((Long)value);
+        }else if(value instanceof Float){
+            writes.b(typeFloat);
+            writes.f((Float)value);
+        }else if(value instanceof String){
+            writes.b(typeString);
+            writes.lstr((String)value);
+        }else if(value instanceof byte[]){
+            writes.b(typeBinary);
+            writes.v(((byte[])value).length);
+            writes.b((byte[])value);
+        }else{
+            writes.b(typeRemoved);
+        }
+
+        ByteBuffer buffer = writes.buffer;
+        int end = writes.size(), length = end - start - 8;
+        crc.reset();
+        crc.update(buffer.array(), buffer.arrayOffset() + start + 8, length);
+        buffer.putInt(start, length);
+        buffer.putInt(start + 4, (int)crc.getValue());
+        return end - start;
+    }
+
+    /** Keeps track of the bytes in the journal that belong to records that have been replaced. */
+    protected void countRecord(String key, @Nullable Object value, int size){
+        garbageSize += recordSizes.remove(key, 0);
+        if(value == null){
+            //removals are only needed until the journal is compacted
+            garbageSize += size;
+        }else{
+            recordSizes.put(key, size);
+        }
+    }
+
     /** Returns the file used for writing settings to. Not available on all platforms! */
     public Fi getSettingsFile(){
         return getDataDirectory().child("settings.bin");
@@ -266,6 +608,15 @@ public class Settings{
         return getDataDirectory().child("settings_backup_latest.bin");
     }
 
+    /** Returns the file used for writing settings to in journal mode. */
+    public Fi getJournalFile(){
+        return getDataDirectory().child("settings.journal");
+    }
+
+    public Fi getJournalTempFile(){
+        return getDataDirectory().child("settings.journal.tmp");
+    }
+
     /** Returns the directory where all settings and data is placed. */
     public Fi getDataDirectory(){
         return dataDirectory == null ? Core.files.absolute(OS.getAppDataDirectoryString(appName)) : dataDirectory;
@@ -289,6 +640,8 @@ public class Settings{
     /** Clears all preference values. */
     public synchronized void clear(){
         values.clear();
+        dirty.clear();
+        rewrite = true;
     }
 
     public synchronized Object getDefault(String name){
@@ -300,7 +653,8 @@ public class Settings{
     }
 
     public synchronized Object get(String name, Object def){
-        return values.containsKey(name) ? values.get(name) : def;
+        Object value = values.get(name);
+        return value == null ? def : value;
     }
 
     public boolean isModified(){
@@ -338,11 +692,14 @@ public class Settings{
     }
 
     public float getFloat(String name, float def){
-        return (float)get(name, def);
+        //avoids boxing the default value
+        Object value = get(name, null);
+        return value == null ? def : (float)value;
     }
 
     public long getLong(String name, long def){
-        return (long)get(name, def);
+        Object value = get(name, null);
+        return value == null ? def : (long)value;
     }
 
     public Long getLong(String name){
@@ -350,11 +707,13 @@ public class Settings{
     }
 
     public int getInt(String name, int def){
-        return (int)get(name, def);
+        Object value = get(name, null);
+        return value == null ? def : (int)value;
     }
 
     public boolean getBool(String name, boolean def){
-        return (boolean)get(name, def);
+        Object value = get(name, null);
+        return value == null ? def : (boolean)value;
     }
 
     public byte[] getBytes(String name, byte[] def){
@@ -411,6 +770,7 @@ public class Settings{
         if(object instanceof Float || object instanceof Integer || object instanceof Boolean || object instanceof Long
         || object instanceof String || object instanceof byte[]){
             values.put(name, object);
+            if(journal) dirty.add(name);
             modified = true;
         }else{
             throw new IllegalArgumentException("Invalid object stored: " + (object == null ? null : object.getClass()) + ".");
@@ -419,6 +779,7 @@ public class Settings{
 
     public synchronized void remove(String name){
         values.remove(name);
+        if(journal) dirty.add(name);
         modified = true;
     }
 
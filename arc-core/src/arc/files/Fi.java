@@ -382,8 +382,9 @@ public class Fi{
         return new Reads(new DataInputStream(read(Streams.defaultBufferSize)));
     }
 
+    /** @return a Writes that compresses on multiple threads, into the same format that {@link #readsDeflate()} reads. */
     public Writes writesDeflate(){
-        return new Writes(new DataOutputStream(new DeflaterOutputStream(write(false, Streams.defaultBufferSize))));
+        return new Writes(new DataOutputStream(new ParallelDeflaterOutputStream(write(false, Streams.defaultBufferSize))));
     }
 
     public Reads readsDeflate(){
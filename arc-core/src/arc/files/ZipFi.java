@@ -8,83 +8,139 @@ import java.io.*;
 import java.util.*;
 import java.util.zip.*;
 
-/** A FileHandle meant for easily representing and reading the contents of a zip/jar file.*/
+/**
+ * A FileHandle meant for easily representing and reading the contents of a zip/jar file.
+ * The bytes of entries that have been read are kept in a cache shared by all zip files, see {@link #setCacheSize(long)}.
+ */
 public class ZipFi extends Fi{
-    private ZipFi[] children = {};
-    private ZipFi parent;
+    private static final LinkedHashMap<ZipEntry, Cached> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private static long cacheSize, maxCacheSize = 16 * 1024 * 1024;
+
+    private @Nullable ZipFi[] children;
+    private @Nullable ZipFi parent, firstChild, lastChild, nextSibling;
     private String path;
 
-    private final @Nullable ZipEntry entry;
+    private @Nullable ZipEntry entry;
     private final ZipFile zip;
+    /** Every file in the zip by path, shared by all of them. Directories end with a slash, and the root is an empty string. */
+    private final ObjectMap<String, ZipFi> index;
 
     public ZipFi(Fi zipFileLoc){
         super(new File(""), FileType.absolute);
         entry = null;
+        path = "";
+        index = new ObjectMap<>();
+        index.put("", this);
 
         try{
             zip = new ZipFile(zipFileLoc.file());
-            path = "";
+        }catch(IOException e){
+            throw new ArcRuntimeException(e);
+        }
 
-            Seq<String> names = Seq.with(Collections.list(zip.entries())).map(z -> z.getName().replace('\\', '/'));
-            ObjectSet<String> paths = new ObjectSet<>();
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        while(entries.hasMoreElements()){
+            ZipEntry entry = entries.nextElement();
+            String path = entry.getName().replace('\\', '/');
 
-            for(String path : names){
-                paths.add(path);
-                while(path.contains("/") && !path.equals("/") && path.substring(0, path.length() - 1).contains("/")){
-                    int index = path.endsWith("/") ? path.substring(0, path.length() - 1).lastIndexOf('/') : path.lastIndexOf('/');
-                    path = path.substring(0, index);
-                    paths.add(path.endsWith("/") ? path : path + "/");
-                }
+            if(path.equals("/")){
+                file = new File("/");
+                continue;
             }
 
-            if(paths.contains("/")){
-                file = new File("/");
-                paths.remove("/");
+            ZipFi file = index.get(path);
+            if(file == null){
+                add(new ZipFi(path, entry, this));
+            }else if(file.entry == null){
+                //the directory was created for an earlier file in it
+                file.entry = entry;
             }
+        }
+    }
 
-            Seq<ZipFi> files = Seq.with(paths).map(s -> zip.getEntry(s) != null ?
-                new ZipFi(zip.getEntry(s), zip) : new ZipFi(s, zip));
+    private ZipFi(String path, @Nullable ZipEntry entry, ZipFi root){
+        super(new File(path), FileType.absolute);
+        this.path = path;
+        this.entry = entry;
+        this.zip = root.zip;
+        this.index = root.index;
+    }
 
-            files.add(this);
+    /** Adds a file to the index and to its parent, creating any parent directories that are not in the zip. */
+    private void add(ZipFi file){
+        while(true){
+            index.put(file.path, file);
 
-            //find parents
-            files.each(file -> file.parent = files.find(other -> other.isDirectory() && other != file
-                && file.path().startsWith(other.path())
-                && (!file.path().substring(1 + other.path().length()).contains("/") || //do not allow extra slashes in the path
-                    (file.path().endsWith("/") && countSlahes(file.path().substring(1 + other.path().length())) == 1)))); //unless it's a directory
-            //transform parents into children
-            files.each(file -> file.children = files.select(f -> f.parent == file).toArray(ZipFi.class));
+            String parentPath = parentPath(file.path);
+            ZipFi parent = index.get(parentPath);
+            boolean created = parent == null;
+            if(created){
+                parent = new ZipFi(parentPath, null, this);
+            }
 
-            parent = null;
-        }catch(IOException e){
-            throw new ArcRuntimeException(e);
+            file.parent = parent;
+            if(parent.lastChild == null){
+                parent.firstChild = file;
+            }else{
+                parent.lastChild.nextSibling = file;
+            }
+            parent.lastChild = file;
+
+            if(!created) return;
+            file = parent;
         }
     }
 
-    private int countSlahes(String str){
-        int sum = 0;
-        for(int i = 0; i < str.length(); i++){
-            if(str.charAt(i) == '/') sum ++;
+    /** @return the path of the directory that contains the path, with a trailing slash. */
+    private static String parentPath(String path){
+        int index = path.lastIndexOf('/', path.length() - 2);
+        //paths that start with a slash are in the root, like the ones without one
+        return index <= 0 ? "" : path.substring(0, index + 1);
+    }
+
+    /** Sets the maximum number of bytes in the cache of entries that have been read. Entries bigger than a quarter of this are not cached. */
+    public static void setCacheSize(long bytes){
+        synchronized(cache){
+            maxCacheSize = bytes;
+            trimCache();
         }
-        return sum;
     }
 
-    private ZipFi(ZipEntry entry, ZipFile file){
-        super(new File(entry.getName()), FileType.absolute);
-        this.path = entry.getName().replace('\\', '/');
-        this.entry = entry;
-        this.zip = file;
+    public static void clearCache(){
+        synchronized(cache){
+            cache.clear();
+            cacheSize = 0;
+        }
     }
 
-    private ZipFi(String path, ZipFile file){
-        super(new File(path), FileType.absolute);
-        this.path = path.replace('\\', '/');
-        this.entry = null;
-        this.zip = file;
+    private static void trimCache(){
+        Iterator<Cached> iterator = cache.values().iterator();
+        while(cacheSize > maxCacheSize && iterator.hasNext()){
+            cacheSize -= iterator.next().bytes.length;
+            iterator.remove();
+        }
+    }
+
+    private @Nullable byte[] cached(){
+        synchronized(cache){
+            Cached cached = cache.get(entry);
+            return cached == null ? null : cached.bytes;
+        }
     }
 
     @Override
     public boolean delete(){
+        synchronized(cache){
+            Iterator<Cached> iterator = cache.values().iterator();
+            while(iterator.hasNext()){
+                Cached cached = iterator.next();
+                if(cached.zip == zip){
+                    cacheSize -= cached.bytes.length;
+                    iterator.remove();
+                }
+            }
+        }
+
         try{
             zip.close();
             return true;
@@ -101,10 +157,10 @@ public class ZipFi extends Fi{
 
     @Override
     public Fi child(String name){
-        for(ZipFi child : children){
-            if(child.name().equals(name)){
-                return child;
-            }
+        if(isDirectory()){
+            ZipFi child = index.get(path + name);
+            if(child == null) child = index.get(path + name + "/");
+            if(child != null) return child;
         }
         return new Fi(new File(file, name)){
             @Override
@@ -131,6 +187,18 @@ public class ZipFi extends Fi{
 
     @Override
     public Fi[] list(){
+        if(children == null){
+            int count = 0;
+            for(ZipFi child = firstChild; child != null; child = child.nextSibling){
+                count++;
+            }
+            ZipFi[] result = new ZipFi[count];
+            int i = 0;
+            for(ZipFi child = firstChild; child != null; child = child.nextSibling){
+                result[i++] = child;
+            }
+            children = result;
+        }
         return children;
     }
 
@@ -142,6 +210,8 @@ public class ZipFi extends Fi{
     @Override
     public InputStream read(){
         if(entry == null) throw new RuntimeException("Not permitted.");
+        byte[] bytes = cached();
+        if(bytes != null) return new ByteArrayInputStream(bytes);
         try{
             return zip.getInputStream(entry);
         }catch(IOException e){
@@ -149,6 +219,24 @@ public class ZipFi extends Fi{
         }
     }
 
+    /** Reads the entry, or returns a copy of it from the cache if it has been read recently. */
+    @Override
+    public byte[] readBytes(){
+        if(entry == null) throw new RuntimeException("Not permitted.");
+        byte[] bytes = cached();
+        if(bytes != null) return bytes.clone();
+
+        bytes = super.readBytes();
+        if(bytes.length <= maxCacheSize / 4){
+            synchronized(cache){
+                Cached previous = cache.put(entry, new Cached(zip, bytes.clone()));
+                cacheSize += bytes.length - (previous == null ? 0 : previous.bytes.length);
+                trimCache();
+            }
+        }
+        return bytes;
+    }
+
     @Override
     public long length(){
         return isDirectory() ? 0 : entry.getSize();
@@ -158,4 +246,14 @@ public class ZipFi extends Fi{
     public String toString(){
         return path();
     }
-}
\ No newline at end of file
+
+    private static class Cached{
+        final ZipFile zip;
+        final byte[] bytes;
+
+        Cached(ZipFile zip, byte[] bytes){
+            this.zip = zip;
+            this.bytes = bytes;
+        }
+    }
+}
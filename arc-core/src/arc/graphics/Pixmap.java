@@ -797,7 +797,7 @@ public class Pixmap implements Disposable{
         //read with the pure java implementation
         try{
             PngReader reader = new PngReader();
-            pixels = reader.read(new ByteArrayInputStream(encodedData, offset, len));
+            pixels = reader.read(encodedData, offset, len);
             width = reader.width;
             height = reader.height;
             handle = -1;
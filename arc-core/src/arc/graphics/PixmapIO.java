@@ -3,11 +3,15 @@ package arc.graphics;
 import arc.files.*;
 import arc.struct.*;
 import arc.util.*;
+import arc.util.async.*;
 import arc.util.io.*;
 
 import java.io.*;
 import java.nio.*;
 import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import java.util.zip.*;
 
 /**
@@ -17,27 +21,107 @@ import java.util.zip.*;
  */
 public class PixmapIO{
 
+    private static final int apixMagic = 0x41505832, apixBlockSize = 256 * 1024;
+    private static final byte apixCodecNone = 0, apixCodecLz4 = 1, apixFilterNone = 0, apixFilterRows = 1;
+    private static final ThreadLocal<ApixBuffers> apixBuffers = Threads.local(ApixBuffers::new);
+
     /**
-     * Arc PIXmap: Similar to to the libGDX CIM format. Writes deflation-compressed pixmap RGBA data to a file.
-     * Faster and smaller than RGBA PNG.
+     * Arc PIXmap: Similar to to the libGDX CIM format. Writes compressed pixmap RGBA data to a file.
+     * Faster to read than PNG.
+     * @see #writeApix(Fi, Pixmap, boolean)
      * */
-    public static void writeApix(Fi file, Pixmap pixmap) {
-        try(DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(file.write(false))); WritableByteChannel channel = Channels.newChannel(out)){
+    public static void writeApix(Fi file, Pixmap pixmap){
+        writeApix(file, pixmap, false);
+    }
+
+    /**
+     * Writes pixmap RGBA data to a file, compressed with {@link Lz4} in blocks of rows that are compressed and decompressed on multiple threads.
+     * Much faster to read than PNG or the old deflate-compressed format, which {@link #readApix(Fi)} can still read, but bigger.
+     * @param filterRows whether to store each row as the difference from the row above it, which usually makes images smaller, but slower to read.
+     */
+    public static void writeApix(Fi file, Pixmap pixmap, boolean filterRows){
+        int rowLength = pixmap.width * 4;
+        int rows = Math.max(1, apixBlockSize / Math.max(rowLength, 1)), blocks = (pixmap.height + rows - 1) / rows;
+        byte filter = filterRows ? apixFilterRows : apixFilterNone;
+        ArrayList<Future<byte[]>> pending = new ArrayList<>(blocks);
+
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file.write(false)))){
+            ExecutorService executor = ParallelDeflaterOutputStream.defaultExecutor();
+            for(int i = 0; i < blocks; i++){
+                int start = i * rows, end = Math.min(pixmap.height, start + rows);
+                Callable<byte[]> task = () -> encodeApixBlock(pixmap, start, end, filterRows);
+                if(blocks == 1){
+                    FutureTask<byte[]> future = new FutureTask<>(task);
+                    future.run();
+                    pending.add(future);
+                }else{
+                    pending.add(executor.submit(task));
+                }
+            }
+
+            out.writeInt(apixMagic);
             out.writeInt(pixmap.width);
             out.writeInt(pixmap.height);
-
-            ByteBuffer buf = pixmap.pixels;
-            buf.position(0);
-            buf.limit(buf.capacity());
-            channel.write(buf);
+            out.writeByte(apixCodecLz4);
+            out.writeByte(filter);
+            out.writeInt(rows);
+            out.writeInt(blocks);
+
+            byte[][] output = new byte[blocks][];
+            for(int i = 0; i < blocks; i++){
+                output[i] = pending.get(i).get();
+                out.writeInt(output[i].length);
+            }
+            for(byte[] block : output){
+                out.write(block);
+            }
         }catch(Exception e){
             throw new ArcRuntimeException("Couldn't write Pixmap to file '" + file + "'", e);
+        }finally{
+            for(Future<byte[]> future : pending){
+                future.cancel(false);
+            }
+        }
+    }
+
+    /** @return the compressed rows, or the filtered rows if compressing doesn't make them smaller. */
+    private static byte[] encodeApixBlock(Pixmap pixmap, int start, int end, boolean filterRows){
+        ApixBuffers buffers = apixBuffers.get();
+        int rowLength = pixmap.width * 4, length = (end - start) * rowLength;
+        byte[] raw = buffers.raw(length), compressed = buffers.compressed(Lz4.maxCompressedLength(length));
+
+        ByteBuffer pixels = pixmap.pixels.duplicate();
+        pixels.position(start * rowLength);
+        pixels.get(raw, 0, length);
+
+        if(filterRows){
+            //go upwards, so that the row above is not filtered yet
+            for(int i = length - 1; i >= rowLength; i--){
+                raw[i] -= raw[i - rowLength];
+            }
         }
+
+        int compressedLength = buffers.lz4.compress(raw, 0, length, compressed, 0);
+        return compressedLength < length ? Arrays.copyOf(compressed, compressedLength) : Arrays.copyOf(raw, length);
     }
 
-    /** Reads deflation-compressed pixmap RGBA data from a file. */
-    public static Pixmap readApix(Fi file) {
-        try(DataInputStream in = new DataInputStream(new InflaterInputStream(new BufferedInputStream(file.read()))); ReadableByteChannel channel = Channels.newChannel(in)){
+    /**
+     * Reads pixmap RGBA data written by {@link #writeApix(Fi, Pixmap)}, or by older versions that compressed it with deflate.
+     * The file is read into memory instead of being mapped, as a mapped file can't be written or deleted on Windows until the
+     * mapping is garbage collected, and cached files are often written again by the same process.
+     */
+    public static Pixmap readApix(Fi file){
+        byte[] bytes;
+        try{
+            bytes = file.readBytes();
+            if(bytes.length >= 4 && ByteBuffer.wrap(bytes).getInt() == apixMagic){
+                return readApix(bytes);
+            }
+        }catch(Exception e){
+            throw new ArcRuntimeException("Couldn't read Pixmap from file '" + file + "'", e);
+        }
+
+        try(DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(bytes))); ReadableByteChannel channel = Channels.newChannel(in)){
             Pixmap pixmap = new Pixmap(in.readInt(), in.readInt());
 
             ByteBuffer pixelBuf = pixmap.pixels;
@@ -52,13 +136,138 @@ public class PixmapIO{
         }
     }
 
+    /** Decodes the blocks of a file in the current format on multiple threads, with the current thread decoding blocks as well. */
+    private static Pixmap readApix(byte[] bytes) throws Exception{
+        ByteBuffer data = ByteBuffer.wrap(bytes);
+        int width = data.getInt(4), height = data.getInt(8);
+        byte codec = data.get(12), filter = data.get(13);
+        int rows = data.getInt(14), blocks = data.getInt(18);
+
+        if(width <= 0 || height <= 0 || rows <= 0 || blocks != (height + rows - 1) / rows) throw new IOException("Invalid Apix header.");
+        if(codec != apixCodecNone && codec != apixCodecLz4) throw new IOException("Unknown Apix codec: " + codec);
+        if(filter != apixFilterNone && filter != apixFilterRows) throw new IOException("Unknown Apix filter: " + filter);
+
+        int[] offsets = new int[blocks + 1];
+        offsets[0] = 22 + blocks * 4;
+        for(int i = 0; i < blocks; i++){
+            int length = data.getInt(22 + i * 4);
+            if(length < 0 || length > bytes.length - offsets[i]) throw new IOException("Apix block " + i + " is out of bounds.");
+            offsets[i + 1] = offsets[i] + length;
+        }
+
+        Pixmap pixmap = new Pixmap(width, height);
+        try{
+            ApixDecoder decoder = new ApixDecoder(bytes, pixmap, offsets, rows, codec, filter == apixFilterRows);
+            if(blocks > 1){
+                ExecutorService executor = ParallelDeflaterOutputStream.defaultExecutor();
+                for(int i = 1, helpers = Math.min(blocks, OS.cores); i < helpers; i++){
+                    executor.execute(decoder);
+                }
+            }
+            decoder.run();
+            decoder.await();
+        }catch(Throwable e){
+            pixmap.dispose();
+            throw e;
+        }
+        return pixmap;
+    }
+
+    /** Decodes blocks until there are none left. Runs on multiple threads at once, and only the thread that reads waits for the others. */
+    private static class ApixDecoder implements Runnable{
+        final byte[] data;
+        final ByteBuffer pixels;
+        final int[] offsets;
+        final int rows, rowLength;
+        final byte codec;
+        final boolean filterRows;
+        final AtomicInteger next = new AtomicInteger();
+        final CountDownLatch done;
+        volatile @Nullable Throwable error;
+
+        ApixDecoder(byte[] data, Pixmap pixmap, int[] offsets, int rows, byte codec, boolean filterRows){
+            this.data = data;
+            this.pixels = pixmap.pixels;
+            this.offsets = offsets;
+            this.rows = rows;
+            this.rowLength = pixmap.width * 4;
+            this.codec = codec;
+            this.filterRows = filterRows;
+            this.done = new CountDownLatch(offsets.length - 1);
+        }
+
+        @Override
+        public void run(){
+            int block;
+            while((block = next.getAndIncrement()) < offsets.length - 1){
+                try{
+                    if(error == null){
+                        decode(block);
+                    }
+                }catch(Throwable e){
+                    error = e;
+                }finally{
+                    done.countDown();
+                }
+            }
+        }
+
+        void await() throws Exception{
+            done.await();
+            Throwable error = this.error;
+            if(error instanceof Exception) throw (Exception)error;
+            if(error != null) throw (Error)error;
+        }
+
+        void decode(int block){
+            ApixBuffers buffers = apixBuffers.get();
+            int start = block * rows * rowLength, length = Math.min(rows * rowLength, pixels.capacity() - start);
+            int compressedLength = offsets[block + 1] - offsets[block];
+            byte[] raw = buffers.raw(length);
+
+            if(compressedLength == length){
+                System.arraycopy(data, offsets[block], raw, 0, length);
+            }else if(codec == apixCodecNone){
+                throw new ArcRuntimeException("Apix block " + block + " has the wrong length.");
+            }else{
+                Lz4.decompress(data, offsets[block], compressedLength, raw, 0, length);
+            }
+
+            if(filterRows){
+                for(int i = rowLength; i < length; i++){
+                    raw[i] += raw[i - rowLength];
+                }
+            }
+
+            ByteBuffer target = pixels.duplicate();
+            target.position(start);
+            target.put(raw, 0, length);
+        }
+    }
+
+    /** Arrays that blocks are encoded and decoded in, kept for each thread. */
+    private static class ApixBuffers{
+        final Lz4 lz4 = new Lz4();
+        byte[] raw = {}, compressed = {};
+
+        byte[] raw(int length){
+            if(raw.length < length) raw = new byte[length];
+            return raw;
+        }
+
+        byte[] compressed(int length){
+            if(compressed.length < length) compressed = new byte[length];
+            return compressed;
+        }
+    }
+
     /**
      * Writes the pixmap as a PNG with compression. See {@link PngWriter} to configure the compression level, more efficiently flip the
      * pixmap vertically, and to write out multiple PNGs with minimal allocation.
      */
     public static void writePng(Fi file, Pixmap pixmap){
         try{
-            PngWriter writer = new PngWriter((int)(pixmap.width * pixmap.height * 1.5f)); // Guess at deflated size.
+            PngWriter writer = new PngWriter();
             try{
                 writer.setFlipY(false);
                 writer.write(file, pixmap);
@@ -73,16 +282,18 @@ public class PixmapIO{
     /** Reads a PNG file using a pure-Java PNG decoder. */
     public static Pixmap readPNG(Fi file){
         try{
-            PngReader reader = new PngReader();
-            ByteBuffer result = reader.read(new ByteArrayInputStream(file.readBytes()));
-            return new Pixmap(result, reader.width, reader.height);
+            byte[] bytes = file.readBytes();
+            return new PngReader().readPixmap(bytes, 0, bytes.length);
         }catch(Exception e){
             throw new ArcRuntimeException("Error reading PNG: " + file, e);
         }
     }
 
     /**
-     * PNG encoder with compression. An instance can be reused to encode multiple PNGs with minimal allocation.
+     * PNG encoder with compression. An instance can be reused to encode multiple PNGs with minimal allocation.<p>
+     * The image is split into strips of rows, which are filtered and compressed on multiple threads. The filter of each row is the one
+     * with the smallest sum of absolute differences, and each strip is compressed with the end of the previous one as its dictionary,
+     * so that the compressed strips can be concatenated.
      * @author Matthias Mann
      * @author Nathan Sweet
      */
@@ -93,12 +304,13 @@ public class PixmapIO{
         private static final byte COMPRESSION_DEFLATE = 0;
         private static final byte FILTER_NONE = 0;
         private static final byte INTERLACE_NONE = 0;
+        private static final int stripSize = 1024 * 1024, dictionarySize = 32 * 1024;
 
         private final ChunkBuffer buffer;
-        private final Deflater deflater;
-        private ByteSeq lineOutBytes, curLineBytes, prevLineBytes;
+        private final CRC32 crc = new CRC32();
+        private ExecutorService executor = ParallelDeflaterOutputStream.defaultExecutor();
+        private int level = Deflater.DEFAULT_COMPRESSION, maxStrips = OS.cores * 2;
         private boolean flipY = true;
-        private int lastLineLen;
 
         public PngWriter(){
             this(128 * 128);
@@ -106,7 +318,6 @@ public class PixmapIO{
 
         public PngWriter(int initialBufferSize){
             buffer = new ChunkBuffer(initialBufferSize);
-            deflater = new Deflater();
         }
 
         /** If true, the resulting PNG is flipped vertically. Default is true. */
@@ -116,7 +327,13 @@ public class PixmapIO{
 
         /** Sets the deflate compression level. Default is {@link Deflater#DEFAULT_COMPRESSION}. */
         public void setCompression(int level){
-            deflater.setLevel(level);
+            this.level = level;
+        }
+
+        /** Sets the executor that strips are encoded on, and the maximum number of strips that are encoded or waiting to be written at once. */
+        public void setExecutor(ExecutorService executor, int maxStrips){
+            this.executor = executor;
+            this.maxStrips = maxStrips;
         }
 
         public void write(Fi file, Pixmap pixmap) throws IOException{
@@ -130,7 +347,6 @@ public class PixmapIO{
 
         /** Writes the pixmap to the stream without closing the stream. */
         public void write(OutputStream output, Pixmap pixmap) throws IOException{
-            DeflaterOutputStream deflaterOutput = new DeflaterOutputStream(buffer, deflater);
             DataOutputStream dataOutput = new DataOutputStream(output);
             dataOutput.write(SIGNATURE);
 
@@ -144,25 +360,38 @@ public class PixmapIO{
             buffer.writeByte(INTERLACE_NONE);
             buffer.endChunk(dataOutput);
 
-            buffer.writeInt(IDAT);
-            deflater.reset();
+            int rowLength = pixmap.width * 4 + 1;
+            int rows = Math.max(1, stripSize / rowLength), strips = Math.max(1, (pixmap.height + rows - 1) / rows);
+            ArrayDeque<Future<Strip>> pending = new ArrayDeque<>();
+            long checksum = 1;
+            boolean flipY = this.flipY;
+            int level = this.level;
 
-            int lineLen = pixmap.width * 4;
-            //1 extra byte for filter 0
-            byte[] curLine = new byte[lineLen + 1];
-
-            ByteBuffer pixels = pixmap.pixels;
-            int oldPosition = pixels.position();
-            for(int y = 0, h = pixmap.height; y < h; y++){
-                int py = flipY ? (h - y - 1) : y;
-                pixels.position(py * lineLen);
-                pixels.get(curLine, 1, lineLen);
+            try{
+                for(int i = 0; i < strips; i++){
+                    Strip strip = new Strip(pixmap, i * rows, Math.min(pixmap.height, (i + 1) * rows), i == strips - 1);
+
+                    if(strips == 1){
+                        //not worth waiting for another thread
+                        FutureTask<Strip> task = new FutureTask<>(() -> strip.encode(flipY, level));
+                        task.run();
+                        pending.add(task);
+                    }else{
+                        if(pending.size() >= maxStrips){
+                            checksum = writeStrip(dataOutput, pending.poll(), checksum);
+                        }
+                        pending.add(executor.submit(() -> strip.encode(flipY, level)));
+                    }
+                }
 
-                deflaterOutput.write(curLine, 0, lineLen + 1);
+                while(!pending.isEmpty()){
+                    checksum = writeStrip(dataOutput, pending.poll(), checksum);
+                }
+            }finally{
+                for(Future<Strip> future : pending){
+                    future.cancel(false);
+                }
             }
-            pixels.position(oldPosition);
-            deflaterOutput.finish();
-            buffer.endChunk(dataOutput);
 
             buffer.writeInt(IEND);
             buffer.endChunk(dataOutput);
@@ -170,9 +399,205 @@ public class PixmapIO{
             output.flush();
         }
 
+        /** Writes a strip as an IDAT chunk, with the zlib header before the first strip and the checksum after the last one. */
+        private long writeStrip(DataOutputStream output, Future<Strip> future, long checksum) throws IOException{
+            Strip strip;
+            try{
+                strip = future.get();
+            }catch(InterruptedException e){
+                throw new InterruptedIOException();
+            }catch(ExecutionException e){
+                throw new IOException("Failed to encode PNG strip.", e.getCause());
+            }
+
+            checksum = ParallelDeflaterOutputStream.combine(checksum, strip.checksum, strip.length);
+            boolean first = strip.start == 0;
+
+            byte[] header = {0x78, (byte)(level == Deflater.DEFAULT_COMPRESSION || level == 6 ? 0x9c : level <= 1 ? 0x01 : level <= 5 ? 0x5e : 0xda)};
+            byte[] trailer = {(byte)(checksum >>> 24), (byte)(checksum >>> 16), (byte)(checksum >>> 8), (byte)checksum};
+
+            crc.reset();
+            output.writeInt(strip.outputLength + (first ? 2 : 0) + (strip.last ? 4 : 0));
+            output.writeInt(IDAT);
+            crc.update(IDAT >>> 24);
+            crc.update(IDAT >>> 16);
+            crc.update(IDAT >>> 8);
+            crc.update(IDAT);
+            if(first){
+                output.write(header);
+                crc.update(header);
+            }
+            output.write(strip.output, 0, strip.outputLength);
+            crc.update(strip.output, 0, strip.outputLength);
+            if(strip.last){
+                output.write(trailer);
+                crc.update(trailer);
+            }
+            output.writeInt((int)crc.getValue());
+            return checksum;
+        }
+
         @Override
         public void dispose(){
-            deflater.end();
+        }
+
+        /** A range of rows that is filtered and compressed separately. */
+        static class Strip{
+            final Pixmap pixmap;
+            final int start, end;
+            final boolean last;
+
+            byte[] output;
+            int outputLength, length;
+            long checksum;
+
+            Strip(Pixmap pixmap, int start, int end, boolean last){
+                this.pixmap = pixmap;
+                this.start = start;
+                this.end = end;
+                this.last = last;
+            }
+
+            Strip encode(boolean flipY, int level){
+                int lineLength = pixmap.width * 4, rowLength = lineLength + 1;
+                //the rows before the strip are filtered again to get the dictionary, as the previous strip may not be done yet
+                int dictionaryRows = Math.min(start, (dictionarySize + rowLength - 1) / rowLength), from = start - dictionaryRows;
+                int dictionaryLength = dictionaryRows * rowLength;
+                byte[] filtered = new byte[(end - from) * rowLength];
+                byte[] previous = new byte[lineLength], current = new byte[lineLength];
+                ByteBuffer pixels = pixmap.pixels.duplicate();
+                pixels.clear();
+
+                if(from > 0){
+                    pixels.position((flipY ? pixmap.height - from : from - 1) * lineLength);
+                    pixels.get(previous);
+                }
+
+                for(int y = from; y < end; y++){
+                    pixels.position((flipY ? pixmap.height - y - 1 : y) * lineLength);
+                    pixels.get(current);
+                    filter(current, previous, filtered, (y - from) * rowLength);
+
+                    byte[] swap = previous;
+                    previous = current;
+                    current = swap;
+                }
+
+                length = filtered.length - dictionaryLength;
+                Adler32 adler = new Adler32();
+                adler.update(filtered, dictionaryLength, length);
+                checksum = adler.getValue();
+
+                output = new byte[length + (length >> 8) + 64];
+                Deflater deflater = new Deflater(level, true);
+                try{
+                    if(dictionaryLength > 0){
+                        int size = Math.min(dictionaryLength, dictionarySize);
+                        deflater.setDictionary(filtered, dictionaryLength - size, size);
+                    }
+                    deflater.setInput(filtered, dictionaryLength, length);
+
+                    if(last){
+                        deflater.finish();
+                        while(!deflater.finished()){
+                            deflate(deflater, Deflater.NO_FLUSH);
+                        }
+                    }else{
+                        //a sync flush ends on a byte boundary without ending the stream, so that the next strip can be appended
+                        while(deflate(deflater, Deflater.SYNC_FLUSH)){
+                        }
+                    }
+                }finally{
+                    deflater.end();
+                }
+                return this;
+            }
+
+            /** @return whether the output was full, so deflating must continue. */
+            private boolean deflate(Deflater deflater, int flush){
+                if(outputLength == output.length){
+                    output = Arrays.copyOf(output, output.length * 2);
+                }
+                int space = output.length - outputLength;
+                int count = deflater.deflate(output, outputLength, space, flush);
+                outputLength += count;
+                return count == space;
+            }
+
+            /** Writes the filter type and filtered bytes of a row, using the filter with the smallest sum of absolute differences. */
+            static void filter(byte[] current, byte[] previous, byte[] out, int offset){
+                int length = current.length;
+                int none = 0, sub = 0, up = 0, average = 0, paeth = 0;
+
+                //the first pixel has nothing to its left
+                for(int i = 0; i < 4; i++){
+                    int x = current[i], b = previous[i] & 0xff;
+                    none += Math.abs(x);
+                    sub += Math.abs(x);
+                    up += Math.abs((byte)(x - b));
+                    average += Math.abs((byte)(x - (b >>> 1)));
+                    paeth += Math.abs((byte)(x - b));
+                }
+
+                //for wide rows, only every fourth pixel is used to pick the filter, which is nearly always enough
+                int step = length >= 1024 ? 16 : 4;
+                for(int start = 4; start < length; start += step){
+                    for(int i = start, end = Math.min(start + 4, length); i < end; i++){
+                        int x = current[i], a = current[i - 4] & 0xff, b = previous[i] & 0xff, c = previous[i - 4] & 0xff;
+                        none += Math.abs(x);
+                        sub += Math.abs((byte)(x - a));
+                        up += Math.abs((byte)(x - b));
+                        average += Math.abs((byte)(x - ((a + b) >>> 1)));
+                        paeth += Math.abs((byte)(x - paeth(a, b, c)));
+                    }
+                }
+
+                int type = 0, best = none;
+                if(sub < best){ type = 1; best = sub; }
+                if(up < best){ type = 2; best = up; }
+                if(average < best){ type = 3; best = average; }
+                if(paeth < best){ type = 4; }
+
+                out[offset++] = (byte)type;
+                switch(type){
+                    case 0:
+                        System.arraycopy(current, 0, out, offset, length);
+                        break;
+                    case 1:
+                        System.arraycopy(current, 0, out, offset, 4);
+                        for(int i = 4; i < length; i++){
+                            out[offset + i] = (byte)(current[i] - current[i - 4]);
+                        }
+                        break;
+                    case 2:
+                        for(int i = 0; i < length; i++){
+                            out[offset + i] = (byte)(current[i] - previous[i]);
+                        }
+                        break;
+                    case 3:
+                        for(int i = 0; i < 4; i++){
+                            out[offset + i] = (byte)(current[i] - ((previous[i] & 0xff) >>> 1));
+                        }
+                        for(int i = 4; i < length; i++){
+                            out[offset + i] = (byte)(current[i] - (((current[i - 4] & 0xff) + (previous[i] & 0xff)) >>> 1));
+                        }
+                        break;
+                    default:
+                        for(int i = 0; i < 4; i++){
+                            out[offset + i] = (byte)(current[i] - previous[i]);
+                        }
+                        for(int i = 4; i < length; i++){
+                            out[offset + i] = (byte)(current[i] - paeth(current[i - 4] & 0xff, previous[i] & 0xff, previous[i - 4] & 0xff));
+                        }
+                }
+            }
+
+            /** The Paeth predictor, without branches. */
+            static int paeth(int a, int b, int c){
+                int pa = Math.abs(b - c), pb = Math.abs(a - c), pc = Math.abs(a + b - c - c);
+                int result = pb <= pc ? b : c;
+                return pa <= pb && pa <= pc ? a : result;
+            }
         }
 
         static class ChunkBuffer extends DataOutputStream{
@@ -200,7 +625,10 @@ public class PixmapIO{
         }
     }
 
-    /** Class based on https://github.com/Mike-C/lwjPNG, with many modifications */
+    /**
+     * Class based on https://github.com/Mike-C/lwjPNG, with many modifications.
+     * The compressed data is read from the PNG without copying it, and rows are decoded straight into the output buffer.
+     */
     public static class PngReader{
         private static final int
         ctypeRgba = 6,
@@ -212,59 +640,74 @@ public class PixmapIO{
 
         public byte bitDepth, colorType, compression, filter, interlace;
 
-        private int dataLen, cs;
-        private byte[] imgData = null;
-        private ByteBuffer buf = null;
+        private byte[] data;
+        /** The offset and length of each IDAT chunk in the data. */
+        private IntSeq chunks = new IntSeq();
         private int[] palette;
 
+        /** Reads a PNG into a new direct buffer of RGBA pixels. */
         public ByteBuffer read(InputStream in) throws IOException{
-            readChunks(new DataInputStream(in));
+            byte[] bytes = Streams.copyBytes(in);
+            return read(bytes, 0, bytes.length);
+        }
+
+        /** Reads a PNG into a new direct buffer of RGBA pixels. */
+        public ByteBuffer read(byte[] bytes, int offset, int length) throws IOException{
+            readChunks(bytes, offset, length);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(4 * width * height);
+            decode(buffer);
+            buffer.flip();
+            return buffer;
+        }
 
-            if(buf != null) buf.clear();
-            buf = ByteBuffer.allocateDirect(cs);
+        /** Reads a PNG into a new Pixmap, decoding the pixels straight into its buffer. */
+        public Pixmap readPixmap(byte[] bytes, int offset, int length) throws IOException{
+            readChunks(bytes, offset, length);
+            Pixmap pixmap = new Pixmap(width, height);
             try{
-                getImage(buf);
-            }catch(DataFormatException e){
-                throw new IOException(e);
+                ByteBuffer pixels = pixmap.pixels;
+                pixels.clear();
+                decode(pixels);
+                pixels.clear();
+            }catch(Throwable e){
+                pixmap.dispose();
+                throw e;
             }
-            buf.flip();
-            return buf;
+            return pixmap;
         }
 
-        private void readChunks(DataInputStream in) throws IOException{
-            if(imgData == null && in.available() > 4){
-                long header = in.readLong(); //PNG signature
-                if(header != 0x89504e470d0a1a0aL){
-                    String headerString = Long.toHexString(header);
-                    throw new IOException(headerString.startsWith("ffd8ff") ? "This is a JPEG, not a PNG." : "This isn't a PNG. Header: 0x" + headerString);
-                }
-            }else if(imgData == null){
-                width = 0;
-                return;
+        private void readChunks(byte[] bytes, int offset, int length) throws IOException{
+            ByteBuffer in = ByteBuffer.wrap(bytes, offset, length);
+            data = bytes;
+            chunks.clear();
+            palette = null;
+
+            if(length < 8) throw new IOException("This isn't a PNG. Length: " + length);
+            long header = in.getLong(); //PNG signature
+            if(header != 0x89504e470d0a1a0aL){
+                String headerString = Long.toHexString(header);
+                throw new IOException(headerString.startsWith("ffd8ff") ? "This is a JPEG, not a PNG." : "This isn't a PNG. Header: 0x" + headerString);
             }
-            dataLen = 0;
+
             int chunkType;
-            while(true){
-                int chunkLen = in.readInt(); // Read the chunk length.
-                if(chunkLen <= 0 || chunkLen > 99998192) break;
+            while(in.remaining() >= 8){
+                int chunkLen = in.getInt(); // Read the chunk length.
+                chunkType = in.getInt();
+                if(chunkLen < 0 || chunkLen > in.remaining()) break;
+                int start = in.position();
 
-                chunkType = in.readInt();
                 if(chunkType == 0x49454e44) //IEND
                     break; // last chunk reached..
                 if(chunkType == 0x49444154){ //IDAT
-                    in.readFully(imgData, dataLen, chunkLen);
-                    dataLen += chunkLen;
+                    chunks.add(start, chunkLen);
                 }else if(chunkType == 0x49484452){ //IHDR
-                    width = in.readInt();
-                    height = in.readInt();
-                    bitDepth = in.readByte();
-                    colorType = in.readByte();
-                    compression = in.readByte();
-                    filter = in.readByte();
-                    interlace = in.readByte();
-
-                    cs = 4 * width * height;
-                    imgData = new byte[in.available()]; //initialize image array
+                    width = in.getInt();
+                    height = in.getInt();
+                    bitDepth = in.get();
+                    colorType = in.get();
+                    compression = in.get();
+                    filter = in.get();
+                    interlace = in.get();
 
                     //validation
                     if(bitDepth == 16) throw new IOException("16-bit depth is not supported.");
@@ -276,100 +719,124 @@ public class PixmapIO{
                     int colors = chunkLen/3;
                     palette = new int[colors];
                     for(int i = 0; i < colors; i++){
-                        palette[i] = Color.packRgba(in.readUnsignedByte(), in.readUnsignedByte(), in.readUnsignedByte(), 255);
+                        palette[i] = Color.packRgba(in.get() & 0xff, in.get() & 0xff, in.get() & 0xff, 255);
                     }
-                }else if(colorType == ctypePalette && chunkType == 0x74524e53){ //tRNS
-                    for(int i = 0; i < chunkLen; i++){
-                        palette[i] = (palette[i] & 0xffffff00) | in.readUnsignedByte();
+                }else if(colorType == ctypePalette && chunkType == 0x74524e53 && palette != null){ //tRNS
+                    for(int i = 0; i < chunkLen && i < palette.length; i++){
+                        palette[i] = (palette[i] & 0xffffff00) | (in.get() & 0xff);
                     }
-                }else{
-                    byte[] chunkData = new byte[chunkLen];
-                    in.readFully(chunkData);
                 }
-                in.readInt(); // checksum skip
+                in.position(start + chunkLen + Math.min(4, in.limit() - start - chunkLen)); // checksum skip
             }
+
+            if(width <= 0 || height <= 0) throw new IOException("PNG has no header.");
+            if(colorType == ctypePalette && palette == null) throw new IOException("PNG has no palette.");
         }
 
-        private void getImage(ByteBuffer bb) throws DataFormatException{
-            //bpx bytes per pixel, wT total output width, v scanline width
+        private void decode(ByteBuffer out) throws IOException{
+            //bpx bytes per pixel, v scanline width
             int
             bpx = colorType == ctypePalette ? 1 : colorType == ctypeRgb ? 3 : 4,
-            wT = width * 4,
-            v = (bitDepth == 4 ? width / 2 : width) * bpx + 1; // scanLine width
+            v = (colorType == ctypePalette ? (width * bitDepth + 7) / 8 : width * bpx) + 1;
 
             Inflater inflater = new Inflater();
-            inflater.setInput(imgData, 0, dataLen);
-
-            byte[] prev = new byte[wT + 1], row = new byte[wT + 1]; // every row contains filter byte
+            byte[] prev = new byte[v], row = new byte[v]; // every row contains filter byte
+            byte[] line = bpx == 4 ? null : new byte[width * 4];
+            int chunk = 0;
 
-            for(int i = 1, s = 0; s < height; i = 1, s++){ // scanLine
-                //inflating each line is the bottleneck here, but unfortunately there's nothing I can do about it
-                inflater.inflate(row, 0, v);
-                byte first = row[0];
+            try{
+                for(int s = 0; s < height; s++){ // scanLine
+                    for(int read = 0; read < v; ){
+                        int count = inflater.inflate(row, read, v - read);
+                        read += count;
+                        if(count == 0){
+                            if(!inflater.needsInput() || chunk >= chunks.size) throw new IOException("PNG image data ended early.");
+                            inflater.setInput(data, chunks.get(chunk), chunks.get(chunk + 1));
+                            chunk += 2;
+                        }
+                    }
 
-                if(first != 0){ //apply filters
+                    unfilter(row, prev, bpx, v);
 
-                    if(first == 1){
-                        for(i += bpx; i < v; i++){
-                            row[i] += row[i - bpx];
-                        }
-                    }else if(first == 2){
-                        for(; i < v; i++){
-                            row[i] += prev[i];
-                        }
-                    }else if(first == 3){
-                        for(; i < bpx + 1; i++){
-                            row[i] += (prev[i] & 0xFF) >>> 1;
-                        }
-                        for(; i < v; i++){
-                            row[i] += ((prev[i] & 0xFF) + (row[i - bpx] & 0xFF)) >>> 1;
-                        }
+                    //format output, normal mode
+                    if(bpx == 4){
+                        out.put(row, 1, v - 1);
                     }else{
-                        for(; i < bpx + 1; i++){
-                            row[i] += prev[i];
-                        }
-                        for(; i < v; i++){
-                            row[i] += paeth(row[i - bpx] & 0xFF, prev[i] & 0xFF, prev[i - bpx] & 0xFF);
+                        if(bpx == 3){
+                            for(int x = 0, i = 1, o = 0; x < width; x++, i += 3, o += 4){
+                                line[o] = row[i];
+                                line[o + 1] = row[i + 1];
+                                line[o + 2] = row[i + 2];
+                                line[o + 3] = (byte)255;
+                            }
+                        }else{ //palette
+                            for(int x = 0, o = 0; x < width; x++, o += 4){
+                                //when bitDepth is 4, every byte has two pixels
+                                int index = bitDepth == 4 ? (row[1 + (x >> 1)] >> ((x & 1) == 0 ? 4 : 0)) & 0xf : row[1 + x] & 0xff;
+                                int color = palette[index];
+                                line[o] = (byte)(color >>> 24);
+                                line[o + 1] = (byte)(color >>> 16);
+                                line[o + 2] = (byte)(color >>> 8);
+                                line[o + 3] = (byte)color;
+                            }
                         }
+                        out.put(line);
                     }
+
+                    byte[] swap = prev;
+                    prev = row;
+                    row = swap;
                 }
+            }catch(DataFormatException e){
+                throw new IOException(e);
+            }finally{
+                inflater.end();
+                data = null;
+            }
+        }
 
-                //format output, normal mode
-                if(bpx == 3){
-                    //this could probably made faster, but ehhh
-                    ByteBuffer wRow = ByteBuffer.wrap(row);
-                    for(i = 1; i < v; i += bpx){
-                        bb.putInt((wRow.getInt(i) & 0xFFFFFF00) + 0xFF);
+        private static void unfilter(byte[] row, byte[] prev, int bpx, int v) throws IOException{
+            int i = 1;
+            switch(row[0]){
+                case 0:
+                    break;
+                case 1:
+                    for(i += bpx; i < v; i++){
+                        row[i] += row[i - bpx];
                     }
-                }else if(bpx == 1){ //palette
-                    //when bitDepth is 4, split every byte in two
-                    if(bitDepth == 4){
-                        for(i = 1; i < v; i += bpx){
-                            bb.putInt(palette[Pack.leftByte(row[i])]);
-                            bb.putInt(palette[Pack.rightByte(row[i])]);
-                        }
-                    }else{
-                        for(i = 1; i < v; i += bpx){
-                            bb.putInt(palette[row[i] & 0xFF]);
-                        }
+                    break;
+                case 2:
+                    for(; i < v; i++){
+                        row[i] += prev[i];
                     }
-                }else{
-                    bb.put(row, 1, v - 1);
-                }
-                byte[] swap = prev;
-                prev = row;
-                row = swap;
+                    break;
+                case 3:
+                    for(; i < bpx + 1; i++){
+                        row[i] += (prev[i] & 0xFF) >>> 1;
+                    }
+                    for(; i < v; i++){
+                        row[i] += ((prev[i] & 0xFF) + (row[i - bpx] & 0xFF)) >>> 1;
+                    }
+                    break;
+                case 4:
+                    for(; i < bpx + 1; i++){
+                        row[i] += prev[i];
+                    }
+                    for(; i < v; i++){
+                        row[i] += paeth(row[i - bpx] & 0xFF, prev[i] & 0xFF, prev[i - bpx] & 0xFF);
+                    }
+                    break;
+                default:
+                    throw new IOException("Invalid PNG filter type: " + row[0]);
             }
-            bb.position(bb.capacity());
-            imgData = null;
         }
 
         private static int ab(int a){
-            int b = a >> 8;
+            int b = a >> 31;
             return (a ^ b) - b;
         }
 
-        private static int paeth(int a, int b, int c){
+        static int paeth(int a, int b, int c){
             int pa = b - c, pb = a - c, pc = ab(pa + pb);
             pa = ab(pa);
             pb = ab(pb);
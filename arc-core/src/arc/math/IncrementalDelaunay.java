@@ -0,0 +1,477 @@
+package arc.math;
+
+import arc.struct.*;
+import arc.util.*;
+
+import java.util.*;
+
+/**
+ * A Delaunay triangulation that supports inserting and removing points without rebuilding, for dynamic navigation meshes or
+ * influence maps. Unlike {@link DelaunayTriangulator}, vertices and triangles are addressed with int indices, so the number of
+ * points is not limited to the range of a short.
+ * <p>
+ * The triangulation is stored as a half-edge structure: triangle {@code t} owns half-edges {@code 3t}, {@code 3t + 1} and
+ * {@code 3t + 2} in counter-clockwise order, each half-edge starts at {@link #origin(int)}, and {@link #twin(int)} is the opposite
+ * half-edge in the neighbouring triangle. Points are enclosed by a super triangle built from the bounds passed to the constructor;
+ * triangles touching it report {@code -1} for those vertices in {@link #vertex(int, int)} and are skipped by
+ * {@link #triangles(IntSeq)}.
+ * <p>
+ * Insertion locates the containing triangle by walking from the last located triangle, splits it and restores the Delaunay
+ * property with edge flips. Removal retriangulates the hole left by the point and flips the new edges in the same way.
+ */
+public class IncrementalDelaunay{
+    private static final int superVertices = 3;
+
+    private final FloatSeq coords = new FloatSeq();
+    private final IntSeq freeVertices = new IntSeq(), freeTriangles = new IntSeq(), stack = new IntSeq();
+    private final IntSeq link = new IntSeq(), linkEdges = new IntSeq(), created = new IntSeq();
+
+    private int[] vertexEdge = new int[16];
+    private int[] origin = new int[48], twin = new int[48];
+    private int triangleCount, vertexCount, size;
+    private int last, walkStart;
+
+    private final float minX, minY, maxX, maxY;
+
+    /** Creates an empty triangulation that can hold points within the specified bounds. */
+    public IncrementalDelaunay(float x, float y, float width, float height){
+        this.minX = x;
+        this.minY = y;
+        this.maxX = x + width;
+        this.maxY = y + height;
+
+        float dmax = Math.max(Math.max(width, height), 1f) * 20f;
+        float xmid = x + width / 2f, ymid = y + height / 2f;
+        addVertex(xmid - dmax, ymid - dmax);
+        addVertex(xmid + dmax, ymid - dmax);
+        addVertex(xmid, ymid + dmax);
+
+        int t = allocTriangle();
+        setTriangle(t, 0, 1, 2);
+        link(3 * t, -1);
+        link(3 * t + 1, -1);
+        link(3 * t + 2, -1);
+        last = t;
+    }
+
+    /** @return the number of points in the triangulation. */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Inserts a point. Points at the same position as an existing point are not inserted twice.
+     * @return the index of the point, which stays valid until it is removed. Indices of removed points may be reused.
+     * @throws IllegalArgumentException if the point is outside the bounds of this triangulation.
+     */
+    public int add(float x, float y){
+        if(x < minX || y < minY || x > maxX || y > maxY){
+            throw new IllegalArgumentException("Point outside of triangulation bounds: " + x + ", " + y);
+        }
+
+        int t = locateTriangle(x, y);
+        for(int i = 0; i < 3; i++){
+            int v = origin[3 * t + i];
+            if(coords.items[v * 2] == x && coords.items[v * 2 + 1] == y) return v - superVertices;
+        }
+
+        int p = addVertex(x, y);
+        size++;
+
+        //check whether the point lies exactly on an edge of the triangle
+        for(int i = 0; i < 3; i++){
+            int e = 3 * t + i;
+            if(orient(origin[e], origin[next(e)], x, y) == 0){
+                splitEdge(e, p);
+                legalize();
+                return p - superVertices;
+            }
+        }
+
+        splitTriangle(t, p);
+        legalize();
+        return p - superVertices;
+    }
+
+    /**
+     * Inserts many points at once. The points are inserted in the order of a Hilbert curve through the bounds, so that each
+     * point is located by a short walk from the previous one.
+     * @param points x, y pairs
+     * @param indices if not null, receives the index of each point in input order.
+     */
+    public void addAll(float[] points, int offset, int count, @Nullable IntSeq indices){
+        int n = count / 2;
+        long[] keys = new long[n];
+        float width = Math.max(maxX - minX, Mathf.FLOAT_ROUNDING_ERROR), height = Math.max(maxY - minY, Mathf.FLOAT_ROUNDING_ERROR);
+
+        for(int i = 0; i < n; i++){
+            float x = points[offset + i * 2], y = points[offset + i * 2 + 1];
+            int hx = Mathf.clamp((int)((x - minX) / width * 32767f), 0, 32767), hy = Mathf.clamp((int)((y - minY) / height * 32767f), 0, 32767);
+            keys[i] = ((long)hilbert(hx, hy) << 32) | i;
+        }
+        Arrays.sort(keys);
+
+        if(indices != null){
+            indices.clear();
+            indices.setSize(n);
+        }
+        for(long key : keys){
+            int i = (int)key;
+            int index = add(points[offset + i * 2], points[offset + i * 2 + 1]);
+            if(indices != null) indices.set(i, index);
+        }
+    }
+
+    /** @see #addAll(float[], int, int, IntSeq) */
+    public void addAll(FloatSeq points, @Nullable IntSeq indices){
+        addAll(points.items, 0, points.size, indices);
+    }
+
+    /**
+     * Removes a point and restores the Delaunay property around the hole it leaves.
+     * @return false if there is no point with this index.
+     */
+    public boolean remove(int index){
+        int v = index + superVertices;
+        if(index < 0 || v >= vertexCount || vertexEdge[v] == -1) return false;
+
+        //collect the polygon around the vertex in counter-clockwise order, with the half-edges outside of it
+        link.clear();
+        linkEdges.clear();
+        int start = vertexEdge[v], e = start;
+        do{
+            link.add(origin[next(e)]);
+            linkEdges.add(twin[next(e)]);
+            freeTriangle(e / 3);
+            e = twin[prev(e)];
+        }while(e != start);
+
+        vertexEdge[v] = -1;
+        freeVertices.add(v);
+        size--;
+
+        created.clear();
+        fillHole();
+
+        for(int i = 0; i < created.size; i++){
+            int t = created.items[i];
+            stack.add(3 * t, 3 * t + 1, 3 * t + 2);
+        }
+        legalize();
+        last = created.first();
+        return true;
+    }
+
+    /** @return whether a point with this index exists. */
+    public boolean has(int index){
+        int v = index + superVertices;
+        return index >= 0 && v < vertexCount && vertexEdge[v] != -1;
+    }
+
+    public float getX(int index){
+        return coords.items[(index + superVertices) * 2];
+    }
+
+    public float getY(int index){
+        return coords.items[(index + superVertices) * 2 + 1];
+    }
+
+    /**
+     * Finds the triangle containing the point, walking from the previously located triangle.
+     * @return the triangle index, or -1 if the point is outside the bounds of this triangulation.
+     */
+    public int locate(float x, float y){
+        if(x < minX || y < minY || x > maxX || y > maxY) return -1;
+        return locateTriangle(x, y);
+    }
+
+    /**
+     * @param triangle the triangle index
+     * @param corner 0, 1 or 2
+     * @return the index of a triangle's vertex, in counter-clockwise order, or -1 for a vertex of the super triangle.
+     */
+    public int vertex(int triangle, int corner){
+        int v = origin[3 * triangle + corner];
+        return v < superVertices ? -1 : v - superVertices;
+    }
+
+    /** @return the index of the point a half-edge starts at, or -1 for a vertex of the super triangle. */
+    public int origin(int edge){
+        int v = origin[edge];
+        return v < superVertices ? -1 : v - superVertices;
+    }
+
+    /** @return the half-edge in the neighbouring triangle going the opposite way, or -1 on the outside of the super triangle. */
+    public int twin(int edge){
+        return twin[edge];
+    }
+
+    /** @return the next half-edge counter-clockwise in the same triangle. */
+    public static int next(int edge){
+        return edge % 3 == 2 ? edge - 2 : edge + 1;
+    }
+
+    /** @return the previous half-edge in the same triangle. */
+    public static int prev(int edge){
+        return edge % 3 == 0 ? edge + 2 : edge - 1;
+    }
+
+    /** @return the number of triangle slots; some of them may be unused, see {@link #isTriangle(int)}. */
+    public int triangleCapacity(){
+        return triangleCount;
+    }
+
+    /** @return whether this triangle index is in use. */
+    public boolean isTriangle(int triangle){
+        return triangle >= 0 && triangle < triangleCount && origin[3 * triangle] != -1;
+    }
+
+    /**
+     * Writes triples of point indices for all triangles that do not touch the super triangle, in counter-clockwise order.
+     * @return out
+     */
+    public IntSeq triangles(IntSeq out){
+        out.clear();
+        for(int t = 0; t < triangleCount; t++){
+            int a = origin[3 * t], b = origin[3 * t + 1], c = origin[3 * t + 2];
+            if(a >= superVertices && b >= superVertices && c >= superVertices){
+                out.add(a - superVertices, b - superVertices, c - superVertices);
+            }
+        }
+        return out;
+    }
+
+    private int locateTriangle(float x, float y){
+        int t = last;
+        if(!isTriangle(t)){
+            t = 0;
+            while(!isTriangle(t)) t++;
+        }
+
+        //rotate the first edge tested so that the walk cannot cycle on degenerate configurations
+        walk:
+        while(true){
+            walkStart = (walkStart + 1) % 3;
+            for(int i = 0; i < 3; i++){
+                int e = 3 * t + (walkStart + i) % 3;
+                if(orient(origin[e], origin[next(e)], x, y) < 0){
+                    t = twin[e] / 3;
+                    continue walk;
+                }
+            }
+            last = t;
+            return t;
+        }
+    }
+
+    private void splitTriangle(int t, int p){
+        int e0 = 3 * t, a = origin[e0], b = origin[e0 + 1], c = origin[e0 + 2];
+        int ab = twin[e0], bc = twin[e0 + 1], ca = twin[e0 + 2];
+
+        int t1 = allocTriangle(), t2 = allocTriangle();
+        setTriangle(t, a, b, p);
+        setTriangle(t1, b, c, p);
+        setTriangle(t2, c, a, p);
+
+        link(3 * t, ab);
+        link(3 * t1, bc);
+        link(3 * t2, ca);
+        link(3 * t + 1, 3 * t1 + 2);
+        link(3 * t1 + 1, 3 * t2 + 2);
+        link(3 * t2 + 1, 3 * t + 2);
+
+        stack.add(3 * t, 3 * t1, 3 * t2);
+        last = t;
+    }
+
+    private void splitEdge(int e, int p){
+        int o = twin[e];
+        int t1 = e / 3, t2 = o / 3;
+        int a = origin[e], b = origin[next(e)], c = origin[prev(e)], d = origin[prev(o)];
+        int bc = twin[next(e)], ca = twin[prev(e)], ad = twin[next(o)], db = twin[prev(o)];
+
+        int t3 = allocTriangle(), t4 = allocTriangle();
+        setTriangle(t1, c, a, p);
+        setTriangle(t3, b, c, p);
+        setTriangle(t2, d, b, p);
+        setTriangle(t4, a, d, p);
+
+        link(3 * t1, ca);
+        link(3 * t3, bc);
+        link(3 * t2, db);
+        link(3 * t4, ad);
+        link(3 * t1 + 2, 3 * t3 + 1);
+        link(3 * t3 + 2, 3 * t2 + 1);
+        link(3 * t2 + 2, 3 * t4 + 1);
+        link(3 * t4 + 2, 3 * t1 + 1);
+
+        stack.add(3 * t1, 3 * t3, 3 * t2, 3 * t4);
+        last = t1;
+    }
+
+    /** Flips edges from the stack until every edge satisfies the Delaunay condition again. */
+    private void legalize(){
+        while(stack.size > 0){
+            int e = stack.pop();
+            int o = twin[e];
+            if(o == -1 || origin[e] == -1) continue;
+
+            int a = origin[e], b = origin[next(e)], c = origin[prev(e)], d = origin[prev(o)];
+            if(!inCircle(a, b, c, d)) continue;
+
+            int t1 = e / 3, t2 = o / 3;
+            int bc = twin[next(e)], ca = twin[prev(e)], ad = twin[next(o)], db = twin[prev(o)];
+
+            setTriangle(t1, c, a, d);
+            setTriangle(t2, d, b, c);
+            link(3 * t1, ca);
+            link(3 * t1 + 1, ad);
+            link(3 * t2, db);
+            link(3 * t2 + 1, bc);
+            link(3 * t1 + 2, 3 * t2 + 2);
+
+            stack.add(3 * t1, 3 * t1 + 1, 3 * t2, 3 * t2 + 1);
+        }
+    }
+
+    /** Triangulates the polygon in {@link #link} by clipping ears, linking each new triangle to the half-edges outside of it. */
+    private void fillHole(){
+        IntSeq link = this.link, outside = this.linkEdges;
+
+        while(link.size > 3){
+            int n = link.size, best = -1;
+            boolean bestDelaunay = false;
+
+            for(int i = 0; i < n; i++){
+                int u = link.items[i], w = link.items[(i + 1) % n], x = link.items[(i + 2) % n];
+                if(orient(u, w, coords.items[x * 2], coords.items[x * 2 + 1]) <= 0) continue;
+
+                //an ear must not contain any other vertex of the polygon, and should have an empty circumcircle
+                boolean valid = true, delaunay = true;
+                for(int j = 0; j < n && valid; j++){
+                    if(j == i || j == (i + 1) % n || j == (i + 2) % n) continue;
+                    int q = link.items[j];
+                    if(inTriangle(u, w, x, q)) valid = false;
+                    if(inCircle(u, w, x, q)) delaunay = false;
+                }
+
+                if(valid && (best == -1 || (delaunay && !bestDelaunay))){
+                    best = i;
+                    bestDelaunay = delaunay;
+                    if(delaunay) break;
+                }
+            }
+
+            //only possible with numerically degenerate input; clip any ear to guarantee progress
+            if(best == -1) best = 0;
+
+            int i1 = (best + 1) % n, i2 = (best + 2) % n;
+            int t = allocTriangle();
+            setTriangle(t, link.items[best], link.items[i1], link.items[i2]);
+            link(3 * t, outside.items[best]);
+            link(3 * t + 1, outside.items[i1]);
+            created.add(t);
+
+            //the ear's closing edge becomes the polygon edge between the first and last vertex
+            outside.items[best] = 3 * t + 2;
+            link.removeIndex(i1);
+            outside.removeIndex(i1);
+        }
+
+        int t = allocTriangle();
+        setTriangle(t, link.items[0], link.items[1], link.items[2]);
+        link(3 * t, outside.items[0]);
+        link(3 * t + 1, outside.items[1]);
+        link(3 * t + 2, outside.items[2]);
+        created.add(t);
+    }
+
+    private int addVertex(float x, float y){
+        int v;
+        if(freeVertices.size > 0){
+            v = freeVertices.pop();
+            coords.items[v * 2] = x;
+            coords.items[v * 2 + 1] = y;
+        }else{
+            v = vertexCount++;
+            coords.add(x, y);
+            if(vertexEdge.length < vertexCount) vertexEdge = Arrays.copyOf(vertexEdge, vertexCount * 2);
+        }
+        vertexEdge[v] = -1;
+        return v;
+    }
+
+    private int allocTriangle(){
+        if(freeTriangles.size > 0) return freeTriangles.pop();
+        int t = triangleCount++;
+        if(origin.length < triangleCount * 3){
+            origin = Arrays.copyOf(origin, triangleCount * 6);
+            twin = Arrays.copyOf(twin, triangleCount * 6);
+        }
+        return t;
+    }
+
+    private void freeTriangle(int t){
+        origin[3 * t] = origin[3 * t + 1] = origin[3 * t + 2] = -1;
+        freeTriangles.add(t);
+    }
+
+    private void setTriangle(int t, int a, int b, int c){
+        origin[3 * t] = a;
+        origin[3 * t + 1] = b;
+        origin[3 * t + 2] = c;
+        vertexEdge[a] = 3 * t;
+        vertexEdge[b] = 3 * t + 1;
+        vertexEdge[c] = 3 * t + 2;
+    }
+
+    private void link(int e, int o){
+        twin[e] = o;
+        if(o != -1) twin[o] = e;
+    }
+
+    /** @return positive if the point is to the left of the directed edge a -> b, negative if to the right, 0 if collinear. */
+    private double orient(int a, int b, float x, float y){
+        float[] c = coords.items;
+        double ax = c[a * 2], ay = c[a * 2 + 1];
+        return (c[b * 2] - ax) * (y - ay) - (c[b * 2 + 1] - ay) * (x - ax);
+    }
+
+    private boolean inTriangle(int a, int b, int c, int p){
+        float x = coords.items[p * 2], y = coords.items[p * 2 + 1];
+        return orient(a, b, x, y) >= 0 && orient(b, c, x, y) >= 0 && orient(c, a, x, y) >= 0;
+    }
+
+    /** @return whether d lies strictly inside the circumcircle of the counter-clockwise triangle a, b, c. */
+    private boolean inCircle(int a, int b, int c, int d){
+        float[] v = coords.items;
+        double dx = v[d * 2], dy = v[d * 2 + 1];
+        double adx = v[a * 2] - dx, ady = v[a * 2 + 1] - dy;
+        double bdx = v[b * 2] - dx, bdy = v[b * 2 + 1] - dy;
+        double cdx = v[c * 2] - dx, cdy = v[c * 2 + 1] - dy;
+
+        double det = (adx * adx + ady * ady) * (bdx * cdy - cdx * bdy)
+            + (bdx * bdx + bdy * bdy) * (cdx * ady - adx * cdy)
+            + (cdx * cdx + cdy * cdy) * (adx * bdy - bdx * ady);
+        return det > 0;
+    }
+
+    /** @return the distance of a point along a Hilbert curve filling a 32768x32768 grid. */
+    private static int hilbert(int x, int y){
+        int d = 0;
+        for(int s = 1 << 14; s > 0; s >>= 1){
+            int rx = (x & s) > 0 ? 1 : 0, ry = (y & s) > 0 ? 1 : 0;
+            d += s * s * ((3 * rx) ^ ry);
+            if(ry == 0){
+                if(rx == 1){
+                    x = 32767 - x;
+                    y = 32767 - y;
+                }
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return d;
+    }
+}
@@ -17,6 +17,8 @@ public class Rand extends Random{
     private static final double NORM_DOUBLE = 1.0 / (1L << 53);
     /** Normalization constant for float. */
     private static final double NORM_FLOAT = 1.0 / (1L << 24);
+    /** Jump polynomial that advances the state by 2<sup>64</sup> calls to {@link #nextLong()}. */
+    private static final long[] JUMP = {0x8c405782bca686adL, 0xc44f35946fef49c6L};
     /** The first half of the internal state of this pseudo-random number generator. */
     private long seed0;
     /** The second half of the internal state of this pseudo-random number generator. */
@@ -211,6 +213,110 @@ public class Rand extends Random{
         return min + nextInt(max - min + 1);
     }
 
+    /**
+     * Advances this generator by 2<sup>64</sup> calls to {@link #nextLong()}. This can be used to generate 2<sup>64</sup>
+     * non-overlapping subsequences for parallel computations.
+     */
+    public void jump(){
+        long s0 = 0, s1 = 0;
+        long a = seed0, b = seed1;
+        for(long jump : JUMP){
+            for(int bit = 0; bit < 64; bit++){
+                if((jump & (1L << bit)) != 0){
+                    s0 ^= a;
+                    s1 ^= b;
+                }
+                long s = a;
+                a = b;
+                s ^= s << 23;
+                b = s ^ b ^ (s >>> 17) ^ (b >>> 26);
+            }
+        }
+        setState(s0, s1);
+    }
+
+    /**
+     * Returns a new generator that continues from the current state of this one, then {@link #jump()}s this generator past it.
+     * The returned generator and every generator split after it use disjoint subsequences of 2<sup>64</sup> values, so a fixed
+     * seed followed by a fixed number of splits always yields the same streams regardless of how they are consumed.
+     */
+    public Rand split(){
+        Rand child = new Rand(seed0, seed1);
+        jump();
+        return child;
+    }
+
+    /** Fills the array with values identical to repeated calls of {@link #nextFloat()}. */
+    public void nextFloats(float[] out){
+        nextFloats(out, 0, out.length);
+    }
+
+    /** Fills {@code len} elements of the array starting at {@code offset} with values identical to repeated calls of {@link #nextFloat()}. */
+    public void nextFloats(float[] out, int offset, int len){
+        long a = seed0, b = seed1;
+        for(int i = offset, end = offset + len; i < end; i++){
+            long s = a;
+            a = b;
+            s ^= s << 23;
+            b = s ^ b ^ (s >>> 17) ^ (b >>> 26);
+            out[i] = (float)(((b + a) >>> 40) * NORM_FLOAT);
+        }
+        setState(a, b);
+    }
+
+    /** Fills the array with values identical to repeated calls of {@link #nextInt(int)}. */
+    public void nextInts(int[] out, int bound){
+        nextInts(out, 0, out.length, bound);
+    }
+
+    /** Fills {@code len} elements of the array starting at {@code offset} with values identical to repeated calls of {@link #nextInt(int)}. */
+    public void nextInts(int[] out, int offset, int len, int bound){
+        if(bound <= 0) throw new IllegalArgumentException("bound must be positive");
+        long a = seed0, b = seed1;
+        for(int i = offset, end = offset + len; i < end; i++){
+            for(;;){
+                long s = a;
+                a = b;
+                s ^= s << 23;
+                b = s ^ b ^ (s >>> 17) ^ (b >>> 26);
+                long bits = (b + a) >>> 1;
+                long value = bits % bound;
+                if(bits - value + (bound - 1) >= 0){
+                    out[i] = (int)value;
+                    break;
+                }
+            }
+        }
+        setState(a, b);
+    }
+
+    /** Shuffles the array in place. Equivalent to swapping each index {@code i}, from last to first, with {@code nextInt(i + 1)}. */
+    public void shuffle(int[] items){
+        shuffle(items, 0, items.length);
+    }
+
+    /** Shuffles {@code len} elements of the array starting at {@code offset} in place. */
+    public void shuffle(int[] items, int offset, int len){
+        long a = seed0, b = seed1;
+        for(int i = len - 1; i > 0; i--){
+            long bound = i + 1, value;
+            for(;;){
+                long s = a;
+                a = b;
+                s ^= s << 23;
+                b = s ^ b ^ (s >>> 17) ^ (b >>> 26);
+                long bits = (b + a) >>> 1;
+                value = bits % bound;
+                if(bits - value + (bound - 1) >= 0) break;
+            }
+            int ii = offset + (int)value;
+            int temp = items[offset + i];
+            items[offset + i] = items[ii];
+            items[ii] = temp;
+        }
+        setState(a, b);
+    }
+
     /**
      * Sets the internal state of this generator.
      * @param seed0 the first part of the internal state
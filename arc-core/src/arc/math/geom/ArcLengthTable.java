@@ -0,0 +1,261 @@
+package arc.math.geom;
+
+import arc.math.*;
+
+/**
+ * Precomputed arc-length parameterization of a 2D {@link Path}, for moving along it at constant speed without evaluating the
+ * path every frame.
+ * <p>
+ * The path is sampled at uniform steps of t, and the cumulative length at each sample is stored. A second table maps uniform
+ * steps of distance back to t, so {@link #tAt(float)} and {@link #positionAt(float, Vec2)} are constant-time lookups. Positions
+ * are interpolated linearly between samples; use {@link Path#valueAt(Object, float)} with {@link #tAt(float)} if the exact curve
+ * position is required.
+ * <p>
+ * Splines are sampled per span, so {@link #updateControlPoint(int)} only re-evaluates the spans affected by a moved control point.
+ * The table does not track changes to the path on its own.
+ */
+public class ArcLengthTable{
+    private final Vec2 tmp = new Vec2();
+
+    private Path<Vec2> path;
+    private int spans, samplesPerSpan, samples;
+    private float length;
+
+    /** Sampled positions, packed as x, y. */
+    private float[] points = {};
+    /** Length of the segment ending at each sample; the first entry is always 0. */
+    private float[] segments = {};
+    /** Cumulative length at each sample. */
+    private float[] lengths = {};
+    /** t at uniform steps of distance. */
+    private float[] uniform = {};
+
+    public ArcLengthTable(){
+    }
+
+    public ArcLengthTable(Path<Vec2> path, int samplesPerSpan){
+        set(path, samplesPerSpan);
+    }
+
+    /**
+     * Rebuilds the table for the specified path.
+     * @param samplesPerSpan the number of samples in each spline span, or over the whole path for other path types. Higher values
+     * produce more precise results.
+     */
+    public ArcLengthTable set(Path<Vec2> path, int samplesPerSpan){
+        if(samplesPerSpan < 1) throw new IllegalArgumentException("samplesPerSpan must be positive: " + samplesPerSpan);
+
+        this.path = path;
+        this.spans = spanCount(path);
+        this.samplesPerSpan = samplesPerSpan;
+        this.samples = spans * samplesPerSpan;
+
+        if(lengths.length != samples + 1){
+            points = new float[(samples + 1) * 2];
+            segments = new float[samples + 1];
+            lengths = new float[samples + 1];
+            uniform = new float[samples + 1];
+        }
+
+        sample(0, samples);
+        updateLengths(1);
+        return this;
+    }
+
+    /** Rebuilds the whole table after the path has changed. The number of spans must not have changed. */
+    public void update(){
+        if(spanCount(path) != spans) throw new IllegalStateException("The number of spans has changed; call set() instead.");
+        sample(0, samples);
+        updateLengths(1);
+    }
+
+    /**
+     * Rebuilds the spans between from and to, inclusive. If to is lower than from, the range wraps around the end of the path, as
+     * with continuous splines.
+     */
+    public void updateSpans(int from, int to){
+        if(to < from){
+            sample(from * samplesPerSpan, samples);
+            sample(0, (to + 1) * samplesPerSpan);
+            updateLengths(1);
+        }else{
+            sample(from * samplesPerSpan, (to + 1) * samplesPerSpan);
+            updateLengths(from * samplesPerSpan + 1);
+        }
+    }
+
+    /**
+     * Rebuilds only the spans influenced by the control point at the specified index. This supports cubic {@link BSpline}s and
+     * {@link CatmullRomSpline}s; for other paths, the whole table is rebuilt.
+     */
+    public void updateControlPoint(int index){
+        boolean continuous;
+        //span k of both spline types is evaluated using control points k - 1 to k + 2, shifted by one if not continuous
+        if(path instanceof CatmullRomSpline){
+            continuous = ((CatmullRomSpline<?>)path).continuous;
+        }else if(path instanceof BSpline && ((BSpline<?>)path).degree == 3){
+            continuous = ((BSpline<?>)path).continuous;
+        }else{
+            update();
+            return;
+        }
+
+        if(continuous){
+            if(spans <= 4){
+                update();
+            }else{
+                updateSpans(Mathf.mod(index - 2, spans), Mathf.mod(index + 1, spans));
+            }
+        }else{
+            int from = Math.max(index - 3, 0), to = Math.min(index, spans - 1);
+            if(from <= to) updateSpans(from, to);
+        }
+    }
+
+    /** @return the path this table was built from. */
+    public Path<Vec2> getPath(){
+        return path;
+    }
+
+    /** @return the approximate length of the whole path. */
+    public float length(){
+        return length;
+    }
+
+    /** @return the number of samples along the path, excluding the starting point. */
+    public int samples(){
+        return samples;
+    }
+
+    /** @return the value of t at the specified distance along the path, using direct indexing into the uniform distance table. */
+    public float tAt(float distance){
+        if(length <= 0f) return 0f;
+        float f = Mathf.clamp(distance / length, 0f, 1f) * samples;
+        int i = Math.min((int)f, samples - 1);
+        return Mathf.lerp(uniform[i], uniform[i + 1], f - i);
+    }
+
+    /** @return the value of t at the specified distance along the path, using a binary search over the sample lengths. */
+    public float tAtPrecise(float distance){
+        if(length <= 0f) return 0f;
+        float d = Mathf.clamp(distance, 0f, length);
+        int i = segmentAt(d);
+        return (i + segmentProgress(i, d)) / samples;
+    }
+
+    /**
+     * Sets out to the interpolated position at the specified distance along the path.
+     * @return out
+     */
+    public Vec2 positionAt(float distance, Vec2 out){
+        float f = tAt(distance) * samples;
+        int i = Math.min((int)f, samples - 1);
+        float a = f - i;
+        return out.set(Mathf.lerp(points[i * 2], points[i * 2 + 2], a), Mathf.lerp(points[i * 2 + 1], points[i * 2 + 3], a));
+    }
+
+    /**
+     * Writes the value of t at each distance to out.
+     * @param distances the input distances
+     * @param offset the first distance index to read
+     * @param count the number of distances
+     * @param out receives count values, starting at outOffset
+     */
+    public void tAt(float[] distances, int offset, int count, float[] out, int outOffset){
+        float[] uniform = this.uniform;
+        int samples = this.samples;
+        float scale = length <= 0f ? 0f : samples / length;
+
+        for(int j = 0; j < count; j++){
+            float f = Mathf.clamp(distances[offset + j] * scale, 0f, samples);
+            int i = Math.min((int)f, samples - 1);
+            out[outOffset + j] = uniform[i] + (uniform[i + 1] - uniform[i]) * (f - i);
+        }
+    }
+
+    /**
+     * Writes the interpolated position at each distance to out, packed as x, y.
+     * @param distances the input distances
+     * @param offset the first distance index to read
+     * @param count the number of distances
+     * @param out receives count positions, starting at outOffset
+     */
+    public void positionsAt(float[] distances, int offset, int count, float[] out, int outOffset){
+        float[] uniform = this.uniform, points = this.points;
+        int samples = this.samples;
+        float scale = length <= 0f ? 0f : samples / length;
+
+        for(int j = 0; j < count; j++){
+            float f = Mathf.clamp(distances[offset + j] * scale, 0f, samples);
+            int i = Math.min((int)f, samples - 1);
+            float t = (uniform[i] + (uniform[i + 1] - uniform[i]) * (f - i)) * samples;
+            int s = Math.min((int)t, samples - 1);
+            float a = t - s;
+            int o = outOffset + j * 2;
+            out[o] = points[s * 2] + (points[s * 2 + 2] - points[s * 2]) * a;
+            out[o + 1] = points[s * 2 + 1] + (points[s * 2 + 3] - points[s * 2 + 1]) * a;
+        }
+    }
+
+    /** Evaluates the path at the samples from start to end, inclusive. */
+    private void sample(int start, int end){
+        float[] points = this.points;
+        for(int i = start; i <= end; i++){
+            path.valueAt(tmp, (float)i / samples);
+            points[i * 2] = tmp.x;
+            points[i * 2 + 1] = tmp.y;
+        }
+    }
+
+    /** Recomputes segment lengths from the specified sample onwards, then the cumulative and uniform tables. */
+    private void updateLengths(int from){
+        float[] points = this.points, segments = this.segments, lengths = this.lengths;
+
+        for(int i = Math.max(from, 1); i <= samples; i++){
+            segments[i] = Mathf.dst(points[i * 2 - 2], points[i * 2 - 1], points[i * 2], points[i * 2 + 1]);
+        }
+
+        float total = 0f;
+        for(int i = 1; i <= samples; i++){
+            total += segments[i];
+            lengths[i] = total;
+        }
+        length = total;
+
+        //walk both tables at once to invert distance -> t
+        float[] uniform = this.uniform;
+        uniform[0] = 0f;
+        uniform[samples] = 1f;
+        int seg = 0;
+        for(int k = 1; k < samples; k++){
+            float d = length * k / samples;
+            while(seg < samples - 1 && lengths[seg + 1] < d) seg++;
+            uniform[k] = (seg + segmentProgress(seg, d)) / samples;
+        }
+    }
+
+    /** @return the index of the segment that starts before the distance, via binary search. */
+    private int segmentAt(float distance){
+        int low = 0, high = samples - 1;
+        while(low < high){
+            int mid = (low + high + 1) >>> 1;
+            if(lengths[mid] <= distance){
+                low = mid;
+            }else{
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private float segmentProgress(int segment, float distance){
+        float len = segments[segment + 1];
+        return len <= 0f ? 0f : Mathf.clamp((distance - lengths[segment]) / len, 0f, 1f);
+    }
+
+    private static int spanCount(Path<?> path){
+        if(path instanceof CatmullRomSpline) return Math.max(((CatmullRomSpline<?>)path).spanCount, 1);
+        if(path instanceof BSpline) return Math.max(((BSpline<?>)path).spanCount, 1);
+        return 1;
+    }
+}
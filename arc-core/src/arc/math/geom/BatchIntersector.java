@@ -0,0 +1,284 @@
+package arc.math.geom;
+
+import arc.struct.*;
+import arc.util.*;
+import arc.util.async.*;
+
+import java.util.concurrent.*;
+
+/**
+ * Performs intersection tests between many shapes at once. Shapes are passed as packed float arrays:
+ * <ul>
+ * <li>circles as {@code x, y, radius}</li>
+ * <li>segments as {@code x1, y1, x2, y2}</li>
+ * <li>rectangles as {@code x, y, width, height}</li>
+ * <li>points as {@code x, y}</li>
+ * </ul>
+ * Overlapping pairs are appended to an {@link IntSeq} as two consecutive indices, in ascending order of the first index.
+ * <p>
+ * The second set of shapes is unpacked into scratch arrays once per call, and the inner loops over it are branch-free so that
+ * they can be auto-vectorized by the JIT. Large batches can optionally be split across an {@link ExecutorService}; the output
+ * is identical to the single-threaded result.
+ * <p>
+ * Instances reuse their scratch arrays between calls and are not thread-safe.
+ */
+public class BatchIntersector{
+    private static final int minChunk = 64;
+
+    private final Worker main = new Worker();
+    private final Seq<Worker> workers = new Seq<>();
+    private final Seq<Future<?>> futures = new Seq<>();
+
+    private float[] bx = {}, by = {}, bz = {}, bw = {};
+
+    private @Nullable ExecutorService executor;
+    private int parallelThreshold = Integer.MAX_VALUE, parallelChunks;
+
+    /**
+     * Enables parallel mode: batches whose first set contains at least {@code threshold} shapes are split into chunks that run on
+     * the specified executor. The calling thread blocks until all chunks finish.
+     * @param executor the executor to run chunks on, or null to disable parallel mode.
+     */
+    public BatchIntersector parallel(@Nullable ExecutorService executor, int threshold){
+        return parallel(executor, threshold, Runtime.getRuntime().availableProcessors());
+    }
+
+    /** @param chunks the maximum number of chunks to split a batch into. */
+    public BatchIntersector parallel(@Nullable ExecutorService executor, int threshold, int chunks){
+        this.executor = executor;
+        this.parallelThreshold = executor == null ? Integer.MAX_VALUE : threshold;
+        this.parallelChunks = Math.max(chunks, 1);
+        return this;
+    }
+
+    /** {@link #circles(float[], int, float[], int, IntSeq)} for float sequences. */
+    public void circles(FloatSeq a, FloatSeq b, IntSeq out){
+        circles(a.items, a.size / 3, b.items, b.size / 3, out);
+    }
+
+    /**
+     * Finds all overlapping pairs between two sets of circles. Circles that only touch do not overlap, as in {@link Circle#overlaps(Circle)}.
+     * @param a circles packed as {@code x, y, radius}
+     * @param countA the number of circles in a
+     * @param b circles packed as {@code x, y, radius}
+     * @param countB the number of circles in b
+     * @param out receives the index in a and the index in b of each overlapping pair
+     */
+    public void circles(float[] a, int countA, float[] b, int countB, IntSeq out){
+        unpack(b, countB, 3);
+        run(countA, countB, out, (w, from, to) -> circleKernel(w, a, from, to, false, countB));
+    }
+
+    /** {@link #circles(float[], int, IntSeq)} for a float sequence. */
+    public void circles(FloatSeq circles, IntSeq out){
+        circles(circles.items, circles.size / 3, out);
+    }
+
+    /**
+     * Finds all overlapping pairs within one set of circles. Each pair is reported once, with the lower index first.
+     * @param circles circles packed as {@code x, y, radius}
+     */
+    public void circles(float[] circles, int count, IntSeq out){
+        unpack(circles, count, 3);
+        run(count, count, out, (w, from, to) -> circleKernel(w, circles, from, to, true, count));
+    }
+
+    /** {@link #segmentsRects(float[], int, float[], int, IntSeq)} for float sequences. */
+    public void segmentsRects(FloatSeq segments, FloatSeq rects, IntSeq out){
+        segmentsRects(segments.items, segments.size / 4, rects.items, rects.size / 4, out);
+    }
+
+    /**
+     * Finds all intersecting pairs between a set of segments and a set of axis-aligned rectangles. A segment that lies entirely
+     * inside a rectangle or touches its border counts as an intersection.
+     * @param segments segments packed as {@code x1, y1, x2, y2}
+     * @param rects rectangles packed as {@code x, y, width, height}
+     * @param out receives the segment index and the rectangle index of each intersecting pair
+     */
+    public void segmentsRects(float[] segments, int segmentCount, float[] rects, int rectCount, IntSeq out){
+        //store rectangles as center and half extents
+        unpack(rects, rectCount, 4);
+        float[] bx = this.bx, by = this.by, bz = this.bz, bw = this.bw;
+        for(int i = 0; i < rectCount; i++){
+            bz[i] *= 0.5f;
+            bw[i] *= 0.5f;
+            bx[i] += bz[i];
+            by[i] += bw[i];
+        }
+        run(segmentCount, rectCount, out, (w, from, to) -> segmentRectKernel(w, segments, from, to, rectCount));
+    }
+
+    /** {@link #pointsInPolygon(float[], int, float[], int, int, IntSeq)} for float sequences. */
+    public void pointsInPolygon(FloatSeq points, float[] polygon, IntSeq out){
+        pointsInPolygon(points.items, points.size / 2, polygon, 0, polygon.length, out);
+    }
+
+    /**
+     * Finds all points inside a polygon, using the same rule as {@link Intersector#isInPolygon(float[], int, int, float, float)}.
+     * @param points points packed as {@code x, y}
+     * @param pointCount the number of points
+     * @param polygon the polygon vertices packed as {@code x, y}
+     * @param offset starting polygon index
+     * @param count number of polygon array indices to use after offset
+     * @param out receives the index of each point inside the polygon
+     */
+    public void pointsInPolygon(float[] points, int pointCount, float[] polygon, int offset, int count, IntSeq out){
+        run(pointCount, 0, out, (w, from, to) -> polygonKernel(w, points, from, to, polygon, offset, count));
+    }
+
+    private void circleKernel(Worker w, float[] a, int from, int to, boolean self, int countB){
+        float[] bx = this.bx, by = this.by, br = this.bz;
+        int[] mask = w.mask;
+        IntSeq out = w.out;
+
+        for(int i = from; i < to; i++){
+            float x = a[i * 3], y = a[i * 3 + 1], r = a[i * 3 + 2];
+            //in self mode, only test against higher indices
+            int start = self ? i + 1 : 0;
+
+            for(int j = start; j < countB; j++){
+                float dx = bx[j] - x, dy = by[j] - y, rs = br[j] + r;
+                mask[j] = dx * dx + dy * dy < rs * rs ? 1 : 0;
+            }
+
+            collect(mask, start, countB, i, out);
+        }
+    }
+
+    private void segmentRectKernel(Worker w, float[] segments, int from, int to, int countB){
+        float[] cx = this.bx, cy = this.by, ex = this.bz, ey = this.bw;
+        int[] mask = w.mask;
+        IntSeq out = w.out;
+
+        for(int i = from; i < to; i++){
+            float x1 = segments[i * 4], y1 = segments[i * 4 + 1], x2 = segments[i * 4 + 2], y2 = segments[i * 4 + 3];
+            //segment as midpoint and half extents
+            float hx = (x2 - x1) * 0.5f, hy = (y2 - y1) * 0.5f;
+            float mx = x1 + hx, my = y1 + hy;
+            float ahx = Math.abs(hx), ahy = Math.abs(hy);
+
+            //separating axis test on the two box axes and the segment normal
+            for(int j = 0; j < countB; j++){
+                float tx = mx - cx[j], ty = my - cy[j];
+                boolean hit =
+                    Math.abs(tx) <= ex[j] + ahx &
+                    Math.abs(ty) <= ey[j] + ahy &
+                    Math.abs(tx * hy - ty * hx) <= ex[j] * ahy + ey[j] * ahx;
+                mask[j] = hit ? 1 : 0;
+            }
+
+            collect(mask, 0, countB, i, out);
+        }
+    }
+
+    private void polygonKernel(Worker w, float[] points, int from, int to, float[] polygon, int offset, int count){
+        int size = to - from;
+        w.ensure(size);
+        float[] px = w.x, py = w.y;
+        int[] mask = w.mask;
+
+        for(int i = 0; i < size; i++){
+            px[i] = points[(from + i) * 2];
+            py[i] = points[(from + i) * 2 + 1];
+            mask[i] = 0;
+        }
+
+        //iterate edges in the outer loop so the inner loop runs over all points
+        int j = offset + count - 2;
+        for(int i = offset, n = j; i <= n; i += 2){
+            float xi = polygon[i], yi = polygon[i + 1], xj = polygon[j], yj = polygon[j + 1];
+
+            for(int k = 0; k < size; k++){
+                float y = py[k];
+                boolean crosses = (yi < y) != (yj < y) & xi + (y - yi) / (yj - yi) * (xj - xi) < px[k];
+                mask[k] ^= crosses ? 1 : 0;
+            }
+            j = i;
+        }
+
+        IntSeq out = w.out;
+        for(int i = 0; i < size; i++){
+            if(mask[i] != 0) out.add(from + i);
+        }
+    }
+
+    private static void collect(int[] mask, int from, int to, int index, IntSeq out){
+        for(int j = from; j < to; j++){
+            if(mask[j] != 0) out.add(index, j);
+        }
+    }
+
+    private void unpack(float[] packed, int count, int stride){
+        if(bx.length < count){
+            bx = new float[count];
+            by = new float[count];
+            bz = new float[count];
+            bw = new float[count];
+        }
+        float[] bx = this.bx, by = this.by, bz = this.bz, bw = this.bw;
+        for(int i = 0; i < count; i++){
+            int o = i * stride;
+            bx[i] = packed[o];
+            by[i] = packed[o + 1];
+            bz[i] = packed[o + 2];
+            if(stride > 3) bw[i] = packed[o + 3];
+        }
+    }
+
+    private void run(int countA, int countB, IntSeq out, Kernel kernel){
+        int chunks = Math.min(parallelChunks, countA / minChunk);
+
+        if(countA < parallelThreshold || chunks <= 1){
+            main.ensure(countB);
+            main.out = out;
+            kernel.run(main, 0, countA);
+            main.out = null;
+            return;
+        }
+
+        while(workers.size < chunks) workers.add(new Worker());
+        futures.clear();
+
+        int per = (countA + chunks - 1) / chunks;
+        for(int c = 0; c < chunks; c++){
+            int from = c * per, to = Math.min(from + per, countA);
+            Worker w = workers.get(c);
+            w.ensure(countB);
+            w.out = w.buffer;
+            w.out.clear();
+            futures.add(executor.submit(() -> kernel.run(w, from, to)));
+        }
+
+        for(Future<?> future : futures){
+            Threads.await(future);
+        }
+        futures.clear();
+
+        //merge in chunk order so results match the single-threaded order
+        for(int c = 0; c < chunks; c++){
+            Worker w = workers.get(c);
+            out.addAll(w.out);
+            w.out = null;
+        }
+    }
+
+    private interface Kernel{
+        void run(Worker worker, int from, int to);
+    }
+
+    /** Scratch state for a single chunk. */
+    private static class Worker{
+        final IntSeq buffer = new IntSeq();
+        int[] mask = {};
+        float[] x = {}, y = {};
+        IntSeq out;
+
+        void ensure(int size){
+            if(mask.length < size){
+                mask = new int[size];
+                x = new float[size];
+                y = new float[size];
+            }
+        }
+    }
+}
@@ -10,7 +10,7 @@ public class Polygon implements Shape2D{
     private float originX, originY;
     private float rotation;
     private float scaleX = 1, scaleY = 1;
-    private boolean dirty = true;
+    private boolean dirty = true, boundsDirty = true;
     private Rect bounds;
 
     /** Constructs a new polygon with no vertices. */
@@ -54,6 +54,7 @@ public class Polygon implements Shape2D{
     public float[] getTransformedVertices(){
         if(!dirty) return worldVertices;
         dirty = false;
+        boundsDirty = true;
 
         final float[] localVertices = this.localVertices;
         if(worldVertices == null || worldVertices.length != localVertices.length)
@@ -149,11 +150,14 @@ public class Polygon implements Shape2D{
     /**
      * Returns an axis-aligned bounding box of this polygon.
      * <p>
-     * Note the returned Rectangle is cached in this polygon, and will be reused if this Polygon is changed.
+     * Note the returned Rectangle is cached in this polygon, and will be reused if this Polygon is changed. It is only recomputed
+     * after the transformed vertices change.
      * @return this polygon's bounding box {@link Rect}
      */
     public Rect getBoundingRectangle(){
         float[] vertices = getTransformedVertices();
+        if(!boundsDirty && bounds != null) return bounds;
+        boundsDirty = false;
 
         float minX = vertices[0];
         float minY = vertices[1];
@@ -0,0 +1,350 @@
+package arc.math.geom;
+
+import arc.math.*;
+import arc.struct.*;
+
+/**
+ * A preprocessed, immutable snapshot of a polygon for fast repeated queries against large static shapes.
+ * <p>
+ * Point containment uses horizontal slabs: each slab stores the edges that span it vertically, so a query only tests the edges
+ * of one slab instead of every edge. Segment intersection and nearest-edge queries use a uniform grid of edge buckets.
+ * <p>
+ * The index does not track changes to the source polygon; call {@link #set(Polygon)} again after it moves or changes shape.
+ * {@link #contains(float, float)} is safe to call from multiple threads, other queries are not.
+ */
+public class PolygonIndex implements Shape2D{
+    private static final int maxCells = 256;
+
+    private final IntSeq cells = new IntSeq();
+    private final Vec2 tmp = new Vec2();
+
+    private float[] vertices = {};
+    private int edges;
+    private float minX, minY, maxX, maxY;
+
+    private int slabs;
+    private float slabScale;
+    private int[] slabStart = {}, slabEdges = {};
+
+    private int cols, rows;
+    private float cellWidth, cellHeight;
+    private int[] cellStart = {}, cellEdges = {};
+
+    private int[] stamps = {};
+    private int stamp, nearest;
+
+    public PolygonIndex(){
+    }
+
+    /** Creates an index of the polygon's transformed vertices. */
+    public PolygonIndex(Polygon polygon){
+        set(polygon);
+    }
+
+    /** Creates an index of the vertices, which are copied. */
+    public PolygonIndex(float[] vertices){
+        set(vertices, 0, vertices.length);
+    }
+
+    /** Rebuilds this index from the polygon's transformed vertices. */
+    public PolygonIndex set(Polygon polygon){
+        float[] vertices = polygon.getTransformedVertices();
+        return set(vertices, 0, vertices.length);
+    }
+
+    /**
+     * Rebuilds this index from the specified vertices, which are copied.
+     * @param offset starting index in the array
+     * @param count number of array indices to use after offset
+     */
+    public PolygonIndex set(float[] vertices, int offset, int count){
+        if(count < 6) throw new IllegalArgumentException("polygons must contain at least 3 points.");
+
+        if(this.vertices.length != count) this.vertices = new float[count];
+        System.arraycopy(vertices, offset, this.vertices, 0, count);
+        edges = count / 2;
+
+        float[] v = this.vertices;
+        minX = maxX = v[0];
+        minY = maxY = v[1];
+        for(int i = 2; i < count; i += 2){
+            minX = Math.min(minX, v[i]);
+            maxX = Math.max(maxX, v[i]);
+            minY = Math.min(minY, v[i + 1]);
+            maxY = Math.max(maxY, v[i + 1]);
+        }
+
+        if(stamps.length < edges) stamps = new int[edges];
+        stamp = 0;
+
+        buildSlabs();
+        buildGrid();
+        return this;
+    }
+
+    /** Returns the number of edges in the indexed polygon. */
+    public int edges(){
+        return edges;
+    }
+
+    /** Returns the indexed vertices. Edge {@code i} goes from vertex {@code i} to vertex {@code i + 1}, wrapping around. */
+    public float[] getVertices(){
+        return vertices;
+    }
+
+    /** Sets the rectangle to the bounds of the indexed polygon. */
+    public Rect getBounds(Rect out){
+        return out.set(minX, minY, maxX - minX, maxY - minY);
+    }
+
+    /** Returns whether the point is contained within the polygon, using the same rule as {@link Polygon#contains(float, float)}. */
+    @Override
+    public boolean contains(float x, float y){
+        if(y < minY || y >= maxY || x < minX || x > maxX) return false;
+
+        float[] v = vertices;
+        int n = v.length;
+        int slab = Math.min((int)((y - minY) * slabScale), slabs - 1);
+        boolean inside = false;
+
+        for(int i = slabStart[slab], end = slabStart[slab + 1]; i < end; i++){
+            int e = slabEdges[i] * 2;
+            float x1 = v[e], y1 = v[e + 1], x2 = v[(e + 2) % n], y2 = v[(e + 3) % n];
+            if(((y1 <= y && y < y2) || (y2 <= y && y < y1)) && x < ((x2 - x1) / (y2 - y1) * (y - y1) + x1)){
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    @Override
+    public boolean contains(Vec2 point){
+        return contains(point.x, point.y);
+    }
+
+    /** Returns whether the segment intersects any edge of the polygon. Segments entirely inside the polygon do not intersect it. */
+    public boolean intersectsSegment(float x1, float y1, float x2, float y2){
+        return intersectSegment(x1, y1, x2, y2, null, false);
+    }
+
+    /**
+     * Finds the intersection between the segment and the polygon's edges that is closest to the segment start.
+     * @param intersection receives the intersection point, if there is one
+     * @return whether the segment intersects any edge
+     */
+    public boolean intersectSegment(float x1, float y1, float x2, float y2, Vec2 intersection){
+        return intersectSegment(x1, y1, x2, y2, intersection, true);
+    }
+
+    /** Returns the distance from the point to the closest edge of the polygon. */
+    public float distanceToEdge(float x, float y){
+        return findNearest(x, y);
+    }
+
+    /** Returns the index of the edge closest to the point. See {@link #getVertices()} for edge indexing. */
+    public int nearestEdge(float x, float y){
+        findNearest(x, y);
+        return nearest;
+    }
+
+    private boolean intersectSegment(float x1, float y1, float x2, float y2, Vec2 intersection, boolean closest){
+        if(Math.max(x1, x2) < minX || Math.min(x1, x2) > maxX || Math.max(y1, y2) < minY || Math.min(y1, y2) > maxY) return false;
+
+        float[] v = vertices;
+        int n = v.length;
+        int stamp = nextStamp();
+        float bestDst = Float.MAX_VALUE;
+        boolean found = false;
+
+        cells.clear();
+        cellsOf(x1, y1, x2, y2, cells);
+        for(int c = 0; c < cells.size; c++){
+            int cell = cells.items[c];
+            for(int i = cellStart[cell], end = cellStart[cell + 1]; i < end; i++){
+                int edge = cellEdges[i];
+                if(stamps[edge] == stamp) continue;
+                stamps[edge] = stamp;
+
+                int e = edge * 2;
+                if(Intersector.intersectSegments(x1, y1, x2, y2, v[e], v[e + 1], v[(e + 2) % n], v[(e + 3) % n], closest ? tmp : null)){
+                    if(!closest) return true;
+                    float dst = tmp.dst2(x1, y1);
+                    if(dst < bestDst){
+                        bestDst = dst;
+                        intersection.set(tmp);
+                        found = true;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /** @return the distance to the nearest edge, whose index is stored in {@link #nearest} */
+    private float findNearest(float x, float y){
+        float[] v = vertices;
+        int n = v.length;
+        int stamp = nextStamp();
+        int cx = col(x), cy = row(y);
+        float minCell = Math.min(cellWidth, cellHeight);
+        float best = Float.MAX_VALUE;
+        int bestEdge = -1;
+
+        //search rings of cells around the point until no closer edge can exist
+        for(int ring = 0, maxRing = Math.max(cols, rows); ring <= maxRing; ring++){
+            for(int gy = Math.max(cy - ring, 0), ey = Math.min(cy + ring, rows - 1); gy <= ey; gy++){
+                boolean edgeRow = gy == cy - ring || gy == cy + ring;
+                int step = edgeRow ? 1 : ring * 2;
+
+                for(int gx = cx - ring, ex = cx + ring; gx <= ex; gx += step){
+                    if(gx < 0 || gx >= cols) continue;
+
+                    int cell = gx + gy * cols;
+                    for(int i = cellStart[cell], end = cellStart[cell + 1]; i < end; i++){
+                        int edge = cellEdges[i];
+                        if(stamps[edge] == stamp) continue;
+                        stamps[edge] = stamp;
+
+                        int e = edge * 2;
+                        float dst = Intersector.distanceSegmentPoint(v[e], v[e + 1], v[(e + 2) % n], v[(e + 3) % n], x, y);
+                        if(dst < best){
+                            best = dst;
+                            bestEdge = edge;
+                        }
+                    }
+                }
+            }
+
+            if(bestEdge != -1 && best <= ring * minCell) break;
+        }
+
+        nearest = bestEdge;
+        return best;
+    }
+
+    private int nextStamp(){
+        if(++stamp == Integer.MAX_VALUE){
+            stamp = 1;
+            for(int i = 0; i < stamps.length; i++) stamps[i] = 0;
+        }
+        return stamp;
+    }
+
+    private void buildSlabs(){
+        float[] v = vertices;
+        int n = v.length;
+        slabs = Math.max(Math.min(edges, maxCells * 4), 1);
+        slabScale = maxY > minY ? slabs / (maxY - minY) : 0f;
+
+        if(slabStart.length != slabs + 1) slabStart = new int[slabs + 1];
+        int[] start = slabStart;
+        for(int i = 0; i < start.length; i++) start[i] = 0;
+
+        //count, then fill, so that each slab's edges are stored contiguously
+        for(int pass = 0; pass < 2; pass++){
+            for(int edge = 0; edge < edges; edge++){
+                int e = edge * 2;
+                float y1 = v[e + 1], y2 = v[(e + 3) % n];
+                //horizontal edges never cross a horizontal ray
+                if(y1 == y2) continue;
+
+                int from = slab(Math.min(y1, y2)), to = slab(Math.max(y1, y2));
+                for(int s = from; s <= to; s++){
+                    if(pass == 0){
+                        start[s + 1]++;
+                    }else{
+                        slabEdges[start[s]++] = edge;
+                    }
+                }
+            }
+
+            if(pass == 0){
+                for(int i = 0; i < slabs; i++) start[i + 1] += start[i];
+                if(slabEdges.length < start[slabs]) slabEdges = new int[start[slabs]];
+            }else{
+                //fill advanced each start to the next slab's start; shift back
+                for(int i = slabs; i > 0; i--) start[i] = start[i - 1];
+                start[0] = 0;
+            }
+        }
+    }
+
+    private int slab(float y){
+        return Mathf.clamp((int)((y - minY) * slabScale), 0, slabs - 1);
+    }
+
+    private void buildGrid(){
+        float[] v = vertices;
+        int n = v.length;
+        float width = Math.max(maxX - minX, Mathf.FLOAT_ROUNDING_ERROR), height = Math.max(maxY - minY, Mathf.FLOAT_ROUNDING_ERROR);
+
+        //aim for roughly one edge per cell
+        float size = (float)Math.sqrt(width * height / edges);
+        cols = Mathf.clamp((int)(width / size), 1, maxCells);
+        rows = Mathf.clamp((int)(height / size), 1, maxCells);
+        cellWidth = width / cols;
+        cellHeight = height / rows;
+
+        int total = cols * rows;
+        if(cellStart.length != total + 1) cellStart = new int[total + 1];
+        int[] start = cellStart;
+        for(int i = 0; i < start.length; i++) start[i] = 0;
+
+        for(int pass = 0; pass < 2; pass++){
+            for(int edge = 0; edge < edges; edge++){
+                int e = edge * 2;
+                cells.clear();
+                cellsOf(v[e], v[e + 1], v[(e + 2) % n], v[(e + 3) % n], cells);
+                for(int c = 0; c < cells.size; c++){
+                    int cell = cells.items[c];
+                    if(pass == 0){
+                        start[cell + 1]++;
+                    }else{
+                        cellEdges[start[cell]++] = edge;
+                    }
+                }
+            }
+
+            if(pass == 0){
+                for(int i = 0; i < total; i++) start[i + 1] += start[i];
+                if(cellEdges.length < start[total]) cellEdges = new int[start[total]];
+            }else{
+                for(int i = total; i > 0; i--) start[i] = start[i - 1];
+                start[0] = 0;
+            }
+        }
+    }
+
+    /** Adds every grid cell the segment passes through to the output, conservatively. Coordinates outside the grid are clamped. */
+    private void cellsOf(float x1, float y1, float x2, float y2, IntSeq out){
+        float epsilon = Math.min(cellWidth, cellHeight) * 0.001f;
+        int rowFrom = row(Math.min(y1, y2) - epsilon), rowTo = row(Math.max(y1, y2) + epsilon);
+        float dy = y2 - y1;
+
+        for(int r = rowFrom; r <= rowTo; r++){
+            float lx, hx;
+            if(Math.abs(dy) < Mathf.FLOAT_ROUNDING_ERROR){
+                lx = Math.min(x1, x2);
+                hx = Math.max(x1, x2);
+            }else{
+                //x range of the segment clipped to this row
+                float rowMin = Math.max(minY + r * cellHeight, Math.min(y1, y2)), rowMax = Math.min(minY + (r + 1) * cellHeight, Math.max(y1, y2));
+                float ax = x1 + (rowMin - y1) / dy * (x2 - x1), bx = x1 + (rowMax - y1) / dy * (x2 - x1);
+                lx = Math.min(ax, bx);
+                hx = Math.max(ax, bx);
+            }
+
+            for(int c = col(lx - epsilon), to = col(hx + epsilon); c <= to; c++){
+                out.add(c + r * cols);
+            }
+        }
+    }
+
+    private int col(float x){
+        return Mathf.clamp((int)((x - minX) / cellWidth), 0, cols - 1);
+    }
+
+    private int row(float y){
+        return Mathf.clamp((int)((y - minY) / cellHeight), 0, rows - 1);
+    }
+}
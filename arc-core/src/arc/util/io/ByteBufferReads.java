@@ -0,0 +1,132 @@
+package arc.util.io;
+
+import arc.util.*;
+
+import java.nio.*;
+
+/**
+ * Reads directly from a ByteBuffer, which can be direct or wrap a byte array.
+ * The format is the same as that of {@link Reads} over a DataInput, as long as the buffer is big-endian.
+ * @see Reads#get(ByteBuffer)
+ */
+public class ByteBufferReads extends Reads{
+    public ByteBuffer buffer;
+
+    public ByteBufferReads(ByteBuffer buffer){
+        super(new ByteBufferInput(buffer));
+        this.buffer = buffer;
+    }
+
+    public ByteBufferReads(byte[] array){
+        this(ByteBuffer.wrap(array));
+    }
+
+    public ByteBufferReads(byte[] array, int offset, int length){
+        this(ByteBuffer.wrap(array, offset, length));
+    }
+
+    /** Starts reading from another buffer. */
+    public ByteBufferReads set(ByteBuffer buffer){
+        this.buffer = buffer;
+        ((ByteBufferInput)input).buffer = buffer;
+        return this;
+    }
+
+    @Override
+    public int checkEOF(){
+        return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public long l(){
+        return buffer.getLong();
+    }
+
+    @Override
+    public int i(){
+        return buffer.getInt();
+    }
+
+    @Override
+    public short s(){
+        return buffer.getShort();
+    }
+
+    @Override
+    public int us(){
+        return buffer.getShort() & 0xffff;
+    }
+
+    @Override
+    public byte b(){
+        return buffer.get();
+    }
+
+    @Override
+    public byte[] b(int length){
+        byte[] array = new byte[length];
+        buffer.get(array);
+        return array;
+    }
+
+    @Override
+    public byte[] b(byte[] array){
+        buffer.get(array);
+        return array;
+    }
+
+    @Override
+    public byte[] b(byte[] array, int offset, int length){
+        buffer.get(array, offset, length);
+        return array;
+    }
+
+    @Override
+    public int ub(){
+        return buffer.get() & 0xff;
+    }
+
+    @Override
+    public boolean bool(){
+        return buffer.get() != 0;
+    }
+
+    @Override
+    public float f(){
+        return buffer.getFloat();
+    }
+
+    @Override
+    public double d(){
+        return buffer.getDouble();
+    }
+
+    @Override
+    public int v(){
+        return Codecs.getVar(buffer);
+    }
+
+    @Override
+    public int vi(){
+        return Codecs.unzigzag(Codecs.getVar(buffer));
+    }
+
+    @Override
+    public long vl(){
+        return Codecs.unzigzag(Codecs.getVarLong(buffer));
+    }
+
+    @Override
+    public @Nullable String lstr(){
+        return Codecs.getString(buffer);
+    }
+
+    @Override
+    public void skip(int amount){
+        buffer.position(Math.min(buffer.position() + amount, buffer.limit()));
+    }
+
+    @Override
+    public void close(){
+    }
+}
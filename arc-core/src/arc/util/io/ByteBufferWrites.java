@@ -0,0 +1,156 @@
+package arc.util.io;
+
+import arc.util.*;
+
+import java.nio.*;
+
+/**
+ * Writes directly into a ByteBuffer, which can be direct or wrap a byte array.
+ * When the buffer is full, it is replaced with a larger copy, so {@link #buffer} must be read again after writing.
+ * Writing to {@link #output} directly does not grow the buffer.
+ * The format is the same as that of {@link Writes} over a DataOutput, as long as the buffer is big-endian.
+ */
+public class ByteBufferWrites extends Writes{
+    public ByteBuffer buffer;
+
+    public ByteBufferWrites(ByteBuffer buffer){
+        super(new ByteBufferOutput(buffer));
+        this.buffer = buffer;
+    }
+
+    public ByteBufferWrites(byte[] array){
+        this(ByteBuffer.wrap(array));
+    }
+
+    public ByteBufferWrites(int capacity){
+        this(ByteBuffer.allocate(capacity));
+    }
+
+    public ByteBufferWrites(){
+        this(256);
+    }
+
+    /** @return an instance that writes into a direct buffer, which stays direct when it grows. */
+    public static ByteBufferWrites direct(int capacity){
+        return new ByteBufferWrites(ByteBuffer.allocateDirect(capacity));
+    }
+
+    /** Grows the buffer so that the specified number of bytes can be written. */
+    public void ensure(int bytes){
+        if(buffer.remaining() >= bytes) return;
+
+        int capacity = Math.max(buffer.position() + bytes, buffer.capacity() * 2);
+        ByteBuffer next = (buffer.isDirect() ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity)).order(buffer.order());
+        buffer.flip();
+        next.put(buffer);
+        buffer = next;
+        ((ByteBufferOutput)output).buffer = next;
+    }
+
+    /** @return the number of bytes that have been written. */
+    public int size(){
+        return buffer.position();
+    }
+
+    /** Discards everything that has been written, keeping the buffer. */
+    public void reset(){
+        buffer.clear();
+    }
+
+    /** @return a copy of the bytes that have been written. */
+    public byte[] toBytes(){
+        byte[] bytes = new byte[buffer.position()];
+        ByteBuffer copy = buffer.duplicate();
+        copy.flip();
+        copy.get(bytes);
+        return bytes;
+    }
+
+    @Override
+    public void l(long i){
+        ensure(8);
+        buffer.putLong(i);
+    }
+
+    @Override
+    public void i(int i){
+        ensure(4);
+        buffer.putInt(i);
+    }
+
+    @Override
+    public void b(int i){
+        ensure(1);
+        buffer.put((byte)i);
+    }
+
+    @Override
+    public void b(byte[] array, int offset, int length){
+        ensure(length);
+        buffer.put(array, offset, length);
+    }
+
+    @Override
+    public void bool(boolean b){
+        ensure(1);
+        buffer.put(b ? (byte)1 : 0);
+    }
+
+    @Override
+    public void s(int i){
+        ensure(2);
+        buffer.putShort((short)i);
+    }
+
+    @Override
+    public void f(float f){
+        ensure(4);
+        buffer.putFloat(f);
+    }
+
+    @Override
+    public void d(double d){
+        ensure(8);
+        buffer.putDouble(d);
+    }
+
+    @Override
+    public void str(String str){
+        //modified UTF-8 takes at most 3 bytes per char, after a short length
+        ensure(str.length() * 3 + 2);
+        super.str(str);
+    }
+
+    @Override
+    public void v(int i){
+        ensure(5);
+        Codecs.putVar(buffer, i);
+    }
+
+    @Override
+    public void vi(int i){
+        ensure(5);
+        Codecs.putVar(buffer, Codecs.zigzag(i));
+    }
+
+    @Override
+    public void vl(long l){
+        ensure(10);
+        Codecs.putVarLong(buffer, Codecs.zigzag(l));
+    }
+
+    @Override
+    public void lstr(@Nullable String str){
+        if(str == null){
+            b(0);
+            return;
+        }
+        //UTF-8 takes at most 3 bytes per char, after a varint length
+        ensure(str.length() * 3 + 5);
+        Codecs.putString(buffer, str);
+    }
+
+    @Override
+    public void close(){
+    }
+}
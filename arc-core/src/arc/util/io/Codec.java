@@ -0,0 +1,37 @@
+package arc.util.io;
+
+import java.lang.annotation.*;
+
+/**
+ * Generates a binary codec for the annotated class, using the annotation processor in the codec extension.
+ * The codec is placed in the same package, and named after the class with a Codec suffix: {@code Outer.Inner} becomes {@code OuterInnerCodec}.
+ * It has static methods that write the class to and read it from a {@link java.nio.ByteBuffer} or a byte[].<p>
+ *
+ * Only fields with a {@link Tag} are written. These fields can't be private, final or static, and they must have one of these types:
+ * <ul>
+ *     <li>a primitive type, String or an enum</li>
+ *     <li>another class with a Codec</li>
+ *     <li>an array of any of the above</li>
+ *     <li>a {@link arc.struct.Seq} of Strings, enums or classes with a Codec</li>
+ *     <li>{@link arc.struct.IntSeq}, {@link arc.struct.LongSeq} or {@link arc.struct.FloatSeq}</li>
+ * </ul>
+ *
+ * Each field is written with its tag, so fields can be added and removed without breaking older data: fields that are not in the data keep
+ * the value they were constructed with, and fields that are not in the class are skipped. The type of a field can only change between
+ * byte, short, int and long, or between an array and a Seq of the same elements.
+ * @see Codecs
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.CLASS)
+public @interface Codec{
+
+    /**
+     * Writes a field with the specified tag, which must be positive and unique in the class and its superclasses.
+     * Once data has been written, a tag must never be used for a different field.
+     */
+    @Target(ElementType.FIELD)
+    @Retention(RetentionPolicy.CLASS)
+    @interface Tag{
+        int value();
+    }
+}
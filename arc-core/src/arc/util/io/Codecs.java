@@ -0,0 +1,274 @@
+package arc.util.io;
+
+import arc.util.*;
+import arc.util.async.*;
+
+import java.nio.*;
+import java.nio.charset.*;
+
+/**
+ * Encoding methods used by the codecs that are generated for classes with a {@link Codec} annotation.<p>
+ *
+ * A class is written as a list of fields, each of which starts with a varint key of {@code tag << 3 | type}, and the list ends with a 0.
+ * The type says how the value is encoded, so that fields a reader does not know about can be skipped:
+ * <ul>
+ *     <li>{@link #varint}: zigzag encoded integers, booleans, chars and enum ordinals</li>
+ *     <li>{@link #fixed32}, {@link #fixed64}: floats and doubles, in the byte order of the buffer</li>
+ *     <li>{@link #bytes}: strings in UTF-8 and byte arrays, after their length</li>
+ *     <li>{@link #message}: another class, as a list of fields</li>
+ *     <li>{@link #repeated}: the number of elements, the type of the elements, and then the elements</li>
+ * </ul>
+ * Values that can be null have their length or count increased by one, with 0 for null. Classes start with a byte that is 0 if they are null.
+ */
+public final class Codecs{
+    public static final int varint = 0, fixed32 = 1, fixed64 = 2, bytes = 3, message = 4, repeated = 5;
+
+    private static final ThreadLocal<ByteBuffer> buffers = Threads.local(() -> ByteBuffer.allocate(256));
+    private static final ThreadLocal<byte[]> strings = Threads.local(() -> new byte[256]);
+
+    private Codecs(){
+    }
+
+    public static void putVar(ByteBuffer buffer, int value){
+        while((value & ~0x7f) != 0){
+            buffer.put((byte)(value | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte)value);
+    }
+
+    public static void putVarLong(ByteBuffer buffer, long value){
+        while((value & ~0x7fL) != 0){
+            buffer.put((byte)(value | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte)value);
+    }
+
+    /** Reads a varint. Longer varints, written as longs, are truncated. */
+    public static int getVar(ByteBuffer buffer){
+        int result = 0;
+        for(int shift = 0; shift < 64; shift += 7){
+            byte b = buffer.get();
+            if(shift < 32) result |= (b & 0x7f) << shift;
+            if(b >= 0) return result;
+        }
+        throw new ArcRuntimeException("Malformed varint.");
+    }
+
+    public static long getVarLong(ByteBuffer buffer){
+        long result = 0;
+        for(int shift = 0; shift < 64; shift += 7){
+            byte b = buffer.get();
+            result |= (long)(b & 0x7f) << shift;
+            if(b >= 0) return result;
+        }
+        throw new ArcRuntimeException("Malformed varint.");
+    }
+
+    /** Maps signed integers to unsigned ones, so that small negative numbers are small varints. */
+    public static int zigzag(int value){
+        return (value << 1) ^ (value >> 31);
+    }
+
+    public static long zigzag(long value){
+        return (value << 1) ^ (value >> 63);
+    }
+
+    public static int unzigzag(int value){
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public static long unzigzag(long value){
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /** @return the number of bytes in the UTF-8 encoding of the string. Unpaired surrogates take one byte, as they are replaced with '?'. */
+    public static int utf8Length(String string){
+        int length = string.length(), bytes = length;
+        for(int i = 0; i < length; i++){
+            char c = string.charAt(i);
+            if(c >= 0x80){
+                if(c < 0x800){
+                    bytes++;
+                }else if(Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(string.charAt(i + 1))){
+                    //a pair takes 4 bytes
+                    bytes += 2;
+                    i++;
+                }else if(!Character.isSurrogate(c)){
+                    bytes += 2;
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /** @return whether every char is ASCII, so that it is a single byte; the UTF-8 length can't tell, as unpaired surrogates take one byte too. */
+    private static boolean ascii(String string){
+        for(int i = 0, length = string.length(); i < length; i++){
+            if(string.charAt(i) >= 0x80) return false;
+        }
+        return true;
+    }
+
+    /** Writes a nullable string as UTF-8, after its length. Unlike {@link java.io.DataOutput#writeUTF(String)}, the length is not limited. */
+    public static void putString(ByteBuffer buffer, @Nullable String string){
+        if(string == null){
+            buffer.put((byte)0);
+            return;
+        }
+        int length = string.length();
+        putVar(buffer, utf8Length(string) + 1);
+        if(ascii(string)){
+            //ASCII
+            if(buffer.hasArray()){
+                if(buffer.remaining() < length) throw new BufferOverflowException();
+                byte[] array = buffer.array();
+                int offset = buffer.arrayOffset() + buffer.position();
+                for(int i = 0; i < length; i++){
+                    array[offset + i] = (byte)string.charAt(i);
+                }
+                buffer.position(buffer.position() + length);
+            }else{
+                for(int i = 0; i < length; i++){
+                    buffer.put((byte)string.charAt(i));
+                }
+            }
+            return;
+        }
+        for(int i = 0; i < length; i++){
+            char c = string.charAt(i);
+            if(c < 0x80){
+                buffer.put((byte)c);
+            }else if(c < 0x800){
+                buffer.put((byte)(0xc0 | (c >> 6)));
+                buffer.put((byte)(0x80 | (c & 0x3f)));
+            }else if(Character.isSurrogate(c)){
+                if(Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(string.charAt(i + 1))){
+                    int code = Character.toCodePoint(c, string.charAt(++i));
+                    buffer.put((byte)(0xf0 | (code >> 18)));
+                    buffer.put((byte)(0x80 | ((code >> 12) & 0x3f)));
+                    buffer.put((byte)(0x80 | ((code >> 6) & 0x3f)));
+                    buffer.put((byte)(0x80 | (code & 0x3f)));
+                }else{
+                    buffer.put((byte)'?');
+                }
+            }else{
+                buffer.put((byte)(0xe0 | (c >> 12)));
+                buffer.put((byte)(0x80 | ((c >> 6) & 0x3f)));
+                buffer.put((byte)(0x80 | (c & 0x3f)));
+            }
+        }
+    }
+
+    public static @Nullable String getString(ByteBuffer buffer){
+        int length = getVar(buffer) - 1;
+        if(length < 0) return null;
+        if(buffer.remaining() < length) throw new BufferUnderflowException();
+
+        String result;
+        if(buffer.hasArray()){
+            result = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        }else{
+            byte[] bytes = strings.get();
+            if(bytes.length < length) strings.set(bytes = new byte[Math.max(length, bytes.length * 2)]);
+            buffer.get(bytes, 0, length);
+            result = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+        return result;
+    }
+
+    /** Writes a nullable byte array, after its length. */
+    public static void putBytes(ByteBuffer buffer, @Nullable byte[] bytes){
+        if(bytes == null){
+            buffer.put((byte)0);
+            return;
+        }
+        putVar(buffer, bytes.length + 1);
+        buffer.put(bytes);
+    }
+
+    /** @param reuse returned instead of a new array if it has the right length. */
+    public static @Nullable byte[] getBytes(ByteBuffer buffer, @Nullable byte[] reuse){
+        int length = getVar(buffer) - 1;
+        if(length < 0) return null;
+        byte[] bytes = reuse != null && reuse.length == length ? reuse : new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /** Writes an enum by its ordinal, so that constants can be added at the end. */
+    public static void putEnum(ByteBuffer buffer, @Nullable Enum<?> value){
+        putVar(buffer, value == null ? 0 : value.ordinal() + 1);
+    }
+
+    /** @return the constant with the ordinal that was read, or null if there is no such constant. */
+    public static @Nullable <T> T getEnum(ByteBuffer buffer, T[] values){
+        int ordinal = getVar(buffer) - 1;
+        return ordinal < 0 || ordinal >= values.length ? null : values[ordinal];
+    }
+
+    /** Skips a value of the specified type. */
+    public static void skip(ByteBuffer buffer, int type){
+        switch(type){
+            case varint:
+                getVarLong(buffer);
+                break;
+            case fixed32:
+                buffer.position(buffer.position() + 4);
+                break;
+            case fixed64:
+                buffer.position(buffer.position() + 8);
+                break;
+            case bytes:{
+                int length = getVar(buffer) - 1;
+                if(length > 0) buffer.position(buffer.position() + length);
+                break;
+            }
+            case message:{
+                if(buffer.get() == 0) break;
+                int key;
+                while((key = getVar(buffer)) != 0){
+                    skip(buffer, key & 7);
+                }
+                break;
+            }
+            case repeated:{
+                int count = getVar(buffer) - 1;
+                if(count < 0) break;
+                int elements = buffer.get();
+                for(int i = 0; i < count; i++){
+                    skip(buffer, elements);
+                }
+                break;
+            }
+            default:
+                throw new ArcRuntimeException("Unknown type: " + type);
+        }
+    }
+
+    /**
+     * Writes a value into a buffer of this thread, which grows until the value fits.
+     * @return a copy of the written bytes.
+     */
+    public static <T> byte[] toBytes(T value, Writer<T> writer){
+        ByteBuffer buffer = buffers.get();
+        while(true){
+            buffer.clear();
+            try{
+                writer.write(buffer, value);
+                break;
+            }catch(BufferOverflowException e){
+                buffers.set(buffer = ByteBuffer.allocate(buffer.capacity() * 2));
+            }
+        }
+        byte[] bytes = new byte[buffer.position()];
+        System.arraycopy(buffer.array(), 0, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    public interface Writer<T>{
+        void write(ByteBuffer buffer, T value);
+    }
+}
@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.util.zip.DeflaterOutputStream;
 
+/** A DeflaterOutputStream that does not allocate when writing single bytes. For large amounts of data, use {@link ParallelDeflaterOutputStream}. */
 public class FastDeflaterOutputStream extends DeflaterOutputStream{
     private final byte[] tmp = {0};
 
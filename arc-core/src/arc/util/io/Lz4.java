@@ -0,0 +1,186 @@
+package arc.util.io;
+
+import arc.util.*;
+
+import java.util.*;
+
+/**
+ * A fast compressor that uses the sequence layout of the LZ4 block format: each sequence is a token with the number of literals and the
+ * match length, the literals, and the offset of the match. It compresses much less than deflate, but decompresses several times faster.
+ * Instances are not thread-safe, as they keep a hash table for compression.
+ */
+public class Lz4{
+    private static final int minMatch = 4, hashLog = 14, maxOffset = 65535;
+    /** The last match must start this far from the end, and the last bytes are always literals. */
+    private static final int matchLimit = 12, lastLiterals = 5;
+
+    private final int[] table = new int[1 << hashLog];
+
+    /** @return the maximum size of compressed data of the specified length. */
+    public static int maxCompressedLength(int length){
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Compresses bytes from one array into another.
+     * @param dst must have at least {@link #maxCompressedLength(int)} bytes after dstOffset.
+     * @return the compressed length.
+     */
+    public int compress(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset){
+        int srcEnd = srcOffset + length, anchor = srcOffset, op = dstOffset;
+
+        if(length >= matchLimit + 1){
+            Arrays.fill(table, -1);
+            int limit = srcEnd - matchLimit, matchEnd = srcEnd - lastLiterals;
+            int ip = srcOffset + 1;
+            table[hash(read(src, srcOffset))] = srcOffset;
+
+            outer:
+            while(true){
+                //find a match, looking further ahead the longer there isn't one
+                int ref, searches = 1 << 6;
+                while(true){
+                    if(ip > limit) break outer;
+                    int sequence = read(src, ip), h = hash(sequence);
+                    ref = table[h];
+                    table[h] = ip;
+                    if(ref >= 0 && ip - ref <= maxOffset && read(src, ref) == sequence) break;
+                    ip += searches++ >>> 6;
+                }
+
+                //extend the match backwards
+                while(ip > anchor && ref > srcOffset && src[ip - 1] == src[ref - 1]){
+                    ip--;
+                    ref--;
+                }
+
+                int matchLength = minMatch;
+                while(ip + matchLength < matchEnd && src[ip + matchLength] == src[ref + matchLength]){
+                    matchLength++;
+                }
+
+                op = writeSequence(src, anchor, ip - anchor, dst, op, ip - ref, matchLength);
+                ip += matchLength;
+                anchor = ip;
+
+                if(ip > limit) break;
+                table[hash(read(src, ip - 2))] = ip - 2;
+            }
+        }
+
+        //the rest are literals, in a sequence without a match
+        int literals = srcEnd - anchor;
+        op = writeLength(dst, op, literals, 0);
+        System.arraycopy(src, anchor, dst, op, literals);
+        return op + literals - dstOffset;
+    }
+
+    /**
+     * Decompresses bytes from one array into another.
+     * @param length the compressed length.
+     * @param dstLength the exact decompressed length.
+     * @throws ArcRuntimeException if the data is malformed.
+     */
+    public static void decompress(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset, int dstLength){
+        int sp = srcOffset, srcEnd = srcOffset + length, dp = dstOffset, dstEnd = dstOffset + dstLength;
+
+        try{
+            while(true){
+                int token = src[sp++] & 0xff;
+
+                int literals = token >>> 4;
+                if(literals == 15){
+                    int b;
+                    do{
+                        b = src[sp++] & 0xff;
+                        literals += b;
+                    }while(b == 255);
+                }
+                if(literals > srcEnd - sp || literals > dstEnd - dp) throw malformed();
+                System.arraycopy(src, sp, dst, dp, literals);
+                sp += literals;
+                dp += literals;
+
+                if(sp == srcEnd) break;
+
+                int offset = (src[sp] & 0xff) | (src[sp + 1] & 0xff) << 8;
+                sp += 2;
+
+                int matchLength = token & 15;
+                if(matchLength == 15){
+                    int b;
+                    do{
+                        b = src[sp++] & 0xff;
+                        matchLength += b;
+                    }while(b == 255);
+                }
+                matchLength += minMatch;
+
+                int ref = dp - offset;
+                if(offset == 0 || ref < dstOffset || matchLength > dstEnd - dp) throw malformed();
+
+                if(offset >= matchLength){
+                    System.arraycopy(dst, ref, dst, dp, matchLength);
+                    dp += matchLength;
+                }else{
+                    //the match overlaps the output, so it repeats; copy what exists, which doubles each time
+                    int end = dp + matchLength;
+                    while(dp < end){
+                        int count = Math.min(dp - ref, end - dp);
+                        System.arraycopy(dst, ref, dst, dp, count);
+                        dp += count;
+                    }
+                }
+            }
+        }catch(ArrayIndexOutOfBoundsException e){
+            throw malformed();
+        }
+
+        if(dp != dstEnd) throw malformed();
+    }
+
+    private static ArcRuntimeException malformed(){
+        return new ArcRuntimeException("Malformed LZ4 data.");
+    }
+
+    private static int writeSequence(byte[] src, int literalStart, int literals, byte[] dst, int op, int offset, int matchLength){
+        op = writeLength(dst, op, literals, matchLength - minMatch);
+        System.arraycopy(src, literalStart, dst, op, literals);
+        op += literals;
+
+        dst[op++] = (byte)offset;
+        dst[op++] = (byte)(offset >>> 8);
+
+        int extra = matchLength - minMatch;
+        if(extra >= 15){
+            op = writeExtra(dst, op, extra - 15);
+        }
+        return op;
+    }
+
+    /** Writes the token, and the extra bytes of the literal length. */
+    private static int writeLength(byte[] dst, int op, int literals, int matchExtra){
+        dst[op++] = (byte)((Math.min(literals, 15) << 4) | Math.min(matchExtra, 15));
+        if(literals >= 15){
+            op = writeExtra(dst, op, literals - 15);
+        }
+        return op;
+    }
+
+    private static int writeExtra(byte[] dst, int op, int length){
+        while(length >= 255){
+            dst[op++] = (byte)255;
+            length -= 255;
+        }
+        dst[op++] = (byte)length;
+        return op;
+    }
+
+    private static int read(byte[] src, int i){
+        return (src[i] & 0xff) | (src[i + 1] & 0xff) << 8 | (src[i + 2] & 0xff) << 16 | (src[i + 3] & 0xff) << 24;
+    }
+
+    private static int hash(int sequence){
+        return (sequence * -1640531535) >>> (32 - hashLog);
+    }
+}
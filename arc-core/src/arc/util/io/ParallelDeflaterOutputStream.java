@@ -0,0 +1,267 @@
+package arc.util.io;
+
+import arc.util.*;
+import arc.util.async.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+/**
+ * Compresses data into a zlib stream on multiple threads, so that it can be read with an {@link InflaterInputStream}.
+ * The data is split into blocks that are compressed separately, each with the end of the previous block as its dictionary,
+ * so the output is only slightly larger than that of a {@link DeflaterOutputStream}.
+ * At most a fixed number of blocks are compressed at the same time; writing waits for the oldest one when that number is reached.
+ */
+public class ParallelDeflaterOutputStream extends FilterOutputStream{
+    public static final int defaultBlockSize = 128 * 1024;
+    private static final int dictionarySize = 32 * 1024;
+    private static @Nullable ExecutorService defaultExecutor;
+
+    private final ExecutorService executor;
+    private final int level, maxBlocks;
+    private final ArrayDeque<Future<Block>> pending = new ArrayDeque<>();
+    private final ArrayDeque<Block> free = new ArrayDeque<>();
+    private final byte[] single = {0};
+
+    private Block current;
+    private long checksum = 1;
+    private boolean headerWritten, finished;
+
+    /** Compresses with the default level and block size, on a pool shared by all streams. */
+    public ParallelDeflaterOutputStream(OutputStream out){
+        this(out, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public ParallelDeflaterOutputStream(OutputStream out, int level){
+        this(out, level, defaultBlockSize, defaultExecutor(), OS.cores * 2);
+    }
+
+    /**
+     * @param blockSize the number of bytes in each block, which should be much bigger than 32KB.
+     * @param executor the executor that compresses blocks.
+     * @param maxBlocks the maximum number of blocks that are compressed or waiting to be written at once.
+     */
+    public ParallelDeflaterOutputStream(OutputStream out, int level, int blockSize, ExecutorService executor, int maxBlocks){
+        super(out);
+        if(blockSize <= 0) throw new IllegalArgumentException("Block size must be positive.");
+        if(maxBlocks <= 0) throw new IllegalArgumentException("Maximum number of blocks must be positive.");
+
+        this.level = level;
+        this.executor = executor;
+        this.maxBlocks = maxBlocks;
+        this.current = new Block(blockSize);
+    }
+
+    /** @return the pool that compresses blocks when no executor is specified, with a thread for each core. */
+    public static synchronized ExecutorService defaultExecutor(){
+        if(defaultExecutor == null){
+            defaultExecutor = Threads.executor(OS.cores, true);
+        }
+        return defaultExecutor;
+    }
+
+    @Override
+    public void write(int b) throws IOException{
+        single[0] = (byte)b;
+        write(single, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException{
+        if(finished) throw new IOException("Stream is finished.");
+        if((off | len | (off + len) | (b.length - (off + len))) < 0) throw new IndexOutOfBoundsException();
+
+        while(len > 0){
+            Block block = current;
+            int count = Math.min(len, block.input.length - block.length);
+            System.arraycopy(b, off, block.input, block.length, count);
+            block.length += count;
+            off += count;
+            len -= count;
+
+            if(block.length == block.input.length){
+                submit(false);
+            }
+        }
+    }
+
+    /** Compresses the current block, and starts a new one with the end of it as its dictionary. */
+    private void submit(boolean last) throws IOException{
+        Block block = current;
+        block.last = last;
+
+        if(!last){
+            //wait for the oldest block, so that its buffers can be reused
+            if(pending.size() >= maxBlocks){
+                writeBlock();
+            }
+
+            Block next = free.isEmpty() ? new Block(block.input.length) : free.poll();
+            next.reset();
+            next.dictionaryLength = Math.min(dictionarySize, block.length);
+            System.arraycopy(block.input, block.length - next.dictionaryLength, next.dictionary, 0, next.dictionaryLength);
+            current = next;
+        }
+
+        int level = this.level;
+        pending.add(executor.submit(() -> block.compress(level)));
+    }
+
+    /** Waits for the oldest block to be compressed and writes it. */
+    private void writeBlock() throws IOException{
+        Block block;
+        try{
+            block = pending.poll().get();
+        }catch(InterruptedException e){
+            throw new InterruptedIOException();
+        }catch(ExecutionException e){
+            throw new IOException("Failed to compress block.", e.getCause());
+        }
+
+        if(!headerWritten){
+            writeHeader();
+            headerWritten = true;
+        }
+
+        out.write(block.output, 0, block.outputLength);
+        checksum = combine(checksum, block.checksum, block.length);
+        free.add(block);
+    }
+
+    private void writeHeader() throws IOException{
+        //compression method 8 with a 32KB window, and a level hint; the header must be a multiple of 31
+        int flags;
+        if(level == Deflater.DEFAULT_COMPRESSION || level == 6){
+            flags = 0x9c;
+        }else if(level <= 1){
+            flags = 0x01;
+        }else if(level <= 5){
+            flags = 0x5e;
+        }else{
+            flags = 0xda;
+        }
+        out.write(0x78);
+        out.write(flags);
+    }
+
+    /**
+     * Waits for all complete blocks to be compressed and writes them, then flushes the underlying stream.
+     * Data in the block that is still being filled is not written, like with {@link DeflaterOutputStream#flush()}.
+     */
+    @Override
+    public void flush() throws IOException{
+        while(!pending.isEmpty()){
+            writeBlock();
+        }
+        out.flush();
+    }
+
+    /** Compresses the remaining data and writes the end of the stream, without closing the underlying stream. */
+    public void finish() throws IOException{
+        if(finished) return;
+        finished = true;
+
+        submit(true);
+        while(!pending.isEmpty()){
+            writeBlock();
+        }
+
+        out.write((int)(checksum >>> 24));
+        out.write((int)(checksum >>> 16));
+        out.write((int)(checksum >>> 8));
+        out.write((int)checksum);
+    }
+
+    @Override
+    public void close() throws IOException{
+        try{
+            finish();
+        }finally{
+            //if finishing failed, blocks that will never be written don't need to be compressed
+            for(Future<Block> future : pending){
+                future.cancel(false);
+            }
+            pending.clear();
+            out.close();
+        }
+    }
+
+    /** @return the Adler-32 checksum of two pieces of data, from their checksums and the length of the second one. */
+    public static long combine(long first, long second, long secondLength){
+        final long base = 65521;
+        long remainder = secondLength % base;
+        long sum1 = first & 0xffff;
+        long sum2 = (remainder * sum1) % base;
+        sum1 += (second & 0xffff) + base - 1;
+        sum2 += ((first >> 16) & 0xffff) + ((second >> 16) & 0xffff) + base - remainder;
+        if(sum1 >= base) sum1 -= base;
+        if(sum1 >= base) sum1 -= base;
+        if(sum2 >= base << 1) sum2 -= base << 1;
+        if(sum2 >= base) sum2 -= base;
+        return sum1 | (sum2 << 16);
+    }
+
+    private static class Block{
+        final byte[] input, dictionary = new byte[dictionarySize];
+        int length, dictionaryLength;
+        boolean last;
+
+        byte[] output;
+        int outputLength;
+        long checksum;
+
+        Block(int size){
+            input = new byte[size];
+            //deflate rarely makes data bigger, and grows the output when it does
+            output = new byte[size + (size >> 8) + 64];
+        }
+
+        void reset(){
+            length = 0;
+            dictionaryLength = 0;
+            outputLength = 0;
+            last = false;
+        }
+
+        Block compress(int level){
+            Adler32 adler = new Adler32();
+            adler.update(input, 0, length);
+            checksum = adler.getValue();
+
+            Deflater deflater = new Deflater(level, true);
+            try{
+                if(dictionaryLength > 0){
+                    deflater.setDictionary(dictionary, 0, dictionaryLength);
+                }
+                deflater.setInput(input, 0, length);
+
+                if(last){
+                    deflater.finish();
+                    while(!deflater.finished()){
+                        deflate(deflater, Deflater.NO_FLUSH);
+                    }
+                }else{
+                    //a sync flush ends on a byte boundary without ending the stream, so that the next block can be appended
+                    while(deflate(deflater, Deflater.SYNC_FLUSH)){
+                    }
+                }
+            }finally{
+                deflater.end();
+            }
+            return this;
+        }
+
+        /** @return whether the output was full, so deflating must continue. */
+        private boolean deflate(Deflater deflater, int flush){
+            if(outputLength == output.length){
+                output = Arrays.copyOf(output, output.length * 2);
+            }
+            int space = output.length - outputLength;
+            int count = deflater.deflate(output, outputLength, space, flush);
+            outputLength += count;
+            return count == space;
+        }
+    }
+}
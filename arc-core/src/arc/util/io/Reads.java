@@ -1,10 +1,19 @@
 package arc.util.io;
 
+import arc.util.*;
+import arc.util.async.*;
+
 import java.io.*;
+import java.nio.*;
+import java.nio.charset.*;
 
-/** A wrapper for DataInput with more concise method names and no IOExceptions. */
+/**
+ * A wrapper for DataInput with more concise method names and no IOExceptions.
+ * @see ByteBufferReads
+ */
 public class Reads implements Closeable{
-    private static Reads instance = new Reads(null);
+    private static final ThreadLocal<Reads> instances = Threads.local(() -> new Reads(null));
+    private static final ThreadLocal<ByteBufferReads> buffers = Threads.local(() -> new ByteBufferReads((ByteBuffer)null));
 
     public DataInput input;
 
@@ -12,9 +21,21 @@ public class Reads implements Closeable{
         this.input = input;
     }
 
+    /** @return an instance that reads from the input, which is reused for every call on the same thread. */
     public static Reads get(DataInput input){
-        instance.input = input;
-        return instance;
+        Reads reads = instances.get();
+        reads.input = input;
+        return reads;
+    }
+
+    /** @return an instance that reads from the buffer, which is reused for every call on the same thread. */
+    public static ByteBufferReads get(ByteBuffer buffer){
+        return buffers.get().set(buffer);
+    }
+
+    /** @return an instance that reads from the array, which is reused for every call on the same thread. */
+    public static ByteBufferReads get(byte[] array){
+        return get(ByteBuffer.wrap(array));
     }
 
     /** @return -1 if EOF or unsupported, or the next byte. */
@@ -150,6 +171,39 @@ public class Reads implements Closeable{
         }
     }
 
+    /** read unsigned varint */
+    public int v(){
+        int result = 0;
+        for(int shift = 0; shift < 64; shift += 7){
+            byte b = b();
+            if(shift < 32) result |= (b & 0x7f) << shift;
+            if(b >= 0) return result;
+        }
+        throw new RuntimeException("Malformed varint.");
+    }
+
+    /** read zigzag varint */
+    public int vi(){
+        return Codecs.unzigzag(v());
+    }
+
+    /** read zigzag varint long */
+    public long vl(){
+        long result = 0;
+        for(int shift = 0; shift < 64; shift += 7){
+            byte b = b();
+            result |= (long)(b & 0x7f) << shift;
+            if(b >= 0) return Codecs.unzigzag(result);
+        }
+        throw new RuntimeException("Malformed varint.");
+    }
+
+    /** read nullable string (UTF-8 with varint length) */
+    public @Nullable String lstr(){
+        int length = v() - 1;
+        return length < 0 ? null : new String(b(length), StandardCharsets.UTF_8);
+    }
+
     /** skip bytes */
     public void skip(int amount){
         try{
@@ -1,10 +1,17 @@
 package arc.util.io;
 
+import arc.util.*;
+import arc.util.async.*;
+
 import java.io.*;
+import java.nio.charset.*;
 
-/** A wrapper for DataOutput with more concise method names and no IOExceptions. */
+/**
+ * A wrapper for DataOutput with more concise method names and no IOExceptions.
+ * @see ByteBufferWrites
+ */
 public class Writes implements Closeable{
-    private static Writes instance = new Writes(null);
+    private static final ThreadLocal<Writes> instances = Threads.local(() -> new Writes(null));
 
     public DataOutput output;
 
@@ -12,9 +19,11 @@ public class Writes implements Closeable{
         this.output = output;
     }
 
+    /** @return an instance that writes to the output, which is reused for every call on the same thread. */
     public static Writes get(DataOutput output){
-        instance.output = output;
-        return instance;
+        Writes writes = instances.get();
+        writes.output = output;
+        return writes;
     }
 
     /** write long */
@@ -47,7 +56,7 @@ public class Writes implements Closeable{
     /** write bytes */
     public void b(byte[] array, int offset, int length){
         try{
-            output.write(array, 0, length);
+            output.write(array, offset, length);
         }catch(IOException e){
             throw new RuntimeException(e);
         }
@@ -99,6 +108,41 @@ public class Writes implements Closeable{
         }
     }
 
+    /** write unsigned varint */
+    public void v(int i){
+        while((i & ~0x7f) != 0){
+            b(i | 0x80);
+            i >>>= 7;
+        }
+        b(i);
+    }
+
+    /** write zigzag varint, which takes less space for small negative numbers */
+    public void vi(int i){
+        v(Codecs.zigzag(i));
+    }
+
+    /** write zigzag varint long */
+    public void vl(long l){
+        l = Codecs.zigzag(l);
+        while((l & ~0x7fL) != 0){
+            b((int)(l | 0x80));
+            l >>>= 7;
+        }
+        b((int)l);
+    }
+
+    /** write nullable string as UTF-8 after a varint length; unlike {@link #str(String)}, the length is not limited */
+    public void lstr(@Nullable String str){
+        if(str == null){
+            b(0);
+            return;
+        }
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        v(bytes.length + 1);
+        b(bytes);
+    }
+
     @Override
     public void close(){
         if(output instanceof Closeable){
@@ -8,6 +8,7 @@ import arc.struct.Queue;
 import arc.struct.OrderedMap.*;
 import arc.util.*;
 import arc.util.io.*;
+import arc.util.serialization.JsonPullReader.*;
 import arc.util.serialization.JsonValue.*;
 import arc.util.serialization.JsonWriter.*;
 
@@ -38,6 +39,7 @@ public class Json{
     private boolean ignoreDeprecated;
     private boolean readDeprecated;
     private boolean enumNames = true;
+    private boolean streaming;
     private Serializer defaultSerializer;
 
     public Json(){
@@ -72,6 +74,16 @@ public class Json{
         this.readDeprecated = readDeprecated;
     }
 
+    /**
+     * When true, the fromJson methods bind objects while the JSON is parsed by a {@link JsonPullReader}, instead of parsing it
+     * into a tree of {@link JsonValue}s first, which takes far less memory for large documents. Trees are still built for values
+     * read by a {@link Serializer} or {@link JsonSerializable}. The type name is only used when it is the first field of an
+     * object, which is where it is written. Default is false.
+     */
+    public void setStreaming(boolean streaming){
+        this.streaming = streaming;
+    }
+
     /** @see JsonWriter#setOutputType(OutputType) */
     public void setOutputType(OutputType outputType){
         this.outputType = outputType;
@@ -288,7 +300,16 @@ public class Json{
             Field field = metadata.field;
             if(readDeprecated && ignoreDeprecated && field.isAnnotationPresent(Deprecated.class)) continue;
             try{
-                Object value = field.get(object);
+                if(metadata.kind != FieldMetadata.kindObject){
+                    if(defaultValues != null && metadata.isDefault(object, defaultValues[i++])) continue;
+
+                    if(debug) System.out.println("Writing field: " + field.getName() + " (" + type.getName() + ")");
+                    writer.name(field.getName());
+                    writer.value(metadata.get(object));
+                    continue;
+                }
+
+                Object value = metadata.get(object);
                 if(defaultValues != null){
                     Object defaultValue = defaultValues[i++];
                     if(value == null && defaultValue == null) continue;
@@ -304,7 +325,7 @@ public class Json{
 
                 if(debug) System.out.println("Writing field: " + field.getName() + " (" + type.getName() + ")");
                 writer.name(field.getName());
-                writeValue(value, field.getType(), metadata.elementType);
+                writeValue(value, metadata.type, metadata.elementType);
             }catch(IllegalAccessException ex){
                 throw new SerializationException("Error accessing field: " + field.getName() + " (" + type.getName() + ")", ex);
             }catch(SerializationException ex){
@@ -742,6 +763,7 @@ public class Json{
      * @return May be null.
      */
     public <T> T fromJson(Class<T> type, Reader reader){
+        if(streaming) return fromJson(type, null, new JsonPullReader(reader));
         return readValue(type, null, new JsonReader().parse(reader));
     }
 
@@ -751,6 +773,7 @@ public class Json{
      * @return May be null.
      */
     public <T> T fromJson(Class<T> type, Class elementType, Reader reader){
+        if(streaming) return fromJson(type, elementType, new JsonPullReader(reader));
         return readValue(type, elementType, new JsonReader().parse(reader));
     }
 
@@ -759,6 +782,7 @@ public class Json{
      * @return May be null.
      */
     public <T> T fromJson(Class<T> type, InputStream input){
+        if(streaming) return fromJson(type, null, new JsonPullReader(new InputStreamReader(input, Strings.utf8)));
         return readValue(type, null, new JsonReader().parse(input));
     }
 
@@ -768,6 +792,7 @@ public class Json{
      * @return May be null.
      */
     public <T> T fromJson(Class<T> type, Class elementType, InputStream input){
+        if(streaming) return fromJson(type, elementType, new JsonPullReader(new InputStreamReader(input, Strings.utf8)));
         return readValue(type, elementType, new JsonReader().parse(input));
     }
 
@@ -777,6 +802,7 @@ public class Json{
      */
     public <T> T fromJson(Class<T> type, Fi file){
         try{
+            if(streaming) return fromJson(type, null, new JsonPullReader(file.reader("UTF-8")));
             return readValue(type, null, new JsonReader().parse(file));
         }catch(Exception ex){
             throw new SerializationException("Error reading file: " + file, ex);
@@ -790,6 +816,7 @@ public class Json{
      */
     public <T> T fromJson(Class<T> type, Class elementType, Fi file){
         try{
+            if(streaming) return fromJson(type, elementType, new JsonPullReader(file.reader("UTF-8")));
             return readValue(type, elementType, new JsonReader().parse(file));
         }catch(Exception ex){
             throw new SerializationException("Error reading file: " + file, ex);
@@ -801,6 +828,7 @@ public class Json{
      * @return May be null.
      */
     public <T> T fromJson(Class<T> type, char[] data, int offset, int length){
+        if(streaming) return fromJson(type, null, new JsonPullReader(data, offset, length));
         return readValue(type, null, new JsonReader().parse(data, offset, length));
     }
 
@@ -810,6 +838,7 @@ public class Json{
      * @return May be null.
      */
     public <T> T fromJson(Class<T> type, Class elementType, char[] data, int offset, int length){
+        if(streaming) return fromJson(type, elementType, new JsonPullReader(data, offset, length));
         return readValue(type, elementType, new JsonReader().parse(data, offset, length));
     }
 
@@ -818,6 +847,7 @@ public class Json{
      * @return May be null.
      */
     public <T> T fromJson(Class<T> type, String json){
+        if(streaming) return fromJson(type, null, new JsonPullReader(json));
         return readValue(type, null, new JsonReader().parse(json));
     }
 
@@ -826,9 +856,28 @@ public class Json{
      * @return May be null.
      */
     public <T> T fromJson(Class<T> type, Class elementType, String json){
+        if(streaming) return fromJson(type, elementType, new JsonPullReader(json));
         return readValue(type, elementType, new JsonReader().parse(json));
     }
 
+    /**
+     * Reads the root value from the reader, binding objects as they are parsed, then closes it.
+     * @param type May be null if the type is unknown.
+     * @param elementType May be null if the type is unknown.
+     * @return May be null.
+     */
+    public <T> T fromJson(Class<T> type, Class elementType, JsonPullReader reader){
+        try{
+            if(reader.next() == Token.end) return null;
+            T value = readValue(type, elementType, reader);
+            //fails if anything but whitespace follows the root value
+            reader.next();
+            return value;
+        }finally{
+            reader.close();
+        }
+    }
+
     public void readField(Object object, String name, JsonValue jsonData){
         readField(object, name, name, null, jsonData);
     }
@@ -880,7 +929,8 @@ public class Json{
         Class type = object.getClass();
         ObjectMap<String, FieldMetadata> fields = getFields(type);
         for(JsonValue child = jsonMap.child; child != null; child = child.next){
-            FieldMetadata metadata = fields.get(child.name().replace(" ", "_"));
+            String name = child.name;
+            FieldMetadata metadata = fields.get(name.indexOf(' ') == -1 ? name : name.replace(' ', '_'));
             if(metadata == null){
                 if(child.name.equals(typeName)) continue;
                 if(ignoreUnknownFields || ignoreUnknownField(type, child.name)){
@@ -894,7 +944,10 @@ public class Json{
             }
             Field field = metadata.field;
             try{
-                field.set(object, readValue(field.getType(), metadata.elementType, child, metadata.keyType));
+                //primitives with a custom serializer still go through readValue
+                if(metadata.kind != FieldMetadata.kindObject && (classToSerializer.size == 0 || !classToSerializer.containsKey(metadata.type))
+                && metadata.readPrimitive(object, child)) continue;
+                metadata.set(object, readValue(metadata.type, metadata.elementType, child, metadata.keyType));
             }catch(IllegalAccessException ex){
                 throw new SerializationException("Error accessing field: " + field.getName() + " (" + type.getName() + ")", ex);
             }catch(SerializationException ex){
@@ -1181,6 +1234,211 @@ public class Json{
         return null;
     }
 
+    /**
+     * Reads the value starting at the current token of the reader, binding objects as they are parsed. Afterward, the current
+     * token is the last one of the value.
+     * @param type May be null if the type is unknown.
+     * @param elementType May be null if the type is unknown.
+     * @return May be null.
+     */
+    public <T> T readValue(Class<T> type, Class elementType, JsonPullReader reader){
+        return readValue(type, elementType, reader, null);
+    }
+
+    /**
+     * Reads the value starting at the current token of the reader, binding objects as they are parsed. Afterward, the current
+     * token is the last one of the value. A {@link JsonValue} is only built for values that are read by a {@link Serializer} or
+     * {@link JsonSerializable}, or that can not be bound without one.
+     * @param type May be null if the type is unknown.
+     * @param elementType May be null if the type is unknown.
+     * @param keyType May be null if the type is unknown.
+     * @return May be null.
+     */
+    public <T> T readValue(Class<T> type, Class elementType, JsonPullReader reader, Class keyType){
+        switch(reader.token()){
+            case startObject:
+                return readObject(type, elementType, reader, keyType);
+            case startArray:
+                return readArray(type, elementType, reader);
+            default:
+                return readValue(type, elementType, reader.readTree(), keyType);
+        }
+    }
+
+    private <T> T readObject(Class<T> type, Class elementType, JsonPullReader reader, Class keyType){
+        Token token = reader.next();
+        JsonValue typeValue = null;
+        if(token == Token.name && typeName != null && typeName.equals(reader.getString())){
+            reader.next();
+            typeValue = reader.readTree();
+            String className = typeValue.asString();
+            if(className != null){
+                type = getClass(className);
+                if(type == null){
+                    try{
+                        type = (Class<T>)Class.forName(className);
+                    }catch(Throwable ex){
+                        throw new SerializationException(ex);
+                    }
+                }
+            }
+            token = reader.next();
+        }
+
+        if(type == null || !canBind(type, typeValue != null)){
+            //read the rest of the object into a tree, and let readValue handle it
+            JsonValue object = new JsonValue(ValueType.object);
+            if(typeValue != null) JsonPullReader.add(object, null, typeName, typeValue);
+            if(token == Token.name){
+                String name = reader.getString();
+                reader.next();
+                JsonPullReader.add(object, typeValue, name, reader.readTree());
+                reader.readMembers(object);
+            }
+            return readValue(type, elementType, object, keyType);
+        }
+
+        Object object = newInstance(type);
+
+        if(object instanceof ObjectMap){
+            ObjectMap result = (ObjectMap)object;
+            for(; token != Token.endObject; token = reader.next()){
+                String name = reader.getString();
+                reader.next();
+                result.put(keyType != null ? readValue(keyType, null, new JsonValue(name)) : name, readValue(elementType, null, reader));
+            }
+            return (T)result;
+        }
+        if(object instanceof ObjectIntMap){
+            ObjectIntMap result = (ObjectIntMap)object;
+            for(; token != Token.endObject; token = reader.next()){
+                String name = reader.getString();
+                reader.next();
+                result.put(elementType != null ? readValue(elementType, null, new JsonValue(name)) : name, reader.isNumber() ? reader.asInt() : reader.readTree().asInt());
+            }
+            return (T)result;
+        }
+        if(object instanceof ArrayMap){
+            ArrayMap result = (ArrayMap)object;
+            for(; token != Token.endObject; token = reader.next()){
+                String name = reader.getString();
+                reader.next();
+                result.put(name, readValue(elementType, null, reader));
+            }
+            return (T)result;
+        }
+        if(object instanceof Map){
+            Map result = (Map)object;
+            for(; token != Token.endObject; token = reader.next()){
+                String name = reader.getString();
+                reader.next();
+                if(name.equals(typeName)){
+                    reader.skipValue();
+                    continue;
+                }
+                result.put(name, readValue(elementType, null, reader));
+            }
+            return (T)result;
+        }
+
+        readFields(object, reader);
+        return (T)object;
+    }
+
+    /** Returns whether an object of the given type can be read without building a tree, as readFields or a plain map. */
+    private boolean canBind(Class type, boolean tagged){
+        if(type.isPrimitive() || type == String.class || Reflect.isWrapper(type) || Enum.class.isAssignableFrom(type)) return false;
+        if(classToSerializer.get(type) != null || JsonSerializable.class.isAssignableFrom(type)) return false;
+        //collections are wrapped in an object with their items, and sets keep their values in a field
+        if((typeName != null && Collection.class.isAssignableFrom(type)) || ObjectSet.class.isAssignableFrom(type) || IntSet.class.isAssignableFrom(type)) return false;
+        //these maps read the type name as an entry
+        return !tagged || !(ObjectMap.class.isAssignableFrom(type) || ObjectIntMap.class.isAssignableFrom(type) || ArrayMap.class.isAssignableFrom(type));
+    }
+
+    /** Reads the fields of an object, from the current token, which is the first name or the end of the object. */
+    private void readFields(Object object, JsonPullReader reader){
+        Class type = object.getClass();
+        ObjectMap<String, FieldMetadata> fields = getFields(type);
+        for(Token token = reader.token(); token != Token.endObject; token = reader.next()){
+            String name = reader.getString();
+            reader.next();
+            FieldMetadata metadata = fields.get(name.indexOf(' ') == -1 ? name : name.replace(' ', '_'));
+            if(metadata == null){
+                if(!name.equals(typeName)){
+                    if(ignoreUnknownFields || ignoreUnknownField(type, name)){
+                        if(debug) Log.warn("Ignoring unknown field: " + name + " (" + type.getName() + ")");
+                    }else{
+                        SerializationException ex = new SerializationException("Field not found: " + name + " (" + type.getName() + ")");
+                        ex.addTrace("line " + reader.getLine());
+                        throw ex;
+                    }
+                }
+                reader.skipValue();
+                continue;
+            }
+            Field field = metadata.field;
+            try{
+                if(metadata.kind != FieldMetadata.kindObject && (classToSerializer.size == 0 || !classToSerializer.containsKey(metadata.type))
+                && metadata.readPrimitive(object, reader)) continue;
+                metadata.set(object, readValue(metadata.type, metadata.elementType, reader, metadata.keyType));
+            }catch(IllegalAccessException ex){
+                throw new SerializationException("Error accessing field: " + field.getName() + " (" + type.getName() + ")", ex);
+            }catch(SerializationException ex){
+                ex.addTrace(field.getName() + " (" + type.getName() + ")");
+                throw ex;
+            }catch(RuntimeException runtimeEx){
+                SerializationException ex = new SerializationException(runtimeEx);
+                ex.addTrace("line " + reader.getLine());
+                ex.addTrace(field.getName() + " (" + type.getName() + ")");
+                throw ex;
+            }
+        }
+    }
+
+    private <T> T readArray(Class<T> type, Class elementType, JsonPullReader reader){
+        if(type != null && (classToSerializer.get(type) != null || JsonSerializable.class.isAssignableFrom(type))){
+            return readValue(type, elementType, reader.readTree());
+        }
+
+        if(type == null || type == Object.class) type = (Class<T>)Seq.class;
+        if(Seq.class.isAssignableFrom(type)){
+            Seq result = type == Seq.class ? new Seq() : (Seq)newInstance(type);
+            while(reader.next() != Token.endArray)
+                result.add(readValue(elementType, null, reader));
+            return (T)result;
+        }
+        if(ObjectSet.class.isAssignableFrom(type)){
+            ObjectSet result = type == ObjectSet.class ? new ObjectSet() : (ObjectSet)newInstance(type);
+            while(reader.next() != Token.endArray)
+                result.add(readValue(elementType, null, reader));
+            return (T)result;
+        }
+        if(Queue.class.isAssignableFrom(type)){
+            Queue result = type == Queue.class ? new Queue() : (Queue)newInstance(type);
+            while(reader.next() != Token.endArray)
+                result.addLast(readValue(elementType, null, reader));
+            return (T)result;
+        }
+        if(Collection.class.isAssignableFrom(type)){
+            Collection result = type.isInterface() ? new ArrayList() : (Collection)newInstance(type);
+            while(reader.next() != Token.endArray)
+                result.add(readValue(elementType, null, reader));
+            return (T)result;
+        }
+        if(type.isArray()){
+            Class componentType = type.getComponentType();
+            if(elementType == null) elementType = componentType;
+            Seq values = new Seq();
+            while(reader.next() != Token.endArray)
+                values.add(readValue(elementType, null, reader));
+            Object result = java.lang.reflect.Array.newInstance(componentType, values.size);
+            for(int i = 0; i < values.size; i++)
+                java.lang.reflect.Array.set(result, i, values.get(i));
+            return (T)result;
+        }
+        throw new SerializationException("Unable to convert value to required type: " + reader.readTree() + " (" + type.getName() + ")");
+    }
+
     /**
      * Each field on the <code>to</code> object is set to the value for the field with the same name on the <code>from</code>
      * object. The <code>to</code> object must have at least all the fields of the <code>from</code> object with the same name and
@@ -1278,18 +1536,121 @@ public class Json{
         void read(Json json, JsonValue jsonData);
     }
 
+    /**
+     * A field that is read and written by {@link Json}. Primitive fields are accessed with the typed {@link Field} methods, which
+     * do not box their values.
+     */
     public static class FieldMetadata{
+        static final int kindObject = 0, kindInt = 1, kindFloat = 2, kindBoolean = 3, kindLong = 4, kindDouble = 5;
+
         public final Field field;
+        /** The declared type of {@link #field}. */
+        public final Class type;
         public @Nullable Class elementType;
         public @Nullable Class keyType;
+        /** Which typed accessor is used for the field, or {@link #kindObject} if it is not a fast-pathed primitive. */
+        final int kind;
 
         public FieldMetadata(Field field){
-            boolean isMap = ObjectMap.class.isAssignableFrom(field.getType())
-            || Map.class.isAssignableFrom(field.getType());
+            Class type = field.getType();
+            boolean isMap = ObjectMap.class.isAssignableFrom(type) || Map.class.isAssignableFrom(type);
 
             this.field = field;
+            this.type = type;
             this.elementType = getElementType(field, isMap ? 1 : 0);
             keyType = isMap ? getElementType(field, 0) : null;
+            kind =
+                type == int.class ? kindInt :
+                type == float.class ? kindFloat :
+                type == boolean.class ? kindBoolean :
+                type == long.class ? kindLong :
+                type == double.class ? kindDouble :
+                kindObject;
+        }
+
+        public Object get(Object object) throws IllegalAccessException{
+            return field.get(object);
+        }
+
+        public void set(Object object, Object value) throws IllegalAccessException{
+            field.set(object, value);
+        }
+
+        /**
+         * Sets a primitive field directly from a number or boolean, without boxing.
+         * @return false if the value must go through {@link Json#readValue(Class, Class, JsonValue)} instead.
+         */
+        boolean readPrimitive(Object object, JsonValue value) throws IllegalAccessException{
+            switch(kind){
+                case kindInt:
+                    if(!value.isNumber()) return false;
+                    field.setInt(object, value.asInt());
+                    return true;
+                case kindFloat:
+                    if(!value.isNumber()) return false;
+                    field.setFloat(object, value.asFloat());
+                    return true;
+                case kindBoolean:
+                    if(!value.isBoolean()) return false;
+                    field.setBoolean(object, value.asBoolean());
+                    return true;
+                case kindLong:
+                    if(!value.isNumber()) return false;
+                    field.setLong(object, value.asLong());
+                    return true;
+                case kindDouble:
+                    if(!value.isNumber()) return false;
+                    field.setDouble(object, value.asDouble());
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        /**
+         * Sets a primitive field directly from a number or boolean token, without boxing.
+         * @return false if the value must go through {@link Json#readValue(Class, Class, JsonPullReader)} instead.
+         */
+        boolean readPrimitive(Object object, JsonPullReader reader) throws IllegalAccessException{
+            switch(kind){
+                case kindInt:
+                    if(!reader.isNumber()) return false;
+                    field.setInt(object, reader.asInt());
+                    return true;
+                case kindFloat:
+                    if(!reader.isNumber()) return false;
+                    field.setFloat(object, reader.asFloat());
+                    return true;
+                case kindBoolean:
+                    if(!reader.isBoolean()) return false;
+                    field.setBoolean(object, reader.getBoolean());
+                    return true;
+                case kindLong:
+                    if(!reader.isNumber()) return false;
+                    field.setLong(object, reader.asLong());
+                    return true;
+                case kindDouble:
+                    if(!reader.isNumber()) return false;
+                    field.setDouble(object, reader.asDouble());
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        /**
+         * Compares a primitive field to its boxed default value without boxing the field. Floating point values are compared
+         * like {@link Float#equals(Object)} does.
+         */
+        boolean isDefault(Object object, Object defaultValue) throws IllegalAccessException{
+            switch(kind){
+                case kindInt: return defaultValue instanceof Integer && field.getInt(object) == (Integer)defaultValue;
+                case kindFloat: return defaultValue instanceof Float && Float.floatToIntBits(field.getFloat(object)) == Float.floatToIntBits((Float)defaultValue);
+                case kindBoolean: return defaultValue instanceof Boolean && field.getBoolean(object) == (Boolean)defaultValue;
+                case kindLong: return defaultValue instanceof Long && field.getLong(object) == (Long)defaultValue;
+                case kindDouble: return defaultValue instanceof Double && Double.doubleToLongBits(field.getDouble(object)) == Double.doubleToLongBits((Double)defaultValue);
+                default: return false;
+            }
         }
     }
 
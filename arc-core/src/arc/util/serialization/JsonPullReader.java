@@ -0,0 +1,569 @@
+package arc.util.serialization;
+
+import arc.util.io.Streams;
+import arc.util.serialization.JsonValue.ValueType;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Pull parser for the same relaxed JSON as {@link JsonReader}: unquoted names and values, comments, and newlines in place of
+ * commas. Instead of building a tree of {@link JsonValue}s, tokens are read one at a time with {@link #next()}, so documents can
+ * be bound to objects as they are parsed. See {@link Json#setStreaming(boolean)}.
+ * <p>
+ * When reading from a {@link Reader}, only the token being parsed is kept in memory.
+ */
+public class JsonPullReader implements Closeable{
+    private static final int
+    stateRoot = 0, stateRootDone = 1, stateFirst = 2, stateAfterName = 3, stateAfterValue = 4;
+
+    private final Reader reader;
+    private char[] data;
+    private int pos, limit, mark = -1;
+    private int line = 1;
+
+    /** The state of each open object or array, and whether it is an object. */
+    private int[] states = new int[8];
+    private boolean[] objects = new boolean[8];
+    private int depth, rootState = stateRoot;
+
+    private Token token;
+    private String stringValue;
+    private int valueStart, valueEnd;
+    private long longValue;
+    private double doubleValue;
+    private boolean booleanValue;
+
+    /** Recently read names, so that the same names in many objects are not allocated again. */
+    private final String[] names = new String[256];
+
+    public JsonPullReader(String json){
+        this(json.toCharArray());
+    }
+
+    public JsonPullReader(char[] data){
+        this(data, 0, data.length);
+    }
+
+    public JsonPullReader(char[] data, int offset, int length){
+        this.reader = null;
+        this.data = data;
+        this.pos = offset;
+        this.limit = offset + length;
+    }
+
+    /** The reader is closed by {@link #close()}. */
+    public JsonPullReader(Reader reader){
+        this.reader = reader;
+        this.data = new char[8192];
+    }
+
+    /**
+     * Advances to the next token and returns it. Values inside objects are preceded by a {@link Token#name} token. After the root
+     * value, {@link Token#end} is returned.
+     * @throws SerializationException if the JSON is malformed.
+     */
+    public Token next(){
+        stringValue = null;
+        valueStart = valueEnd = -1;
+        if(depth == 0){
+            if(rootState == stateRootDone){
+                skipWhitespace();
+                if(peek() != -1) throw error("Unexpected data after the root value.");
+                return token = Token.end;
+            }
+            skipWhitespace();
+            if(peek() == -1){
+                rootState = stateRootDone;
+                return token = Token.end;
+            }
+            rootState = stateRootDone;
+            return value();
+        }
+
+        int top = depth - 1;
+        boolean object = objects[top];
+        char close = object ? '}' : ']';
+        int c;
+        switch(states[top]){
+            case stateAfterValue:{
+                boolean newline = skipWhitespace();
+                c = peek();
+                if(c == ','){
+                    pos++;
+                    skipWhitespace();
+                    c = peek();
+                }else if(c != close && c != -1 && !newline){
+                    throw error("Expected ',' or '" + close + "'.");
+                }
+                break;
+            }
+            case stateFirst:{
+                skipWhitespace();
+                c = peek();
+                if(c == ','){
+                    pos++;
+                    skipWhitespace();
+                    c = peek();
+                }
+                break;
+            }
+            case stateAfterName:{
+                skipWhitespace();
+                if(peek() != ':') throw error("Expected ':'.");
+                pos++;
+                skipWhitespace();
+                c = peek();
+                states[top] = stateAfterValue;
+                //a missing last value is read as an empty string, like JsonReader does
+                if(c == '}'){
+                    valueStart = valueEnd = pos;
+                    stringValue = "";
+                    return token = Token.string;
+                }
+                return value();
+            }
+            default:
+                throw new IllegalStateException();
+        }
+
+        if(c == close){
+            pos++;
+            depth--;
+            return token = object ? Token.endObject : Token.endArray;
+        }
+        if(c == -1) throw error(object ? "Unmatched brace." : "Unmatched bracket.");
+
+        if(object){
+            states[top] = stateAfterName;
+            return name();
+        }
+        states[top] = stateAfterValue;
+        return value();
+    }
+
+    /** Returns the token last returned by {@link #next()}. */
+    public Token token(){
+        return token;
+    }
+
+    /** Returns the name for {@link Token#name}, or the value for {@link Token#string} and number tokens. */
+    public String getString(){
+        if(stringValue == null && valueStart != -1) stringValue = new String(data, valueStart, valueEnd - valueStart);
+        return stringValue;
+    }
+
+    public long getLong(){
+        return longValue;
+    }
+
+    public double getDouble(){
+        return doubleValue;
+    }
+
+    public boolean getBoolean(){
+        return booleanValue;
+    }
+
+    public boolean isNumber(){
+        return token == Token.longValue || token == Token.doubleValue;
+    }
+
+    public boolean isBoolean(){
+        return token == Token.booleanValue;
+    }
+
+    /** Returns the number token as an int, like {@link JsonValue#asInt()}. */
+    public int asInt(){
+        return token == Token.longValue ? (int)longValue : (int)doubleValue;
+    }
+
+    /** Returns the number token as a float, like {@link JsonValue#asFloat()}. */
+    public float asFloat(){
+        return token == Token.longValue ? (float)longValue : (float)doubleValue;
+    }
+
+    /** Returns the number token as a long, like {@link JsonValue#asLong()}. */
+    public long asLong(){
+        return token == Token.longValue ? longValue : (long)doubleValue;
+    }
+
+    /** Returns the number token as a double, like {@link JsonValue#asDouble()}. */
+    public double asDouble(){
+        return token == Token.longValue ? (double)longValue : doubleValue;
+    }
+
+    /** Skips the value starting at the current token. Afterward, the current token is the last one of the value. */
+    public void skipValue(){
+        if(token != Token.startObject && token != Token.startArray) return;
+        int end = depth - 1;
+        while(depth > end) next();
+    }
+
+    /** Builds a {@link JsonValue} for the value starting at the current token. Afterward, the current token is the last one of the value. */
+    public JsonValue readTree(){
+        switch(token){
+            case startObject:
+                return readMembers(new JsonValue(ValueType.object));
+            case startArray:{
+                JsonValue array = new JsonValue(ValueType.array);
+                JsonValue last = null;
+                while(next() != Token.endArray){
+                    last = add(array, last, null, readTree());
+                }
+                return array;
+            }
+            case string:
+                return new JsonValue(getString());
+            case longValue:
+                return new JsonValue(longValue, getString());
+            case doubleValue:
+                return new JsonValue(doubleValue, getString());
+            case booleanValue:
+                return new JsonValue(booleanValue);
+            case nullValue:
+                return new JsonValue(ValueType.nullValue);
+            default:
+                throw error("Expected a value, found: " + token);
+        }
+    }
+
+    /**
+     * Adds the remaining members of the current object to a {@link JsonValue}, which may already have children. Afterward, the
+     * current token is {@link Token#endObject}.
+     */
+    JsonValue readMembers(JsonValue object){
+        JsonValue last = object.child;
+        while(last != null && last.next != null) last = last.next;
+        while(next() != Token.endObject){
+            String name = getString();
+            next();
+            last = add(object, last, name, readTree());
+        }
+        return object;
+    }
+
+    /** Links a child the same way {@link JsonReader} does, and returns it. */
+    static JsonValue add(JsonValue parent, JsonValue last, String name, JsonValue child){
+        child.name = name;
+        child.parent = parent;
+        if(last == null){
+            parent.child = child;
+        }else{
+            last.next = child;
+            child.prev = last;
+        }
+        parent.size++;
+        return child;
+    }
+
+    /** Returns the current line, for error messages. */
+    public int getLine(){
+        return line;
+    }
+
+    @Override
+    public void close(){
+        Streams.close(reader);
+    }
+
+    private Token value(){
+        int c = peek();
+        switch(c){
+            case '{':
+                pos++;
+                push(true);
+                return token = Token.startObject;
+            case '[':
+                pos++;
+                push(false);
+                return token = Token.startArray;
+            case '"':
+                quoted();
+                return token = Token.string;
+            case -1:
+            case '}':
+            case ']':
+            case ',':
+            case ':':
+            case '/':
+                throw error("Expected a value.");
+        }
+
+        unquoted(false);
+        int length = valueEnd - valueStart;
+        char first = data[valueStart];
+        if(length == 4 && first == 't' && matches("true")){
+            booleanValue = true;
+            return token = Token.booleanValue;
+        }
+        if(length == 5 && first == 'f' && matches("false")){
+            booleanValue = false;
+            return token = Token.booleanValue;
+        }
+        if(length == 4 && first == 'n' && matches("null")){
+            return token = Token.nullValue;
+        }
+
+        boolean couldBeDouble = false, couldBeLong = true;
+        outer:
+        for(int i = valueStart; i < valueEnd; i++){
+            switch(data[i]){
+                case '0': case '1': case '2': case '3': case '4': case '5': case '6': case '7': case '8': case '9': case '-': case '+':
+                    break;
+                case '.': case 'e': case 'E':
+                    couldBeDouble = true;
+                    couldBeLong = false;
+                    break;
+                default:
+                    couldBeDouble = false;
+                    couldBeLong = false;
+                    break outer;
+            }
+        }
+        if(couldBeDouble){
+            try{
+                doubleValue = Double.parseDouble(getString());
+                return token = Token.doubleValue;
+            }catch(NumberFormatException ignored){
+            }
+        }else if(couldBeLong && parseLong()){
+            return token = Token.longValue;
+        }
+        return token = Token.string;
+    }
+
+    /** Parses the value like {@link Long#parseLong(String)}, without creating a string. */
+    private boolean parseLong(){
+        int i = valueStart;
+        boolean negative = false;
+        char first = data[i];
+        if(first == '-' || first == '+'){
+            negative = first == '-';
+            i++;
+        }
+        if(i == valueEnd) return false;
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE, result = 0;
+        //accumulated negatively, as Long.parseLong does, so that MIN_VALUE can be represented
+        for(; i < valueEnd; i++){
+            int digit = data[i] - '0';
+            if(digit < 0 || digit > 9) return false;
+            if(result < limit / 10) return false;
+            result *= 10;
+            if(result < limit + digit) return false;
+            result -= digit;
+        }
+        longValue = negative ? result : -result;
+        return true;
+    }
+
+    private Token name(){
+        int c = peek();
+        if(c == '"'){
+            quoted();
+        }else if(c == ':' || c == '{' || c == '[' || c == ']' || c == ',' || c == '/'){
+            throw error("Expected a name.");
+        }else{
+            unquoted(true);
+        }
+        if(stringValue == null){
+            //not escaped, so the name may already be known
+            int hash = 0;
+            for(int i = valueStart; i < valueEnd; i++){
+                hash = 31 * hash + data[i];
+            }
+            int slot = (hash ^ (hash >>> 16)) & (names.length - 1);
+            String name = names[slot];
+            if(name == null || !matches(name)){
+                names[slot] = name = new String(data, valueStart, valueEnd - valueStart);
+            }
+            stringValue = name;
+        }
+        return token = Token.name;
+    }
+
+    /** Reads a quoted string. Escaped strings are unescaped into {@link #stringValue}. */
+    private void quoted(){
+        pos++;
+        mark = pos;
+        boolean escaped = false;
+        while(true){
+            if(pos == limit && !fill()) throw error("Unterminated string.");
+            char c = data[pos];
+            if(c == '"') break;
+            if(c == '\\'){
+                escaped = true;
+                pos++;
+                if(pos == limit && !fill()) throw error("Unterminated string.");
+            }else if(c == '\n'){
+                line++;
+            }
+            pos++;
+        }
+        valueStart = mark;
+        valueEnd = pos;
+        mark = -1;
+        pos++;
+        if(escaped){
+            try{
+                stringValue = JsonReader.unescape(new String(data, valueStart, valueEnd - valueStart));
+            }catch(RuntimeException ex){
+                throw error("Invalid escape: " + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Reads an unquoted name or value. Values end at a comma, closing bracket, newline or comment, and names also end at a colon.
+     * Trailing whitespace is not included.
+     */
+    private void unquoted(boolean name){
+        mark = pos;
+        int end = pos;
+        while(true){
+            if(pos == limit){
+                int start = mark;
+                boolean more = fill();
+                end -= start - mark;
+                if(!more) break;
+            }
+            char c = data[pos];
+            if(c == ',' || c == '}' || c == ']' || c == '\n' || c == '\r' || (name && c == ':')) break;
+            if(c == '/'){
+                if(pos + 1 == limit){
+                    int start = mark;
+                    fill();
+                    end -= start - mark;
+                }
+                if(pos + 1 < limit && (data[pos + 1] == '/' || data[pos + 1] == '*')) break;
+            }
+            pos++;
+            if(c != ' ' && c != '\t') end = pos;
+        }
+        valueStart = mark;
+        valueEnd = end;
+        mark = -1;
+    }
+
+    private boolean matches(String string){
+        int length = valueEnd - valueStart;
+        if(string.length() != length) return false;
+        for(int i = 0; i < length; i++){
+            if(string.charAt(i) != data[valueStart + i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Skips whitespace and comments.
+     * @return true if a newline was skipped, which separates values like a comma.
+     */
+    private boolean skipWhitespace(){
+        boolean newline = false;
+        while(true){
+            if(pos == limit && !fill()) return newline;
+            char c = data[pos];
+            if(c == '\n'){
+                newline = true;
+                line++;
+                pos++;
+            }else if(c == ' ' || c == '\t' || c == '\r'){
+                pos++;
+            }else if(c == '/'){
+                if(pos + 1 == limit) fill();
+                if(pos + 1 == limit) return newline;
+                char next = data[pos + 1];
+                if(next == '/'){
+                    pos += 2;
+                    while(true){
+                        if(pos == limit && !fill()) return newline;
+                        if(data[pos] == '\n') break;
+                        pos++;
+                    }
+                }else if(next == '*'){
+                    pos += 2;
+                    while(true){
+                        while(pos + 1 >= limit){
+                            if(!fill()) throw error("Unterminated comment.");
+                        }
+                        if(data[pos] == '*' && data[pos + 1] == '/') break;
+                        if(data[pos] == '\n') line++;
+                        pos++;
+                    }
+                    pos += 2;
+                }else{
+                    return newline;
+                }
+            }else{
+                return newline;
+            }
+        }
+    }
+
+    private int peek(){
+        if(pos == limit && !fill()) return -1;
+        return data[pos];
+    }
+
+    private void push(boolean object){
+        if(depth == states.length){
+            int[] newStates = new int[depth * 2];
+            boolean[] newObjects = new boolean[depth * 2];
+            System.arraycopy(states, 0, newStates, 0, depth);
+            System.arraycopy(objects, 0, newObjects, 0, depth);
+            states = newStates;
+            objects = newObjects;
+        }
+        states[depth] = stateFirst;
+        objects[depth] = object;
+        depth++;
+    }
+
+    /**
+     * Reads more characters, keeping those from {@link #mark} on, or the last unread one. Positions are shifted to the start of
+     * the buffer.
+     * @return false if there are no more characters.
+     */
+    private boolean fill(){
+        if(reader == null) return false;
+        int keep = mark != -1 ? mark : pos;
+        int remaining = limit - keep;
+        if(keep > 0){
+            System.arraycopy(data, keep, data, 0, remaining);
+        }else if(remaining == data.length){
+            char[] newData = new char[data.length * 2];
+            System.arraycopy(data, 0, newData, 0, remaining);
+            data = newData;
+        }
+        pos -= keep;
+        limit = remaining;
+        if(mark != -1) mark = 0;
+        try{
+            int count;
+            do{
+                count = reader.read(data, limit, data.length - limit);
+            }while(count == 0);
+            if(count == -1) return false;
+            limit += count;
+            return true;
+        }catch(IOException ex){
+            throw new SerializationException(ex);
+        }
+    }
+
+    private SerializationException error(String message){
+        int start = Math.max(0, pos - 32), end = Math.min(limit, pos + 64);
+        return new SerializationException("Error parsing JSON on line " + line + ": " + message + " Near: "
+        + new String(data, start, pos - start) + "*ERROR*" + new String(data, pos, end - pos));
+    }
+
+    public enum Token{
+        startObject, endObject, startArray, endArray,
+        /** The name of the next value in an object. */
+        name,
+        string, longValue, doubleValue, booleanValue, nullValue,
+        /** There are no more tokens after the root value. */
+        end
+    }
+}
@@ -4,6 +4,8 @@ import arc.struct.*;
 import arc.util.*;
 
 import java.io.*;
+import java.nio.*;
+import java.nio.charset.*;
 import java.util.regex.*;
 
 /** An hsjon parser. Can be used as a standard json value.
@@ -43,18 +45,16 @@ public class Jval{
      */
     public static Jval read(Reader reader){
         try{
-            return new Hparser(reader).parse();
+            return Hparser.read(reader).parse();
         }catch(IOException e){
             throw new ArcRuntimeException(e);
         }
     }
 
+    /** Reads a Hjson value from bytes in the platform's default charset. */
     public static Jval read(byte[] bytes){
-        try{
-            return new Hparser(new InputStreamReader(new ByteArrayInputStream(bytes))).parse();
-        }catch(IOException e){
-            throw new ArcRuntimeException(e);
-        }
+        CharBuffer chars = Charset.defaultCharset().decode(ByteBuffer.wrap(bytes));
+        return new Hparser(chars.array(), chars.limit()).parse();
     }
 
     /**
@@ -63,12 +63,17 @@ public class Jval{
      * @return the Hjson value that has been read
      */
     public static Jval read(String text){
-        try{
-            return new Hparser(text).parse();
-        }catch(IOException exception){
-            // JsonParser does not throw IOException for String
-            throw new RuntimeException(exception);
-        }
+        return new Hparser(text).parse();
+    }
+
+    /**
+     * Reads a Hjson value from the start of the given array. The array is not copied, and must not be changed while reading.
+     * @param text the characters that contain the Hjson value
+     * @param length the number of characters to read
+     * @return the Hjson value that has been read
+     */
+    public static Jval read(char[] text, int length){
+        return new Hparser(text, length).parse();
     }
 
     public Jtype getType(){
@@ -279,9 +284,145 @@ public class Jval{
             || (((Jval)object).value != null && value != null && value.equals(((Jval)object).value)));
     }
 
-    /** Alias class of whatever is used to store json maps (objects). */
+    /**
+     * Alias class of whatever is used to store json maps (objects).
+     * Maps with more than {@link #hashThreshold} entries index their keys by hash, so that lookups in large objects are not linear.
+     * Keys must therefore be changed with the methods of this class, and not by writing to {@link #keys} directly.
+     */
     public static class JsonMap extends ArrayMap<String, Jval>{
+        /** Maps larger than this look up keys in {@link #indices}. Smaller maps are faster to scan. */
+        static final int hashThreshold = 16;
+
+        /** Maps each key to its index. Null until the map grows past the threshold, or after a change that moves keys around. */
+        private @Nullable ObjectIntMap<String> indices;
+        /** Whether this map has duplicate or null keys, which can only be looked up by scanning. */
+        private boolean unindexed;
+
+        private @Nullable ObjectIntMap<String> indices(){
+            if(indices == null && size > hashThreshold && !unindexed){
+                Object[] keys = this.keys;
+                ObjectIntMap<String> map = new ObjectIntMap<>(size * 2);
+                for(int i = 0; i < size; i++){
+                    String key = (String)keys[i];
+                    if(key == null || map.containsKey(key)){
+                        unindexed = true;
+                        return null;
+                    }
+                    map.put(key, i);
+                }
+                indices = map;
+            }
+            return indices;
+        }
+
+        private void invalidate(){
+            indices = null;
+            unindexed = false;
+        }
+
+        @Override
+        public int put(String key, Jval value){
+            int index = super.put(key, value);
+            if(key == null) invalidate();
+            else if(indices != null) indices.put(key, index);
+            return index;
+        }
+
+        @Override
+        public int put(String key, Jval value, int index){
+            index = super.put(key, value, index);
+            invalidate();
+            return index;
+        }
+
+        @Override
+        public void putAll(ArrayMap<? extends String, ? extends Jval> map, int offset, int length){
+            invalidate();
+            super.putAll(map, offset, length);
+        }
+
+        @Override
+        public Jval get(String key){
+            ObjectIntMap<String> indices = key == null ? null : indices();
+            if(indices == null) return super.get(key);
+            int index = indexOfKey(key);
+            return index == -1 ? null : (Jval)((Object[])values)[index];
+        }
+
+        @Override
+        public boolean containsKey(String key){
+            ObjectIntMap<String> indices = key == null ? null : indices();
+            if(indices == null) return super.containsKey(key);
+            return indexOfKey(key) != -1;
+        }
+
+        @Override
+        public int indexOfKey(String key){
+            ObjectIntMap<String> indices = key == null ? null : indices();
+            if(indices == null) return super.indexOfKey(key);
+            int index = indices.get(key, -1);
+            if(index == -1 || index < size && key.equals(((Object[])keys)[index])) return index;
+            //the keys were written directly
+            invalidate();
+            return super.indexOfKey(key);
+        }
+
+        @Override
+        public Jval removeKey(String key){
+            int index = indexOfKey(key);
+            if(index == -1) return null;
+            Jval value = (Jval)((Object[])values)[index];
+            removeIndex(index);
+            return value;
+        }
+
+        @Override
+        public void setKey(int index, String key){
+            invalidate();
+            super.setKey(index, key);
+        }
+
+        @Override
+        public void insert(int index, String key, Jval value){
+            invalidate();
+            super.insert(index, key, value);
+        }
+
+        @Override
+        public void removeIndex(int index){
+            invalidate();
+            super.removeIndex(index);
+        }
+
+        @Override
+        public void clear(int maximumCapacity){
+            invalidate();
+            super.clear(maximumCapacity);
+        }
+
+        @Override
+        public void clear(){
+            invalidate();
+            super.clear();
+        }
+
+        @Override
+        public void reverse(){
+            invalidate();
+            super.reverse();
+        }
+
+        @Override
+        public void shuffle(){
+            invalidate();
+            super.shuffle();
+        }
 
+        @Override
+        public void truncate(int newSize){
+            invalidate();
+            super.truncate(newSize);
+        }
     }
 
     /** Alias class of json arrays. */
@@ -369,33 +510,50 @@ public class Jval{
         string, number, object, array, bool, nil,
     }
 
+    /**
+     * Parses Hjson directly from a char array. Values are sliced out of the array instead of being copied a character at a time,
+     * numbers are parsed without creating strings, and names are interned.
+     */
     static class Hparser{
-        private final String buffer;
-        private Reader reader;
+        private final char[] data;
+        private final int length;
+        /** Index in {@link #data} of the next character. */
+        private int pos;
         private int index;
         private int line;
         private int lineOffset;
         private int current;
-        private StringBuilder captureBuffer, peek;
-        private boolean capture;
         private boolean isArray;
+        /** Recently read names, by hash. Objects of the same kind repeat their names, and this avoids allocating them again. */
+        private final String[] names = new String[256];
 
         Hparser(String string){
-            buffer = string;
-            reset();
+            this(string.toCharArray());
+        }
+
+        Hparser(char[] data){
+            this(data, data.length);
         }
 
-        Hparser(Reader reader) throws IOException{
-            this(readToEnd(reader));
+        Hparser(char[] data, int length){
+            this.data = data;
+            this.length = length;
+            reset();
         }
 
-        static String readToEnd(Reader reader) throws IOException{
+        static Hparser read(Reader reader) throws IOException{
             // read everything into a buffer
-            int n;
-            char[] part = new char[8 * 1024];
-            StringBuilder sb = new StringBuilder();
-            while((n = reader.read(part, 0, part.length)) != -1) sb.append(part, 0, n);
-            return sb.toString();
+            int n, length = 0;
+            char[] data = new char[8 * 1024];
+            while((n = reader.read(data, length, data.length - length)) != -1){
+                length += n;
+                if(length == data.length){
+                    char[] newData = new char[data.length * 2];
+                    System.arraycopy(data, 0, newData, 0, length);
+                    data = newData;
+                }
+            }
+            return new Hparser(data, length);
         }
 
         static boolean isWhiteSpace(int ch){
@@ -403,15 +561,11 @@ public class Jval{
         }
 
         void reset(){
-            index = lineOffset = current = 0;
+            index = lineOffset = current = pos = 0;
             line = 1;
-            peek = new StringBuilder();
-            reader = new StringReader(buffer);
-            capture = false;
-            captureBuffer = null;
         }
 
-        Jval parse() throws IOException{
+        Jval parse(){
             //braces for the root object are optional
 
             read();
@@ -439,13 +593,13 @@ public class Jval{
             }
         }
 
-        Jval checkTrailing(Jval v) throws JsonParseException, IOException{
+        Jval checkTrailing(Jval v) throws JsonParseException{
             skipWhiteSpace();
             if(!isEndOfText()) throw error("Extra characters in input: " + current);
             return v;
         }
 
-        private Jval readValue() throws IOException{
+        private Jval readValue(){
             switch(current){
                 case '\'':
                 case '"':
@@ -459,50 +613,59 @@ public class Jval{
             }
         }
 
-        private Jval readTfnns() throws IOException{
+        private Jval readTfnns(){
             // Hjson strings can be quoteless
             // returns string, true, false, or null.
-            StringBuilder value = new StringBuilder();
             int first = current;
             if(Hwriter.isPunctuatorChar(first))
                 throw error("Found a punctuator character '" + (char)first + "' when expecting a quoteless string (check your syntax)");
-            value.append((char)current);
+            if(first < 0) return new Jval(String.valueOf((char)first));
+            //the value is every character from the first one up to the current one
+            int start = pos - 1;
             while(true){
                 read();
                 boolean isEol = current < 0 || current == '\r' || current == '\n' || (current == ',' && isArray) || current == ']';
                 if(isEol || current == ',' || current == '}' || current == '#' || current == '/' && (peek() == '/' || peek() == '*')
                 ){
+                    int end = current < 0 ? length : pos - 1;
                     switch(first){
                         case 'f':
                         case 'n':
                         case 't':
-                            String svalue = value.toString().trim();
-                            switch(svalue){
-                                case "false": return FALSE;
-                                case "null": return NULL;
-                                case "true": return TRUE;
-                            }
+                            int trimStart = start, trimEnd = end;
+                            while(trimStart < trimEnd && data[trimStart] <= ' ') trimStart++;
+                            while(trimEnd > trimStart && data[trimEnd - 1] <= ' ') trimEnd--;
+                            if(matches(trimStart, trimEnd, "false")) return FALSE;
+                            if(matches(trimStart, trimEnd, "null")) return NULL;
+                            if(matches(trimStart, trimEnd, "true")) return TRUE;
                             break;
                         default:
                             if(first == '-' || first >= '0' && first <= '9'){
-                                Jval n = tryParseNumber(value, false);
+                                Jval n = tryParseNumber(data, start, end, false);
                                 if(n != null) return n;
                             }
                     }
                     if(isEol){
                         //remove trailing commas
-                        if(value.length() > 0 && value.charAt(value.length() - 1) == ','){
-                            value.setLength(value.length() - 1);
+                        if(data[end - 1] == ','){
+                            end--;
                         }
                         //remove any whitespace at the end (ignored in quoteless strings)
-                        return new Jval(value.toString().trim());
+                        return new Jval(new String(data, start, end - start).trim());
                     }
                 }
-                value.append((char)current);
             }
         }
 
-        private Jval readArray() throws IOException{
+        private boolean matches(int start, int end, String string){
+            if(end - start != string.length()) return false;
+            for(int i = start; i < end; i++){
+                if(data[i] != string.charAt(i - start)) return false;
+            }
+            return true;
+        }
+
+        private Jval readArray(){
             isArray = true;
             read();
             JsonArray array = new JsonArray();
@@ -522,7 +685,7 @@ public class Jval{
             return new Jval(array);
         }
 
-        private Jval readObject(boolean objectWithoutBraces) throws IOException{
+        private Jval readObject(boolean objectWithoutBraces){
             if(!objectWithoutBraces) read();
             JsonMap object = new JsonMap();
             skipWhiteSpace();
@@ -546,31 +709,46 @@ public class Jval{
             return new Jval(object);
         }
 
-        private String readName() throws IOException{
+        private String readName(){
             if(current == '"' || current == '\'') return readStringInternal(false);
 
-            StringBuilder name = new StringBuilder();
+            //names can't contain whitespace, so they always start at the first character
+            int nameStart = pos - 1, nameLength = 0;
             int space = -1, start = index;
             while(true){
                 if(current == ':'){
-                    if(name.length() == 0) throw error("Found ':' but no key name (for an empty key name use quotes)");
-                    else if(space >= 0 && space != name.length()){
+                    if(nameLength == 0) throw error("Found ':' but no key name (for an empty key name use quotes)");
+                    else if(space >= 0 && space != nameLength){
                         index = start + space;
                         throw error("Found whitespace in your key name (use quotes to include)");
                     }
-                    return name.toString();
+                    return name(nameStart, nameStart + nameLength);
                 }else if(isWhiteSpace(current)){
-                    if(space < 0) space = name.length();
+                    if(space < 0) space = nameLength;
                 }else if(current < ' '){
                     throw error("Name is not closed");
                 }else if(Hwriter.isPunctuatorChar(current)){
                     throw error("Found '" + (char)current + "' where a key name was expected (check your syntax or use quotes if the key name includes {}[],: or whitespace)");
-                }else name.append((char)current);
+                }else nameLength++;
                 read();
             }
         }
 
-        private String readMlString() throws IOException{
+        /** @return the interned name in the specified range of the data. */
+        private String name(int start, int end){
+            int hash = 0;
+            for(int i = start; i < end; i++){
+                hash = 31 * hash + data[i];
+            }
+            int slot = (hash ^ (hash >>> 16)) & (names.length - 1);
+            String name = names[slot];
+            if(name == null || !matches(start, end, name)){
+                names[slot] = name = new String(data, start, end - start).intern();
+            }
+            return name;
+        }
+
+        private String readMlString(){
 
             // Parse a multiline string value.
             StringBuilder sb = new StringBuilder();
@@ -617,28 +795,44 @@ public class Jval{
             }
         }
 
-        private void skipIndent(int indent) throws IOException{
+        private void skipIndent(int indent){
             while(indent-- > 0){
                 if(isWhiteSpace(current) && current != '\n') read();
                 else break;
             }
         }
 
-        private Jval readString() throws IOException{
+        private Jval readString(){
             return new Jval(readStringInternal(true));
         }
 
-        private String readStringInternal(boolean allowML) throws IOException{
+        private String readStringInternal(boolean allowML){
             // callees make sure that (current=='"' || current=='\'')
             int exitCh = current;
             read();
-            startCapture();
+            int start = position();
+            //only used once there is an escape sequence to replace
+            StringBuilder builder = null;
             while(current >= 0 && current != exitCh){
-                if(current == '\\') readEscape();
+                if(current == '\\'){
+                    if(builder == null) builder = new StringBuilder();
+                    builder.append(data, start, pos - 1 - start);
+                    readEscape(builder);
+                    start = position();
+                }
                 //else if(current < 0x20) throw expected("valid string character");
                 else read();
             }
-            String string = endCapture();
+            String string;
+            if(current >= 0 && builder == null){
+                string = allowML ? new String(data, start, pos - 1 - start) : name(start, pos - 1);
+            }else{
+                if(builder == null) builder = new StringBuilder();
+                builder.append(data, start, position() - start);
+                //unterminated strings lose their last character
+                if(current < 0 && builder.length() > 0) builder.setLength(builder.length() - 1);
+                string = builder.toString();
+            }
             read();
 
             if(allowML && exitCh == '\'' && current == '\'' && string.length() == 0){
@@ -648,8 +842,7 @@ public class Jval{
             }else return string;
         }
 
-        private void readEscape() throws IOException{
-            pauseCapture();
+        private void readEscape(StringBuilder builder){
             read();
             switch(current){
                 case '"':
@@ -657,38 +850,37 @@ public class Jval{
                 case '#':
                 case '/':
                 case '\\':
-                    captureBuffer.append((char)current);
+                    builder.append((char)current);
                     break;
                 case 'b':
-                    captureBuffer.append('\b');
+                    builder.append('\b');
                     break;
                 case 'f':
-                    captureBuffer.append('\f');
+                    builder.append('\f');
                     break;
                 case 'n':
-                    captureBuffer.append('\n');
+                    builder.append('\n');
                     break;
                 case 'r':
-                    captureBuffer.append('\r');
+                    builder.append('\r');
                     break;
                 case 't':
-                    captureBuffer.append('\t');
+                    builder.append('\t');
                     break;
                 case 'u':
-                    char[] hexChars = new char[4];
+                    int code = 0;
                     for(int i = 0; i < 4; i++){
                         read();
                         if(!isHexDigit()){
                             throw expected("hexadecimal digit");
                         }
-                        hexChars[i] = (char)current;
+                        code = code * 16 + Character.digit(current, 16);
                     }
-                    captureBuffer.append((char)Integer.parseInt(new String(hexChars), 16));
+                    builder.append((char)code);
                     break;
                 default:
                     throw expected("valid escape sequence");
             }
-            capture = true;
             read();
         }
 
@@ -696,64 +888,125 @@ public class Jval{
             return ch >= '0' && ch <= '9';
         }
 
-        static Jval tryParseNumber(StringBuilder value, boolean stopAtNext){
-            int idx = 0, len = value.length();
-            if(idx < len && value.charAt(idx) == '-') idx++;
+        /** Parses the number in the specified range of the array, or returns null if it isn't one. */
+        static Jval tryParseNumber(char[] value, int start, int end, boolean stopAtNext){
+            int idx = start, len = end;
+            if(idx < len && value[idx] == '-') idx++;
 
             if(idx >= len) return null;
-            char first = value.charAt(idx++);
+            char first = value[idx++];
             if(!isDigit(first)) return null;
 
-            if(first == '0' && idx < len && isDigit(value.charAt(idx)))
+            if(first == '0' && idx < len && isDigit(value[idx]))
                 return null; // leading zero is not allowed
 
-            while(idx < len && isDigit(value.charAt(idx))) idx++;
+            while(idx < len && isDigit(value[idx])) idx++;
+            boolean integer = true;
 
             // frac
-            if(idx < len && value.charAt(idx) == '.'){
+            if(idx < len && value[idx] == '.'){
+                integer = false;
                 idx++;
-                if(idx >= len || !isDigit(value.charAt(idx++))) return null;
-                while(idx < len && isDigit(value.charAt(idx))) idx++;
+                if(idx >= len || !isDigit(value[idx++])) return null;
+                while(idx < len && isDigit(value[idx])) idx++;
             }
 
             // exp
-            if(idx < len && Character.toLowerCase(value.charAt(idx)) == 'e'){
+            if(idx < len && Character.toLowerCase(value[idx]) == 'e'){
+                integer = false;
                 idx++;
-                if(idx < len && (value.charAt(idx) == '+' || value.charAt(idx) == '-')) idx++;
+                if(idx < len && (value[idx] == '+' || value[idx] == '-')) idx++;
 
-                if(idx >= len || !isDigit(value.charAt(idx++))) return null;
-                while(idx < len && isDigit(value.charAt(idx))) idx++;
+                if(idx >= len || !isDigit(value[idx++])) return null;
+                while(idx < len && isDigit(value[idx])) idx++;
             }
 
             int last = idx;
-            while(idx < len && isWhiteSpace(value.charAt(idx))) idx++;
+            while(idx < len && isWhiteSpace(value[idx])) idx++;
 
             boolean foundStop = false;
             if(idx < len && stopAtNext){
                 // end scan if we find a control character like ,}] or a comment
-                char ch = value.charAt(idx);
-                if(ch == ',' || ch == '}' || ch == ']' || ch == '#' || ch == '/' && (len > idx + 1 && (value.charAt(idx + 1) == '/' || value.charAt(idx + 1) == '*')))
+                char ch = value[idx];
+                if(ch == ',' || ch == '}' || ch == ']' || ch == '#' || ch == '/' && (len > idx + 1 && (value[idx + 1] == '/' || value[idx + 1] == '*')))
                     foundStop = true;
             }
 
             if(idx < len && !foundStop) return null;
-            String str = value.substring(0, last);
 
-            if(!str.contains(".") && !str.contains(",") && !str.contains("e")){
+            //integers with up to 18 digits always fit in a long; longer ones are parsed as doubles if they don't
+            if(integer){
+                int digits = last - start - (value[start] == '-' ? 1 : 0);
+                if(digits <= 18){
+                    long result = 0;
+                    for(int i = last - digits; i < last; i++){
+                        result = result * 10 + (value[i] - '0');
+                    }
+                    return new Jval(value[start] == '-' ? -result : result);
+                }
                 try{
-                    return new Jval(Long.parseLong(str));
+                    return new Jval(Long.parseLong(new String(value, start, last - start)));
                 }catch(NumberFormatException ignored){
                 }
             }
 
-            return new Jval(Double.parseDouble(str));
+            return new Jval(parseDouble(value, start, last));
         }
 
-        static Jval tryParseNumber(String value) throws IOException{
-            return tryParseNumber(new StringBuilder(value), true);
+        static Jval tryParseNumber(String value){
+            char[] chars = value.toCharArray();
+            return tryParseNumber(chars, 0, chars.length, true);
         }
 
-        private boolean readIf(char ch) throws IOException{
+        /** Exact powers of ten that can be represented by a double. */
+        private static final double[] powersOfTen = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+        };
+
+        /**
+         * Parses a valid decimal number, with the same result as {@link Double#parseDouble(String)}. Both the digits and the power
+         * of ten are exact doubles when there are at most 15 digits and the exponent is small, so a single multiplication or division
+         * rounds correctly. Everything else is left to Double.parseDouble.
+         */
+        private static double parseDouble(char[] value, int start, int end){
+            int i = start;
+            boolean negative = value[i] == '-';
+            if(negative) i++;
+
+            long mantissa = 0;
+            int digits = 0, exponent = 0;
+            for(; i < end && isDigit(value[i]); i++){
+                mantissa = mantissa * 10 + (value[i] - '0');
+                if(mantissa != 0) digits++;
+            }
+            if(i < end && value[i] == '.'){
+                for(i++; i < end && isDigit(value[i]); i++){
+                    mantissa = mantissa * 10 + (value[i] - '0');
+                    if(mantissa != 0) digits++;
+                    exponent--;
+                }
+            }
+            if(i < end){
+                //skip the 'e'
+                i++;
+                boolean negativeExponent = value[i] == '-';
+                if(value[i] == '-' || value[i] == '+') i++;
+                int explicit = 0;
+                for(; i < end && explicit < 1000; i++){
+                    explicit = explicit * 10 + (value[i] - '0');
+                }
+                exponent += negativeExponent ? -explicit : explicit;
+            }
+
+            if(i == end && digits <= 15 && exponent >= -22 && exponent <= 22){
+                double result = exponent >= 0 ? mantissa * powersOfTen[exponent] : mantissa / powersOfTen[-exponent];
+                return negative ? -result : result;
+            }
+            return Double.parseDouble(new String(value, start, end - start));
+        }
+
+        private boolean readIf(char ch){
             if(current != ch){
                 return false;
             }
@@ -761,7 +1014,7 @@ public class Jval{
             return true;
         }
 
-        private void skipWhiteSpace() throws IOException{
+        private void skipWhiteSpace(){
             while(!isEndOfText()){
                 while(isWhiteSpace()) read();
                 if(current == '#' || current == '/' && peek() == '/'){
@@ -779,66 +1032,33 @@ public class Jval{
             }
         }
 
-        private int peek(int idx) throws IOException{
-            while(idx >= peek.length()){
-                int c = reader.read();
-                if(c < 0) return c;
-                peek.append((char)c);
-            }
-            return peek.charAt(idx);
+        private int peek(){
+            return pos < length ? data[pos] : -1;
         }
 
-        private int peek() throws IOException{
-            return peek(0);
+        /** @return the index of the current character in the data, or the length at the end of input. */
+        private int position(){
+            return current < 0 ? length : pos - 1;
         }
 
-        private boolean read() throws IOException{
+        private boolean read(){
 
             if(current == '\n'){
                 line++;
                 lineOffset = index;
             }
 
-            if(peek.length() > 0){
-                // normally peek will only hold not more than one character so this should not matter for performance
-                current = peek.charAt(0);
-                peek.deleteCharAt(0);
-            }else current = reader.read();
-
-            if(current < 0) return false;
+            if(pos >= length){
+                current = -1;
+                return false;
+            }
 
+            current = data[pos++];
             index++;
-            if(capture) captureBuffer.append((char)current);
 
             return true;
         }
 
-        private void startCapture(){
-            if(captureBuffer == null)
-                captureBuffer = new StringBuilder();
-            capture = true;
-            captureBuffer.append((char)current);
-        }
-
-        private void pauseCapture(){
-            int len = captureBuffer.length();
-            if(len > 0) captureBuffer.deleteCharAt(len - 1);
-            capture = false;
-        }
-
-        private String endCapture(){
-            pauseCapture();
-            String captured;
-            if(captureBuffer.length() > 0){
-                captured = captureBuffer.toString();
-                captureBuffer.setLength(0);
-            }else{
-                captured = "";
-            }
-            capture = false;
-            return captured;
-        }
-
         private JsonParseException expected(String expected){
             if(isEndOfText()){
                 return error("Unexpected end of input");
@@ -1,7 +1,15 @@
+import arc.files.*;
 import arc.graphics.*;
+import arc.graphics.PixmapIO.*;
+import arc.math.*;
 import arc.util.*;
 import org.junit.*;
 
+import javax.imageio.*;
+import java.awt.image.*;
+import java.io.*;
+import java.util.zip.*;
+
 import static org.junit.Assert.*;
 
 public class PixmapTest{
@@ -69,4 +77,171 @@ public class PixmapTest{
         Log.info("Time for B: " + Time.elapsed());
     }
 
-}
\ No newline at end of file
+    /** @return an image with gradients, flat areas and noise, so that every filter is used. */
+    static Pixmap image(int width, int height){
+        Pixmap pixmap = new Pixmap(width, height);
+        Rand rand = new Rand(width * 31L + height);
+        pixmap.each((x, y) -> {
+            int color =
+                x < width / 3 ? Color.rgba8888(x / (float)width, y / (float)height, 0.5f, 1f) :
+                x < width * 2 / 3 ? (y / 8 % 2 == 0 ? 0xff0000ff : 0x00000000) :
+                rand.nextInt();
+            pixmap.set(x, y, color);
+        });
+        return pixmap;
+    }
+
+    static byte[] encode(Pixmap pixmap, boolean flip) throws IOException{
+        PngWriter writer = new PngWriter();
+        writer.setFlipY(flip);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.write(out, pixmap);
+        return out.toByteArray();
+    }
+
+    static int argb(int rgba){
+        return (rgba >>> 8) | (rgba << 24);
+    }
+
+    @Test
+    public void pngRoundTrip() throws IOException{
+        for(int[] size : new int[][]{{1, 1}, {3, 7}, {300, 200}, {1000, 300}}){
+            Pixmap pixmap = image(size[0], size[1]);
+
+            for(boolean flip : new boolean[]{false, true}){
+                byte[] png = encode(pixmap, flip);
+
+                //check against another decoder
+                BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+                for(int y = 0; y < pixmap.height; y++){
+                    for(int x = 0; x < pixmap.width; x++){
+                        assertEquals(argb(pixmap.get(x, flip ? pixmap.height - 1 - y : y)), image.getRGB(x, y));
+                    }
+                }
+
+                if(!flip){
+                    Pixmap read = new PngReader().readPixmap(png, 0, png.length);
+                    assertEquals(pixmap.width, read.width);
+                    assertEquals(pixmap.height, read.height);
+                    assertEquals(pixmap.pixels, read.pixels);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void pngRead() throws IOException{
+        Rand rand = new Rand(1);
+        byte[] r = new byte[16], g = new byte[16], b = new byte[16], a = new byte[16];
+        rand.nextBytes(r);
+        rand.nextBytes(g);
+        rand.nextBytes(b);
+        rand.nextBytes(a);
+
+        BufferedImage[] images = {
+            new BufferedImage(33, 17, BufferedImage.TYPE_INT_RGB),
+            new BufferedImage(33, 17, BufferedImage.TYPE_INT_ARGB),
+            new BufferedImage(33, 17, BufferedImage.TYPE_BYTE_INDEXED, new IndexColorModel(8, 16, r, g, b, a)),
+            new BufferedImage(33, 17, BufferedImage.TYPE_BYTE_BINARY, new IndexColorModel(4, 16, r, g, b, a))
+        };
+
+        for(BufferedImage image : images){
+            for(int y = 0; y < image.getHeight(); y++){
+                for(int x = 0; x < image.getWidth(); x++){
+                    image.setRGB(x, y, image.getColorModel().getRGB((x * 7 + y * 3) % 16) | (image.getType() == BufferedImage.TYPE_INT_RGB ? 0xff000000 : 0));
+                }
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(image, "png", out);
+            byte[] png = out.toByteArray();
+            Pixmap pixmap = new PngReader().readPixmap(png, 0, png.length);
+
+            for(int y = 0; y < image.getHeight(); y++){
+                for(int x = 0; x < image.getWidth(); x++){
+                    assertEquals(image.getRGB(x, y), argb(pixmap.get(x, y)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void pngBenchmark() throws IOException{
+        //not an actual benchmark, ignore
+        Pixmap pixmap = image(3840, 2160);
+        byte[] png = encode(pixmap, false);
+
+        long write = Long.MAX_VALUE, read = Long.MAX_VALUE;
+        for(int i = 0; i < 3; i++){
+            long start = Time.nanos();
+            encode(pixmap, false);
+            write = Math.min(write, Time.timeSinceNanos(start));
+
+            start = Time.nanos();
+            new PngReader().readPixmap(png, 0, png.length).dispose();
+            read = Math.min(read, Time.timeSinceNanos(start));
+        }
+
+        Log.info("4K PNG (@KB): written in @ms, read in @ms", png.length / 1024, write / 1000000, read / 1000000);
+    }
+
+    @Test
+    public void apixRoundTrip(){
+        Fi file = Fi.tempFile("apix");
+        for(int[] size : new int[][]{{1, 1}, {3, 7}, {300, 200}, {1000, 300}, {70000, 2}}){
+            Pixmap pixmap = image(size[0], size[1]);
+
+            for(boolean filter : new boolean[]{false, true}){
+                PixmapIO.writeApix(file, pixmap, filter);
+                Pixmap read = PixmapIO.readApix(file);
+                assertEquals(pixmap.width, read.width);
+                assertEquals(pixmap.height, read.height);
+                assertEquals(pixmap.pixels, read.pixels);
+            }
+        }
+        file.delete();
+    }
+
+    @Test
+    public void apixReadDeflate() throws IOException{
+        Pixmap pixmap = image(300, 200);
+        Fi file = Fi.tempFile("apix");
+
+        //the format before blocks were added
+        try(DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(file.write(false)))){
+            out.writeInt(pixmap.width);
+            out.writeInt(pixmap.height);
+            byte[] bytes = new byte[pixmap.pixels.capacity()];
+            pixmap.pixels.get(bytes);
+            pixmap.pixels.position(0);
+            out.write(bytes);
+        }
+
+        Pixmap read = PixmapIO.readApix(file);
+        assertEquals(pixmap.width, read.width);
+        assertEquals(pixmap.height, read.height);
+        assertEquals(pixmap.pixels, read.pixels);
+        file.delete();
+    }
+
+    @Test
+    public void apixBenchmark(){
+        //not an actual benchmark, ignore
+        Pixmap pixmap = image(3840, 2160);
+        Fi file = Fi.tempFile("apix");
+
+        long write = Long.MAX_VALUE, read = Long.MAX_VALUE;
+        for(int i = 0; i < 3; i++){
+            long start = Time.nanos();
+            PixmapIO.writeApix(file, pixmap);
+            write = Math.min(write, Time.timeSinceNanos(start));
+
+            start = Time.nanos();
+            PixmapIO.readApix(file).dispose();
+            read = Math.min(read, Time.timeSinceNanos(start));
+        }
+
+        Log.info("4K Apix (@KB): written in @ms, read in @ms", file.length() / 1024, write / 1000000, read / 1000000);
+        file.delete();
+    }
+}
@@ -0,0 +1,96 @@
+package math;
+
+import arc.math.*;
+import arc.math.geom.*;
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+public class ArcLengthTableTest{
+
+    Vec2[] points(int count){
+        Rand rand = new Rand(11);
+        Vec2[] points = new Vec2[count];
+        for(int i = 0; i < count; i++){
+            points[i] = new Vec2(i * 20f + rand.range(8f), rand.range(40f));
+        }
+        return points;
+    }
+
+    @Test
+    public void constantSpeed(){
+        CatmullRomSpline<Vec2> spline = new CatmullRomSpline<>(points(10), false);
+        ArcLengthTable table = new ArcLengthTable(spline, 64);
+
+        //reference arc length parameterization from dense sampling
+        int dense = 100000;
+        float[] lengths = new float[dense + 1];
+        Vec2 last = spline.valueAt(new Vec2(), 0f), next = new Vec2();
+        for(int i = 1; i <= dense; i++){
+            spline.valueAt(next, (float)i / dense);
+            lengths[i] = lengths[i - 1] + last.dst(next);
+            last.set(next);
+        }
+
+        assertEquals(lengths[dense], table.length(), lengths[dense] * 0.001f);
+
+        int index = 0;
+        for(int i = 0; i <= 100; i++){
+            float d = lengths[dense] * i / 100f;
+            while(index < dense && lengths[index + 1] < d) index++;
+            float expected = (float)index / dense;
+
+            assertEquals(expected, table.tAt(d), 0.001f);
+            assertEquals(expected, table.tAtPrecise(d), 0.001f);
+        }
+
+        assertTrue(table.positionAt(0f, next).within(spline.valueAt(last, 0f), 0.001f));
+        assertTrue(table.positionAt(table.length(), next).within(spline.valueAt(last, 1f), 0.001f));
+    }
+
+    @Test
+    public void lookupsAgree(){
+        Bezier<Vec2> bezier = new Bezier<>(new Vec2(0f, 0f), new Vec2(10f, 100f), new Vec2(90f, -50f), new Vec2(100f, 0f));
+        ArcLengthTable table = new ArcLengthTable(bezier, 256);
+
+        float[] distances = new float[50];
+        for(int i = 0; i < distances.length; i++){
+            distances[i] = table.length() * i / (distances.length - 1);
+        }
+
+        float[] ts = new float[distances.length], positions = new float[distances.length * 2];
+        table.tAt(distances, 0, distances.length, ts, 0);
+        table.positionsAt(distances, 0, distances.length, positions, 0);
+
+        Vec2 tmp = new Vec2();
+        for(int i = 0; i < distances.length; i++){
+            assertEquals(table.tAtPrecise(distances[i]), ts[i], 0.001f);
+            assertEquals(table.tAt(distances[i]), ts[i], 0.00001f);
+
+            table.positionAt(distances[i], tmp);
+            assertEquals(tmp.x, positions[i * 2], 0.001f);
+            assertEquals(tmp.y, positions[i * 2 + 1], 0.001f);
+        }
+    }
+
+    @Test
+    public void incrementalUpdate(){
+        for(boolean continuous : new boolean[]{false, true}){
+            Vec2[] points = points(12);
+            CatmullRomSpline<Vec2> spline = new CatmullRomSpline<>(points, continuous);
+            ArcLengthTable table = new ArcLengthTable(spline, 16);
+
+            for(int i = 0; i < points.length; i++){
+                points[i].add(5f, -7f * i);
+                table.updateControlPoint(i);
+
+                ArcLengthTable full = new ArcLengthTable(spline, 16);
+                assertEquals(full.length(), table.length(), 0f);
+                for(int j = 0; j <= 40; j++){
+                    float d = full.length() * j / 40f;
+                    assertEquals(full.tAt(d), table.tAt(d), 0f);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package math;
+
+import arc.math.*;
+import arc.math.geom.*;
+import arc.struct.*;
+import arc.util.async.*;
+import org.junit.*;
+
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class BatchIntersectorTest{
+    Rand rand = new Rand(7);
+
+    FloatSeq randomCircles(int count){
+        FloatSeq out = new FloatSeq();
+        for(int i = 0; i < count; i++){
+            out.add(rand.random(100f), rand.random(100f), rand.random(1f, 6f));
+        }
+        return out;
+    }
+
+    @Test
+    public void circles(){
+        FloatSeq a = randomCircles(300), b = randomCircles(200);
+        IntSeq out = new IntSeq();
+        new BatchIntersector().circles(a, b, out);
+
+        IntSeq expected = new IntSeq();
+        Circle c1 = new Circle(), c2 = new Circle();
+        for(int i = 0; i < 300; i++){
+            c1.set(a.get(i * 3), a.get(i * 3 + 1), a.get(i * 3 + 2));
+            for(int j = 0; j < 200; j++){
+                c2.set(b.get(j * 3), b.get(j * 3 + 1), b.get(j * 3 + 2));
+                if(c1.overlaps(c2)) expected.add(i, j);
+            }
+        }
+
+        assertTrue(expected.size > 0);
+        assertEquals(expected, out);
+    }
+
+    @Test
+    public void circlesSelf(){
+        FloatSeq a = randomCircles(250);
+        IntSeq out = new IntSeq();
+        new BatchIntersector().circles(a, out);
+
+        IntSeq expected = new IntSeq();
+        Circle c1 = new Circle(), c2 = new Circle();
+        for(int i = 0; i < 250; i++){
+            c1.set(a.get(i * 3), a.get(i * 3 + 1), a.get(i * 3 + 2));
+            for(int j = i + 1; j < 250; j++){
+                c2.set(a.get(j * 3), a.get(j * 3 + 1), a.get(j * 3 + 2));
+                if(c1.overlaps(c2)) expected.add(i, j);
+            }
+        }
+
+        assertEquals(expected, out);
+    }
+
+    @Test
+    public void segmentsRects(){
+        FloatSeq segments = new FloatSeq(), rects = new FloatSeq();
+        for(int i = 0; i < 200; i++){
+            float x = rand.random(100f), y = rand.random(100f);
+            segments.add(x, y, x + rand.range(20f), y + rand.range(20f));
+        }
+        //axis-aligned and degenerate segments
+        segments.addAll(10f, 10f, 10f, 90f, 5f, 50f, 95f, 50f);
+        segments.add(20f, 20f, 20f, 20f);
+        for(int i = 0; i < 100; i++){
+            rects.add(rand.random(100f), rand.random(100f), rand.random(1f, 8f), rand.random(1f, 8f));
+        }
+
+        IntSeq out = new IntSeq();
+        new BatchIntersector().segmentsRects(segments, rects, out);
+
+        IntSeq expected = new IntSeq();
+        Rect rect = new Rect();
+        int segmentCount = segments.size / 4;
+        for(int i = 0; i < segmentCount; i++){
+            for(int j = 0; j < 100; j++){
+                rect.set(rects.get(j * 4), rects.get(j * 4 + 1), rects.get(j * 4 + 2), rects.get(j * 4 + 3));
+                if(Intersector.intersectSegmentRectangle(segments.get(i * 4), segments.get(i * 4 + 1), segments.get(i * 4 + 2), segments.get(i * 4 + 3), rect)){
+                    expected.add(i, j);
+                }
+            }
+        }
+
+        assertTrue(expected.size > 0);
+        assertEquals(expected, out);
+    }
+
+    @Test
+    public void pointsInPolygon(){
+        float[] polygon = {0f, 0f, 50f, 10f, 100f, 0f, 80f, 60f, 100f, 100f, 20f, 80f, 40f, 40f};
+        FloatSeq points = new FloatSeq();
+        for(int i = 0; i < 2000; i++){
+            points.add(rand.random(-10f, 110f), rand.random(-10f, 110f));
+        }
+
+        IntSeq out = new IntSeq();
+        new BatchIntersector().pointsInPolygon(points, polygon, out);
+
+        IntSeq expected = new IntSeq();
+        for(int i = 0; i < 2000; i++){
+            if(Intersector.isInPolygon(polygon, 0, polygon.length, points.get(i * 2), points.get(i * 2 + 1))) expected.add(i);
+        }
+
+        assertTrue(expected.size > 0);
+        assertEquals(expected, out);
+    }
+
+    @Test
+    public void parallelMatchesSerial(){
+        ExecutorService exec = Threads.executor(4);
+        FloatSeq a = randomCircles(2000), b = randomCircles(500);
+
+        IntSeq serial = new IntSeq(), parallel = new IntSeq();
+        new BatchIntersector().circles(a, b, serial);
+        new BatchIntersector().parallel(exec, 100, 4).circles(a, b, parallel);
+        assertEquals(serial, parallel);
+
+        serial.clear();
+        parallel.clear();
+        new BatchIntersector().circles(a, serial);
+        new BatchIntersector().parallel(exec, 100, 4).circles(a, parallel);
+        assertEquals(serial, parallel);
+
+        exec.shutdown();
+    }
+}
@@ -0,0 +1,134 @@
+package math;
+
+import arc.math.*;
+import arc.struct.*;
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+public class IncrementalDelaunayTest{
+
+    /** Checks twin links, triangle orientation, the triangle count and the empty circumcircle property. */
+    void validate(IncrementalDelaunay tri){
+        int live = 0;
+        for(int t = 0; t < tri.triangleCapacity(); t++){
+            if(!tri.isTriangle(t)) continue;
+            live++;
+
+            for(int i = 0; i < 3; i++){
+                int e = 3 * t + i, o = tri.twin(e);
+                if(o == -1) continue;
+                assertEquals(e, tri.twin(o));
+                assertEquals(tri.origin(e), tri.origin(IncrementalDelaunay.next(o)));
+            }
+
+            int a = tri.vertex(t, 0), b = tri.vertex(t, 1), c = tri.vertex(t, 2);
+            if(a == -1 || b == -1 || c == -1) continue;
+
+            float ax = tri.getX(a), ay = tri.getY(a), bx = tri.getX(b), by = tri.getY(b), cx = tri.getX(c), cy = tri.getY(c);
+            assertTrue("triangle must be counter-clockwise", (bx - ax) * (cy - ay) - (by - ay) * (cx - ax) > 0);
+        }
+
+        //a triangulation of n points plus the super triangle has 2n + 1 triangles
+        assertEquals(2 * tri.size() + 1, live);
+
+        IntSeq triangles = tri.triangles(new IntSeq());
+        for(int i = 0; i < triangles.size; i += 3){
+            int a = triangles.get(i), b = triangles.get(i + 1), c = triangles.get(i + 2);
+            for(int p = 0; p < 2000; p++){
+                if(!tri.has(p) || p == a || p == b || p == c) continue;
+                assertFalse("circumcircle must be empty", inCircle(tri, a, b, c, p));
+            }
+        }
+    }
+
+    boolean inCircle(IncrementalDelaunay tri, int a, int b, int c, int d){
+        double dx = tri.getX(d), dy = tri.getY(d);
+        double adx = tri.getX(a) - dx, ady = tri.getY(a) - dy;
+        double bdx = tri.getX(b) - dx, bdy = tri.getY(b) - dy;
+        double cdx = tri.getX(c) - dx, cdy = tri.getY(c) - dy;
+        double det = (adx * adx + ady * ady) * (bdx * cdy - cdx * bdy)
+            + (bdx * bdx + bdy * bdy) * (cdx * ady - adx * cdy)
+            + (cdx * cdx + cdy * cdy) * (adx * bdy - bdx * ady);
+        return det > 1e-6;
+    }
+
+    @Test
+    public void randomInsertRemove(){
+        Rand rand = new Rand(5);
+        IncrementalDelaunay tri = new IncrementalDelaunay(0f, 0f, 100f, 100f);
+        IntSeq indices = new IntSeq();
+
+        for(int i = 0; i < 300; i++){
+            indices.add(tri.add(rand.random(100f), rand.random(100f)));
+        }
+        assertEquals(300, tri.size());
+        validate(tri);
+
+        for(int i = 0; i < 150; i++){
+            int index = indices.removeIndex(rand.random(indices.size - 1));
+            assertTrue(tri.remove(index));
+            assertFalse(tri.has(index));
+        }
+        assertEquals(150, tri.size());
+        validate(tri);
+
+        for(int i = 0; i < 100; i++){
+            tri.add(rand.random(100f), rand.random(100f));
+        }
+        validate(tri);
+    }
+
+    @Test
+    public void gridInsertRemove(){
+        //cocircular and collinear points exercise edge splits and degenerate holes
+        IncrementalDelaunay tri = new IncrementalDelaunay(0f, 0f, 20f, 20f);
+        FloatSeq points = new FloatSeq();
+        for(int x = 0; x <= 20; x++){
+            for(int y = 0; y <= 20; y++){
+                points.add(x, y);
+            }
+        }
+
+        IntSeq indices = new IntSeq();
+        tri.addAll(points, indices);
+        assertEquals(21 * 21, tri.size());
+        validate(tri);
+
+        //duplicates are not inserted again
+        assertEquals(indices.get(0), tri.add(0f, 0f));
+        assertEquals(21 * 21, tri.size());
+
+        for(int i = 0; i < indices.size; i += 3){
+            tri.remove(indices.get(i));
+        }
+        validate(tri);
+    }
+
+    @Test
+    public void locate(){
+        Rand rand = new Rand(9);
+        IncrementalDelaunay tri = new IncrementalDelaunay(-50f, -50f, 100f, 100f);
+        FloatSeq points = new FloatSeq();
+        for(int i = 0; i < 1000; i++){
+            points.add(rand.range(50f), rand.range(50f));
+        }
+        tri.addAll(points, null);
+        validate(tri);
+
+        for(int i = 0; i < 500; i++){
+            float x = rand.range(50f), y = rand.range(50f);
+            int t = tri.locate(x, y);
+            assertTrue(tri.isTriangle(t));
+
+            for(int j = 0; j < 3; j++){
+                int a = tri.vertex(t, j), b = tri.vertex(t, (j + 1) % 3);
+                if(a == -1 || b == -1) continue;
+                float ax = tri.getX(a), ay = tri.getY(a);
+                assertTrue((tri.getX(b) - ax) * (y - ay) - (tri.getY(b) - ay) * (x - ax) >= 0);
+            }
+        }
+
+        assertEquals(-1, tri.locate(100f, 0f));
+    }
+}
@@ -0,0 +1,105 @@
+package math;
+
+import arc.math.*;
+import arc.math.geom.*;
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+public class PolygonIndexTest{
+    Rand rand = new Rand(3);
+
+    /** Creates a star-shaped polygon with many edges. */
+    Polygon star(int points){
+        float[] vertices = new float[points * 2];
+        for(int i = 0; i < points; i++){
+            float angle = i * 360f / points, len = rand.random(20f, 100f);
+            vertices[i * 2] = Angles.trnsx(angle, len);
+            vertices[i * 2 + 1] = Angles.trnsy(angle, len);
+        }
+        Polygon polygon = new Polygon(vertices);
+        polygon.setPosition(50f, -20f);
+        return polygon;
+    }
+
+    @Test
+    public void contains(){
+        Polygon polygon = star(500);
+        PolygonIndex index = new PolygonIndex(polygon);
+
+        int inside = 0;
+        for(int i = 0; i < 20000; i++){
+            float x = rand.random(-80f, 180f), y = rand.random(-150f, 110f);
+            boolean expected = polygon.contains(x, y);
+            assertEquals(expected, index.contains(x, y));
+            if(expected) inside++;
+        }
+        assertTrue(inside > 0);
+
+        //vertices themselves must give the same result
+        float[] vertices = polygon.getTransformedVertices();
+        for(int i = 0; i < vertices.length; i += 2){
+            assertEquals(polygon.contains(vertices[i], vertices[i + 1]), index.contains(vertices[i], vertices[i + 1]));
+        }
+    }
+
+    @Test
+    public void segments(){
+        Polygon polygon = star(300);
+        PolygonIndex index = new PolygonIndex(polygon);
+        float[] v = polygon.getTransformedVertices();
+        Vec2 result = new Vec2(), tmp = new Vec2();
+
+        for(int i = 0; i < 3000; i++){
+            float x1 = rand.random(-80f, 180f), y1 = rand.random(-150f, 110f);
+            float x2 = x1 + rand.range(60f), y2 = y1 + rand.range(60f);
+
+            boolean expected = false;
+            float best = Float.MAX_VALUE;
+            for(int e = 0; e < v.length; e += 2){
+                if(Intersector.intersectSegments(x1, y1, x2, y2, v[e], v[e + 1], v[(e + 2) % v.length], v[(e + 3) % v.length], tmp)){
+                    expected = true;
+                    best = Math.min(best, tmp.dst(x1, y1));
+                }
+            }
+
+            assertEquals(expected, index.intersectsSegment(x1, y1, x2, y2));
+            assertEquals(expected, index.intersectSegment(x1, y1, x2, y2, result));
+            if(expected){
+                assertEquals(best, result.dst(x1, y1), 0.001f);
+            }
+        }
+    }
+
+    @Test
+    public void nearestEdge(){
+        Polygon polygon = star(400);
+        PolygonIndex index = new PolygonIndex(polygon);
+        float[] v = polygon.getTransformedVertices();
+
+        for(int i = 0; i < 3000; i++){
+            float x = rand.random(-200f, 300f), y = rand.random(-250f, 200f);
+
+            float best = Float.MAX_VALUE;
+            for(int e = 0; e < v.length; e += 2){
+                best = Math.min(best, Intersector.distanceSegmentPoint(v[e], v[e + 1], v[(e + 2) % v.length], v[(e + 3) % v.length], x, y));
+            }
+
+            assertEquals(best, index.distanceToEdge(x, y), 0.0001f);
+
+            int edge = index.nearestEdge(x, y) * 2;
+            assertEquals(best, Intersector.distanceSegmentPoint(v[edge], v[edge + 1], v[(edge + 2) % v.length], v[(edge + 3) % v.length], x, y), 0.0001f);
+        }
+    }
+
+    @Test
+    public void boundsCached(){
+        Polygon polygon = star(50);
+        Rect first = polygon.getBoundingRectangle();
+        float x = first.x;
+        assertSame(first, polygon.getBoundingRectangle());
+
+        polygon.translate(10f, 0f);
+        assertEquals(x + 10f, polygon.getBoundingRectangle().x, 0.0001f);
+    }
+}
@@ -0,0 +1,76 @@
+package math;
+
+import arc.math.*;
+import org.junit.*;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class RandTest{
+
+    @Test
+    public void bulkMatchesSequential(){
+        Rand a = new Rand(1234), b = new Rand(1234);
+
+        float[] floats = new float[100];
+        a.nextFloats(floats, 10, 80);
+        for(int i = 10; i < 90; i++){
+            assertEquals(b.nextFloat(), floats[i], 0f);
+        }
+        assertEquals(0f, floats[0], 0f);
+        assertEquals(0f, floats[99], 0f);
+
+        int[] ints = new int[100];
+        a.nextInts(ints, 37);
+        for(int value : ints){
+            assertEquals(b.nextInt(37), value);
+        }
+
+        assertEquals(b.nextLong(), a.nextLong());
+    }
+
+    @Test
+    public void shuffleIsPermutation(){
+        int[] items = new int[50];
+        for(int i = 0; i < items.length; i++) items[i] = i;
+
+        Rand a = new Rand(99), b = new Rand(99);
+        a.shuffle(items);
+
+        int[] expected = new int[50];
+        for(int i = 0; i < expected.length; i++) expected[i] = i;
+        for(int i = expected.length - 1; i > 0; i--){
+            int ii = b.nextInt(i + 1);
+            int temp = expected[i];
+            expected[i] = expected[ii];
+            expected[ii] = temp;
+        }
+        assertArrayEquals(expected, items);
+
+        int[] sorted = items.clone();
+        Arrays.sort(sorted);
+        for(int i = 0; i < sorted.length; i++) assertEquals(i, sorted[i]);
+    }
+
+    @Test
+    public void splitIsDeterministic(){
+        Rand a = new Rand(42), b = new Rand(42);
+        Rand a1 = a.split(), a2 = a.split();
+        Rand b1 = b.split(), b2 = b.split();
+
+        for(int i = 0; i < 100; i++){
+            assertEquals(b2.nextLong(), a2.nextLong());
+            assertEquals(b1.nextLong(), a1.nextLong());
+        }
+
+        //the first child continues the parent's original stream
+        Rand c = new Rand(42);
+        Rand c1 = c.split();
+        Rand reference = new Rand(42);
+        assertEquals(reference.nextLong(), c1.nextLong());
+
+        //siblings must not produce the same values
+        assertNotEquals(new Rand(42).split().nextLong(), c.split().nextLong());
+    }
+}
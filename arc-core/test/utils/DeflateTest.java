@@ -0,0 +1,117 @@
+package utils;
+
+import arc.util.*;
+import arc.util.io.*;
+import org.junit.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+import static org.junit.Assert.*;
+
+public class DeflateTest{
+
+    /** @return data that compresses about as well as a save file. */
+    static byte[] data(int length, long seed){
+        Random random = new Random(seed);
+        byte[] bytes = new byte[length];
+        for(int i = 0; i < length; ){
+            //runs of repeated bytes, random bytes and copies of earlier data
+            int run = Math.min(length - i, 1 + random.nextInt(64));
+            int type = random.nextInt(3);
+            for(int j = 0; j < run; j++){
+                bytes[i + j] = type == 0 ? (byte)run : type == 1 || i < 1000 ? (byte)random.nextInt(16) : bytes[i + j - 1000];
+            }
+            i += run;
+        }
+        return bytes;
+    }
+
+    static byte[] inflate(byte[] compressed) throws IOException{
+        return Streams.copyBytes(new InflaterInputStream(new ByteArrayInputStream(compressed)));
+    }
+
+    static byte[] deflate(byte[] data, int blockSize, ExecutorService executor, int maxBlocks, int level) throws IOException{
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try(ParallelDeflaterOutputStream stream = new ParallelDeflaterOutputStream(out, level, blockSize, executor, maxBlocks)){
+            //uneven writes, so that they cross block boundaries
+            int offset = 0, size = 1;
+            while(offset < data.length){
+                int count = Math.min(size, data.length - offset);
+                if(count == 1){
+                    stream.write(data[offset]);
+                }else{
+                    stream.write(data, offset, count);
+                }
+                offset += count;
+                size = size * 3 % 70001;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void roundTrip() throws IOException{
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try{
+            for(int length : new int[]{0, 1, 999, 1000, 1001, 5000, 100_000, 300_000}){
+                byte[] data = data(length, length);
+                for(int level : new int[]{Deflater.DEFAULT_COMPRESSION, 0, 1, 9}){
+                    assertArrayEquals(data, inflate(deflate(data, 1000, executor, 2, level)));
+                    assertArrayEquals(data, inflate(deflate(data, 64 * 1024, executor, 4, level)));
+                }
+            }
+        }finally{
+            executor.shutdown();
+        }
+
+        //the default constructor uses a shared pool
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] data = data(1_000_000, 1);
+        try(DataOutputStream stream = new DataOutputStream(new ParallelDeflaterOutputStream(out))){
+            stream.write(data);
+        }
+        assertArrayEquals(data, inflate(out.toByteArray()));
+    }
+
+    @Test
+    public void checksum() throws IOException{
+        byte[] data = data(1_000_000, 2);
+        Adler32 adler = new Adler32();
+        adler.update(data, 0, data.length);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try(ParallelDeflaterOutputStream stream = new ParallelDeflaterOutputStream(out)){
+            stream.write(data);
+        }
+        byte[] bytes = out.toByteArray();
+        int trailer = ((bytes[bytes.length - 4] & 0xff) << 24) | ((bytes[bytes.length - 3] & 0xff) << 16) | ((bytes[bytes.length - 2] & 0xff) << 8) | (bytes[bytes.length - 1] & 0xff);
+        assertEquals((int)adler.getValue(), trailer);
+    }
+
+    @Test
+    public void benchmark() throws IOException{
+        //not an actual benchmark, ignore
+        byte[] data = data(32 * 1024 * 1024, 3);
+
+        long start = Time.nanos();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try(DeflaterOutputStream stream = new DeflaterOutputStream(out)){
+            stream.write(data);
+        }
+        long single = Time.timeSinceNanos(start);
+        int singleSize = out.size();
+
+        start = Time.nanos();
+        out = new ByteArrayOutputStream();
+        try(ParallelDeflaterOutputStream stream = new ParallelDeflaterOutputStream(out)){
+            stream.write(data);
+        }
+        long parallel = Time.timeSinceNanos(start);
+
+        assertArrayEquals(data, inflate(out.toByteArray()));
+        Log.info("Deflated 32MB in @ms (@ bytes), in parallel in @ms (@ bytes)", single / 1000000, singleSize, parallel / 1000000, out.size());
+    }
+}
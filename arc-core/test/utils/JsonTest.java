@@ -0,0 +1,302 @@
+package utils;
+
+import arc.struct.*;
+import arc.util.*;
+import arc.util.serialization.*;
+import arc.util.serialization.JsonWriter.*;
+import org.junit.*;
+
+import java.io.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class JsonTest{
+
+    @Test
+    public void roundTripPrimitives(){
+        Json json = new Json();
+        Entity entity = entity(7);
+        Entity read = json.fromJson(Entity.class, json.toJson(entity));
+        assertEquals(entity, read);
+    }
+
+    @Test
+    public void readSpacedNames(){
+        Json json = new Json();
+        Entity read = json.fromJson(Entity.class, "{\"max health\": 40, flying: true, speed: 1.5, id: 12345678901}");
+        assertEquals(40, read.max_health);
+        assertTrue(read.flying);
+        assertEquals(1.5f, read.speed, 0f);
+        assertEquals(12345678901L, read.id);
+    }
+
+    @Test
+    public void readPrimitivesFromStrings(){
+        Json json = new Json();
+        Entity read = json.fromJson(Entity.class, "{health: \"30\", speed: \"2.5f\", flying: \"true\", max_health: 1.9}");
+        assertEquals(30, read.health);
+        assertEquals(2.5f, read.speed, 0f);
+        assertTrue(read.flying);
+        assertEquals(1, read.max_health);
+    }
+
+    @Test
+    public void primitiveSerializer(){
+        Json json = new Json();
+        json.setSerializer(int.class, new Json.Serializer<Integer>(){
+            @Override
+            public void write(Json json, Integer object, Class knownType){
+                json.writeValue(object);
+            }
+
+            @Override
+            public Integer read(Json json, JsonValue jsonData, Class type){
+                return jsonData.asInt() * 2;
+            }
+        });
+        assertEquals(20, json.fromJson(Entity.class, "{health: 10}").health);
+    }
+
+    @Test
+    public void skipsDefaults(){
+        Json json = new Json();
+        String text = json.toJson(new Entity());
+        assertEquals("{}", text);
+        Entity entity = new Entity();
+        entity.speed = 0f;
+        entity.flying = true;
+        text = json.toJson(entity);
+        assertEquals("{speed:0,flying:true}", text);
+    }
+
+    @Test
+    public void pullTokens(){
+        JsonPullReader reader = new JsonPullReader("// comment\n{a: 1, b: [x y, \"q\\\"\"]\n c: {}, d: -2.5e1 /* comment */, e: true, f: null}");
+        assertEquals(JsonPullReader.Token.startObject, reader.next());
+        assertEquals(JsonPullReader.Token.name, reader.next());
+        assertEquals("a", reader.getString());
+        assertEquals(JsonPullReader.Token.longValue, reader.next());
+        assertEquals(1, reader.getLong());
+        assertEquals(JsonPullReader.Token.name, reader.next());
+        assertEquals(JsonPullReader.Token.startArray, reader.next());
+        assertEquals(JsonPullReader.Token.string, reader.next());
+        assertEquals("x y", reader.getString());
+        assertEquals(JsonPullReader.Token.string, reader.next());
+        assertEquals("q\"", reader.getString());
+        assertEquals(JsonPullReader.Token.endArray, reader.next());
+        assertEquals(JsonPullReader.Token.name, reader.next());
+        assertEquals(JsonPullReader.Token.startObject, reader.next());
+        assertEquals(JsonPullReader.Token.endObject, reader.next());
+        assertEquals(JsonPullReader.Token.name, reader.next());
+        assertEquals(JsonPullReader.Token.doubleValue, reader.next());
+        assertEquals(-25.0, reader.getDouble(), 0.0);
+        assertEquals(JsonPullReader.Token.name, reader.next());
+        assertEquals(JsonPullReader.Token.booleanValue, reader.next());
+        assertTrue(reader.getBoolean());
+        assertEquals(JsonPullReader.Token.name, reader.next());
+        assertEquals(JsonPullReader.Token.nullValue, reader.next());
+        assertEquals(JsonPullReader.Token.endObject, reader.next());
+        assertEquals(JsonPullReader.Token.end, reader.next());
+    }
+
+    @Test
+    public void pullTreeMatchesReader(){
+        String[] documents = {
+            "{a:1,b:2}", "{a:1\nb:2}", "{a: hello world , b: x}", "{a: x:y}", "[1,2,]", "[,1]", "{a: foo//c\n}", "{a:1e5, b:-2, c:+3, d:1.5.5, f:-}",
+            "{a:\"x\\u0041\\n\"}", "[true,false,null,nullx]", "{a:[{b:[]}]}", "[1 2]", "{a:1 b:2}", "{a:}", "{a:99999999999999999999}", "123", "a", "",
+            "{a:9223372036854775807, b:-9223372036854775808, c:9223372036854775808}", "{a:x/}", "[\n1,\n2,\n]", "{a:1}\n/*x*/"
+        };
+        for(String document : documents){
+            JsonValue expected = new JsonReader().parse(document);
+            //one character at a time, to read tokens split between reads
+            JsonPullReader reader = new JsonPullReader(new Reader(){
+                int index;
+
+                @Override
+                public int read(char[] buffer, int offset, int length){
+                    if(index == document.length()) return -1;
+                    buffer[offset] = document.charAt(index++);
+                    return 1;
+                }
+
+                @Override
+                public void close(){
+                }
+            });
+            JsonValue actual = reader.next() == JsonPullReader.Token.end ? null : reader.readTree();
+            assertEquals(document, expected == null ? null : expected.toJson(OutputType.json), actual == null ? null : actual.toJson(OutputType.json));
+            assertEquals(JsonPullReader.Token.end, reader.next());
+        }
+
+        for(String invalid : new String[]{"{a:b,c}", "{a:{}b:1}", "[1] [2]", "{a:1}}", "{a:[1,,2]}", "{a:\"x\\q\"}", "{a:1", "{a:,b:1}"}){
+            try{
+                JsonPullReader reader = new JsonPullReader(invalid);
+                reader.next();
+                reader.readTree();
+                reader.next();
+                fail(invalid);
+            }catch(SerializationException ignored){
+            }
+        }
+    }
+
+    @Test
+    public void streamingMatchesTree(){
+        Json json = new Json();
+        json.addClassTag("entity", Entity.class);
+        json.setSerializer(Tagged.class, new Json.Serializer<Tagged>(){
+            @Override
+            public void write(Json json, Tagged object, Class knownType){
+                json.writeValue(object.value);
+            }
+
+            @Override
+            public Tagged read(Json json, JsonValue jsonData, Class type){
+                Tagged tagged = new Tagged();
+                tagged.value = jsonData.asString();
+                return tagged;
+            }
+        });
+
+        Everything everything = new Everything();
+        everything.entities = Seq.with(entity(1), entity(2));
+        everything.array = new Entity[]{entity(3)};
+        everything.floats = new float[]{1f, 2.5f};
+        everything.list = new ArrayList<>(Arrays.asList("a", "b c"));
+        everything.map = ObjectMap.of("x", entity(4));
+        everything.ints = new ObjectIntMap<>();
+        everything.ints.put("y", 5);
+        everything.hash = new HashMap<>();
+        everything.hash.put("z", 6);
+        everything.keyed = new IntMap<>();
+        everything.set = ObjectSet.with("s");
+        everything.tagged = new Tagged();
+        everything.tagged.value = "custom";
+        everything.serializable = new Custom();
+        everything.serializable.value = 7;
+        everything.any = entity(8);
+        everything.mode = Mode.second;
+        everything.letter = 'q';
+        everything.boxed = 9;
+        String text = json.toJson(everything);
+
+        Everything tree = json.fromJson(Everything.class, text);
+        json.setStreaming(true);
+        Everything streamed = json.fromJson(Everything.class, text);
+        Everything streamedReader = json.fromJson(Everything.class, new StringReader(text));
+        assertEquals(json.toJson(tree), json.toJson(streamed));
+        assertEquals(json.toJson(tree), json.toJson(streamedReader));
+        assertEquals(entity(8), streamed.any);
+        assertEquals(7, streamed.serializable.value);
+        assertEquals("custom", streamed.tagged.value);
+
+        //unknown fields are skipped, or fail when they are not ignored
+        assertEquals(3, json.fromJson(Entity.class, "{unknown: {a: [1, {b: 2}]}, health: 3}").health);
+        json.setIgnoreUnknownFields(false);
+        try{
+            json.fromJson(Entity.class, "{unknown: 1}");
+            fail();
+        }catch(SerializationException ignored){
+        }
+    }
+
+    @Test
+    public void benchmark(){
+        Json json = new Json();
+        Seq<Entity> entities = new Seq<>();
+        for(int i = 0; i < 2000; i++){
+            entities.add(entity(i));
+        }
+        Wrapper wrapper = new Wrapper();
+        wrapper.entities = entities;
+        String text = json.toJson(wrapper);
+
+        long writeNanos = Long.MAX_VALUE, readNanos = Long.MAX_VALUE;
+        for(int run = 0; run < 30; run++){
+            long start = Time.nanos();
+            text = json.toJson(wrapper);
+            writeNanos = Math.min(writeNanos, Time.timeSinceNanos(start));
+
+            start = Time.nanos();
+            Wrapper read = json.fromJson(Wrapper.class, text);
+            readNanos = Math.min(readNanos, Time.timeSinceNanos(start));
+            assertEquals(entities, read.entities);
+        }
+        Log.info("Json @ objects: toJson @us, fromJson @us", entities.size, writeNanos / 1000, readNanos / 1000);
+    }
+
+    static Entity entity(int i){
+        Entity entity = new Entity();
+        entity.health = i * 3;
+        entity.max_health = i * 7;
+        entity.speed = i * 0.25f;
+        entity.rotation = -i;
+        entity.flying = i % 2 == 0;
+        entity.id = i * 1000000007L;
+        entity.x = i / 3.0;
+        entity.name = "unit" + i;
+        return entity;
+    }
+
+    public enum Mode{
+        first, second
+    }
+
+    public static class Tagged{
+        public String value;
+    }
+
+    public static class Custom implements Json.JsonSerializable{
+        public int value;
+
+        @Override
+        public void write(Json json){
+            json.writeValue("v", value);
+        }
+
+        @Override
+        public void read(Json json, JsonValue jsonData){
+            value = jsonData.getInt("v");
+        }
+    }
+
+    public static class Everything{
+        public Seq<Entity> entities;
+        public Entity[] array;
+        public float[] floats;
+        public List<String> list;
+        public ObjectMap<String, Entity> map;
+        public ObjectIntMap<String> ints;
+        public HashMap<String, Integer> hash;
+        public IntMap<String> keyed;
+        public ObjectSet<String> set;
+        public Tagged tagged;
+        public Custom serializable;
+        public Object any;
+        public Mode mode;
+        public char letter;
+        public Integer boxed;
+    }
+
+    public static class Wrapper{
+        public Seq<Entity> entities;
+    }
+
+    public static class Entity{
+        public int health = 10, max_health = 10;
+        public float speed = 1f, rotation;
+        public boolean flying;
+        public long id;
+        public double x;
+        public String name;
+
+        @Override
+        public boolean equals(Object o){
+            if(!(o instanceof Entity)) return false;
+            Entity e = (Entity)o;
+            return health == e.health && max_health == e.max_health && speed == e.speed && rotation == e.rotation
+            && flying == e.flying && id == e.id && x == e.x && Structs.eq(name, e.name);
+        }
+    }
+}
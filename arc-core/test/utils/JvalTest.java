@@ -2,6 +2,7 @@ package utils;
 
 import arc.Files.*;
 import arc.files.*;
+import arc.math.*;
 import arc.util.*;
 import arc.util.serialization.*;
 import arc.util.serialization.Jval.*;
@@ -126,4 +127,106 @@ public class JvalTest{
         }
         Log.info("Time taken to parse H-json: @ms", Time.elapsed());
     }
+
+    @Test
+    public void parseNumbers(){
+        Jval val = Jval.read("a: 12, b: -0, c: 1.5, d: 1e3\ne: 9223372036854775807\nf: 9223372036854775808\ng: 0.1\nh: 2.2250738585072014E-308\ni: 123456789012345678\nj: 12 apples");
+        assertEquals(12L, val.get("a").asNumber());
+        assertEquals(0L, val.get("b").asNumber());
+        assertEquals(1.5, val.get("c").asNumber());
+        assertEquals(1000.0, val.get("d").asNumber());
+        assertEquals(Long.MAX_VALUE, val.get("e").asNumber());
+        assertEquals(9223372036854775808.0, val.get("f").asNumber());
+        assertEquals(0.1, val.get("g").asNumber());
+        assertEquals(2.2250738585072014E-308, val.get("h").asNumber());
+        assertEquals(123456789012345678L, val.get("i").asNumber());
+        assertEquals("12 apples", val.getString("j"));
+    }
+
+    @Test
+    public void parseStrings(){
+        Jval val = Jval.read("\"quoted name\": \"a\\tb\\u0041\", list: [{name: 1}, {name: 2}], 'unterminated': 'abc");
+        assertEquals("a\tbA", val.getString("quoted name"));
+        assertEquals("ab", val.getString("unterminated"));
+        //names are shared
+        assertSame(val.get("list").asArray().get(0).asObject().getKeyAt(0), val.get("list").asArray().get(1).asObject().getKeyAt(0));
+
+        assertEquals("text", Jval.read("text".getBytes()).asString());
+        assertEquals(5L, Jval.read("a: 5 \n".toCharArray(), 5).get("a").asNumber());
+    }
+
+    @Test
+    public void largeObjects(){
+        JsonMap map = new JsonMap();
+        for(int i = 0; i < 100; i++){
+            map.put("key" + i, Jval.valueOf(i));
+        }
+        assertEquals(100, map.size);
+        assertEquals(42, map.get("key42").asInt());
+        assertNull(map.get("key100"));
+
+        map.put("key42", Jval.valueOf(-1));
+        assertEquals(100, map.size);
+        assertEquals(-1, map.get("key42").asInt());
+
+        map.removeKey("key10");
+        assertFalse(map.containsKey("key10"));
+        assertEquals(10, map.indexOfKey("key11"));
+
+        map.insert(0, "first", Jval.TRUE);
+        assertEquals(0, map.indexOfKey("first"));
+        assertEquals(11, map.indexOfKey("key11"));
+    }
+
+    @Test
+    public void benchmarkCorpus(){
+        String corpus = corpus(3000);
+        String json = new Fi("generated.json", FileType.classpath).readString();
+
+        //the output is the same after a round trip
+        Jval val = Jval.read(corpus);
+        assertEquals(val, Jval.read(val.toString(Jformat.hjson)));
+
+        benchmark("Hjson corpus", corpus);
+        benchmark("generated.json", json);
+    }
+
+    static void benchmark(String name, String text){
+        long best = Long.MAX_VALUE;
+        for(int i = 0; i < 30; i++){
+            long start = Time.nanos();
+            Jval.read(text);
+            best = Math.min(best, Time.timeSinceNanos(start));
+        }
+        Log.info("Parsed @ (@KB) in @us, @MB/s", name, text.length() / 1024, best / 1000, (int)(text.length() * 1000.0 / best));
+    }
+
+    /** Generates content definitions, like the ones mods are made of. */
+    static String corpus(int entries){
+        Rand rand = new Rand(1);
+        String[] items = {"copper", "lead", "graphite", "silicon", "titanium", "thorium", "metaglass", "plastanium"};
+        StringBuilder out = new StringBuilder();
+        for(int i = 0; i < entries; i++){
+            out.append("# block ").append(i).append('\n');
+            out.append("block").append(i).append(": {\n");
+            out.append("  type: ").append(rand.chance(0.5) ? "GenericCrafter" : "Turret").append('\n');
+            out.append("  name: \"Block ").append(i).append("\"\n");
+            out.append("  description: A block that does things, number ").append(i).append(".\n");
+            out.append("  health: ").append(rand.random(50, 4000)).append('\n');
+            out.append("  size: ").append(rand.random(1, 4)).append(",\n");
+            out.append("  craftTime: ").append(rand.random(100f)).append('\n');
+            out.append("  hasPower: ").append(rand.nextBoolean()).append('\n');
+            out.append("  requirements: [");
+            for(int j = rand.random(1, 4); j > 0; j--){
+                out.append(items[rand.random(items.length - 1)]).append('/').append(rand.random(10, 200)).append(j > 1 ? ", " : "");
+            }
+            out.append("]\n");
+            out.append("  consumes: {\n    power: ").append(rand.random(0.1f, 10f)).append("\n    item: ").append(items[rand.random(items.length - 1)]).append("\n  }\n");
+            if(rand.chance(0.2)){
+                out.append("  details:\n    \'\'\'\n    Some lore about this block.\n    It spans lines.\n    \'\'\'\n");
+            }
+            out.append("}\n");
+        }
+        return out.toString();
+    }
 }
@@ -0,0 +1,70 @@
+package utils;
+
+import arc.util.*;
+import arc.util.io.*;
+import org.junit.*;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class Lz4Test{
+
+    static byte[] roundTrip(byte[] data){
+        byte[] compressed = new byte[Lz4.maxCompressedLength(data.length) + 3];
+        int length = new Lz4().compress(data, 0, data.length, compressed, 3);
+
+        byte[] result = new byte[data.length + 5];
+        Lz4.decompress(compressed, 3, length, result, 5, data.length);
+        assertArrayEquals(data, Arrays.copyOfRange(result, 5, result.length));
+        return Arrays.copyOfRange(compressed, 3, 3 + length);
+    }
+
+    @Test
+    public void roundTrip(){
+        Lz4 lz4 = new Lz4();
+        for(int length : new int[]{0, 1, 4, 12, 13, 14, 15, 16, 17, 100, 270, 1000, 65536, 70000, 300_000}){
+            byte[] random = new byte[length];
+            new Random(length).nextBytes(random);
+            assertTrue(roundTrip(random).length <= Lz4.maxCompressedLength(length));
+
+            byte[] zeroes = new byte[length];
+            byte[] compressed = roundTrip(zeroes);
+            if(length >= 1000) assertTrue(compressed.length < length / 50);
+
+            roundTrip(DeflateTest.data(length, length));
+
+            //a short repeating pattern, so matches overlap themselves
+            byte[] pattern = new byte[length];
+            for(int i = 0; i < length; i++) pattern[i] = (byte)(i % 3);
+            roundTrip(pattern);
+        }
+
+        //the same instance can compress again
+        byte[] data = DeflateTest.data(5000, 1), compressed = new byte[Lz4.maxCompressedLength(5000)];
+        assertEquals(lz4.compress(data, 0, data.length, compressed, 0), lz4.compress(data, 0, data.length, compressed, 0));
+    }
+
+    @Test
+    public void malformed(){
+        byte[] data = DeflateTest.data(5000, 2), compressed = new byte[Lz4.maxCompressedLength(5000)];
+        int length = new Lz4().compress(data, 0, data.length, compressed, 0);
+        Random random = new Random(3);
+
+        for(int i = 0; i < 200; i++){
+            byte[] broken = Arrays.copyOf(compressed, length);
+            broken[random.nextInt(length)] = (byte)random.nextInt();
+            try{
+                Lz4.decompress(broken, 0, i % 2 == 0 ? length : length - 1 - random.nextInt(length - 1), new byte[5000], 0, 5000);
+            }catch(ArcRuntimeException e){
+                //expected, but corrupt data doesn't always break the format
+            }
+        }
+
+        try{
+            Lz4.decompress(compressed, 0, length, new byte[4999], 0, 4999);
+            fail();
+        }catch(ArcRuntimeException e){
+        }
+    }
+}
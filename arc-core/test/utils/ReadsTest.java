@@ -0,0 +1,153 @@
+package utils;
+
+import arc.util.io.*;
+import org.junit.*;
+
+import java.io.*;
+import java.nio.*;
+import java.util.concurrent.atomic.*;
+
+import static org.junit.Assert.*;
+
+public class ReadsTest{
+    static final String unicode = "caf\u00e9 \u4e16\u754c \ud83d\ude00";
+
+    static void write(Writes w){
+        w.l(Long.MIN_VALUE);
+        w.i(-123456789);
+        w.s(-2);
+        w.s(65000);
+        w.b(-5);
+        w.b(200);
+        w.bool(true);
+        w.f(1.5f);
+        w.d(-Math.PI);
+        w.str(unicode);
+        w.b(new byte[]{9, 1, 2, 3, 9}, 1, 3);
+        w.v(300);
+        w.vi(-1);
+        w.vi(Integer.MIN_VALUE);
+        w.vl(Long.MAX_VALUE);
+        w.vl(-64);
+        w.lstr(unicode);
+        w.lstr(null);
+        w.lstr("");
+    }
+
+    static void read(Reads r){
+        assertEquals(Long.MIN_VALUE, r.l());
+        assertEquals(-123456789, r.i());
+        assertEquals(-2, r.s());
+        assertEquals(65000, r.us());
+        assertEquals(-5, r.b());
+        assertEquals(200, r.ub());
+        assertTrue(r.bool());
+        assertEquals(1.5f, r.f(), 0f);
+        assertEquals(-Math.PI, r.d(), 0.0);
+        assertEquals(unicode, r.str());
+        assertArrayEquals(new byte[]{1, 2, 3}, r.b(3));
+        assertEquals(300, r.v());
+        assertEquals(-1, r.vi());
+        assertEquals(Integer.MIN_VALUE, r.vi());
+        assertEquals(Long.MAX_VALUE, r.vl());
+        assertEquals(-64, r.vl());
+        assertEquals(unicode, r.lstr());
+        assertNull(r.lstr());
+        assertEquals("", r.lstr());
+        assertEquals(-1, r.checkEOF());
+    }
+
+    static byte[] streamBytes(){
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(new Writes(new DataOutputStream(out)));
+        return out.toByteArray();
+    }
+
+    @Test
+    public void sameFormat(){
+        byte[] expected = streamBytes();
+
+        ByteBufferWrites heap = new ByteBufferWrites(1), direct = ByteBufferWrites.direct(1);
+        write(heap);
+        write(direct);
+        assertArrayEquals(expected, heap.toBytes());
+        assertArrayEquals(expected, direct.toBytes());
+        assertTrue(direct.buffer.isDirect());
+
+        read(new Reads(new DataInputStream(new ByteArrayInputStream(expected))));
+        read(new ByteBufferReads(expected));
+        read(Reads.get(expected));
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(expected.length);
+        buffer.put(expected);
+        buffer.flip();
+        read(Reads.get(buffer));
+    }
+
+    @Test
+    public void reuse(){
+        ByteBufferWrites writes = new ByteBufferWrites(4);
+        writes.i(1);
+        writes.i(2);
+        assertEquals(8, writes.size());
+        writes.reset();
+        writes.i(3);
+        assertArrayEquals(new byte[]{0, 0, 0, 3}, writes.toBytes());
+
+        byte[] array = {0, 1, 2, 3, 4, 5};
+        ByteBufferReads reads = new ByteBufferReads(array, 2, 3);
+        assertEquals(2, reads.b());
+        reads.skip(10);
+        assertEquals(-1, reads.checkEOF());
+    }
+
+    @Test
+    public void longStrings(){
+        StringBuilder builder = new StringBuilder();
+        for(int i = 0; i < 60000; i++){
+            builder.append(unicode.charAt(i % unicode.length()));
+        }
+        String str = builder.toString();
+
+        ByteBufferWrites writes = new ByteBufferWrites();
+        writes.lstr(str);
+        try{
+            writes.str(str);
+            fail();
+        }catch(RuntimeException e){
+            assertTrue(e.getCause() instanceof UTFDataFormatException);
+        }
+        assertEquals(str, Reads.get(writes.toBytes()).lstr());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Writes.get(new DataOutputStream(out)).lstr(str);
+        assertArrayEquals(writes.toBytes(), out.toByteArray());
+    }
+
+    @Test
+    public void unpairedSurrogates(){
+        for(String str : new String[]{"a\ud800", "\ud83d", "\ude00b", "\u00e9\ud800"}){
+            ByteBufferWrites writes = new ByteBufferWrites();
+            writes.lstr(str);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Writes.get(new DataOutputStream(out)).lstr(str);
+            assertArrayEquals(out.toByteArray(), writes.toBytes());
+            assertEquals(str.replace('\ud800', '?').replace('\ud83d', '?').replace('\ude00', '?'), Reads.get(writes.toBytes()).lstr());
+        }
+    }
+
+    @Test
+    public void threadInstances() throws Exception{
+        Reads reads = Reads.get(new byte[0]);
+        assertSame(reads, Reads.get(new byte[0]));
+        Writes writes = Writes.get(null);
+
+        AtomicReference<Object> other = new AtomicReference<>();
+        Thread thread = new Thread(() -> other.set(Writes.get(null)));
+        thread.start();
+        thread.join();
+        assertNotNull(other.get());
+        assertNotSame(writes, other.get());
+    }
+}
@@ -0,0 +1,140 @@
+package utils;
+
+import arc.*;
+import arc.files.*;
+import org.junit.*;
+
+import java.io.*;
+
+import static org.junit.Assert.*;
+
+public class SettingsTest{
+    Fi directory;
+
+    @Before
+    public void setup() throws IOException{
+        directory = new Fi(java.nio.file.Files.createTempDirectory("settings").toFile());
+    }
+
+    @After
+    public void cleanup(){
+        directory.deleteDirectory();
+    }
+
+    JournalSettings create(){
+        JournalSettings settings = new JournalSettings();
+        settings.setDataDirectory(directory);
+        settings.setJournal(true);
+        settings.loadValues();
+        return settings;
+    }
+
+    @Test
+    public void journal(){
+        JournalSettings settings = create();
+        settings.put("bool", true);
+        settings.put("int", -5);
+        settings.put("long", Long.MIN_VALUE);
+        settings.put("float", 0.25f);
+        settings.put("string", "text");
+        settings.put("bytes", new byte[]{1, 2, 3});
+        settings.saveValues();
+        long size = settings.getJournalFile().length();
+
+        settings.put("int", 10);
+        settings.remove("string");
+        settings.saveValues();
+        assertTrue(settings.getJournalFile().length() > size);
+
+        JournalSettings loaded = create();
+        assertTrue(loaded.getBool("bool", false));
+        assertEquals(10, loaded.getInt("int", 0));
+        assertEquals(Long.MIN_VALUE, loaded.getLong("long", 0));
+        assertEquals(0.25f, loaded.getFloat("float", 0f), 0f);
+        assertFalse(loaded.has("string"));
+        assertArrayEquals(new byte[]{1, 2, 3}, loaded.getBytes("bytes"));
+        assertEquals(5, loaded.keySize());
+    }
+
+    @Test
+    public void recovery() throws IOException{
+        JournalSettings settings = create();
+        settings.put("a", 1);
+        settings.saveValues();
+        settings.put("b", 2);
+        settings.saveValues();
+        long size = settings.getJournalFile().length();
+        settings.put("a", 3);
+        settings.saveValues();
+
+        //cut off the last record, as if the game crashed while writing it
+        try(RandomAccessFile raf = new RandomAccessFile(settings.getJournalFile().file(), "rw")){
+            raf.setLength(raf.length() - 2);
+        }
+
+        JournalSettings loaded = create();
+        assertEquals(1, loaded.getInt("a", 0));
+        assertEquals(2, loaded.getInt("b", 0));
+        assertEquals(size, loaded.getJournalFile().length());
+
+        //corrupt the last record instead
+        loaded.put("a", 4);
+        loaded.saveValues();
+        try(RandomAccessFile raf = new RandomAccessFile(loaded.getJournalFile().file(), "rw")){
+            raf.seek(raf.length() - 1);
+            raf.write(99);
+        }
+
+        assertEquals(1, create().getInt("a", 0));
+    }
+
+    @Test
+    public void migrate(){
+        JournalSettings old = create();
+        old.setJournal(false);
+        old.put("key", "value");
+        old.saveValues();
+
+        JournalSettings settings = create();
+        assertEquals("value", settings.getString("key", null));
+        settings.saveValues();
+        assertTrue(settings.getJournalFile().exists());
+        assertEquals("value", create().getString("key", null));
+    }
+
+    @Test
+    public void compaction() throws Exception{
+        JournalSettings settings = create();
+        settings.setCompaction(1024, 0.5f);
+        settings.put("blob", new byte[512]);
+        for(int i = 0; i < 100; i++){
+            settings.put("counter", i);
+            settings.put("key" + (i % 4), "value" + i);
+            settings.saveValues();
+        }
+        settings.await();
+        //without compaction, the journal would be about 4KB
+        assertTrue(settings.getJournalFile().length() < 2048);
+        assertFalse(settings.getJournalTempFile().exists());
+
+        JournalSettings compacted = create();
+        assertEquals(99, compacted.getInt("counter", 0));
+        assertEquals("value99", compacted.getString("key3", null));
+        assertEquals(512, compacted.getBytes("blob").length);
+
+        settings.clear();
+        settings.put("last", true);
+        settings.saveValues();
+
+        JournalSettings loaded = create();
+        assertEquals(1, loaded.keySize());
+        assertTrue(loaded.getBool("last", false));
+    }
+
+    static class JournalSettings extends Settings{
+        /** Waits for background compaction. */
+        void await() throws Exception{
+            executor.submit(() -> {}).get();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package utils;
+
+import arc.files.*;
+import arc.struct.*;
+import arc.util.*;
+import org.junit.*;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.zip.*;
+
+import static org.junit.Assert.*;
+
+public class ZipFiTest{
+    static Fi zip(String... entries) throws IOException{
+        Fi file = Fi.tempFile("zipfi");
+        try(ZipOutputStream out = new ZipOutputStream(file.write(false))){
+            for(String name : entries){
+                out.putNextEntry(new ZipEntry(name));
+                if(!name.endsWith("/")){
+                    out.write(name.getBytes(StandardCharsets.UTF_8));
+                }
+                out.closeEntry();
+            }
+        }
+        return file;
+    }
+
+    static Seq<String> names(Fi[] files){
+        return Seq.with(files).map(Fi::name).sort();
+    }
+
+    @Test
+    public void tree() throws IOException{
+        Fi file = zip("a/b/c.txt", "a/d.txt", "e.txt", "f/", "f/g.txt", "h/");
+        ZipFi root = new ZipFi(file);
+
+        assertEquals(Seq.with("a", "e.txt", "f", "h"), names(root.list()));
+        assertNull(root.parent());
+
+        Fi a = root.child("a");
+        assertTrue(a.exists());
+        assertTrue(a.isDirectory());
+        assertEquals("a/", a.path());
+        assertSame(root, a.parent());
+        assertEquals(Seq.with("b", "d.txt"), names(a.list()));
+        assertSame(a.list(), a.list());
+
+        Fi c = a.child("b").child("c.txt");
+        assertFalse(c.isDirectory());
+        assertEquals("a/b/c.txt", c.path());
+        assertEquals("a/b/c.txt", c.readString());
+        assertSame(a, c.parent().parent());
+
+        assertEquals(Seq.with("g.txt"), names(root.child("f").list()));
+        assertEquals(0, root.child("h").list().length);
+        assertFalse(root.child("missing").exists());
+        assertFalse(root.child("e.txt").child("x").exists());
+        assertEquals(4, root.findAll().size);
+
+        root.delete();
+        file.delete();
+    }
+
+    @Test
+    public void cache() throws IOException{
+        Fi file = zip("a.txt", "b.txt");
+        ZipFi root = new ZipFi(file);
+        Fi a = root.child("a.txt");
+
+        byte[] bytes = a.readBytes();
+        assertArrayEquals("a.txt".getBytes(StandardCharsets.UTF_8), bytes);
+        //the cached bytes are not shared
+        bytes[0] = 0;
+        assertArrayEquals("a.txt".getBytes(StandardCharsets.UTF_8), a.readBytes());
+        assertEquals("a.txt", a.readString());
+
+        ZipFi.setCacheSize(0);
+        assertEquals("b.txt", root.child("b.txt").readString());
+        assertArrayEquals("b.txt".getBytes(StandardCharsets.UTF_8), root.child("b.txt").readBytes());
+        ZipFi.setCacheSize(16 * 1024 * 1024);
+
+        root.delete();
+        file.delete();
+    }
+
+    @Test
+    public void benchmark() throws IOException{
+        //not an actual benchmark, ignore
+        String[] names = new String[10000];
+        for(int i = 0; i < names.length; i++){
+            names[i] = "mod/sprites/" + (i % 20) + "/" + (i / 20 % 25) + "/sprite" + i + ".png";
+        }
+        Fi file = zip(names);
+
+        ZipFi root = null;
+        long best = Long.MAX_VALUE;
+        for(int i = 0; i < 5; i++){
+            if(root != null) root.delete();
+            long start = Time.nanos();
+            root = new ZipFi(file);
+            best = Math.min(best, Time.timeSinceNanos(start));
+        }
+
+        assertEquals(names.length, root.findAll().size);
+        assertEquals("mod/sprites/3/4/sprite83.png", root.child("mod").child("sprites").child("3").child("4").child("sprite83.png").readString());
+        Log.info("Opened zip with @ entries in @ms", names.length, best / 1000000f);
+
+        root.delete();
+        file.delete();
+    }
+}
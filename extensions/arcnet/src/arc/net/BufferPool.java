@@ -0,0 +1,78 @@
+package arc.net;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A thread safe pool of direct buffers of one size, shared by the TCP
+ * connections of a {@link Server} or {@link Client}.
+ * <p>
+ * When a pool is set, outgoing objects are serialized into a chain of
+ * segments taken from the pool instead of a fixed write buffer per
+ * connection, and the chain is written to the socket with a single gathering
+ * write. Since the segments are direct, the socket does not need to copy the
+ * bytes into a temporary buffer first, and since sent segments are returned to
+ * the pool, nothing is compacted. A connection holds no segments while it has
+ * nothing queued.
+ * @see Server#setBufferPool(BufferPool)
+ * @see Client#setBufferPool(BufferPool)
+ */
+public class BufferPool{
+    private final int segmentSize, maxFree;
+    private final ConcurrentLinkedQueue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger freeCount = new AtomicInteger(), allocated = new AtomicInteger();
+
+    /**
+     * @param segmentSize The size of each buffer. Must be at least as large as
+     * the largest object that will be sent.
+     * @param maxFree The maximum number of unused buffers to keep. Buffers
+     * freed beyond this are left to the garbage collector.
+     */
+    public BufferPool(int segmentSize, int maxFree){
+        if(segmentSize <= 0) throw new IllegalArgumentException("segmentSize must be positive.");
+        this.segmentSize = segmentSize;
+        this.maxFree = maxFree;
+    }
+
+    /** Uses 32KB segments and keeps up to 1024 of them. */
+    public BufferPool(){
+        this(32 * 1024, 1024);
+    }
+
+    /** Returns a cleared buffer, allocating one if the pool is empty. */
+    public ByteBuffer obtain(){
+        ByteBuffer buffer = free.poll();
+        if(buffer == null){
+            allocated.incrementAndGet();
+            return ByteBuffer.allocateDirect(segmentSize);
+        }
+        freeCount.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /** Returns a buffer obtained from this pool. */
+    public void free(ByteBuffer buffer){
+        if(freeCount.incrementAndGet() <= maxFree){
+            free.add(buffer);
+        }else{
+            freeCount.decrementAndGet();
+            allocated.decrementAndGet();
+        }
+    }
+
+    public int getSegmentSize(){
+        return segmentSize;
+    }
+
+    /** Returns the number of unused buffers in the pool. */
+    public int getFree(){
+        return freeCount.get();
+    }
+
+    /** Returns the number of buffers allocated by this pool that have not been discarded, including those in use. */
+    public int getAllocated(){
+        return allocated.get();
+    }
+}
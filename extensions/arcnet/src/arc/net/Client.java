@@ -11,6 +11,7 @@ import java.net.*;
 import java.nio.*;
 import java.nio.channels.*;
 import java.util.*;
+import java.util.concurrent.atomic.*;
 
 /**
  * Represents a TCP and optionally a UDP connection to a {@link Server}.
@@ -18,9 +19,15 @@ import java.util.*;
  */
 public class Client extends Connection implements EndPoint{
     private final NetSerializer serialization;
+    private final int writeBufferSize, objectBufferSize;
     private Selector selector;
-    private int emptySelects;
+    /** Lets sends wake up the selector only once between selects. */
+    private final AtomicBoolean awake = new AtomicBoolean();
     private volatile boolean tcpRegistered, udpRegistered;
+    private StreamCompression compression;
+    /** The compression offered by the server, and the settings this client accepted it with. */
+    private volatile int offeredCompression;
+    private volatile StreamCompression acceptedCompression;
     private Object tcpRegistrationLock = new Object();
     private Object udpRegistrationLock = new Object();
     private volatile boolean shutdown;
@@ -63,8 +70,11 @@ public class Client extends Connection implements EndPoint{
         endPoint = this;
 
         this.serialization = serialization;
+        this.writeBufferSize = writeBufferSize;
+        this.objectBufferSize = objectBufferSize;
 
-        initialize(serialization, writeBufferSize, objectBufferSize);
+        initialize(serialization, writeBufferSize, objectBufferSize, null);
+        tcp.awake = awake;
 
         try{
             selector = Selector.open();
@@ -77,6 +87,44 @@ public class Client extends Connection implements EndPoint{
         this.discoveryPacket = discoveryPacket;
     }
 
+    /**
+     * Sets a pool of direct buffers for queued TCP writes, or null to use a
+     * single write buffer. Must not be called while connected.
+     * @see BufferPool
+     */
+    public void setBufferPool(BufferPool pool){
+        if(isConnected) throw new IllegalStateException("Cannot change the buffer pool while connected.");
+        TcpConnection old = tcp;
+        old.close();
+        initialize(serialization, writeBufferSize, objectBufferSize, pool);
+        tcp.keepAliveMillis = old.keepAliveMillis;
+        tcp.timeoutMillis = old.timeoutMillis;
+        tcp.idleThreshold = old.idleThreshold;
+        tcp.metrics = old.metrics;
+        tcp.awake = awake;
+    }
+
+    /**
+     * Accepts compression of the TCP stream from servers that offer it with
+     * the same dictionary. Takes effect on the next connect. May be null to
+     * never compress, the default.
+     * @see StreamCompression
+     */
+    public void setCompression(StreamCompression compression){
+        this.compression = compression;
+    }
+
+    /**
+     * Records what this client sends and receives to the given metrics. May be
+     * null to stop recording, the default.
+     */
+    public void setMetrics(NetMetrics metrics){
+        super.setMetrics(metrics);
+        UdpConnection udp = this.udp;
+        if(udp != null)
+            udp.metrics = metrics;
+    }
+
     /**
      * Opens a TCP only client.
      * @see #connect(int, InetAddress, int, int)
@@ -123,10 +171,14 @@ public class Client extends Connection implements EndPoint{
         this.connectUdpPort = udpPort;
         close();
         id = -1;
+        offeredCompression = 0;
+        acceptedCompression = null;
         try{
-            if(udpPort != -1)
+            if(udpPort != -1){
                 udp = new UdpConnection(serialization,
                 tcp.readBuffer.capacity());
+                udp.metrics = metrics;
+            }
 
             long endTime;
             synchronized(updateLock){
@@ -179,6 +231,17 @@ public class Client extends Connection implements EndPoint{
                         + host + ":" + udpPort);
                 }
             }
+
+            StreamCompression compression = this.compression;
+            if(compression != null && offeredCompression == compression.id){
+                // The server compresses after receiving this reply, and tells
+                // the update thread where with one of its own.
+                acceptedCompression = compression;
+                RegisterTCP reply = new RegisterTCP();
+                reply.connectionID = id;
+                reply.compression = compression.id;
+                tcp.sendThenCompress(reply, compression);
+            }
         }catch(IOException ex){
             close();
             throw ex;
@@ -219,33 +282,27 @@ public class Client extends Connection implements EndPoint{
             // selector is used to bind the server
             // connection.
         }
-        long startTime = System.currentTimeMillis();
-        int select = 0;
-        if(timeout > 0){
-            select = selector.select(timeout);
-        }else{
-            select = selector.selectNow();
+        // Wait no longer than until a keep alive or timeout is due, so they
+        // are handled on time without polling.
+        long wait = timeout;
+        if(wait > 0 && isConnected){
+            long deadline = tcp.nextDeadline();
+            UdpConnection udp = this.udp;
+            if(udp != null && udpRegistered)
+                deadline = Math.min(deadline, udp.nextDeadline());
+            wait = Math.min(wait, deadline - System.currentTimeMillis());
         }
-        if(select == 0){
-            emptySelects++;
-            if(emptySelects == 100){
-                emptySelects = 0;
-                // NIO freaks and returns immediately with 0 sometimes, so try
-                // to keep from hogging the CPU.
-                long elapsedTime = System.currentTimeMillis() - startTime;
-                try{
-                    if(elapsedTime < 25)
-                        Thread.sleep(25 - elapsedTime);
-                }catch(InterruptedException ignored){
-                }
-            }
-        }else{
-            emptySelects = 0;
+        // Sends made from now on must wake up the select.
+        awake.set(false);
+        int select = wait > 0 ? selector.select(wait) : selector.selectNow();
+        NetMetrics metrics = this.metrics;
+        if(metrics != null)
+            metrics.selected(select);
+        if(select != 0){
             isClosed = false;
             Set<SelectionKey> keys = selector.selectedKeys();
             synchronized(keys){
                 for(Iterator<SelectionKey> iter = keys.iterator(); iter.hasNext(); ){
-                    keepAlive();
                     SelectionKey selectionKey = iter.next();
                     iter.remove();
                     try{
@@ -259,6 +316,7 @@ public class Client extends Connection implements EndPoint{
                                     if(!tcpRegistered){
                                         if(object instanceof RegisterTCP){
                                             id = ((RegisterTCP)object).connectionID;
+                                            offeredCompression = ((RegisterTCP)object).compression;
                                             synchronized(tcpRegistrationLock){
                                                 tcpRegistered = true;
                                                 tcpRegistrationLock.notifyAll();
@@ -270,6 +328,12 @@ public class Client extends Connection implements EndPoint{
                                         }
                                         continue;
                                     }
+                                    if(object instanceof RegisterTCP){
+                                        // Everything after the server's reply is compressed.
+                                        if(acceptedCompression != null)
+                                            tcp.startInflating(acceptedCompression);
+                                        continue;
+                                    }
                                     if(udp != null && !udpRegistered){
                                         if(object instanceof RegisterUDP){
                                             synchronized(udpRegistrationLock){
@@ -294,8 +358,10 @@ public class Client extends Connection implements EndPoint{
                                 notifyReceived(object);
                             }
                         }
-                        if((ops & SelectionKey.OP_WRITE) == SelectionKey.OP_WRITE)
+                        if((ops & SelectionKey.OP_WRITE) == SelectionKey.OP_WRITE){
                             tcp.writeOperation();
+                            updateWatermark();
+                        }
                     }catch(CancelledKeyException ignored){
                         // Connection is closed.
                     }
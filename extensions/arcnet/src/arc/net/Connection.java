@@ -7,6 +7,7 @@ import arc.net.FrameworkMessage.Ping;
 import java.io.IOException;
 import java.net.Socket;
 import java.net.*;
+import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
 
 /**
@@ -21,7 +22,7 @@ public class Connection{
     EndPoint endPoint;
     TcpConnection tcp;
     UdpConnection udp;
-    InetSocketAddress udpRemoteAddress;
+    volatile InetSocketAddress udpRemoteAddress;
     private NetListener[] listeners = {};
     private final Object listenerLock = new Object();
     private int lastPingID;
@@ -29,14 +30,19 @@ public class Connection{
     private int returnTripTime;
     volatile boolean isConnected;
     volatile ArcNetException lastProtocolError;
+    /** Held while the pending bytes are compared to the watermarks, but not while listeners are notified. */
+    private final Object watermarkLock = new Object();
+    /** Whether the pending bytes are above the watermark, what listeners were last told, and whether a thread is telling them. */
+    private boolean pendingHigh, notifiedHigh, notifyingWatermark;
     private Object arbitraryData;
+    NetMetrics metrics;
 
     protected Connection(){
     }
 
-    void initialize(NetSerializer serialization, int writeBufferSize, int objectBufferSize){
+    void initialize(NetSerializer serialization, int writeBufferSize, int objectBufferSize, BufferPool pool){
         tcp = new TcpConnection(serialization, writeBufferSize,
-        objectBufferSize);
+        objectBufferSize, pool);
     }
 
     /**
@@ -72,7 +78,9 @@ public class Connection{
         if(object == null) throw new IllegalArgumentException("object cannot be null.");
 
         try{
-            return tcp.send(object);
+            int length = tcp.send(object);
+            updateWatermark();
+            return length;
         }catch(IOException | ArcNetException ex){
             close(DcReason.error);
             ArcNet.handleError(ex);
@@ -88,11 +96,7 @@ public class Connection{
     public int sendUDP(Object object){
         if(object == null)
             throw new IllegalArgumentException("object cannot be null.");
-        SocketAddress address = udpRemoteAddress;
-        if(address == null && udp != null)
-            address = udp.connectedAddress;
-        if(address == null && isConnected)
-            throw new IllegalStateException("Connection is not connected via UDP.");
+        SocketAddress address = udpAddress();
 
         try{
             if(address == null) throw new SocketException("Connection is closed.");
@@ -105,9 +109,58 @@ public class Connection{
         }
     }
 
+    /**
+     * Queues a frame that was serialized with its length prefix, as done by
+     * {@link Server#sendToAllTCP(Object)}. Errors are handled the same way as
+     * in {@link #sendTCP(Object)}.
+     * @return The number of bytes sent.
+     */
+    int sendFrameTCP(ByteBuffer frame){
+        try{
+            int length = tcp.sendFrame(frame);
+            updateWatermark();
+            return length;
+        }catch(IOException | ArcNetException ex){
+            close(DcReason.error);
+            ArcNet.handleError(ex);
+            return 0;
+        }
+    }
+
+    /**
+     * Sends a serialized datagram, as done by {@link Server#sendToAllUDP(Object)}.
+     * Errors are handled the same way as in {@link #sendUDP(Object)}.
+     * @return The number of bytes sent.
+     */
+    int sendFrameUDP(ByteBuffer frame){
+        SocketAddress address = udpAddress();
+
+        try{
+            if(address == null) throw new SocketException("Connection is closed.");
+
+            return udp.sendFrame(frame, address);
+        }catch(IOException | ArcNetException ex){
+            close(DcReason.error);
+            ArcNet.handleError(ex);
+            return 0;
+        }
+    }
+
+    private SocketAddress udpAddress(){
+        SocketAddress address = udpRemoteAddress;
+        if(address == null && udp != null)
+            address = udp.connectedAddress;
+        if(address == null && isConnected)
+            throw new IllegalStateException("Connection is not connected via UDP.");
+        return address;
+    }
+
     public void close(DcReason reason){
         boolean wasConnected = isConnected;
         isConnected = false;
+        synchronized(watermarkLock){
+            pendingHigh = notifiedHigh = false;
+        }
         tcp.close();
         if(udp != null && udp.connectedAddress != null)
             udp.close();
@@ -233,6 +286,62 @@ public class Connection{
         }
     }
 
+    /**
+     * Notifies listeners if the pending TCP bytes crossed a watermark since
+     * the last call. Called after queueing and after writing to the socket.
+     * The check is made under a lock, so a sender that saw a full queue can't
+     * change the state after the writing thread drained it and checked; that
+     * check waits and changes it back. Listeners are notified outside the lock
+     * by one thread at a time, which keeps notifying until listeners were told
+     * the current state, so high and low alternate and end on the right one.
+     */
+    void updateWatermark(){
+        int high = tcp.highWatermark;
+        if(high <= 0) return;
+        synchronized(watermarkLock){
+            int pending = tcp.getPendingBytes();
+            if(!pendingHigh && pending >= high){
+                pendingHigh = true;
+            }else if(pendingHigh && pending <= tcp.lowWatermark){
+                pendingHigh = false;
+            }else{
+                return;
+            }
+            if(notifyingWatermark) return;
+            notifyingWatermark = true;
+        }
+
+        boolean done = false;
+        try{
+            while(true){
+                boolean notifyHigh;
+                synchronized(watermarkLock){
+                    if(notifiedHigh == pendingHigh){
+                        notifyingWatermark = false;
+                        done = true;
+                        return;
+                    }
+                    notifiedHigh = notifyHigh = !notifiedHigh;
+                }
+                NetListener[] listeners = this.listeners;
+                for(NetListener listener : listeners){
+                    if(notifyHigh){
+                        listener.pendingHigh(this);
+                    }else{
+                        listener.pendingLow(this);
+                    }
+                }
+            }
+        }finally{
+            // A listener threw; let the next call notify.
+            if(!done){
+                synchronized(watermarkLock){
+                    notifyingWatermark = false;
+                }
+            }
+        }
+    }
+
     void notifyReceived(Object object){
         if(object instanceof Ping){
             Ping ping = (Ping)object;
@@ -240,6 +349,8 @@ public class Connection{
                 if(ping.id == lastPingID - 1){
                     returnTripTime = (int)(System.currentTimeMillis()
                     - lastPingSendTime);
+                    if(metrics != null)
+                        metrics.rtt(returnTripTime);
                 }
             }else{
                 ping.isReply = true;
@@ -247,10 +358,14 @@ public class Connection{
             }
         }
 
+        NetMetrics metrics = this.metrics;
+        long startTime = metrics == null ? 0 : System.nanoTime();
         NetListener[] listeners = this.listeners;
         for(NetListener listener : listeners){
             listener.received(this, object);
         }
+        if(metrics != null)
+            metrics.dispatched(object.getClass(), System.nanoTime() - startTime);
     }
 
     /**
@@ -299,14 +414,89 @@ public class Connection{
      * socket, if any.
      */
     public int getTcpWriteBufferSize(){
-        return tcp.writeBuffer.position();
+        return tcp.getPendingBytes();
+    }
+
+    /**
+     * Returns the number of bytes that are waiting to be written to the TCP
+     * socket. Same as {@link #getTcpWriteBufferSize()}.
+     */
+    public int getPendingBytes(){
+        return tcp.getPendingBytes();
+    }
+
+    /**
+     * Sets the maximum number of bytes that may wait to be written to the TCP
+     * socket before the connection is closed. Only connections using a
+     * {@link BufferPool} can change this, as their queue grows on demand.
+     * Defaults to the write buffer size.
+     */
+    public void setMaxPendingBytes(int maxPendingBytes){
+        if(tcp.pool == null)
+            throw new IllegalStateException("The maximum can only be changed for connections using a buffer pool.");
+        if(maxPendingBytes <= 0)
+            throw new IllegalArgumentException("maxPendingBytes must be positive.");
+        tcp.maxPendingBytes = maxPendingBytes;
+    }
+
+    public int getMaxPendingBytes(){
+        return tcp.maxPendingBytes;
+    }
+
+    /**
+     * Enables {@link NetListener#pendingHigh(Connection)} and
+     * {@link NetListener#pendingLow(Connection)}. Once the bytes waiting to be
+     * written reach the high watermark, listeners are notified, and are not
+     * notified again until the bytes fall to the low watermark. This lets
+     * senders slow down before the queue overflows and the connection is
+     * closed. Set high to zero to disable, the default.
+     */
+    public void setPendingWatermarks(int low, int high){
+        if(high > 0 && low >= high)
+            throw new IllegalArgumentException("low must be less than high.");
+        tcp.lowWatermark = low;
+        tcp.highWatermark = high;
+        synchronized(watermarkLock){
+            pendingHigh = notifiedHigh = false;
+        }
+    }
+
+    /**
+     * Returns whether the TCP stream of this connection is compressed in both
+     * directions.
+     * @see StreamCompression
+     */
+    public boolean isCompressed(){
+        return tcp.isCompressed();
+    }
+
+    /**
+     * Returns the most bytes that were ever waiting to be written to the TCP
+     * socket of this connection.
+     */
+    public int getPendingHighWaterMark(){
+        return tcp.pendingHighWater;
+    }
+
+    /**
+     * Returns the metrics this connection records to, or null.
+     * @see Server#setMetrics(NetMetrics)
+     * @see Client#setMetrics(NetMetrics)
+     */
+    public NetMetrics getMetrics(){
+        return metrics;
+    }
+
+    void setMetrics(NetMetrics metrics){
+        this.metrics = metrics;
+        tcp.metrics = metrics;
     }
 
     /**
      * @see #setIdleThreshold(float)
      */
     public boolean isIdle(){
-        return tcp.writeBuffer.position() / (float)tcp.writeBuffer.capacity() < tcp.idleThreshold;
+        return tcp.getPendingBytes() / (float)tcp.maxPendingBytes < tcp.idleThreshold;
     }
 
     /**
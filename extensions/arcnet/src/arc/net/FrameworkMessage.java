@@ -13,6 +13,12 @@ public interface FrameworkMessage{
      */
     class RegisterTCP implements FrameworkMessage{
         public int connectionID;
+        /**
+         * Identifies the {@link StreamCompression} offered by the server, or
+         * accepted by the client when it sends this message back. 0 for none,
+         * which is also what serializers that don't write this field produce.
+         */
+        public int compression;
     }
 
     /**
@@ -4,6 +4,7 @@ package arc.net;
 
 import java.util.LinkedList;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Used to be notified about connection events.
@@ -43,6 +44,24 @@ public interface NetListener{
     default void idle(Connection connection){
     }
 
+    /**
+     * Called when the bytes waiting to be written to the TCP socket reach the
+     * {@link Connection#setPendingWatermarks(int, int) high watermark}. Senders
+     * should hold back non-essential objects until
+     * {@link #pendingLow(Connection)} is called. There is no guarantee as to
+     * what thread will invoke this method.
+     */
+    default void pendingHigh(Connection connection){
+    }
+
+    /**
+     * Called when the bytes waiting to be written fall back to the low
+     * watermark after {@link #pendingHigh(Connection)}. There is no guarantee
+     * as to what thread will invoke this method.
+     */
+    default void pendingLow(Connection connection){
+    }
+
     /**
      * Wraps a listener and queues notifications as {@link Runnable runnables}.
      * This allows the runnables to be processed on a different thread,
@@ -73,6 +92,14 @@ public interface NetListener{
             queue(() -> listener.idle(connection));
         }
 
+        public void pendingHigh(final Connection connection){
+            queue(() -> listener.pendingHigh(connection));
+        }
+
+        public void pendingLow(final Connection connection){
+            queue(() -> listener.pendingLow(connection));
+        }
+
         abstract protected void queue(Runnable runnable);
     }
 
@@ -105,6 +132,42 @@ public interface NetListener{
         }
     }
 
+    /**
+     * Wraps a listener and queues notification events until {@link #dispatch()}
+     * is called, such as once per frame on the game thread. The queue is lock
+     * free, so the network thread never waits for the game thread.
+     */
+    class PolledListener extends QueuedListener{
+        final ConcurrentLinkedQueue<Runnable> events = new ConcurrentLinkedQueue<>();
+        final AtomicInteger size = new AtomicInteger();
+
+        public PolledListener(NetListener listener){
+            super(listener);
+        }
+
+        public void queue(Runnable runnable){
+            events.add(runnable);
+            size.incrementAndGet();
+        }
+
+        /**
+         * Notifies the wrapped listener of every event queued before this call,
+         * on the calling thread. Events queued while dispatching are left for
+         * the next call.
+         * @return The number of events handled.
+         */
+        public int dispatch(){
+            int count = size.get();
+            for(int i = 0; i < count; i++){
+                Runnable runnable = events.poll();
+                if(runnable == null) return i;
+                size.decrementAndGet();
+                runnable.run();
+            }
+            return count;
+        }
+    }
+
     /**
      * Delays the notification of the wrapped listener to simulate lag on
      * incoming objects. Notification events are processed on a separate thread
@@ -0,0 +1,217 @@
+package arc.net;
+
+import arc.struct.*;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts what a {@link Server} or {@link Client} sends and receives, and how
+ * its sockets and selectors are used. Metrics are only collected once set with
+ * {@link Server#setMetrics(NetMetrics)} or {@link Client#setMetrics(NetMetrics)}.
+ * <p>
+ * Counters are striped, so the network threads and the threads sending objects
+ * can update them at once without contending. They are read with
+ * {@link #snapshot()}, which is not atomic: counters updated while it is taken
+ * may or may not be included.
+ */
+public class NetMetrics{
+    /** RTTs are counted per millisecond up to this; longer ones are counted as this. */
+    public static final int maxRtt = 1000;
+
+    private final ConcurrentHashMap<Class<?>, TypeCounters> types = new ConcurrentHashMap<>();
+    private final LongAdder partialWrites = new LongAdder(), writeOperations = new LongAdder(), wakeups = new LongAdder();
+    private final LongAdder selects = new LongAdder(), emptySelects = new LongAdder();
+    private final LongAccumulator pendingHighWater = new LongAccumulator(Math::max, 0);
+    private final AtomicLongArray rtt = new AtomicLongArray(maxRtt + 1);
+
+    void sent(Class<?> type, int messages, long bytes, long nanos){
+        TypeCounters counters = counters(type);
+        counters.messagesOut.add(messages);
+        counters.bytesOut.add(bytes);
+        counters.serializeNanos.add(nanos);
+    }
+
+    void received(Class<?> type, int bytes, long nanos){
+        TypeCounters counters = counters(type);
+        counters.messagesIn.increment();
+        counters.bytesIn.add(bytes);
+        counters.deserializeNanos.add(nanos);
+    }
+
+    void dispatched(Class<?> type, long nanos){
+        counters(type).dispatchNanos.add(nanos);
+    }
+
+    void pending(int bytes){
+        pendingHighWater.accumulate(bytes);
+    }
+
+    void partialWrite(){
+        partialWrites.increment();
+    }
+
+    void writeOperation(){
+        writeOperations.increment();
+    }
+
+    void wakeup(){
+        wakeups.increment();
+    }
+
+    void selected(int keys){
+        selects.increment();
+        if(keys == 0)
+            emptySelects.increment();
+    }
+
+    void rtt(int millis){
+        rtt.incrementAndGet(Math.max(0, Math.min(millis, maxRtt)));
+    }
+
+    private TypeCounters counters(Class<?> type){
+        TypeCounters counters = types.get(type);
+        return counters != null ? counters : types.computeIfAbsent(type, t -> new TypeCounters());
+    }
+
+    /** Returns the current value of every counter. */
+    public Snapshot snapshot(){
+        ObjectMap<Class<?>, TypeStats> stats = new ObjectMap<>();
+        for(Map.Entry<Class<?>, TypeCounters> entry : types.entrySet()){
+            stats.put(entry.getKey(), new TypeStats(entry.getValue()));
+        }
+        long[] rttCounts = new long[maxRtt + 1];
+        for(int i = 0; i <= maxRtt; i++){
+            rttCounts[i] = rtt.get(i);
+        }
+        return new Snapshot(stats, partialWrites.sum(), writeOperations.sum(), wakeups.sum(), selects.sum(), emptySelects.sum(), pendingHighWater.get(), rttCounts);
+    }
+
+    /** Sets every counter back to zero. */
+    public void reset(){
+        types.clear();
+        partialWrites.reset();
+        writeOperations.reset();
+        wakeups.reset();
+        selects.reset();
+        emptySelects.reset();
+        pendingHighWater.reset();
+        for(int i = 0; i <= maxRtt; i++){
+            rtt.set(i, 0);
+        }
+    }
+
+    private static class TypeCounters{
+        final LongAdder messagesOut = new LongAdder(), bytesOut = new LongAdder(), serializeNanos = new LongAdder();
+        final LongAdder messagesIn = new LongAdder(), bytesIn = new LongAdder(), deserializeNanos = new LongAdder();
+        final LongAdder dispatchNanos = new LongAdder();
+    }
+
+    /** Counters for the objects of one class. */
+    public static class TypeStats{
+        /**
+         * Bytes include length prefixes. Objects sent to many connections with
+         * {@link Server#sendToAllTCP(Object)} and similar methods count once
+         * per connection, but are only serialized once.
+         */
+        public final long messagesOut, bytesOut, serializeNanos;
+        public final long messagesIn, bytesIn, deserializeNanos;
+        /** Time spent notifying listeners of received objects, on the thread that read them. */
+        public final long dispatchNanos;
+
+        TypeStats(TypeCounters counters){
+            messagesOut = counters.messagesOut.sum();
+            bytesOut = counters.bytesOut.sum();
+            serializeNanos = counters.serializeNanos.sum();
+            messagesIn = counters.messagesIn.sum();
+            bytesIn = counters.bytesIn.sum();
+            deserializeNanos = counters.deserializeNanos.sum();
+            dispatchNanos = counters.dispatchNanos.sum();
+        }
+
+        @Override
+        public String toString(){
+            return "out: " + messagesOut + " (" + bytesOut + " bytes, " + serializeNanos / 1000 + "us), "
+            + "in: " + messagesIn + " (" + bytesIn + " bytes, " + deserializeNanos / 1000 + "us, dispatch " + dispatchNanos / 1000 + "us)";
+        }
+    }
+
+    /** The counters of a {@link NetMetrics} at one point in time. */
+    public static class Snapshot{
+        /** Counters per class of object sent or received. */
+        public final ObjectMap<Class<?>, TypeStats> types;
+        /** Sends that could not write everything queued to the socket, which then waits for OP_WRITE. */
+        public final long partialWrites;
+        /** Times a socket was selected for OP_WRITE. */
+        public final long writeOperations;
+        /** Times a sending thread woke up a selector. */
+        public final long wakeups;
+        /** Selects done by the network threads, and those that returned without any ready keys. */
+        public final long selects, emptySelects;
+        /** The most bytes ever waiting to be written to the socket of one connection. */
+        public final long pendingHighWater;
+        private final long[] rttCounts;
+        private final long rttSamples;
+
+        Snapshot(ObjectMap<Class<?>, TypeStats> types, long partialWrites, long writeOperations, long wakeups, long selects, long emptySelects,
+                 long pendingHighWater, long[] rttCounts){
+            this.types = types;
+            this.partialWrites = partialWrites;
+            this.writeOperations = writeOperations;
+            this.wakeups = wakeups;
+            this.selects = selects;
+            this.emptySelects = emptySelects;
+            this.pendingHighWater = pendingHighWater;
+            this.rttCounts = rttCounts;
+            long samples = 0;
+            for(long count : rttCounts){
+                samples += count;
+            }
+            this.rttSamples = samples;
+        }
+
+        /** Returns the number of RTTs measured with {@link Connection#updateReturnTripTime()}. */
+        public long getRttSamples(){
+            return rttSamples;
+        }
+
+        /**
+         * Returns the RTT in milliseconds that the given fraction of samples
+         * were at or below, or -1 if there are none.
+         * @param percentile From 0 to 1, such as 0.99 for the 99th percentile.
+         */
+        public int getRttPercentile(float percentile){
+            if(rttSamples == 0)
+                return -1;
+            long target = Math.max(1, (long)Math.ceil(rttSamples * percentile));
+            long count = 0;
+            for(int i = 0; i <= maxRtt; i++){
+                count += rttCounts[i];
+                if(count >= target)
+                    return i;
+            }
+            return maxRtt;
+        }
+
+        @Override
+        public String toString(){
+            StringBuilder builder = new StringBuilder();
+            for(ObjectMap.Entry<Class<?>, TypeStats> entry : types){
+                builder.append(entry.key.getSimpleName()).append(": ").append(entry.value).append('\n');
+            }
+            builder.append("partial writes: ").append(partialWrites)
+            .append(", write operations: ").append(writeOperations)
+            .append(", wakeups: ").append(wakeups)
+            .append(", selects: ").append(selects).append(" (").append(emptySelects).append(" empty)")
+            .append(", pending high water: ").append(pendingHighWater);
+            if(rttSamples > 0){
+                builder.append(", rtt p50/p90/p99: ").append(getRttPercentile(0.5f)).append('/')
+                .append(getRttPercentile(0.9f)).append('/').append(getRttPercentile(0.99f)).append("ms");
+            }
+            return builder.toString();
+        }
+    }
+}
@@ -0,0 +1,667 @@
+package arc.net;
+
+import arc.func.*;
+import arc.struct.*;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static arc.net.Varints.*;
+
+/**
+ * Replicates the state of many objects from a server to its clients, sending
+ * each client only the fields that changed since the last state it
+ * acknowledged.
+ * <p>
+ * Each object has an ID and a type, which determines how many float fields it
+ * has and how precisely each one is sent. Once per tick, the server calls
+ * {@link #update()} to capture the fields of every added object, then
+ * {@link #send(Connection)} for each client. A {@link Packet} lists the
+ * objects that were added, changed or removed relative to the last tick the
+ * client acknowledged, with a bitmask of the changed fields of each object.
+ * Fields are quantized to their precision and sent as variable length
+ * differences, so small changes take a byte or two. Objects that did not
+ * change cost nothing, and are not even compared field by field, since the
+ * state of an object is only copied when it changes.
+ * <p>
+ * Packets are sent over UDP when the connection has it, and may be lost or
+ * arrive out of order. Clients acknowledge every packet they apply with an
+ * {@link Ack}. Since each packet is relative to an acknowledged tick, a lost
+ * packet only means later ones include its changes too. When a client has not
+ * acknowledged any of the last {@link #history} ticks, it is sent a full
+ * snapshot instead.
+ * <p>
+ * Packets bigger than {@link #setMaxPacketSize(int)} are sent as several
+ * fragments, which the client puts back together before applying them. A full
+ * snapshot of a big world can be much larger than a datagram or the buffers of
+ * a connection. If any fragment is lost, the client never acknowledges the
+ * tick, and is sent the next one relative to an older tick instead.
+ * <p>
+ * The same class is used on both sides, which must register the same
+ * types with {@link #addType(int, float...)} and add the replication as a
+ * listener of the {@link Server} or {@link Client}. The {@link NetSerializer}
+ * must write packets and acks with {@link Packet#write(ByteBuffer)} and
+ * {@link Ack#write(ByteBuffer)}, and read them with the matching read methods.
+ * <p>
+ * {@link #update()} and {@link #send(Connection)} must be called on one thread.
+ * The client's {@link Listener} is notified on its update thread.
+ */
+public class Replication implements NetListener{
+    /** The number of ticks kept as baselines for deltas. */
+    public static final int history = 32;
+    /** The maximum number of fields of a type. */
+    public static final int maxFields = 32;
+
+    private final IntMap<Type> types = new IntMap<>();
+
+    // Server state.
+    private final IntMap<Entity> entities = new IntMap<>();
+    private Entity[] sorted = {};
+    /** The IDs of the last tick, shared by every following tick until an object is added or removed. */
+    private int[] ids = {};
+    private boolean entitiesChanged;
+    private final State[] states = new State[history];
+    private int tick;
+    private final IntMap<Remote> remotes = new IntMap<>();
+    private ByteBuffer encodeBuffer = ByteBuffer.allocate(1024);
+    private int maxPacketSize = 1024;
+
+    // Client state.
+    private final State[] received = new State[history];
+    private State latest;
+    /** The fragments of the newest packet that was split, until all of them arrive. */
+    private Fragments fragments;
+    private Listener listener;
+
+    /**
+     * Registers a type of object on this side.
+     * @param precision How precisely each field is sent. A field is sent as the
+     * nearest multiple of its precision, so 0.01 keeps two decimals. Fields
+     * with a precision of 0 are sent exactly, but take more bytes when they
+     * change.
+     */
+    public void addType(int type, float... precision){
+        if(type < 0)
+            throw new IllegalArgumentException("type cannot be negative.");
+        if(precision.length > maxFields)
+            throw new IllegalArgumentException("A type can have at most " + maxFields + " fields.");
+        types.put(type, new Type(precision.clone()));
+    }
+
+    /**
+     * Adds an object to replicate, starting with the next {@link #update()}.
+     * @param source Writes the current value of each field of the object into
+     * the array it is given, which is reused.
+     */
+    public void add(int id, int type, Cons<float[]> source){
+        if(!types.containsKey(type))
+            throw new IllegalArgumentException("Unknown type: " + type);
+        entities.put(id, new Entity(id, type, source));
+        entitiesChanged = true;
+    }
+
+    /** Stops replicating an object. Clients are told it was removed. */
+    public void remove(int id){
+        if(entities.remove(id) != null)
+            entitiesChanged = true;
+    }
+
+    /** Captures the state of all added objects as the next tick. */
+    public void update(){
+        if(entitiesChanged){
+            if(sorted.length < entities.size)
+                sorted = new Entity[Math.max(entities.size, sorted.length * 2)];
+            int i = 0;
+            for(Entity entity : entities.values()){
+                sorted[i++] = entity;
+            }
+            Arrays.fill(sorted, i, sorted.length, null);
+            Arrays.sort(sorted, 0, i, (a, b) -> Integer.compare(a.id, b.id));
+            ids = new int[i];
+            for(int j = 0; j < i; j++){
+                ids[j] = sorted[j].id;
+            }
+            entitiesChanged = false;
+        }
+
+        int size = ids.length;
+        State state = new State(tick + 1, size, ids, new Value[size]);
+        for(int i = 0; i < size; i++){
+            Entity entity = sorted[i];
+            state.values[i] = entity.capture(types.get(entity.type));
+        }
+        tick = state.tick;
+        states[tick % history] = state;
+    }
+
+    /**
+     * Creates a packet with everything that changed for a client since the last
+     * tick it acknowledged, or everything when there is no such tick.
+     * @throws IllegalStateException if {@link #update()} has never been called.
+     */
+    public Packet packet(Connection connection){
+        State state = states[tick % history];
+        if(state == null)
+            throw new IllegalStateException("update() must be called before sending.");
+
+        int acked = remote(connection.id).acked;
+        State baseline = acked > 0 && tick - acked < history ? states[acked % history] : null;
+        if(baseline != null && baseline.tick != acked)
+            baseline = null;
+
+        while(true){
+            ByteBuffer buffer = encodeBuffer;
+            buffer.clear();
+            try{
+                encode(buffer, state, baseline);
+                break;
+            }catch(BufferOverflowException ex){
+                encodeBuffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            }
+        }
+        ByteBuffer buffer = encodeBuffer;
+        byte[] data = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(data);
+        return new Packet(data);
+    }
+
+    /**
+     * Sends a {@link #packet(Connection) packet} over UDP, or TCP if the
+     * connection has no UDP, split into {@link #split(Packet) fragments} if it
+     * is too big.
+     */
+    public void send(Connection connection){
+        for(Packet packet : split(packet(connection))){
+            if(connection.udp != null)
+                connection.sendUDP(packet);
+            else
+                connection.sendTCP(packet);
+        }
+    }
+
+    /**
+     * Splits a packet into fragments that are at most
+     * {@link #setMaxPacketSize(int) the maximum size}, or returns just the
+     * packet if it is small enough. The client applies the packet once it has
+     * received every fragment, in any order.
+     */
+    public Packet[] split(Packet packet){
+        if(packet.data.length <= maxPacketSize)
+            return new Packet[]{packet};
+
+        ByteBuffer data = ByteBuffer.wrap(packet.data);
+        int tick = getVarint(data), back = getVarint(data);
+        // Skip the fragment count of the whole packet.
+        getVarint(data);
+        int bodyStart = data.position(), bodyLength = packet.data.length - bodyStart;
+
+        // Each fragment has the tick, baseline, count and index, which take at most 5 bytes each.
+        int chunk = maxPacketSize - 20;
+        int count = (bodyLength + chunk - 1) / chunk;
+        Packet[] result = new Packet[count];
+        ByteBuffer buffer = ByteBuffer.allocate(maxPacketSize);
+        for(int i = 0; i < count; i++){
+            int offset = i * chunk, length = Math.min(chunk, bodyLength - offset);
+            buffer.clear();
+            putVarint(buffer, tick);
+            putVarint(buffer, back);
+            putVarint(buffer, count);
+            putVarint(buffer, i);
+            buffer.put(packet.data, bodyStart + offset, length);
+            result[i] = new Packet(Arrays.copyOf(buffer.array(), buffer.position()));
+        }
+        return result;
+    }
+
+    /**
+     * Sets the size above which {@link #send(Connection)} splits packets into
+     * fragments. Packets are sent with the object buffer of the connection, so
+     * this must leave room for the framing of the {@link NetSerializer}.
+     * Defaults to 1024 bytes, which also fits in the MTU of most networks.
+     */
+    public void setMaxPacketSize(int bytes){
+        if(bytes < 64)
+            throw new IllegalArgumentException("The maximum packet size must be at least 64 bytes.");
+        maxPacketSize = bytes;
+    }
+
+    /** Sets the listener that is notified of the state received by a client. */
+    public void setListener(Listener listener){
+        this.listener = listener;
+    }
+
+    @Override
+    public void received(Connection connection, Object object){
+        if(object instanceof Ack){
+            Remote remote;
+            synchronized(remotes){
+                remote = remotes.get(connection.id);
+            }
+            int tick = ((Ack)object).tick;
+            if(remote != null && tick > remote.acked)
+                remote.acked = tick;
+        }else if(object instanceof Packet){
+            int tick = apply((Packet)object);
+            if(tick != 0){
+                Ack ack = new Ack();
+                ack.tick = tick;
+                if(connection.udp != null)
+                    connection.sendUDP(ack);
+                else
+                    connection.sendTCP(ack);
+            }
+        }
+    }
+
+    @Override
+    public void disconnected(Connection connection, DcReason reason){
+        synchronized(remotes){
+            remotes.remove(connection.id);
+        }
+        if(connection instanceof Client){
+            Arrays.fill(received, null);
+            latest = null;
+            fragments = null;
+        }
+    }
+
+    private Remote remote(int id){
+        synchronized(remotes){
+            Remote remote = remotes.get(id);
+            if(remote == null)
+                remotes.put(id, remote = new Remote());
+            return remote;
+        }
+    }
+
+    private void encode(ByteBuffer buffer, State state, State baseline){
+        putVarint(buffer, state.tick);
+        putVarint(buffer, baseline == null ? 0 : state.tick - baseline.tick);
+        // Not a fragment.
+        putVarint(buffer, 0);
+
+        // Count first, so the counts can precede the entries.
+        int changed = 0, removed = 0;
+        int size = state.size, baseSize = baseline == null ? 0 : baseline.size;
+        // When no objects were added or removed, the IDs are shared and only
+        // values need comparing.
+        boolean sameIDs = baseline != null && baseline.ids == state.ids;
+        if(sameIDs){
+            Value[] values = state.values, baseValues = baseline.values;
+            for(int i = 0; i < size; i++){
+                if(values[i] != baseValues[i])
+                    changed++;
+            }
+        }else{
+            for(int i = 0, j = 0; i < size || j < baseSize; ){
+                if(j >= baseSize || (i < size && state.ids[i] < baseline.ids[j])){
+                    changed++;
+                    i++;
+                }else if(i >= size || state.ids[i] > baseline.ids[j]){
+                    removed++;
+                    j++;
+                }else{
+                    if(state.values[i] != baseline.values[j])
+                        changed++;
+                    i++;
+                    j++;
+                }
+            }
+        }
+
+        putVarint(buffer, changed);
+        int last = 0;
+        boolean first = true;
+        for(int i = 0, j = 0; i < size && changed > 0; i++){
+            Value value = state.values[i], base;
+            if(sameIDs){
+                base = baseline.values[i];
+            }else{
+                while(j < baseSize && baseline.ids[j] < state.ids[i])
+                    j++;
+                base = j < baseSize && baseline.ids[j] == state.ids[i] ? baseline.values[j] : null;
+            }
+            if(value == base)
+                continue;
+            changed--;
+
+            putVarint(buffer, first ? zigzag(state.ids[i]) : state.ids[i] - last);
+            last = state.ids[i];
+            first = false;
+
+            int[] fields = value.fields;
+            if(base == null || base.type != value.type){
+                putVarlong(buffer, ((long)value.type << 1) | 1);
+                for(int field : fields){
+                    putVarint(buffer, zigzag(field));
+                }
+            }else{
+                int[] baseFields = base.fields;
+                int mask = 0;
+                for(int f = 0; f < fields.length; f++){
+                    if(fields[f] != baseFields[f])
+                        mask |= 1 << f;
+                }
+                putVarlong(buffer, (mask & 0xffffffffL) << 1);
+                for(int f = 0; f < fields.length; f++){
+                    if(fields[f] != baseFields[f])
+                        putVarint(buffer, zigzag(fields[f] - baseFields[f]));
+                }
+            }
+        }
+
+        putVarint(buffer, removed);
+        last = 0;
+        first = true;
+        for(int i = 0, j = 0; j < baseSize && removed > 0; j++){
+            while(i < size && state.ids[i] < baseline.ids[j])
+                i++;
+            if(i < size && state.ids[i] == baseline.ids[j])
+                continue;
+            putVarint(buffer, first ? zigzag(baseline.ids[j]) : baseline.ids[j] - last);
+            last = baseline.ids[j];
+            first = false;
+            removed--;
+        }
+    }
+
+    /**
+     * Decodes a packet and notifies the listener of the differences with the
+     * last applied state.
+     * @return The tick of the packet, or 0 if it was stale, its baseline is
+     * no longer known, or it is a fragment of a packet that is not complete.
+     */
+    private int apply(Packet packet){
+        ByteBuffer buffer = ByteBuffer.wrap(packet.data);
+        int tick = getVarint(buffer), back = getVarint(buffer), count = getVarint(buffer);
+        if(latest != null && tick <= latest.tick)
+            return 0;
+
+        if(count > 0){
+            Fragments fragments = this.fragments;
+            if(fragments == null || fragments.tick < tick){
+                this.fragments = fragments = new Fragments(tick, count);
+            }else if(fragments.tick > tick){
+                return 0;
+            }
+            int index = getVarint(buffer);
+            if(count != fragments.data.length || index < 0 || index >= count)
+                throw new ArcNetException("Invalid replication fragment: " + index + " of " + count);
+            if(!fragments.add(index, buffer))
+                return 0;
+            this.fragments = null;
+            buffer = fragments.join();
+        }
+
+        State baseline = null;
+        if(back != 0){
+            baseline = received[(tick - back) % history];
+            if(baseline == null || baseline.tick != tick - back)
+                return 0;
+        }
+        int baseSize = baseline == null ? 0 : baseline.size;
+
+        int changed = getVarint(buffer);
+        int[] changedIDs = new int[changed];
+        Value[] changedValues = new Value[changed];
+        for(int c = 0, last = 0, j = 0; c < changed; c++){
+            int id = c == 0 ? unzigzag(getVarint(buffer)) : last + getVarint(buffer);
+            last = id;
+            while(j < baseSize && baseline.ids[j] < id)
+                j++;
+
+            long header = getVarlong(buffer);
+            Value value;
+            if((header & 1) != 0){
+                int type = (int)(header >>> 1);
+                Type info = types.get(type);
+                if(info == null)
+                    throw new ArcNetException("Unknown replicated type: " + type);
+                value = new Value(type, new int[info.precision.length]);
+                for(int f = 0; f < value.fields.length; f++){
+                    value.fields[f] = unzigzag(getVarint(buffer));
+                }
+            }else{
+                if(j >= baseSize || baseline.ids[j] != id)
+                    throw new ArcNetException("Delta for unknown replicated object: " + id);
+                Value base = baseline.values[j];
+                value = new Value(base.type, base.fields.clone());
+                int mask = (int)(header >>> 1);
+                for(int f = 0; f < value.fields.length; f++){
+                    if((mask & (1 << f)) != 0)
+                        value.fields[f] += unzigzag(getVarint(buffer));
+                }
+            }
+            changedIDs[c] = id;
+            changedValues[c] = value;
+        }
+
+        int removed = getVarint(buffer);
+        int[] removedIDs = new int[removed];
+        for(int r = 0, last = 0; r < removed; r++){
+            removedIDs[r] = last = r == 0 ? unzigzag(getVarint(buffer)) : last + getVarint(buffer);
+        }
+
+        // Merge the baseline with the changes.
+        int[] ids = new int[baseSize + changed];
+        Value[] values = new Value[baseSize + changed];
+        int size = 0;
+        for(int j = 0, c = 0, r = 0; j < baseSize || c < changed; ){
+            if(c < changed && (j >= baseSize || changedIDs[c] <= baseline.ids[j])){
+                if(j < baseSize && changedIDs[c] == baseline.ids[j])
+                    j++;
+                ids[size] = changedIDs[c];
+                values[size++] = changedValues[c++];
+            }else{
+                int id = baseline.ids[j];
+                Value value = baseline.values[j++];
+                while(r < removed && removedIDs[r] < id)
+                    r++;
+                if(r < removed && removedIDs[r] == id)
+                    continue;
+                ids[size] = id;
+                values[size++] = value;
+            }
+        }
+        State state = new State(tick, size, ids, values);
+
+        notify(latest, state);
+        received[tick % history] = state;
+        latest = state;
+        return tick;
+    }
+
+    /** Notifies the listener of the differences between two states. */
+    private void notify(State from, State to){
+        Listener listener = this.listener;
+        if(listener == null)
+            return;
+        int fromSize = from == null ? 0 : from.size;
+        for(int i = 0, j = 0; i < to.size || j < fromSize; ){
+            if(j >= fromSize || (i < to.size && to.ids[i] < from.ids[j])){
+                updated(listener, to.ids[i], to.values[i++]);
+            }else if(i >= to.size || to.ids[i] > from.ids[j]){
+                listener.removed(from.ids[j++]);
+            }else{
+                Value value = to.values[i], old = from.values[j];
+                if(value != old && (value.type != old.type || !Arrays.equals(value.fields, old.fields)))
+                    updated(listener, to.ids[i], value);
+                i++;
+                j++;
+            }
+        }
+    }
+
+    private void updated(Listener listener, int id, Value value){
+        Type type = types.get(value.type);
+        if(type == null)
+            throw new ArcNetException("Unknown replicated type: " + value.type);
+        float[] fields = type.values;
+        for(int f = 0; f < fields.length; f++){
+            float precision = type.precision[f];
+            fields[f] = precision > 0 ? value.fields[f] * precision : Float.intBitsToFloat(value.fields[f]);
+        }
+        listener.updated(id, value.type, fields);
+    }
+
+    /** Notified on the client of replicated objects that were added, changed or removed. */
+    public interface Listener{
+        /**
+         * Called when an object is added, or any of its fields change.
+         * @param fields The values of all fields, which are only valid during
+         * this call.
+         */
+        void updated(int id, int type, float[] fields);
+
+        default void removed(int id){
+        }
+    }
+
+    /** The changes for one client at one tick. */
+    public static class Packet{
+        final byte[] data;
+
+        Packet(byte[] data){
+            this.data = data;
+        }
+
+        /** Returns the tick this packet brings the client to. */
+        public int tick(){
+            return getVarint(ByteBuffer.wrap(data));
+        }
+
+        /** Returns the encoded size of this packet, not counting its length. */
+        public int size(){
+            return data.length;
+        }
+
+        public void write(ByteBuffer buffer){
+            buffer.putInt(data.length);
+            buffer.put(data);
+        }
+
+        public static Packet read(ByteBuffer buffer){
+            byte[] data = new byte[buffer.getInt()];
+            buffer.get(data);
+            return new Packet(data);
+        }
+    }
+
+    /** Sent by clients for each packet they apply. */
+    public static class Ack{
+        public int tick;
+
+        public void write(ByteBuffer buffer){
+            buffer.putInt(tick);
+        }
+
+        public static Ack read(ByteBuffer buffer){
+            Ack ack = new Ack();
+            ack.tick = buffer.getInt();
+            return ack;
+        }
+    }
+
+    private static class Type{
+        final float[] precision;
+        /** Reused for reading and writing fields; only used on one thread per side. */
+        final float[] values;
+        final int[] quantized;
+
+        Type(float[] precision){
+            this.precision = precision;
+            this.values = new float[precision.length];
+            this.quantized = new int[precision.length];
+        }
+    }
+
+    private static class Entity{
+        final int id, type;
+        final Cons<float[]> source;
+        /** The last captured value, which is shared by every state it did not change in. */
+        Value last;
+
+        Entity(int id, int type, Cons<float[]> source){
+            this.id = id;
+            this.type = type;
+            this.source = source;
+        }
+
+        Value capture(Type info){
+            float[] values = info.values;
+            int[] quantized = info.quantized;
+            source.get(values);
+            for(int f = 0; f < values.length; f++){
+                float precision = info.precision[f];
+                quantized[f] = precision > 0 ? Math.round(values[f] / precision) : Float.floatToRawIntBits(values[f]);
+            }
+            if(last == null || !Arrays.equals(last.fields, quantized))
+                last = new Value(type, quantized.clone());
+            return last;
+        }
+    }
+
+    /** The fields of an object at some tick. Never modified once created. */
+    private static class Value{
+        final int type;
+        final int[] fields;
+
+        Value(int type, int[] fields){
+            this.type = type;
+            this.fields = fields;
+        }
+    }
+
+    /** All objects at one tick, sorted by ID. The arrays may be longer than the size. */
+    private static class State{
+        final int tick, size;
+        final int[] ids;
+        final Value[] values;
+
+        State(int tick, int size, int[] ids, Value[] values){
+            this.tick = tick;
+            this.size = size;
+            this.ids = ids;
+            this.values = values;
+        }
+    }
+
+    /** The fragments of one packet, as they arrive. */
+    private static class Fragments{
+        final int tick;
+        final byte[][] data;
+        int received, length;
+
+        Fragments(int tick, int count){
+            this.tick = tick;
+            this.data = new byte[count][];
+        }
+
+        /** Returns true once every fragment has arrived. */
+        boolean add(int index, ByteBuffer buffer){
+            if(data[index] == null){
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                data[index] = bytes;
+                length += bytes.length;
+                received++;
+            }
+            return received == data.length;
+        }
+
+        ByteBuffer join(){
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            for(byte[] bytes : data){
+                buffer.put(bytes);
+            }
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+    private static class Remote{
+        volatile int acked;
+    }
+}
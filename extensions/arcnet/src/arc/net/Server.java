@@ -3,6 +3,7 @@
 package arc.net;
 
 import arc.net.FrameworkMessage.*;
+import arc.net.NetListener.*;
 import arc.struct.*;
 import arc.util.async.*;
 
@@ -11,6 +12,7 @@ import java.net.*;
 import java.nio.*;
 import java.nio.channels.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Manages TCP and optionally UDP connections from many {@linkplain Client
@@ -24,20 +26,32 @@ public class Server implements EndPoint{
     private int emptySelects;
     private ServerSocketChannel serverChannel;
     private UdpConnection udp;
-    private Connection[] connections = {};
+    private volatile Connection[] connections = {};
+    // Copied on write, like the connections array, so lookups never lock.
+    private volatile IntMap<Connection> connectionsByID = new IntMap<>();
+    private volatile ObjectMap<InetSocketAddress, Connection> connectionsByUDP = new ObjectMap<>();
     private IntMap<Connection> pendingConnections = new IntMap<>();
+    private final Object connectionLock = new Object();
+    private int ioThreads;
+    private BufferPool bufferPool;
+    private volatile StreamCompression compression;
+    private volatile NetMetrics metrics;
+    private volatile Worker[] workers;
+    private volatile EventQueue eventQueue;
     NetListener[] listeners = {};
     private Object listenerLock = new Object();
     private int nextConnectionID = 1;
     private volatile boolean shutdown;
     private final Object updateLock = new Object();
+    private final Object broadcastLock = new Object();
+    private ByteBuffer broadcastBuffer;
     private Thread updateThread;
     private int multicastPort = 21010;
     protected InetAddress multicastGroup;
     protected DiscoveryReceiver discoveryReceiver;
     protected ServerDiscoveryHandler discoveryHandler;
 
-    private NetListener dispatchListener = new NetListener(){
+    private final NetListener fanoutListener = new NetListener(){
         public void connected(Connection connection){
             NetListener[] listeners = Server.this.listeners;
             for(int i = 0, n = listeners.length; i < n; i++)
@@ -45,7 +59,6 @@ public class Server implements EndPoint{
         }
 
         public void disconnected(Connection connection, DcReason reason){
-            removeConnection(connection);
             NetListener[] listeners = Server.this.listeners;
             for(int i = 0, n = listeners.length; i < n; i++)
                 listeners[i].disconnected(connection, reason);
@@ -62,6 +75,50 @@ public class Server implements EndPoint{
             for(int i = 0, n = listeners.length; i < n; i++)
                 listeners[i].idle(connection);
         }
+
+        public void pendingHigh(Connection connection){
+            NetListener[] listeners = Server.this.listeners;
+            for(int i = 0, n = listeners.length; i < n; i++)
+                listeners[i].pendingHigh(connection);
+        }
+
+        public void pendingLow(Connection connection){
+            NetListener[] listeners = Server.this.listeners;
+            for(int i = 0, n = listeners.length; i < n; i++)
+                listeners[i].pendingLow(connection);
+        }
+    };
+
+    private NetListener dispatchListener = new NetListener(){
+        public void connected(Connection connection){
+            listener().connected(connection);
+        }
+
+        public void disconnected(Connection connection, DcReason reason){
+            removeConnection(connection);
+            listener().disconnected(connection, reason);
+        }
+
+        public void received(Connection connection, Object object){
+            listener().received(connection, object);
+        }
+
+        public void idle(Connection connection){
+            listener().idle(connection);
+        }
+
+        public void pendingHigh(Connection connection){
+            listener().pendingHigh(connection);
+        }
+
+        public void pendingLow(Connection connection){
+            listener().pendingLow(connection);
+        }
+
+        NetListener listener(){
+            EventQueue queue = eventQueue;
+            return queue == null ? fanoutListener : queue;
+        }
     };
 
     /**
@@ -115,6 +172,101 @@ public class Server implements EndPoint{
         discoveryHandler = newDiscoveryHandler;
     }
 
+    /**
+     * Sets the number of threads that read from and write to TCP connections.
+     * Must be called before binding.
+     * <p>
+     * With zero threads, the default, all network activity happens on the
+     * thread that calls {@link #update(int)}. Otherwise, {@link #update(int)}
+     * only accepts new connections and handles UDP, and each connection is
+     * handled by one of the I/O threads, chosen by its ID. The I/O threads are
+     * started when the server is bound and stopped when it is closed.
+     * <p>
+     * Listeners are then notified on several threads at once and must be thread
+     * safe, unless notifications are handed to a single thread with
+     * {@link #setDispatchQueue(int)}.
+     */
+    public void setIOThreads(int threads){
+        if(threads < 0) throw new IllegalArgumentException("threads cannot be negative.");
+        ioThreads = threads;
+    }
+
+    /**
+     * Sets a pool of direct buffers for queued TCP writes. Connections
+     * accepted afterwards take segments from the pool as needed, up to the
+     * write buffer size, instead of allocating a write buffer each. Their read
+     * buffers are also direct. May be null to use a write buffer per
+     * connection, the default.
+     * @see BufferPool
+     */
+    public void setBufferPool(BufferPool pool){
+        bufferPool = pool;
+    }
+
+    /**
+     * Offers compression of the TCP stream to clients that connect afterwards.
+     * Clients with settings that use the same dictionary accept it; others
+     * connect uncompressed. May be null to disable compression, the default.
+     * @see StreamCompression
+     */
+    public void setCompression(StreamCompression compression){
+        this.compression = compression;
+    }
+
+    /**
+     * Records what this server and its connections send and receive to the
+     * given metrics, including connections that are already open. May be null
+     * to stop recording, the default.
+     */
+    public void setMetrics(NetMetrics metrics){
+        this.metrics = metrics;
+        UdpConnection udp = this.udp;
+        if(udp != null)
+            udp.metrics = metrics;
+        for(Connection connection : connections){
+            connection.setMetrics(metrics);
+        }
+    }
+
+    /** Returns the metrics this server records to, or null. */
+    public NetMetrics getMetrics(){
+        return metrics;
+    }
+
+    /**
+     * Queues notifications for the listeners of this server until
+     * {@link #dispatchEvents()} is called, instead of notifying them on the
+     * network threads. This lets a game thread handle all events without
+     * locking, and keeps slow listeners from stalling network activity.
+     * <p>
+     * Once events have been dispatched, network threads wait while the queue
+     * is full, so a consumer that falls behind slows down reading. The queue
+     * can still grow past its capacity: the thread that dispatches events
+     * never waits, so that a single thread can call {@link #update(int)} and
+     * {@link #dispatchEvents()} in turn, and neither do threads that notify
+     * while sending or closing. Listeners added directly to a
+     * {@link Connection} are still notified on the network threads.
+     * @param capacity The maximum number of queued notifications, or zero to
+     * notify listeners directly.
+     */
+    public void setDispatchQueue(int capacity){
+        if(capacity < 0) throw new IllegalArgumentException("capacity cannot be negative.");
+        EventQueue old = eventQueue;
+        eventQueue = capacity == 0 ? null : new EventQueue(capacity);
+        if(old != null) old.run();
+    }
+
+    /**
+     * Notifies the listeners of all events queued since the last call, on the
+     * calling thread.
+     * @return The number of events handled.
+     * @see #setDispatchQueue(int)
+     */
+    public int dispatchEvents(){
+        EventQueue queue = eventQueue;
+        return queue == null ? 0 : queue.run();
+    }
+
     /**
      * Opens a TCP only server.
      * @throws IOException if the server could not be opened.
@@ -150,12 +302,21 @@ public class Server implements EndPoint{
                     serializer,
                     objectBufferSize);
                     udp.bind(selector, udpPort);
+                    udp.metrics = metrics;
                 }
 
                 if(multicastGroup != null && (udpPort == null || multicastPort != udpPort.getPort())){
                     discoveryReceiver = new DiscoveryReceiver(multicastPort);
                     discoveryReceiver.start();
                 }
+
+                if(ioThreads > 0){
+                    Worker[] workers = new Worker[ioThreads];
+                    this.workers = workers;
+                    for(int i = 0; i < workers.length; i++){
+                        workers[i] = new Worker(i);
+                    }
+                }
             }catch(IOException ex){
                 close();
                 throw ex;
@@ -183,6 +344,9 @@ public class Server implements EndPoint{
         }else{
             select = selector.selectNow();
         }
+        NetMetrics metrics = this.metrics;
+        if(metrics != null)
+            metrics.selected(select);
         if(select == 0){
             emptySelects++;
             if(emptySelects == 100){
@@ -201,43 +365,17 @@ public class Server implements EndPoint{
             synchronized(keys){
                 UdpConnection udp = this.udp;
                 for(Iterator<SelectionKey> iter = keys.iterator(); iter.hasNext();){
-                    keepAlive();
                     SelectionKey selectionKey = iter.next();
                     iter.remove();
                     Connection fromConnection = (Connection)selectionKey.attachment();
                     try{
-                        int ops = selectionKey.readyOps();
-
                         if(fromConnection != null){ // Must be a TCP read or
                             // write operation.
-                            if(udp != null && fromConnection.udpRemoteAddress == null){
-                                fromConnection.close(DcReason.error);
-                                continue;
-                            }
-                            if((ops & SelectionKey.OP_READ) == SelectionKey.OP_READ){
-                                try{
-                                    while(true){
-                                        Object object = fromConnection.tcp.readObject();
-                                        if(object == null)
-                                            break;
-                                        fromConnection.notifyReceived(object);
-                                    }
-                                }catch(IOException | ArcNetException ex){
-                                    ArcNet.handleError(new ArcNetException("Error reading TCP from connection: " + fromConnection, ex));
-                                    fromConnection.close(ex.getMessage() != null && ex.getMessage().contains("closed") ? DcReason.closed : DcReason.error);
-                                }
-                            }
-                            if((ops & SelectionKey.OP_WRITE) == SelectionKey.OP_WRITE){
-                                try{
-                                    fromConnection.tcp.writeOperation();
-                                }catch(IOException ex){
-                                    fromConnection.close(ex.getMessage() != null && ex.getMessage().contains("closed") ? DcReason.closed : DcReason.error);
-                                }
-                            }
+                            processTcp(selectionKey, fromConnection);
                             continue;
                         }
 
-                        if((ops & SelectionKey.OP_ACCEPT) == SelectionKey.OP_ACCEPT){
+                        if((selectionKey.readyOps() & SelectionKey.OP_ACCEPT) == SelectionKey.OP_ACCEPT){
                             ServerSocketChannel serverChannel = this.serverChannel;
                             if(serverChannel == null)
                                 continue;
@@ -266,13 +404,7 @@ public class Server implements EndPoint{
                         if(fromAddress == null)
                             continue;
 
-                        Connection[] connections = this.connections;
-                        for(Connection connection : connections){
-                            if(fromAddress.equals(connection.udpRemoteAddress)){
-                                fromConnection = connection;
-                                break;
-                            }
-                        }
+                        fromConnection = connectionsByUDP.get(fromAddress);
 
                         Object object;
                         try{
@@ -288,14 +420,22 @@ public class Server implements EndPoint{
                                 // reply over TCP with a RegisterUDP to indicate
                                 // success.
                                 int fromConnectionID = ((RegisterUDP)object).connectionID;
-                                Connection connection = pendingConnections
-                                .remove(fromConnectionID);
+                                Connection connection;
+                                synchronized(connectionLock){
+                                    connection = pendingConnections.remove(fromConnectionID);
+                                }
                                 if(connection != null){
                                     if(connection.udpRemoteAddress != null) continue;
                                     connection.udpRemoteAddress = fromAddress;
-                                    addConnection(connection);
-                                    connection.sendTCP(new RegisterUDP());
-                                    connection.notifyConnected();
+                                    Worker worker = workerFor(connection.id);
+                                    if(worker == null){
+                                        registerUDP(connection);
+                                    }else{
+                                        // The connected notification must
+                                        // come before any received ones.
+                                        worker.tasks.add(() -> registerUDP(connection));
+                                        worker.selector.wakeup();
+                                    }
                                     continue;
                                 }
                                 continue;
@@ -322,10 +462,56 @@ public class Server implements EndPoint{
                 }
             }
         }
+        if(workers == null){
+            sweep(null);
+        }
+    }
+
+    private void processTcp(SelectionKey selectionKey, Connection fromConnection){
+        int ops = selectionKey.readyOps();
+        if(udp != null && fromConnection.udpRemoteAddress == null){
+            fromConnection.close(DcReason.error);
+            return;
+        }
+        if((ops & SelectionKey.OP_READ) == SelectionKey.OP_READ){
+            try{
+                while(true){
+                    Object object = fromConnection.tcp.readObject();
+                    if(object == null)
+                        break;
+                    if(object instanceof RegisterTCP){
+                        startCompression(fromConnection, (RegisterTCP)object);
+                        continue;
+                    }
+                    fromConnection.notifyReceived(object);
+                }
+            }catch(IOException | ArcNetException ex){
+                ArcNet.handleError(new ArcNetException("Error reading TCP from connection: " + fromConnection, ex));
+                fromConnection.close(ex.getMessage() != null && ex.getMessage().contains("closed") ? DcReason.closed : DcReason.error);
+            }
+        }
+        if((ops & SelectionKey.OP_WRITE) == SelectionKey.OP_WRITE){
+            try{
+                fromConnection.tcp.writeOperation();
+                fromConnection.updateWatermark();
+            }catch(IOException ex){
+                fromConnection.close(ex.getMessage() != null && ex.getMessage().contains("closed") ? DcReason.closed : DcReason.error);
+            }
+        }
+    }
+
+    /**
+     * Closes timed out connections and sends keep alives and idle
+     * notifications.
+     * @param worker If not null, only the connections handled by this I/O
+     * thread are checked.
+     */
+    private void sweep(Worker worker){
         long time = System.currentTimeMillis();
         Connection[] connections = this.connections;
         for(int i = 0, n = connections.length; i < n; i++){
             Connection connection = connections[i];
+            if(worker != null && workerFor(connection.id) != worker) continue;
             if(connection.tcp.isTimedOut(time)){
                 connection.close(DcReason.timeout);
             }else{
@@ -337,16 +523,6 @@ public class Server implements EndPoint{
         }
     }
 
-    private void keepAlive(){
-        long time = System.currentTimeMillis();
-        Connection[] connections = this.connections;
-        for(int i = 0, n = connections.length; i < n; i++){
-            Connection connection = connections[i];
-            if(connection.tcp.needsKeepAlive(time))
-                connection.sendTCP(FrameworkMessage.keepAlive);
-        }
-    }
-
     public void run(){
         shutdown = false;
         while(!shutdown){
@@ -372,30 +548,53 @@ public class Server implements EndPoint{
     private void acceptOperation(SocketChannel socketChannel){
         Connection connection = newConnection();
         connection.initialize(serializer,
-        writeBufferSize, objectBufferSize);
+        writeBufferSize, objectBufferSize, bufferPool);
         connection.endPoint = this;
+        connection.setMetrics(metrics);
         UdpConnection udp = this.udp;
         if(udp != null)
             connection.udp = udp;
+
+        int id = nextConnectionID++;
+        if(nextConnectionID == -1)
+            nextConnectionID = 1;
+        connection.id = id;
+
+        Worker[] workers = this.workers;
+        if(workers == null){
+            register(connection, socketChannel, selector);
+        }else{
+            connection.tcp.socketChannel = socketChannel;
+            workerFor(id).post(connection);
+        }
+    }
+
+    /**
+     * Registers an accepted connection with a selector and sends it its ID.
+     * Must be called on the thread that selects with the selector.
+     */
+    private void register(Connection connection, SocketChannel socketChannel, Selector selector){
+        UdpConnection udp = connection.udp;
         try{
             SelectionKey selectionKey = connection.tcp.accept(selector,
             socketChannel);
             selectionKey.attach(connection);
 
-            int id = nextConnectionID++;
-            if(nextConnectionID == -1)
-                nextConnectionID = 1;
-            connection.id = id;
             connection.setConnected(true);
             connection.addListener(dispatchListener);
 
-            if(udp == null)
+            if(udp == null){
                 addConnection(connection);
-            else
-                pendingConnections.put(id, connection);
+            }else{
+                synchronized(connectionLock){
+                    pendingConnections.put(connection.id, connection);
+                }
+            }
 
+            StreamCompression compression = this.compression;
             RegisterTCP registerConnection = new RegisterTCP();
-            registerConnection.connectionID = id;
+            registerConnection.connectionID = connection.id;
+            registerConnection.compression = compression == null ? 0 : compression.id;
             connection.sendTCP(registerConnection);
 
             if(udp == null)
@@ -405,6 +604,50 @@ public class Server implements EndPoint{
         }
     }
 
+    /**
+     * Handles a client accepting compression. Everything the client sent after
+     * its reply is compressed, and so is everything sent to it after this
+     * server's reply.
+     */
+    private void startCompression(Connection connection, RegisterTCP reply) throws IOException{
+        StreamCompression compression = this.compression;
+        if(compression == null || reply.compression != compression.id)
+            return;
+        connection.tcp.startInflating(compression);
+
+        RegisterTCP confirm = new RegisterTCP();
+        confirm.connectionID = connection.id;
+        confirm.compression = compression.id;
+        connection.tcp.sendThenCompress(confirm, compression);
+    }
+
+    private void registerUDP(Connection connection){
+        addConnection(connection);
+        connection.sendTCP(new RegisterUDP());
+        connection.notifyConnected();
+    }
+
+    private Worker workerFor(int connectionID){
+        Worker[] workers = this.workers;
+        return workers == null ? null : workers[(connectionID & Integer.MAX_VALUE) % workers.length];
+    }
+
+    /**
+     * Returns true if the current thread is the update thread or one of the I/O
+     * threads of this server.
+     */
+    private boolean isNetworkThread(){
+        Thread thread = Thread.currentThread();
+        if(thread == updateThread) return true;
+        Worker[] workers = this.workers;
+        if(workers != null){
+            for(Worker worker : workers){
+                if(worker.thread == thread) return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Allows the connections used by the server to be subclassed. This can be
      * useful for storage per connection without an additional lookup.
@@ -414,79 +657,168 @@ public class Server implements EndPoint{
     }
 
     private void addConnection(Connection connection){
-        Connection[] newConnections = new Connection[connections.length + 1];
-        newConnections[0] = connection;
-        System.arraycopy(connections, 0, newConnections, 1, connections.length);
-        connections = newConnections;
+        synchronized(connectionLock){
+            Connection[] connections = this.connections;
+            Connection[] newConnections = new Connection[connections.length + 1];
+            newConnections[0] = connection;
+            System.arraycopy(connections, 0, newConnections, 1, connections.length);
+            this.connections = newConnections;
+
+            IntMap<Connection> byID = new IntMap<>(connectionsByID);
+            byID.put(connection.id, connection);
+            connectionsByID = byID;
+
+            if(connection.udpRemoteAddress != null){
+                ObjectMap<InetSocketAddress, Connection> byUDP = new ObjectMap<>(connectionsByUDP);
+                byUDP.put(connection.udpRemoteAddress, connection);
+                connectionsByUDP = byUDP;
+            }
+        }
     }
 
     void removeConnection(Connection connection){
-        ArrayList<Connection> temp = new ArrayList<>(Arrays.asList(connections));
-        temp.remove(connection);
-        connections = temp.toArray(new Connection[0]);
+        synchronized(connectionLock){
+            pendingConnections.remove(connection.id);
+            if(connectionsByID.get(connection.id) != connection) return;
 
-        pendingConnections.remove(connection.id);
-    }
+            ArrayList<Connection> temp = new ArrayList<>(Arrays.asList(connections));
+            temp.remove(connection);
+            connections = temp.toArray(new Connection[0]);
 
-    // BOZO - Provide mechanism for sending to multiple clients without
-    // serializing multiple times.
+            IntMap<Connection> byID = new IntMap<>(connectionsByID);
+            byID.remove(connection.id);
+            connectionsByID = byID;
 
-    public void sendToAllTCP(Object object){
-        Connection[] connections = this.connections;
-        for(int i = 0, n = connections.length; i < n; i++){
-            Connection connection = connections[i];
-            connection.sendTCP(object);
+            InetSocketAddress address = connection.udpRemoteAddress;
+            if(address != null && connectionsByUDP.get(address) == connection){
+                ObjectMap<InetSocketAddress, Connection> byUDP = new ObjectMap<>(connectionsByUDP);
+                byUDP.remove(address);
+                connectionsByUDP = byUDP;
+            }
         }
     }
 
+    /**
+     * Sends the object to every connection over TCP. The object is serialized
+     * only once, and the resulting bytes are queued for each connection.
+     */
+    public void sendToAllTCP(Object object){
+        broadcastTCP(-1, object);
+    }
+
+    /** Sends the object to every connection except one over TCP, serializing it only once. */
     public void sendToAllExceptTCP(int connectionID, Object object){
-        Connection[] connections = this.connections;
-        for(int i = 0, n = connections.length; i < n; i++){
-            Connection connection = connections[i];
-            if(connection.id != connectionID)
-                connection.sendTCP(object);
-        }
+        broadcastTCP(connectionID, object);
     }
 
     public void sendToTCP(int connectionID, Object object){
-        Connection[] connections = this.connections;
-        for(int i = 0, n = connections.length; i < n; i++){
-            Connection connection = connections[i];
-            if(connection.id == connectionID){
-                connection.sendTCP(object);
-                break;
-            }
-        }
+        Connection connection = connectionsByID.get(connectionID);
+        if(connection != null)
+            connection.sendTCP(object);
     }
 
+    /**
+     * Sends the object to every connection over UDP. The object is serialized
+     * only once, and the same datagram is sent to each connection.
+     */
     public void sendToAllUDP(Object object){
-        Connection[] connections = this.connections;
-        for(int i = 0, n = connections.length; i < n; i++){
-            Connection connection = connections[i];
-            connection.sendUDP(object);
-        }
+        broadcastUDP(-1, object);
     }
 
+    /** Sends the object to every connection except one over UDP, serializing it only once. */
     public void sendToAllExceptUDP(int connectionID, Object object){
+        broadcastUDP(connectionID, object);
+    }
+
+    public void sendToUDP(int connectionID, Object object){
+        Connection connection = connectionsByID.get(connectionID);
+        if(connection != null)
+            connection.sendUDP(object);
+    }
+
+    private void broadcastTCP(int exceptID, Object object){
+        if(object == null) throw new IllegalArgumentException("object cannot be null.");
         Connection[] connections = this.connections;
-        for(int i = 0, n = connections.length; i < n; i++){
-            Connection connection = connections[i];
-            if(connection.id != connectionID)
-                connection.sendUDP(object);
+        if(connections.length == 0) return;
+
+        synchronized(broadcastLock){
+            NetMetrics metrics = this.metrics;
+            long startTime = metrics == null ? 0 : System.nanoTime();
+            ByteBuffer frame = serializeFrame(object, true);
+            long serializeTime = metrics == null ? 0 : System.nanoTime() - startTime;
+            int sent = 0;
+            for(int i = 0, n = connections.length; i < n; i++){
+                Connection connection = connections[i];
+                if(connection.id == exceptID) continue;
+                if(frame == null){
+                    connection.sendTCP(object);
+                }else if(connection.sendFrameTCP(frame) > 0){
+                    sent++;
+                }
+            }
+            if(metrics != null && frame != null)
+                metrics.sent(object.getClass(), sent, (long)sent * frame.remaining(), serializeTime);
         }
     }
 
-    public void sendToUDP(int connectionID, Object object){
+    private void broadcastUDP(int exceptID, Object object){
+        if(object == null) throw new IllegalArgumentException("object cannot be null.");
         Connection[] connections = this.connections;
-        for(int i = 0, n = connections.length; i < n; i++){
-            Connection connection = connections[i];
-            if(connection.id == connectionID){
-                connection.sendUDP(object);
-                break;
+        if(connections.length == 0) return;
+
+        synchronized(broadcastLock){
+            NetMetrics metrics = this.metrics;
+            long startTime = metrics == null ? 0 : System.nanoTime();
+            ByteBuffer frame = serializeFrame(object, false);
+            long serializeTime = metrics == null ? 0 : System.nanoTime() - startTime;
+            int sent = 0;
+            for(int i = 0, n = connections.length; i < n; i++){
+                Connection connection = connections[i];
+                if(connection.id == exceptID) continue;
+                if(frame == null){
+                    connection.sendUDP(object);
+                }else if(connection.sendFrameUDP(frame) > 0){
+                    sent++;
+                }
             }
+            if(metrics != null && frame != null)
+                metrics.sent(object.getClass(), sent, (long)sent * frame.remaining(), serializeTime);
         }
     }
 
+    /**
+     * Serializes an object into the shared broadcast buffer, with a length
+     * prefix if it is to be sent over TCP. Must be called while holding the
+     * broadcast lock.
+     * @return The flipped buffer, or null if the object could not be
+     * serialized. In that case, the object should be sent to each connection
+     * separately, so that errors are handled exactly as for a single send.
+     */
+    private ByteBuffer serializeFrame(Object object, boolean tcp){
+        ByteBuffer buffer = broadcastBuffer;
+        if(buffer == null){
+            broadcastBuffer = buffer = ByteBuffer.allocateDirect(Math.max(writeBufferSize, objectBufferSize));
+        }
+        buffer.clear();
+
+        int lengthLength = tcp ? serializer.getLengthLength() : 0;
+        try{
+            buffer.position(lengthLength);
+            serializer.write(buffer, object);
+        }catch(Throwable ex){
+            return null;
+        }
+
+        if(tcp){
+            int end = buffer.position();
+            buffer.position(0);
+            serializer.writeLength(buffer, end - lengthLength);
+            buffer.position(end);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
     /**
      * {@inheritDoc}
      * <p>
@@ -534,7 +866,11 @@ public class Server implements EndPoint{
         Connection[] connections = this.connections;
         for(int i = 0, n = connections.length; i < n; i++)
             connections[i].close(DcReason.closed);
-        this.connections = new Connection[0];
+        synchronized(connectionLock){
+            this.connections = new Connection[0];
+            connectionsByID = new IntMap<>();
+            connectionsByUDP = new ObjectMap<>();
+        }
 
         ServerSocketChannel serverChannel = this.serverChannel;
         if(serverChannel != null){
@@ -556,6 +892,14 @@ public class Server implements EndPoint{
             this.udp = null;
         }
 
+        Worker[] workers = this.workers;
+        if(workers != null){
+            for(Worker worker : workers){
+                worker.stop();
+            }
+            this.workers = null;
+        }
+
         synchronized(updateLock){ // Blocks to avoid a select while the
             // selector is used to bind the server
             // connection.
@@ -580,6 +924,25 @@ public class Server implements EndPoint{
         return updateThread;
     }
 
+    /**
+     * Returns the local TCP port the server is bound to, or -1 if it is not
+     * bound. Useful after binding to port 0, which picks a free port.
+     */
+    public int getTcpPort(){
+        ServerSocketChannel serverChannel = this.serverChannel;
+        return serverChannel == null ? -1 : serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Returns the local UDP port the server is bound to, or -1 if it is not
+     * bound with UDP.
+     */
+    public int getUdpPort(){
+        UdpConnection udp = this.udp;
+        DatagramChannel channel = udp == null ? null : udp.datagramChannel;
+        return channel == null ? -1 : channel.socket().getLocalPort();
+    }
+
     /**
      * Returns the current connections. The array returned should not be
      * modified.
@@ -588,6 +951,138 @@ public class Server implements EndPoint{
         return connections;
     }
 
+    /** Selects on and handles the TCP connections assigned to one I/O thread. */
+    class Worker implements Runnable{
+        final Selector selector;
+        final Thread thread;
+        final ConcurrentLinkedQueue<Connection> accepted = new ConcurrentLinkedQueue<>();
+        final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        volatile boolean running = true;
+
+        Worker(int index) throws IOException{
+            selector = Selector.open();
+            thread = Threads.daemon("Server I/O " + index, this);
+        }
+
+        /** Queues a newly accepted connection to be registered on this thread. */
+        void post(Connection connection){
+            accepted.add(connection);
+            selector.wakeup();
+        }
+
+        void stop(){
+            running = false;
+            selector.wakeup();
+        }
+
+        @Override
+        public void run(){
+            try{
+                while(running){
+                    Connection connection;
+                    while((connection = accepted.poll()) != null){
+                        register(connection, connection.tcp.socketChannel, selector);
+                    }
+                    Runnable task;
+                    while((task = tasks.poll()) != null){
+                        task.run();
+                    }
+
+                    int select = selector.select(250);
+                    NetMetrics metrics = Server.this.metrics;
+                    if(metrics != null)
+                        metrics.selected(select);
+                    if(select > 0){
+                        Set<SelectionKey> keys = selector.selectedKeys();
+                        for(Iterator<SelectionKey> iter = keys.iterator(); iter.hasNext();){
+                            SelectionKey selectionKey = iter.next();
+                            iter.remove();
+                            Connection fromConnection = (Connection)selectionKey.attachment();
+                            try{
+                                processTcp(selectionKey, fromConnection);
+                            }catch(CancelledKeyException ex){
+                                fromConnection.close(DcReason.error);
+                            }
+                        }
+                    }
+
+                    sweep(this);
+                }
+            }catch(IOException ex){
+                ArcNet.handleError(ex);
+                // The connections of this thread can no longer be handled.
+                for(Connection connection : connections){
+                    if(workerFor(connection.id) == this)
+                        connection.close(DcReason.error);
+                }
+            }finally{
+                // Connections that were never registered only have an open
+                // socket.
+                Connection connection;
+                while((connection = accepted.poll()) != null){
+                    connection.close(DcReason.closed);
+                }
+                try{
+                    selector.close();
+                }catch(IOException ignored){
+                }
+            }
+        }
+    }
+
+    /**
+     * Hands notifications for the server listeners to the thread calling
+     * {@link #dispatchEvents()}.
+     */
+    class EventQueue extends QueuedListener{
+        final int capacity;
+        final LinkedBlockingQueue<Runnable> events = new LinkedBlockingQueue<>();
+
+        EventQueue(int capacity){
+            super(fanoutListener);
+            this.capacity = capacity;
+        }
+
+        /** The last thread that dispatched events, which must never wait for itself. */
+        volatile Thread dispatcher;
+
+        @Override
+        protected void queue(Runnable runnable){
+            // Only network threads wait, as any other thread may be the one
+            // that dispatches the events. Until a thread dispatches, waiting
+            // could be for the current one.
+            Thread dispatcher = this.dispatcher;
+            if(events.size() >= capacity && dispatcher != null && dispatcher != Thread.currentThread() && isNetworkThread()){
+                synchronized(this){
+                    while(events.size() >= capacity && serverChannel != null){
+                        try{
+                            wait(10);
+                        }catch(InterruptedException ex){
+                            break;
+                        }
+                    }
+                }
+            }
+            events.add(runnable);
+        }
+
+        int run(){
+            dispatcher = Thread.currentThread();
+            int count = 0;
+            // Events queued while dispatching are left for the next call.
+            for(int i = events.size(); i > 0; i--){
+                Runnable runnable = events.poll();
+                if(runnable == null) break;
+                runnable.run();
+                count++;
+            }
+            synchronized(this){
+                notifyAll();
+            }
+            return count;
+        }
+    }
+
     //I don't care about deprecation here, as the socket system methods won't be removed
     //it really doesn't matter if the multicast works or not
     @SuppressWarnings("deprecation")
@@ -0,0 +1,54 @@
+package arc.net;
+
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+/**
+ * Settings for compressing the TCP stream of a connection.
+ * <p>
+ * Compression happens below the {@link NetSerializer}: objects are serialized
+ * and queued as usual, and the queued frames are compressed together when they
+ * are written to the socket, with a sync flush after each batch so the other
+ * side can read every frame in it. The deflate context lives as long as the
+ * connection, so repetition between messages is also compressed.
+ * <p>
+ * Compression is only used when both the server and the client have settings
+ * with the same dictionary. It is negotiated with {@link FrameworkMessage.RegisterTCP},
+ * so the serializer must write its {@code compression} field. Peers that don't
+ * support compression leave it at 0 and keep exchanging uncompressed data.
+ * @see Server#setCompression(StreamCompression)
+ * @see Client#setCompression(StreamCompression)
+ */
+public class StreamCompression{
+    final int level;
+    final byte[] dictionary;
+    /** Identifies these settings during the handshake; never 0. */
+    final int id;
+
+    /**
+     * @param level The deflate level, from 0 to 9, or -1 for the default.
+     * @param dictionary Bytes that are likely to appear in messages, such as a
+     * typical serialized message, which makes compression much more effective
+     * for small messages. Both sides must use the same dictionary. May be null.
+     */
+    public StreamCompression(int level, byte[] dictionary){
+        if(level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+            throw new IllegalArgumentException("Invalid level: " + level);
+        this.level = level;
+        this.dictionary = dictionary;
+
+        if(dictionary == null){
+            id = 1;
+        }else{
+            Adler32 checksum = new Adler32();
+            checksum.update(dictionary);
+            int sum = (int)checksum.getValue();
+            id = sum == 0 || sum == 1 ? 2 : sum;
+        }
+    }
+
+    /** Uses the fastest level and no dictionary. */
+    public StreamCompression(){
+        this(Deflater.BEST_SPEED, null);
+    }
+}
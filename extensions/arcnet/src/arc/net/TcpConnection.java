@@ -5,8 +5,14 @@ package arc.net;
 import java.io.IOException;
 import java.net.Socket;
 import java.net.*;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.channels.*;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 /**
  * @author Nathan Sweet <misc@n4te.com>
@@ -14,28 +20,84 @@ import java.nio.channels.*;
 class TcpConnection{
     SocketChannel socketChannel;
     int keepAliveMillis = 8000;
-    final ByteBuffer readBuffer, writeBuffer;
+    final ByteBuffer readBuffer;
+    /** Holds queued bytes when no pool is used, null otherwise. */
+    final ByteBuffer writeBuffer;
+    /** The maximum number of queued bytes. Can only differ from the write buffer capacity with a pool. */
+    int maxPendingBytes;
+    /** Bytes at which {@link NetListener#pendingHigh(Connection)} and {@link NetListener#pendingLow(Connection)} are called; disabled if the high watermark is 0. */
+    int lowWatermark, highWatermark;
     int timeoutMillis = 12000;
     float idleThreshold = 0.1f;
 
     final NetSerializer serialization;
+    final BufferPool pool;
+    /** Null unless metrics are collected. */
+    NetMetrics metrics;
+    /** The most bytes that were ever pending. */
+    volatile int pendingHighWater;
+    /**
+     * Set when the selector was woken up and has not selected since, so that
+     * sends only wake it up once. Null to wake it up on every send.
+     */
+    AtomicBoolean awake;
     private SelectionKey selectionKey;
     private volatile long lastWriteTime, lastReadTime;
     private int currentObjectLength;
     private final Object writeLock = new Object();
 
-    public TcpConnection(NetSerializer serialization, int writeBufferSize, int objectBufferSize){
+    /**
+     * Queued bytes when a pool is used, in write mode: the position of each
+     * segment is the end of its data. Only the head can be partially sent.
+     */
+    private ByteBuffer[] segments = {};
+    private int segmentCount, headSent;
+    private volatile int pendingBytes;
+
+    /**
+     * Compression contexts, kept when the connection is reused. Deflating is
+     * only changed while holding the write lock, inflating only on the thread
+     * that reads.
+     */
+    private Deflater deflater;
+    private Inflater inflater;
+    private int deflaterLevel;
+    private byte[] inflaterDictionary;
+    private volatile boolean deflating, inflating;
+    /** Compressed bytes waiting to be written, in read mode. */
+    private ByteBuffer compressedOut;
+    /** Bytes read from the socket, referenced by the inflater until it needs more input. */
+    private ByteBuffer compressedIn;
+    /** For passing direct buffers to the deflater and inflater, which only take arrays. */
+    private byte[] deflateScratch, inflateScratch;
+    /** Queued bytes at the head of the queue that were sent before deflating started. */
+    private int rawPending;
+    private volatile int compressedPending;
+
+    /**
+     * @param pool If not null, writes are queued in segments from this pool,
+     * up to writeBufferSize bytes by default, and the read buffer is direct.
+     */
+    public TcpConnection(NetSerializer serialization, int writeBufferSize, int objectBufferSize, BufferPool pool){
         this.serialization = serialization;
-        writeBuffer = ByteBuffer.allocate(writeBufferSize);
-        readBuffer = ByteBuffer.allocate(objectBufferSize);
+        this.maxPendingBytes = writeBufferSize;
+        this.pool = pool;
+        if(pool == null){
+            writeBuffer = ByteBuffer.allocate(writeBufferSize);
+            readBuffer = ByteBuffer.allocate(objectBufferSize);
+        }else{
+            writeBuffer = null;
+            readBuffer = ByteBuffer.allocateDirect(objectBufferSize);
+        }
         readBuffer.flip();
     }
 
     public SelectionKey accept(Selector selector, SocketChannel socketChannel) throws IOException{
-        writeBuffer.clear();
+        clearWrites();
         readBuffer.clear();
         readBuffer.flip();
         currentObjectLength = 0;
+        inflating = false;
         try{
             this.socketChannel = socketChannel;
             socketChannel.configureBlocking(false);
@@ -56,10 +118,11 @@ class TcpConnection{
 
     public void connect(Selector selector, SocketAddress remoteAddress, int timeout) throws IOException{
         close();
-        writeBuffer.clear();
+        clearWrites();
         readBuffer.clear();
         readBuffer.flip();
         currentObjectLength = 0;
+        inflating = false;
         try{
             SocketChannel socketChannel = selector.provider().openSocketChannel();
             Socket socket = socketChannel.socket();
@@ -90,9 +153,7 @@ class TcpConnection{
             // Read the length of the next object from the socket.
             int lengthLength = serialization.getLengthLength();
             if(readBuffer.remaining() < lengthLength){
-                readBuffer.compact();
-                int bytesRead = socketChannel.read(readBuffer);
-                readBuffer.flip();
+                int bytesRead = fill(socketChannel, lengthLength);
                 if(bytesRead == -1)
                     throw new SocketException("Connection is closed.");
                 lastReadTime = System.currentTimeMillis();
@@ -114,9 +175,7 @@ class TcpConnection{
         int length = currentObjectLength;
         if(readBuffer.remaining() < length){
             // Fill the tcpInputStream.
-            readBuffer.compact();
-            int bytesRead = socketChannel.read(readBuffer);
-            readBuffer.flip();
+            int bytesRead = fill(socketChannel, length);
             if(bytesRead == -1)
                 throw new SocketException("Connection is closed.");
             lastReadTime = System.currentTimeMillis();
@@ -129,12 +188,16 @@ class TcpConnection{
         int startPosition = readBuffer.position();
         int oldLimit = readBuffer.limit();
         readBuffer.limit(startPosition + length);
+        NetMetrics metrics = this.metrics;
+        long startTime = metrics == null ? 0 : System.nanoTime();
         Object object;
         try{
             object = serialization.read(readBuffer);
         }catch(Exception ex){
             throw new ArcNetException("Error during deserialization.", ex);
         }
+        if(metrics != null && object != null)
+            metrics.received(object.getClass(), serialization.getLengthLength() + length, System.nanoTime() - startTime);
 
         readBuffer.limit(oldLimit);
         if(readBuffer.position() - startPosition != length)
@@ -145,7 +208,109 @@ class TcpConnection{
         return object;
     }
 
+    /**
+     * Reads from the socket into the space after the unread bytes. These are
+     * only moved to the start of the buffer when the next needed bytes would
+     * not fit after them, so most frames are parsed where they were read.
+     */
+    private int fill(SocketChannel socketChannel, int needed) throws IOException{
+        ByteBuffer buffer = readBuffer;
+        int start = buffer.position(), end = buffer.limit();
+        if(start == end){
+            start = end = 0;
+        }else if(start + needed > buffer.capacity()){
+            buffer.compact();
+            end = buffer.position();
+            start = 0;
+        }
+        buffer.limit(buffer.capacity());
+        buffer.position(end);
+        try{
+            return inflating ? inflate(socketChannel, buffer) : socketChannel.read(buffer);
+        }finally{
+            buffer.limit(buffer.position());
+            buffer.position(start);
+        }
+    }
+
+    /**
+     * Decompresses bytes from the socket into the space before the limit of a
+     * buffer, until it is full or the socket has nothing more to read.
+     * @return The number of decompressed bytes, or -1 if the socket is closed.
+     */
+    private int inflate(SocketChannel socketChannel, ByteBuffer buffer) throws IOException{
+        Inflater inflater = this.inflater;
+        int total = 0;
+        try{
+            while(buffer.hasRemaining()){
+                // Output can be pending from the last call even if all input was used.
+                int count;
+                if(buffer.hasArray()){
+                    count = inflater.inflate(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                    buffer.position(buffer.position() + count);
+                }else{
+                    if(inflateScratch == null) inflateScratch = new byte[8192];
+                    count = inflater.inflate(inflateScratch, 0, Math.min(inflateScratch.length, buffer.remaining()));
+                    buffer.put(inflateScratch, 0, count);
+                }
+                if(count > 0){
+                    total += count;
+                    continue;
+                }
+                if(inflater.needsDictionary()){
+                    if(inflaterDictionary == null)
+                        throw new ArcNetException("Compressed stream requires a dictionary.");
+                    inflater.setDictionary(inflaterDictionary);
+                    continue;
+                }
+                if(inflater.finished())
+                    throw new ArcNetException("Compressed stream ended.");
+                if(!inflater.needsInput())
+                    break;
+
+                ByteBuffer in = compressedIn;
+                in.clear();
+                int bytesRead = socketChannel.read(in);
+                if(bytesRead <= 0){
+                    if(bytesRead == -1 && total == 0)
+                        return -1;
+                    break;
+                }
+                inflater.setInput(in.array(), in.arrayOffset(), bytesRead);
+            }
+        }catch(DataFormatException | IllegalArgumentException ex){
+            throw new ArcNetException("Invalid compressed data.", ex);
+        }
+        return total;
+    }
+
+    /**
+     * Decompresses everything read after the last object returned by
+     * {@link #readObject()}. Must be called on the thread that reads.
+     */
+    public void startInflating(StreamCompression compression){
+        if(inflater == null)
+            inflater = new Inflater();
+        else
+            inflater.reset();
+        inflaterDictionary = compression.dictionary;
+        if(compressedIn == null)
+            compressedIn = ByteBuffer.allocate(readBuffer.capacity());
+
+        // Bytes after the last object may have been read already.
+        ByteBuffer in = compressedIn;
+        in.clear();
+        in.put(readBuffer);
+        inflater.setInput(in.array(), in.arrayOffset(), in.position());
+        readBuffer.clear();
+        readBuffer.flip();
+        inflating = true;
+    }
+
     public void writeOperation() throws IOException{
+        NetMetrics metrics = this.metrics;
+        if(metrics != null)
+            metrics.writeOperation();
         synchronized(writeLock){
             if(writeToSocket()){
                 // Write successful, clear OP_WRITE.
@@ -159,6 +324,10 @@ class TcpConnection{
         SocketChannel socketChannel = this.socketChannel;
         if(socketChannel == null)
             throw new SocketException("Connection is closed.");
+        if(deflating)
+            return writeCompressed(socketChannel);
+        if(pool != null)
+            return writeSegments(socketChannel);
 
         ByteBuffer buffer = writeBuffer;
         buffer.flip();
@@ -179,7 +348,11 @@ class TcpConnection{
         if(socketChannel == null)
             throw new SocketException("Connection is closed.");
         synchronized(writeLock){
+            if(pool != null)
+                return sendSegmented(object);
 
+            NetMetrics metrics = this.metrics;
+            long startTime = metrics == null ? 0 : System.nanoTime();
             int start = writeBuffer.position();
             int lengthLength = serialization.getLengthLength();
 
@@ -198,20 +371,377 @@ class TcpConnection{
             writeBuffer.position(start);
             serialization.writeLength(writeBuffer, end - lengthLength - start);
             writeBuffer.position(end);
+            if(metrics != null)
+                metrics.sent(object.getClass(), 1, end - start, System.nanoTime() - startTime);
 
-            // Write to socket if no data was queued.
-            if(start == 0 && !writeToSocket()){
-                // A partial write, set OP_WRITE to be notified when more
-                // writing can occur.
-                selectionKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            return queued(start == 0, end - start);
+        }
+    }
+
+    /**
+     * Queues an already serialized frame, including its length prefix. The
+     * position and limit of the frame are left unchanged, so the same frame can
+     * be sent to many connections. This method is thread safe.
+     */
+    public int sendFrame(ByteBuffer frame) throws IOException{
+        SocketChannel socketChannel = this.socketChannel;
+        if(socketChannel == null)
+            throw new SocketException("Connection is closed.");
+        synchronized(writeLock){
+            int pending = getPendingBytes(), length = frame.remaining();
+            if(length > maxPendingBytes - pending)
+                throw overflow(length, maxPendingBytes - pending);
+
+            int position = frame.position();
+            if(pool == null){
+                writeBuffer.put(frame);
             }else{
-                // Full write, wake up selector so idle event will be fired.
-                selectionKey.selector().wakeup();
+                // Unlike objects, frames may be split across segments.
+                int limit = frame.limit();
+                ByteBuffer tail = segmentCount == 0 ? addSegment() : segments[segmentCount - 1];
+                while(frame.hasRemaining()){
+                    if(!tail.hasRemaining()) tail = addSegment();
+                    frame.limit(frame.position() + Math.min(tail.remaining(), frame.remaining()));
+                    tail.put(frame);
+                    frame.limit(limit);
+                }
+                pendingBytes = pending + length;
             }
+            frame.position(position);
 
-            lastWriteTime = System.currentTimeMillis();
-            return end - start;
+            return queued(pending == 0, length);
+        }
+    }
+
+    /** Serializes an object into the last segment, or a new one if it does not fit. Must be called while holding the write lock. */
+    private int sendSegmented(Object object) throws IOException{
+        NetMetrics metrics = this.metrics;
+        long startTime = metrics == null ? 0 : System.nanoTime();
+        int pending = pendingBytes;
+        ByteBuffer tail = segmentCount == 0 ? addSegment() : segments[segmentCount - 1];
+        int start = tail.position();
+        int length = serialize(tail, object);
+        if(length < 0 && start > 0){
+            // Objects are not split, so that they can be serialized in place.
+            tail = addSegment();
+            start = 0;
+            length = serialize(tail, object);
+        }
+
+        if(length < 0 || length > maxPendingBytes - pending){
+            tail.position(start);
+            if(start == 0) removeTail();
+            if(length < 0)
+                throw new ArcNetException("Unable to send object larger than a buffer pool segment: " + object.getClass().getName(), new BufferOverflowException());
+            throw overflow(length, maxPendingBytes - pending);
+        }
+
+        pendingBytes = pending + length;
+        if(metrics != null)
+            metrics.sent(object.getClass(), 1, length, System.nanoTime() - startTime);
+        return queued(pending == 0, length);
+    }
+
+    /**
+     * Serializes an object with its length prefix.
+     * @return The number of bytes written, or -1 if the object did not fit, in
+     * which case the buffer position is left unchanged.
+     */
+    private int serialize(ByteBuffer buffer, Object object){
+        int start = buffer.position();
+        int lengthLength = serialization.getLengthLength();
+        if(buffer.remaining() < lengthLength) return -1;
+
+        try{
+            buffer.position(start + lengthLength);
+            serialization.write(buffer, object);
+        }catch(BufferOverflowException ex){
+            buffer.position(start);
+            return -1;
+        }catch(Throwable ex){
+            buffer.position(start);
+            throw new ArcNetException("Error serializing object of type: " + object.getClass().getName(), ex);
+        }
+        int end = buffer.position();
+
+        buffer.position(start);
+        serialization.writeLength(buffer, end - lengthLength - start);
+        buffer.position(end);
+        return end - start;
+    }
+
+    /**
+     * Writes as many queued segments as possible with one gathering write, and
+     * returns sent segments to the pool. Must be called while holding the write
+     * lock.
+     * @return Whether everything was written.
+     */
+    private boolean writeSegments(SocketChannel socketChannel) throws IOException{
+        ByteBuffer[] segments = this.segments;
+        int count = segmentCount;
+        if(count == 0) return true;
+
+        // Switch to read mode.
+        for(int i = 0; i < count; i++){
+            ByteBuffer segment = segments[i];
+            segment.limit(segment.position());
+            segment.position(i == 0 ? headSent : 0);
+        }
+
+        long remaining = pendingBytes, written;
+        while(remaining > 0 && (written = socketChannel.write(segments, 0, count)) > 0){
+            remaining -= written;
+        }
+        pendingBytes = (int)remaining;
+
+        int sent = 0;
+        while(sent < count && !segments[sent].hasRemaining()){
+            pool.free(segments[sent++]);
+        }
+        headSent = sent < count ? segments[sent].position() : 0;
+
+        // Switch the rest back to write mode.
+        for(int i = sent; i < count; i++){
+            ByteBuffer segment = segments[i];
+            segment.position(segment.limit());
+            segment.limit(segment.capacity());
+        }
+        System.arraycopy(segments, sent, segments, 0, count - sent);
+        for(int i = count - sent; i < count; i++){
+            segments[i] = null;
+        }
+        segmentCount = count - sent;
+
+        return segmentCount == 0;
+    }
+
+    /**
+     * Sends an object, then compresses everything queued after it. The object
+     * and anything queued before it are still written uncompressed. This
+     * method is thread safe.
+     */
+    public int sendThenCompress(Object object, StreamCompression compression) throws IOException{
+        synchronized(writeLock){
+            int length = send(object);
+            rawPending = getQueuedBytes();
+
+            if(deflater == null || deflaterLevel != compression.level){
+                if(deflater != null) deflater.end();
+                deflater = new Deflater(compression.level);
+                deflaterLevel = compression.level;
+            }else{
+                deflater.reset();
+            }
+            if(compression.dictionary != null)
+                deflater.setDictionary(compression.dictionary);
+            if(compressedOut == null){
+                compressedOut = ByteBuffer.allocate(4096);
+                compressedOut.flip();
+            }
+            deflating = true;
+            return length;
+        }
+    }
+
+    /**
+     * Once the last batch has been written, compresses everything queued as the
+     * next batch and writes it. Must be called while holding the write lock.
+     * @return Whether everything was written.
+     */
+    private boolean writeCompressed(SocketChannel socketChannel) throws IOException{
+        if(!compressedOut.hasRemaining()){
+            if(getQueuedBytes() == 0)
+                return true;
+            compressedOut.clear();
+
+            boolean deflated;
+            if(pool == null){
+                writeBuffer.flip();
+                deflated = compress(writeBuffer);
+                writeBuffer.clear();
+            }else{
+                deflated = false;
+                for(int i = 0; i < segmentCount; i++){
+                    ByteBuffer segment = segments[i];
+                    segment.limit(segment.position());
+                    segment.position(i == 0 ? headSent : 0);
+                    deflated |= compress(segment);
+                }
+                while(segmentCount > 0){
+                    removeTail();
+                }
+                pendingBytes = 0;
+            }
+            // End the batch on a byte boundary, so every frame in it can be read.
+            if(deflated)
+                deflate(Deflater.SYNC_FLUSH);
+            compressedOut.flip();
+        }
+
+        ByteBuffer buffer = compressedOut;
+        while(buffer.hasRemaining()){
+            if(socketChannel.write(buffer) == 0)
+                break;
+        }
+        compressedPending = buffer.remaining();
+
+        return !buffer.hasRemaining();
+    }
+
+    /**
+     * Adds queued bytes to the compressed buffer, copying those sent before
+     * deflating started as is.
+     * @return Whether anything was given to the deflater.
+     */
+    private boolean compress(ByteBuffer queued){
+        if(rawPending > 0){
+            int count = Math.min(rawPending, queued.remaining());
+            ensureCompressed(count);
+            int limit = queued.limit();
+            queued.limit(queued.position() + count);
+            compressedOut.put(queued);
+            queued.limit(limit);
+            rawPending -= count;
+        }
+
+        boolean deflated = false;
+        while(queued.hasRemaining()){
+            if(queued.hasArray()){
+                deflater.setInput(queued.array(), queued.arrayOffset() + queued.position(), queued.remaining());
+                queued.position(queued.limit());
+            }else{
+                if(deflateScratch == null) deflateScratch = new byte[8192];
+                int count = Math.min(deflateScratch.length, queued.remaining());
+                queued.get(deflateScratch, 0, count);
+                deflater.setInput(deflateScratch, 0, count);
+            }
+            while(!deflater.needsInput()){
+                deflate(Deflater.NO_FLUSH);
+            }
+            deflated = true;
+        }
+        return deflated;
+    }
+
+    /** Deflates into the compressed buffer until the deflater has no more output. */
+    private void deflate(int flush){
+        while(true){
+            ensureCompressed(64);
+            ByteBuffer out = compressedOut;
+            int count = deflater.deflate(out.array(), out.arrayOffset() + out.position(), out.remaining(), flush);
+            out.position(out.position() + count);
+            if(out.hasRemaining())
+                return;
+        }
+    }
+
+    private void ensureCompressed(int bytes){
+        ByteBuffer out = compressedOut;
+        if(out.remaining() < bytes){
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + bytes));
+            out.flip();
+            larger.put(out);
+            compressedOut = larger;
+        }
+    }
+
+    private ByteBuffer addSegment(){
+        if(segmentCount == segments.length){
+            segments = Arrays.copyOf(segments, Math.max(4, segmentCount * 2));
+        }
+        ByteBuffer segment = pool.obtain();
+        segments[segmentCount++] = segment;
+        return segment;
+    }
+
+    private void removeTail(){
+        pool.free(segments[--segmentCount]);
+        segments[segmentCount] = null;
+        if(segmentCount == 0) headSent = 0;
+    }
+
+    private void clearWrites(){
+        synchronized(writeLock){
+            deflating = false;
+            rawPending = 0;
+            compressedPending = 0;
+            if(compressedOut != null){
+                compressedOut.clear();
+                compressedOut.flip();
+            }
+            if(pool == null){
+                writeBuffer.clear();
+            }else{
+                while(segmentCount > 0){
+                    removeTail();
+                }
+                pendingBytes = 0;
+            }
+        }
+    }
+
+    private ArcNetException overflow(int length, int free){
+        return new ArcNetException("Write buffer overflow (" + length + " bytes, " + free + " free).", new BufferOverflowException());
+    }
+
+    /** Flushes newly queued bytes if nothing was queued before them. Must be called while holding the write lock. */
+    private int queued(boolean wasEmpty, int length) throws IOException{
+        NetMetrics metrics = this.metrics;
+        int pending = getPendingBytes();
+        if(pending > pendingHighWater){
+            pendingHighWater = pending;
+            if(metrics != null)
+                metrics.pending(pending);
         }
+
+        // Write to socket if no data was queued. When compressing, let the
+        // selecting thread compress everything queued by the time it wakes up
+        // as one batch instead, unless the batch is getting large, which
+        // happens when it is the selecting thread that is sending.
+        if(deflating){
+            if(wasEmpty){
+                selectionKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                wakeup(metrics);
+            }else if(getQueuedBytes() >= maxPendingBytes / 4){
+                writeToSocket();
+            }
+        }else if(wasEmpty && !writeToSocket()){
+            // A partial write, set OP_WRITE to be notified when more
+            // writing can occur.
+            selectionKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            if(metrics != null)
+                metrics.partialWrite();
+        }else{
+            // Full write, wake up selector so idle event will be fired.
+            wakeup(metrics);
+        }
+
+        lastWriteTime = System.currentTimeMillis();
+        return length;
+    }
+
+    private void wakeup(NetMetrics metrics){
+        AtomicBoolean awake = this.awake;
+        if(awake != null && awake.getAndSet(true))
+            return;
+        selectionKey.selector().wakeup();
+        if(metrics != null)
+            metrics.wakeup();
+    }
+
+    /** Returns the number of bytes waiting to be written to the socket. */
+    public int getPendingBytes(){
+        return getQueuedBytes() + compressedPending;
+    }
+
+    /** Returns the number of bytes waiting to be written, not counting those already compressed. */
+    private int getQueuedBytes(){
+        return pool == null ? writeBuffer.position() : pendingBytes;
+    }
+
+    /** Returns whether the stream is compressed in both directions. */
+    public boolean isCompressed(){
+        return deflating && inflating;
     }
 
     public void close(){
@@ -219,6 +749,8 @@ class TcpConnection{
             if(socketChannel != null){
                 socketChannel.close();
                 socketChannel = null;
+                if(pool != null)
+                    clearWrites();
                 if(selectionKey != null)
                     selectionKey.selector().wakeup();
             }
@@ -233,4 +765,20 @@ class TcpConnection{
     public boolean isTimedOut(long time){
         return socketChannel != null && timeoutMillis > 0 && time - lastReadTime > timeoutMillis;
     }
+
+    /**
+     * Returns the time at which {@link #needsKeepAlive(long)} or
+     * {@link #isTimedOut(long)} next become true, or {@link Long#MAX_VALUE}
+     * if neither will.
+     */
+    long nextDeadline(){
+        long deadline = Long.MAX_VALUE;
+        if(socketChannel == null)
+            return deadline;
+        if(keepAliveMillis > 0)
+            deadline = lastWriteTime + keepAliveMillis + 1;
+        if(timeoutMillis > 0)
+            deadline = Math.min(deadline, lastReadTime + timeoutMillis + 1);
+        return deadline;
+    }
 }
@@ -0,0 +1,812 @@
+package arc.net;
+
+import arc.struct.Queue;
+import arc.struct.*;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static arc.net.Varints.*;
+
+/**
+ * Sends objects over UDP on channels that are sequenced or reliable, so that
+ * latency sensitive traffic does not have to wait behind lost TCP packets.
+ * <p>
+ * Each channel has a {@link Delivery}. Objects sent with
+ * {@link #send(Connection, int, Object)} are serialized and queued, then
+ * {@link #update()} batches everything queued for a connection into as few
+ * {@link Packet packets} as fit the {@link #setMtu(int) MTU}, splitting
+ * larger objects into fragments. Every packet has a sequence number and
+ * acknowledges the last packet received from the other side along with a
+ * bitfield of the 32 before it. Reliable messages that are not acknowledged
+ * within a timeout derived from the measured RTT are sent again in a later
+ * packet, and the receiving side drops duplicates. Only {@link #window}
+ * reliable messages per channel are unacknowledged at once; later ones wait.
+ * <p>
+ * The same class is used on both sides, which must add the same channels in
+ * the same order with {@link #addChannel(Delivery)} and add the channels as a
+ * listener of the {@link Server} or {@link Client}. The {@link NetSerializer}
+ * of the end point must write packets with {@link Packet#write(ByteBuffer)}
+ * and read them with {@link Packet#read(ByteBuffer)}, while the serializer
+ * given to the constructor writes the objects sent on channels. Connections
+ * without UDP use TCP instead.
+ * <p>
+ * {@link #send(Connection, int, Object)} is thread safe. {@link #update()}
+ * should be called on one thread at a regular interval, such as every game
+ * tick, as nothing is sent or resent otherwise. Received objects are passed to
+ * the {@link #setListener(NetListener) listener} on the update thread of the
+ * end point.
+ */
+public class UdpChannels implements NetListener{
+    /** The most reliable messages of one channel that may be unacknowledged at once. */
+    public static final int window = 256;
+    /** The most fragments an object can be split into. */
+    public static final int maxFragments = 255;
+    /** The sequence number, acknowledged sequence number and acknowledgement bits. */
+    static final int packetHeader = 8;
+    /** The most bytes a message takes besides its data: channel, ID, fragment index and count, and length. */
+    static final int messageHeader = 8;
+
+    private final NetSerializer serializer;
+    private final Seq<Delivery> channels = new Seq<>();
+    private final IntMap<Peer> peers = new IntMap<>();
+    private final Object serializeLock = new Object();
+    private ByteBuffer serializeBuffer = ByteBuffer.allocate(1024);
+    private final Seq<Delayed> delayed = new Seq<>();
+    private final Seq<Packet> outgoing = new Seq<>();
+    private volatile int mtu = 1200;
+    private volatile Simulator simulator;
+    private volatile NetListener listener;
+
+    /** @param serializer Serializes the objects sent on channels. */
+    public UdpChannels(NetSerializer serializer){
+        this.serializer = serializer;
+    }
+
+    /**
+     * Adds a channel. Must be called before any connection uses these channels.
+     * @return The index of the channel, which is passed to
+     * {@link #send(Connection, int, Object)}.
+     */
+    public int addChannel(Delivery delivery){
+        if(delivery == null)
+            throw new IllegalArgumentException("delivery cannot be null.");
+        if(channels.size >= 128)
+            throw new IllegalStateException("There can be at most 128 channels.");
+        channels.add(delivery);
+        return channels.size - 1;
+    }
+
+    /**
+     * Sets the most bytes of messages in one packet, not counting the framing of
+     * the {@link NetSerializer}. Objects larger than this are fragmented.
+     * Defaults to 1200, which fits in a datagram on nearly any network.
+     */
+    public void setMtu(int mtu){
+        if(mtu < 64 || mtu > 65535)
+            throw new IllegalArgumentException("mtu must be between 64 and 65535.");
+        this.mtu = mtu;
+    }
+
+    /**
+     * Drops and delays outgoing packets to test how the channels behave on a
+     * poor network. May be null to send packets directly, the default.
+     */
+    public void setSimulator(Simulator simulator){
+        this.simulator = simulator;
+    }
+
+    /** Sets the listener that is notified of the objects received on channels. */
+    public void setListener(NetListener listener){
+        this.listener = listener;
+    }
+
+    /**
+     * Queues an object to be sent on a channel with the next {@link #update()}.
+     * @throws IllegalArgumentException if the object takes more than
+     * {@link #maxFragments} fragments.
+     */
+    public void send(Connection connection, int channel, Object object){
+        if(object == null)
+            throw new IllegalArgumentException("object cannot be null.");
+        if(channel < 0 || channel >= channels.size)
+            throw new IllegalArgumentException("Unknown channel: " + channel);
+
+        int fragmentSize = mtu - packetHeader - messageHeader;
+        byte[] data = serialize(object, fragmentSize * maxFragments);
+        Peer peer = peer(connection);
+        synchronized(peer){
+            peer.send[channel].queue(data, fragmentSize);
+        }
+    }
+
+    /**
+     * Sends everything queued for each connection, and resends reliable
+     * messages that were not acknowledged in time. Packets that were delayed by
+     * the {@link Simulator} are also sent once they are due.
+     */
+    public void update(){
+        long now = System.currentTimeMillis();
+        Seq<Delayed> due = null;
+        synchronized(delayed){
+            for(int i = 0; i < delayed.size; i++){
+                Delayed packet = delayed.get(i);
+                if(packet.time <= now){
+                    if(due == null) due = new Seq<>();
+                    due.add(packet);
+                    delayed.remove(i--);
+                }
+            }
+        }
+        if(due != null){
+            for(Delayed packet : due){
+                transmit(packet.connection, packet.packet);
+            }
+        }
+
+        Seq<Peer> peers;
+        synchronized(this.peers){
+            peers = this.peers.values().toArray();
+        }
+        for(Peer peer : peers){
+            Seq<Packet> outgoing = this.outgoing;
+            outgoing.clear();
+            synchronized(peer){
+                peer.flush(now, mtu, outgoing);
+            }
+            for(Packet packet : outgoing){
+                simulate(peer.connection, packet, now);
+            }
+        }
+        outgoing.clear();
+    }
+
+    /** Returns the smoothed RTT to a connection in milliseconds, or 0 if it has not been measured yet. */
+    public float getRtt(Connection connection){
+        Peer peer;
+        synchronized(peers){
+            peer = peers.get(connection.id);
+        }
+        return peer == null ? 0 : peer.rtt;
+    }
+
+    /** Returns the number of times a reliable message was sent again to a connection. */
+    public long getResends(Connection connection){
+        Peer peer;
+        synchronized(peers){
+            peer = peers.get(connection.id);
+        }
+        return peer == null ? 0 : peer.resends;
+    }
+
+    @Override
+    public void received(Connection connection, Object object){
+        if(!(object instanceof Packet))
+            return;
+        Peer peer = peer(connection);
+        Seq<byte[]> delivered = new Seq<>();
+        synchronized(peer){
+            peer.receive((Packet)object, delivered);
+        }
+        NetListener listener = this.listener;
+        if(listener == null)
+            return;
+        for(byte[] data : delivered){
+            Object received;
+            try{
+                received = serializer.read(ByteBuffer.wrap(data));
+            }catch(Exception ex){
+                throw new ArcNetException("Error during deserialization.", ex);
+            }
+            listener.received(connection, received);
+        }
+    }
+
+    @Override
+    public void disconnected(Connection connection, DcReason reason){
+        synchronized(peers){
+            peers.remove(connection.id);
+        }
+        synchronized(delayed){
+            delayed.removeAll(packet -> packet.connection == connection);
+        }
+    }
+
+    private Peer peer(Connection connection){
+        synchronized(peers){
+            Peer peer = peers.get(connection.id);
+            if(peer == null || peer.connection != connection)
+                peers.put(connection.id, peer = new Peer(connection, channels));
+            return peer;
+        }
+    }
+
+    private byte[] serialize(Object object, int maxSize){
+        synchronized(serializeLock){
+            while(true){
+                ByteBuffer buffer = serializeBuffer;
+                buffer.clear();
+                try{
+                    serializer.write(buffer, object);
+                }catch(BufferOverflowException ex){
+                    if(buffer.capacity() >= maxSize)
+                        throw new IllegalArgumentException("Object is larger than " + maxSize + " bytes: " + object.getClass().getName());
+                    serializeBuffer = ByteBuffer.allocate(Math.min(buffer.capacity() * 2, maxSize));
+                    continue;
+                }catch(Exception ex){
+                    throw new ArcNetException("Error serializing object of type: " + object.getClass().getName(), ex);
+                }
+                return Arrays.copyOf(buffer.array(), buffer.position());
+            }
+        }
+    }
+
+    private void simulate(Connection connection, Packet packet, long now){
+        Simulator simulator = this.simulator;
+        if(simulator != null){
+            int delay;
+            synchronized(simulator){
+                if(simulator.random.nextFloat() < simulator.loss)
+                    return;
+                delay = simulator.latency + (simulator.jitter > 0 ? simulator.random.nextInt(simulator.jitter + 1) : 0);
+            }
+            if(delay > 0){
+                synchronized(delayed){
+                    delayed.add(new Delayed(connection, packet, now + delay));
+                }
+                return;
+            }
+        }
+        transmit(connection, packet);
+    }
+
+    private void transmit(Connection connection, Packet packet){
+        if(connection.udp != null)
+            connection.sendUDP(packet);
+        else
+            connection.sendTCP(packet);
+    }
+
+    /** Returns the signed distance between two 16 bit sequence numbers, accounting for wrapping. */
+    static int difference(int a, int b){
+        return (short)(a - b);
+    }
+
+    /** How the messages of a channel are delivered. */
+    public enum Delivery{
+        /** Messages may be lost, and those older than the newest received are dropped. */
+        unreliableSequenced,
+        /** Messages are resent until acknowledged, and received in the order they were sent. */
+        reliableOrdered,
+        /** Messages are resent until acknowledged, and received as soon as they arrive. */
+        reliableUnordered
+    }
+
+    /**
+     * Drops and delays packets as a poor network would. Packets are delayed by
+     * the latency plus a random amount up to the jitter, so jitter also
+     * reorders them.
+     */
+    public static class Simulator{
+        /** The fraction of packets that are lost, from 0 to 1. */
+        public volatile float loss;
+        /** Milliseconds packets are delayed by. */
+        public volatile int latency, jitter;
+        final Random random;
+
+        public Simulator(float loss, int latency, int jitter){
+            this(loss, latency, jitter, System.nanoTime());
+        }
+
+        /** @param seed Seeds the decisions of which packets are lost and by how much they are delayed. */
+        public Simulator(float loss, int latency, int jitter, long seed){
+            this.loss = loss;
+            this.latency = latency;
+            this.jitter = jitter;
+            this.random = new Random(seed);
+        }
+    }
+
+    /** Messages for one connection, with the acknowledgements of the packets it sent. */
+    public static class Packet{
+        final byte[] data;
+
+        Packet(byte[] data){
+            this.data = data;
+        }
+
+        /** Returns the encoded size of this packet, not counting its length. */
+        public int size(){
+            return data.length;
+        }
+
+        public void write(ByteBuffer buffer){
+            buffer.putShort((short)data.length);
+            buffer.put(data);
+        }
+
+        public static Packet read(ByteBuffer buffer){
+            byte[] data = new byte[buffer.getShort() & 0xffff];
+            buffer.get(data);
+            return new Packet(data);
+        }
+    }
+
+    /** A message, or one fragment of one. */
+    private static class Message{
+        final int channel, id;
+        /** Zero and one for messages that are not fragmented. */
+        final int index, count;
+        final byte[] data;
+        /** When this reliable message was last sent, or 0 if it has not been. */
+        long sent;
+        boolean acked;
+
+        Message(int channel, int id, int index, int count, byte[] data){
+            this.channel = channel;
+            this.id = id;
+            this.index = index;
+            this.count = count;
+            this.data = data;
+        }
+
+        int size(){
+            int length = data.length, size = 1 + 2 + (count > 1 ? 2 : 0) + 1;
+            while((length >>>= 7) != 0)
+                size++;
+            return size + data.length;
+        }
+    }
+
+    private static class SentPacket{
+        final int sequence;
+        final long time;
+        final Message[] messages;
+        boolean acked;
+
+        SentPacket(int sequence, long time, Message[] messages){
+            this.sequence = sequence;
+            this.time = time;
+            this.messages = messages;
+        }
+    }
+
+    private static class Delayed{
+        final Connection connection;
+        final Packet packet;
+        final long time;
+
+        Delayed(Connection connection, Packet packet, long time){
+            this.connection = connection;
+            this.packet = packet;
+            this.time = time;
+        }
+    }
+
+    /** The state of both directions of the channels of one connection. Guarded by its own lock. */
+    private static class Peer{
+        final Connection connection;
+        final SendChannel[] send;
+        final ReceiveChannel[] receive;
+
+        int sequence;
+        final SentPacket[] sent = new SentPacket[window];
+        /** The sequence numbers of received packets, by sequence number modulo the window. */
+        final int[] received = new int[window];
+        boolean hasReceived, ackPending;
+        /** The newest received sequence number, and how many packets were received since it was last acknowledged. */
+        int latest, unacknowledged;
+        /** The newest sequence number the other side acknowledged. */
+        int newestAck = -1;
+
+        float rtt, rttVariance;
+        boolean measured;
+        long resends;
+
+        // Reused while building packets.
+        ByteBuffer buffer;
+        final Seq<Message> reliable = new Seq<>(Message.class);
+
+        Peer(Connection connection, Seq<Delivery> channels){
+            this.connection = connection;
+            send = new SendChannel[channels.size];
+            receive = new ReceiveChannel[channels.size];
+            for(int i = 0; i < channels.size; i++){
+                send[i] = new SendChannel(i, channels.get(i) != Delivery.unreliableSequenced);
+                receive[i] = new ReceiveChannel(channels.get(i));
+            }
+            Arrays.fill(received, -1);
+        }
+
+        /** Milliseconds after which an unacknowledged reliable message is sent again. */
+        float timeout(){
+            return measured ? Math.max(10, Math.min(rtt + 4 * rttVariance, 1000)) : 100;
+        }
+
+        /** Writes the messages that are due into packets. */
+        void flush(long now, int mtu, Seq<Packet> out){
+            if(buffer == null || buffer.capacity() != mtu)
+                buffer = ByteBuffer.allocate(mtu);
+            buffer.clear();
+            buffer.position(packetHeader);
+
+            float timeout = timeout();
+            for(SendChannel channel : send){
+                if(channel.reliable){
+                    for(int id = channel.oldest; ; id = (id + 1) & 0xffff){
+                        Message message = channel.inFlight[id & (window - 1)];
+                        if(message == null || message.id != id)
+                            break;
+                        if(message.acked || (message.sent != 0 && now - message.sent < timeout))
+                            continue;
+                        if(message.sent != 0)
+                            resends++;
+                        message.sent = now;
+                        write(message, now, out);
+                    }
+                }else{
+                    for(Message message : channel.unsent){
+                        write(message, now, out);
+                    }
+                    channel.unsent.clear();
+                }
+            }
+            // A packet without messages still carries acknowledgements.
+            if(buffer.position() > packetHeader || ackPending)
+                finish(now, out);
+
+            // More packets may have arrived since the last update than one
+            // packet acknowledges. Acknowledge the older ones too, or they
+            // would all be resent.
+            for(int back = 33; back < Math.min(unacknowledged, window); back += 33){
+                for(int i = back; i < back + 33; i++){
+                    int sequence = (latest - i) & 0xffff;
+                    if(received[sequence & (window - 1)] == sequence){
+                        finish(now, out, sequence);
+                        back = i;
+                        break;
+                    }
+                }
+            }
+            unacknowledged = 0;
+        }
+
+        private void write(Message message, long now, Seq<Packet> out){
+            int size = message.size();
+            if(buffer.remaining() < size && buffer.position() > packetHeader)
+                finish(now, out);
+            // Only when the MTU was lowered after the message was fragmented.
+            if(buffer.remaining() < size){
+                buffer = ByteBuffer.allocate(packetHeader + size);
+                buffer.position(packetHeader);
+            }
+
+            buffer.put((byte)(message.channel << 1 | (message.count > 1 ? 1 : 0)));
+            buffer.putShort((short)message.id);
+            if(message.count > 1){
+                buffer.put((byte)message.index);
+                buffer.put((byte)message.count);
+            }
+            putVarint(buffer, message.data.length);
+            buffer.put(message.data);
+            if(message.sent != 0)
+                reliable.add(message);
+        }
+
+        private void finish(long now, Seq<Packet> out){
+            finish(now, out, latest);
+        }
+
+        private void finish(long now, Seq<Packet> out, int ack){
+            int end = buffer.position();
+            buffer.putShort(0, (short)sequence);
+            buffer.putShort(2, (short)(hasReceived ? ack : 0xffff));
+            buffer.putInt(4, hasReceived ? ackBits(ack) : 0);
+            byte[] data = Arrays.copyOf(buffer.array(), end);
+
+            sent[sequence & (window - 1)] = new SentPacket(sequence, now, reliable.toArray());
+            reliable.clear();
+            sequence = (sequence + 1) & 0xffff;
+            ackPending = false;
+            out.add(new Packet(data));
+
+            buffer.clear();
+            buffer.position(packetHeader);
+        }
+
+        private int ackBits(int ack){
+            int bits = 0;
+            for(int i = 0; i < 32; i++){
+                int sequence = (ack - 1 - i) & 0xffff;
+                if(received[sequence & (window - 1)] == sequence)
+                    bits |= 1 << i;
+            }
+            return bits;
+        }
+
+        void receive(Packet packet, Seq<byte[]> delivered){
+            ByteBuffer buffer = ByteBuffer.wrap(packet.data);
+            int sequence = buffer.getShort() & 0xffff, ack = buffer.getShort() & 0xffff, bits = buffer.getInt();
+
+            // Before the other side receives anything, it acknowledges 0xffff,
+            // which is not sent until long after.
+            long now = System.currentTimeMillis();
+            // Only the newest acknowledgement says how long the other side took to answer.
+            boolean newest = newestAck == -1 || difference(ack, newestAck) > 0;
+            if(newest)
+                newestAck = ack;
+            acknowledged(ack, now, newest);
+            for(int i = 0; i < 32; i++){
+                if((bits & (1 << i)) != 0)
+                    acknowledged((ack - 1 - i) & 0xffff, now, false);
+            }
+
+            if(hasReceived){
+                int age = difference(sequence, latest);
+                // Duplicated, or too old to tell.
+                if(age <= -window || received[sequence & (window - 1)] == sequence)
+                    return;
+                if(age > 0)
+                    latest = sequence;
+            }else{
+                latest = sequence;
+                hasReceived = true;
+            }
+            received[sequence & (window - 1)] = sequence;
+            unacknowledged++;
+
+            while(buffer.hasRemaining()){
+                int header = buffer.get() & 0xff, channel = header >>> 1;
+                int id = buffer.getShort() & 0xffff, index = 0, count = 1;
+                if((header & 1) != 0){
+                    index = buffer.get() & 0xff;
+                    count = buffer.get() & 0xff;
+                }
+                byte[] data = new byte[getVarint(buffer)];
+                buffer.get(data);
+                if(channel >= receive.length)
+                    throw new ArcNetException("Unknown channel: " + channel);
+                receive[channel].receive(new Message(channel, id, index, count, data), delivered);
+                ackPending = true;
+            }
+        }
+
+        private void acknowledged(int sequence, long now, boolean measure){
+            SentPacket packet = sent[sequence & (window - 1)];
+            if(packet == null || packet.sequence != sequence || packet.acked)
+                return;
+            packet.acked = true;
+
+            if(measure){
+                float sample = now - packet.time;
+                if(measured){
+                    rttVariance += (Math.abs(rtt - sample) - rttVariance) * 0.25f;
+                    rtt += (sample - rtt) * 0.125f;
+                }else{
+                    rtt = sample;
+                    rttVariance = sample / 2f;
+                    measured = true;
+                }
+            }
+
+            for(Message message : packet.messages){
+                send[message.channel].acknowledged(message);
+            }
+        }
+    }
+
+    private static class SendChannel{
+        final int index;
+        final boolean reliable;
+        int nextID;
+        /** The oldest unacknowledged ID of a reliable channel. Every message from it to the last in flight is kept by ID modulo the window. */
+        int oldest;
+        final Message[] inFlight;
+        final Queue<Message> waiting;
+        final Seq<Message> unsent;
+
+        SendChannel(int index, boolean reliable){
+            this.index = index;
+            this.reliable = reliable;
+            inFlight = reliable ? new Message[window] : null;
+            waiting = reliable ? new Queue<>() : null;
+            unsent = reliable ? null : new Seq<>(Message.class);
+        }
+
+        void queue(byte[] data, int fragmentSize){
+            int count = data.length <= fragmentSize ? 1 : (data.length + fragmentSize - 1) / fragmentSize;
+            for(int i = 0; i < count; i++){
+                byte[] fragment = count == 1 ? data : Arrays.copyOfRange(data, i * fragmentSize, Math.min(data.length, (i + 1) * fragmentSize));
+                Message message = new Message(index, nextID, count == 1 ? 0 : i, count, fragment);
+                nextID = (nextID + 1) & 0xffff;
+                if(reliable)
+                    waiting.addLast(message);
+                else
+                    unsent.add(message);
+            }
+            if(reliable)
+                fill();
+        }
+
+        void acknowledged(Message message){
+            message.acked = true;
+            while(true){
+                Message first = inFlight[oldest & (window - 1)];
+                if(first == null || first.id != oldest || !first.acked)
+                    break;
+                inFlight[oldest & (window - 1)] = null;
+                oldest = (oldest + 1) & 0xffff;
+            }
+            fill();
+        }
+
+        /** Moves waiting messages in flight while the window has room. */
+        private void fill(){
+            while(!waiting.isEmpty() && difference(waiting.first().id, oldest) < window){
+                Message message = waiting.removeFirst();
+                inFlight[message.id & (window - 1)] = message;
+            }
+        }
+    }
+
+    private static class ReceiveChannel{
+        final Delivery delivery;
+        /**
+         * Reliable ordered channels: the next ID to deliver. Reliable unordered
+         * channels: the newest received ID. Sequenced channels: the ID of the
+         * first fragment of the last delivered message.
+         */
+        int next;
+        boolean started;
+        /**
+         * Received messages waiting for those before them, by ID modulo twice
+         * the window. The sender only counts fragments as acknowledged, so it
+         * can be up to a whole message ahead of what was delivered.
+         */
+        Message[] buffered;
+        /** The IDs of received messages, by ID modulo the window. */
+        int[] seen;
+        /** Fragments of unordered messages, by the ID of the first fragment. */
+        IntMap<Message[]> fragments;
+        /** Fragments of the newest sequenced message, which is the only one still wanted. */
+        Message[] partial;
+        int partialID;
+
+        ReceiveChannel(Delivery delivery){
+            this.delivery = delivery;
+            if(delivery == Delivery.reliableOrdered){
+                buffered = new Message[window * 2];
+            }else if(delivery == Delivery.reliableUnordered){
+                seen = new int[window];
+                Arrays.fill(seen, -1);
+                fragments = new IntMap<>();
+            }
+        }
+
+        void receive(Message message, Seq<byte[]> delivered){
+            switch(delivery){
+                case reliableOrdered:
+                    receiveOrdered(message, delivered);
+                    break;
+                case reliableUnordered:
+                    receiveUnordered(message, delivered);
+                    break;
+                case unreliableSequenced:
+                    receiveSequenced(message, delivered);
+                    break;
+            }
+        }
+
+        private void receiveOrdered(Message message, Seq<byte[]> delivered){
+            int mask = buffered.length - 1;
+            int ahead = difference(message.id, next);
+            if(ahead < 0 || ahead > mask)
+                return;
+            buffered[message.id & mask] = message;
+
+            while(true){
+                Message first = buffered[next & mask];
+                if(first == null || first.id != next)
+                    return;
+                int count = first.count;
+                for(int i = 1; i < count; i++){
+                    Message part = buffered[(next + i) & mask];
+                    if(part == null || part.id != ((next + i) & 0xffff))
+                        return;
+                }
+
+                Message[] parts = new Message[count];
+                for(int i = 0; i < count; i++){
+                    parts[i] = buffered[(next + i) & mask];
+                    buffered[(next + i) & mask] = null;
+                }
+                delivered.add(join(parts));
+                next = (next + count) & 0xffff;
+            }
+        }
+
+        private void receiveUnordered(Message message, Seq<byte[]> delivered){
+            if(started){
+                int age = difference(message.id, next);
+                if(age <= -window || seen[message.id & (window - 1)] == message.id)
+                    return;
+                if(age > 0)
+                    next = message.id;
+            }else{
+                next = message.id;
+                started = true;
+            }
+            seen[message.id & (window - 1)] = message.id;
+
+            if(message.count == 1){
+                delivered.add(message.data);
+                return;
+            }
+            int first = (message.id - message.index) & 0xffff;
+            Message[] parts = fragments.get(first);
+            if(parts == null)
+                fragments.put(first, parts = new Message[message.count]);
+            parts[message.index] = message;
+            if(complete(parts)){
+                fragments.remove(first);
+                delivered.add(join(parts));
+            }
+        }
+
+        private void receiveSequenced(Message message, Seq<byte[]> delivered){
+            int first = (message.id - message.index) & 0xffff;
+            if(started && difference(first, next) <= 0)
+                return;
+
+            if(message.count > 1){
+                if(partial != null){
+                    int age = difference(first, partialID);
+                    if(age < 0)
+                        return;
+                    if(age > 0 || partial.length != message.count)
+                        partial = null;
+                }
+                if(partial == null){
+                    partial = new Message[message.count];
+                    partialID = first;
+                }
+                partial[message.index] = message;
+                if(!complete(partial))
+                    return;
+                delivered.add(join(partial));
+            }else{
+                delivered.add(message.data);
+            }
+            next = first;
+            started = true;
+            if(partial != null && difference(partialID, next) <= 0)
+                partial = null;
+        }
+
+        private static boolean complete(Message[] parts){
+            for(Message part : parts){
+                if(part == null)
+                    return false;
+            }
+            return true;
+        }
+
+        private static byte[] join(Message[] parts){
+            if(parts.length == 1)
+                return parts[0].data;
+            int length = 0;
+            for(Message part : parts){
+                length += part.data.length;
+            }
+            byte[] data = new byte[length];
+            int offset = 0;
+            for(Message part : parts){
+                System.arraycopy(part.data, 0, data, offset, part.data.length);
+                offset += part.data.length;
+            }
+            return data;
+        }
+    }
+}
@@ -4,6 +4,7 @@ package arc.net;
 
 import java.io.IOException;
 import java.net.*;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.channels.*;
 
@@ -15,6 +16,8 @@ class UdpConnection{
     DatagramChannel datagramChannel;
     int keepAliveMillis = 19000;
     final ByteBuffer readBuffer, writeBuffer;
+    /** Null unless metrics are collected. */
+    NetMetrics metrics;
     private final NetSerializer serialization;
     private SelectionKey selectionKey;
     private final Object writeLock = new Object();
@@ -78,6 +81,8 @@ class UdpConnection{
 
     public Object readObject(){
         readBuffer.flip();
+        NetMetrics metrics = this.metrics;
+        long startTime = metrics == null ? 0 : System.nanoTime();
         try{
             try{
                 Object object = serialization.read(readBuffer);
@@ -86,6 +91,8 @@ class UdpConnection{
                     + readBuffer.remaining()
                     + " remaining) used to deserialize object: "
                     + object);
+                if(metrics != null && object != null)
+                    metrics.received(object.getClass(), readBuffer.limit(), System.nanoTime() - startTime);
                 return object;
             }catch(Exception ex){
                 throw new ArcNetException("Error during deserialization.", ex);
@@ -104,6 +111,8 @@ class UdpConnection{
             throw new SocketException("Connection is closed.");
         synchronized(writeLock){
             try{
+                NetMetrics metrics = this.metrics;
+                long startTime = metrics == null ? 0 : System.nanoTime();
                 try{
                     serialization.write(writeBuffer, object);
                 }catch(Exception ex){
@@ -111,6 +120,8 @@ class UdpConnection{
                 }
                 writeBuffer.flip();
                 int length = writeBuffer.limit();
+                if(metrics != null)
+                    metrics.sent(object.getClass(), 1, length, System.nanoTime() - startTime);
                 datagramChannel.send(writeBuffer, address);
 
                 lastCommunicationTime = System.currentTimeMillis();
@@ -123,6 +134,28 @@ class UdpConnection{
         }
     }
 
+    /**
+     * Sends an already serialized datagram. The position and limit of the frame
+     * are left unchanged, so the same frame can be sent to many addresses. This
+     * method is thread safe.
+     */
+    public int sendFrame(ByteBuffer frame, SocketAddress address) throws IOException{
+        DatagramChannel datagramChannel = this.datagramChannel;
+        if(datagramChannel == null)
+            throw new SocketException("Connection is closed.");
+        if(frame.remaining() > writeBuffer.capacity())
+            throw new ArcNetException("Write buffer overflow (" + frame.remaining() + " bytes, " + writeBuffer.capacity() + " max).", new BufferOverflowException());
+
+        int position = frame.position(), length = frame.remaining();
+        try{
+            datagramChannel.send(frame, address);
+            lastCommunicationTime = System.currentTimeMillis();
+            return frame.hasRemaining() ? -1 : length;
+        }finally{
+            frame.position(position);
+        }
+    }
+
     public void close(){
         connectedAddress = null;
         try{
@@ -140,4 +173,9 @@ class UdpConnection{
         return connectedAddress != null && keepAliveMillis > 0
         && time - lastCommunicationTime > keepAliveMillis;
     }
+
+    /** Returns the time at which {@link #needsKeepAlive(long)} next becomes true, or {@link Long#MAX_VALUE} if it will not. */
+    long nextDeadline(){
+        return connectedAddress != null && keepAliveMillis > 0 ? lastCommunicationTime + keepAliveMillis + 1 : Long.MAX_VALUE;
+    }
 }
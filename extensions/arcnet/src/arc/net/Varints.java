@@ -0,0 +1,46 @@
+package arc.net;
+
+import java.nio.ByteBuffer;
+
+/** Variable length integers, which take fewer bytes the closer they are to zero. */
+class Varints{
+    /** Maps signed integers to unsigned ones, so that small negative numbers are small varints. */
+    static int zigzag(int value){
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static int unzigzag(int value){
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static void putVarint(ByteBuffer buffer, int value){
+        while((value & ~0x7f) != 0){
+            buffer.put((byte)((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte)value);
+    }
+
+    static void putVarlong(ByteBuffer buffer, long value){
+        while((value & ~0x7fL) != 0){
+            buffer.put((byte)((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte)value);
+    }
+
+    static int getVarint(ByteBuffer buffer){
+        return (int)getVarlong(buffer);
+    }
+
+    static long getVarlong(ByteBuffer buffer){
+        long result = 0;
+        for(int shift = 0; shift < 64; shift += 7){
+            byte b = buffer.get();
+            result |= (long)(b & 0x7f) << shift;
+            if((b & 0x80) == 0)
+                return result;
+        }
+        throw new ArcNetException("Malformed varint.");
+    }
+}
@@ -0,0 +1,138 @@
+package net;
+
+import arc.net.*;
+import net.TestSerializer.*;
+import org.junit.*;
+
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.concurrent.atomic.*;
+
+import static org.junit.Assert.*;
+
+public class BackpressureTest{
+    int tcpPort;
+
+    Server server;
+    SocketChannel socket;
+
+    @After
+    public void close() throws Exception{
+        if(socket != null) socket.close();
+        if(server != null){
+            server.stop();
+            server.dispose();
+        }
+    }
+
+    @Test
+    public void watermarks() throws Exception{
+        BufferPool pool = new BufferPool(8192, 1024);
+        AtomicInteger high = new AtomicInteger(), low = new AtomicInteger();
+        AtomicBoolean blocked = new AtomicBoolean();
+
+        server = new Server(16384, 8192, new TestSerializer());
+        server.setBufferPool(pool);
+        server.addListener(new NetListener(){
+            @Override
+            public void connected(Connection connection){
+                //far more than the initial write buffer size, which only grows as needed
+                connection.setMaxPendingBytes(4 * 1024 * 1024);
+                connection.setPendingWatermarks(64 * 1024, 512 * 1024);
+            }
+
+            @Override
+            public void pendingHigh(Connection connection){
+                high.incrementAndGet();
+                //another thread sends while a listener is notified, like a producer the listener waits for
+                Thread sender = new Thread(() -> connection.sendTCP(new Snapshot(0, 1)));
+                sender.start();
+                try{
+                    sender.join(2000);
+                }catch(InterruptedException ignored){
+                }
+                if(sender.isAlive()) blocked.set(true);
+            }
+
+            @Override
+            public void pendingLow(Connection connection){
+                low.incrementAndGet();
+            }
+        });
+        server.bind(0);
+        tcpPort = server.getTcpPort();
+        server.start();
+
+        //a client that stops reading, so the server's queue fills up
+        socket = SocketChannel.open();
+        socket.setOption(StandardSocketOptions.SO_RCVBUF, 4096);
+        socket.connect(new InetSocketAddress("127.0.0.1", tcpPort));
+
+        long end = System.currentTimeMillis() + 5000;
+        while(server.getConnections().length == 0 && System.currentTimeMillis() < end){
+            Thread.sleep(5);
+        }
+        Connection connection = server.getConnections()[0];
+        while(connection.getMaxPendingBytes() != 4 * 1024 * 1024) Thread.sleep(5);
+
+        Snapshot snapshot = new Snapshot(0, 250);
+        int sent = 0;
+        while(high.get() == 0 && sent < 100000){
+            connection.sendTCP(snapshot);
+            sent++;
+        }
+
+        assertEquals(1, high.get());
+        assertEquals(0, low.get());
+        assertFalse(blocked.get());
+        assertTrue(connection.isConnected());
+        assertTrue(connection.getPendingBytes() >= 512 * 1024);
+        assertTrue(pool.getAllocated() >= 512 * 1024 / 8192);
+
+        //more sends while above the high watermark don't notify again
+        connection.sendTCP(snapshot);
+        assertEquals(1, high.get());
+
+        //start reading again
+        ByteBuffer buffer = ByteBuffer.allocate(65536);
+        socket.configureBlocking(false);
+        end = System.currentTimeMillis() + 10000;
+        while((low.get() == 0 || connection.getPendingBytes() > 0 || pool.getFree() != pool.getAllocated()) && System.currentTimeMillis() < end){
+            buffer.clear();
+            if(socket.read(buffer) == 0) Thread.sleep(1);
+        }
+
+        assertEquals(1, low.get());
+        assertEquals(0, connection.getPendingBytes());
+        //all segments went back to the pool
+        assertEquals(pool.getAllocated(), pool.getFree());
+        assertTrue(connection.isConnected());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void maxRequiresPool() throws Exception{
+        server = new Server(16384, 8192, new TestSerializer());
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        server.addListener(new NetListener(){
+            @Override
+            public void connected(Connection connection){
+                try{
+                    connection.setMaxPendingBytes(1024 * 1024);
+                }catch(Throwable t){
+                    error.set(t);
+                }
+            }
+        });
+        server.bind(0);
+        tcpPort = server.getTcpPort();
+        server.start();
+
+        socket = SocketChannel.open(new InetSocketAddress("127.0.0.1", tcpPort));
+        long end = System.currentTimeMillis() + 5000;
+        while(error.get() == null && System.currentTimeMillis() < end){
+            Thread.sleep(5);
+        }
+        throw (IllegalStateException)error.get();
+    }
+}
@@ -0,0 +1,211 @@
+package net;
+
+import arc.net.*;
+import arc.struct.*;
+import arc.util.*;
+import net.TestSerializer.*;
+import org.junit.*;
+
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import static org.junit.Assert.*;
+
+public class BroadcastTest{
+    int tcpPort, udpPort;
+
+    Server server;
+    Seq<Client> clients = new Seq<>();
+
+    @After
+    public void close() throws Exception{
+        for(Client client : clients){
+            client.stop();
+            client.dispose();
+        }
+        clients.clear();
+        if(server != null){
+            server.stop();
+            server.dispose();
+            server = null;
+        }
+    }
+
+    @Test
+    public void broadcastReceived() throws Exception{
+        TestSerializer serializer = new TestSerializer();
+        server = new Server(16384, 8192, serializer);
+        server.bind(0, 0);
+        tcpPort = server.getTcpPort();
+        udpPort = server.getUdpPort();
+        server.start();
+
+        int count = 4;
+        CountDownLatch tcpLatch = new CountDownLatch(count - 1), udpLatch = new CountDownLatch(count);
+        AtomicInteger received = new AtomicInteger();
+
+        for(int i = 0; i < count; i++){
+            Client client = new Client(16384, 8192, new TestSerializer());
+            client.addListener(new NetListener(){
+                @Override
+                public void received(Connection connection, Object object){
+                    if(object instanceof Snapshot){
+                        Snapshot s = (Snapshot)object;
+                        assertEquals(500, s.values.length);
+                        assertEquals(7f, s.values[499], 0f);
+                        received.incrementAndGet();
+                        (s.tick == 1 ? tcpLatch : udpLatch).countDown();
+                    }
+                }
+            });
+            client.start();
+            client.connect(5000, "127.0.0.1", tcpPort, udpPort);
+            clients.add(client);
+        }
+
+        Snapshot snapshot = new Snapshot(1, 500);
+        snapshot.values[499] = 7f;
+        server.sendToAllExceptTCP(clients.first().getID(), snapshot);
+
+        assertTrue(tcpLatch.await(5, TimeUnit.SECONDS));
+        assertEquals(1, serializer.snapshotWrites.get());
+
+        snapshot.tick = 2;
+        server.sendToAllUDP(snapshot);
+
+        assertTrue(udpLatch.await(5, TimeUnit.SECONDS));
+        assertEquals(2, serializer.snapshotWrites.get());
+        assertEquals(count * 2 - 1, received.get());
+    }
+
+    @Test
+    public void overflowCloses() throws Exception{
+        server = new Server(1024, 8192, new TestSerializer());
+        server.bind(0);
+        tcpPort = server.getTcpPort();
+        server.start();
+
+        Client client = new Client(16384, 8192, new TestSerializer());
+        client.start();
+        client.connect(5000, "127.0.0.1", tcpPort);
+        clients.add(client);
+
+        //larger than the write buffer of the connection
+        server.sendToAllTCP(new Snapshot(0, 1000));
+        assertEquals(0, server.getConnections().length);
+    }
+
+    @Test
+    public void benchmark() throws Exception{
+        for(int count : new int[]{10, 200}){
+            benchmark(count, false);
+            benchmark(count, true);
+        }
+    }
+
+    void benchmark(int count, boolean pooled) throws Exception{
+        int size = 200, iterations = 50;
+        Snapshot snapshot = new Snapshot(0, size);
+        for(int i = 0; i < size; i++){
+            snapshot.values[i] = i * 1.37f;
+        }
+
+        server = new Server(1024 * 256, 8192, new TextSerializer());
+        if(pooled) server.setBufferPool(new BufferPool());
+        server.bind(0);
+        tcpPort = server.getTcpPort();
+        server.start();
+
+        //raw sockets that discard everything they receive
+        Selector selector = Selector.open();
+        Seq<SocketChannel> sockets = new Seq<>();
+        for(int i = 0; i < count; i++){
+            SocketChannel channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", tcpPort));
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ);
+            sockets.add(channel);
+        }
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread drain = new Thread(() -> {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(65536);
+            try{
+                while(running.get()){
+                    selector.select(10);
+                    for(SelectionKey key : selector.selectedKeys()){
+                        buffer.clear();
+                        ((SocketChannel)key.channel()).read(buffer);
+                    }
+                    selector.selectedKeys().clear();
+                }
+            }catch(Exception ignored){
+            }
+        });
+        drain.start();
+
+        long end = System.currentTimeMillis() + 5000;
+        while(server.getConnections().length < count && System.currentTimeMillis() < end){
+            Thread.sleep(5);
+        }
+        assertEquals(count, server.getConnections().length);
+
+        //warmup
+        for(int i = 0; i < iterations; i++){
+            sendEach(snapshot);
+            server.sendToAllTCP(snapshot);
+        }
+
+        Time.mark();
+        for(int i = 0; i < iterations; i++){
+            sendEach(snapshot);
+        }
+        float each = Time.elapsed();
+
+        Time.mark();
+        for(int i = 0; i < iterations; i++){
+            server.sendToAllTCP(snapshot);
+        }
+        float once = Time.elapsed();
+
+        Log.info("@ connections@: @ms serializing per connection, @ms serializing once", count, pooled ? " (pooled)" : "", each, once);
+        assertEquals(count, server.getConnections().length);
+
+        running.set(false);
+        drain.join();
+        selector.close();
+        for(SocketChannel channel : sockets){
+            channel.close();
+        }
+        close();
+    }
+
+    /**
+     * Writes snapshots as text, which costs about as much per object as a
+     * reflection or JSON serializer, unlike the binary test serializer.
+     */
+    static class TextSerializer extends TestSerializer{
+        @Override
+        public void write(ByteBuffer buffer, Object object){
+            if(!(object instanceof Snapshot)){
+                super.write(buffer, object);
+                return;
+            }
+            Snapshot snapshot = (Snapshot)object;
+            StringBuilder builder = new StringBuilder("{\"tick\":").append(snapshot.tick).append(",\"values\":[");
+            for(int i = 0; i < snapshot.values.length; i++){
+                if(i > 0) builder.append(',');
+                builder.append(snapshot.values[i]);
+            }
+            buffer.put(builder.append("]}").toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    void sendEach(Object object){
+        for(Connection connection : server.getConnections()){
+            connection.sendTCP(object);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package net;
+
+import arc.net.*;
+import arc.struct.*;
+import net.TestSerializer.*;
+import org.junit.*;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import static org.junit.Assert.*;
+
+public class BufferPoolTest{
+    int tcpPort;
+
+    Server server;
+    Seq<Client> clients = new Seq<>();
+
+    @After
+    public void close() throws Exception{
+        for(Client client : clients){
+            client.stop();
+            client.dispose();
+        }
+        clients.clear();
+        if(server != null){
+            server.stop();
+            server.dispose();
+            server = null;
+        }
+    }
+
+    @Test
+    public void echo() throws Exception{
+        int messages = 3000, clientCount = 3;
+        BufferPool serverPool = new BufferPool(4096, 64), clientPool = new BufferPool(4096, 64);
+
+        server = new Server(1024 * 1024, 4096, new TestSerializer());
+        server.setBufferPool(serverPool);
+        server.addListener(new NetListener(){
+            @Override
+            public void received(Connection connection, Object object){
+                if(object instanceof Snapshot){
+                    //echo everything back, and broadcast some, which splits frames across segments
+                    connection.sendTCP(object);
+                    if(((Snapshot)object).tick % 10 == 0) server.sendToAllTCP(new Snapshot(-1, 700));
+                }
+            }
+        });
+        server.bind(0);
+        tcpPort = server.getTcpPort();
+        server.start();
+
+        CountDownLatch latch = new CountDownLatch(clientCount);
+        AtomicInteger errors = new AtomicInteger(), broadcasts = new AtomicInteger();
+
+        for(int c = 0; c < clientCount; c++){
+            Client client = new Client(1024 * 1024, 4096, new TestSerializer());
+            client.setBufferPool(clientPool);
+            client.addListener(new NetListener(){
+                int next;
+
+                @Override
+                public void received(Connection connection, Object object){
+                    if(object instanceof Snapshot){
+                        Snapshot s = (Snapshot)object;
+                        if(s.tick == -1){
+                            broadcasts.incrementAndGet();
+                            return;
+                        }
+                        if(s.tick != next || s.values.length != size(s.tick) || s.values[s.values.length - 1] != s.tick){
+                            errors.incrementAndGet();
+                        }
+                        if(++next == messages) latch.countDown();
+                    }
+                }
+            });
+            client.start();
+            client.connect(5000, "127.0.0.1", tcpPort);
+            clients.add(client);
+        }
+
+        for(int i = 0; i < messages; i++){
+            for(Client client : clients){
+                //don't queue more than the server can keep up with
+                while(client.getTcpWriteBufferSize() > 256 * 1024) Thread.yield();
+
+                Snapshot s = new Snapshot(i, size(i));
+                s.values[s.values.length - 1] = i;
+                client.sendTCP(s);
+            }
+        }
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(0, errors.get());
+
+        long end = System.currentTimeMillis() + 5000;
+        while(broadcasts.get() < clientCount * clientCount * messages / 10 && System.currentTimeMillis() < end){
+            Thread.sleep(5);
+        }
+        assertEquals(clientCount * clientCount * messages / 10, broadcasts.get());
+
+        //drained connections hold no segments; the counts are updated just after each write
+        end = System.currentTimeMillis() + 5000;
+        while((serverPool.getFree() != serverPool.getAllocated() || clientPool.getFree() != clientPool.getAllocated()) && System.currentTimeMillis() < end){
+            Thread.sleep(5);
+        }
+        for(Connection connection : server.getConnections()){
+            assertEquals(0, connection.getTcpWriteBufferSize());
+        }
+        assertEquals(serverPool.getAllocated(), serverPool.getFree());
+        assertEquals(clientPool.getAllocated(), clientPool.getFree());
+    }
+
+    @Test
+    public void overflowCloses() throws Exception{
+        server = new Server(2048, 4096, new TestSerializer());
+        server.setBufferPool(new BufferPool(4096, 16));
+        server.bind(0);
+        tcpPort = server.getTcpPort();
+        server.start();
+
+        Client client = new Client(16384, 4096, new TestSerializer());
+        client.start();
+        client.connect(5000, "127.0.0.1", tcpPort);
+        clients.add(client);
+
+        //fits in a segment, but is more than the connection may queue
+        server.sendToAllTCP(new Snapshot(0, 600));
+        assertEquals(0, server.getConnections().length);
+    }
+
+    static int size(int tick){
+        //varied sizes between 1 and 900 floats; not Mathf.randomSeed, which is not thread safe
+        return 1 + (tick * 7919) % 900;
+    }
+}
@@ -0,0 +1,160 @@
+package net;
+
+import arc.net.*;
+import arc.util.*;
+import net.TestSerializer.*;
+import org.junit.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.*;
+
+import static org.junit.Assert.*;
+
+public class ClientLatencyTest{
+    int tcpPort, udpPort;
+
+    Server server;
+    Client client;
+
+    @Before
+    public void open() throws Exception{
+        server = new Server(16384, 8192, new TestSerializer());
+        server.addListener(new NetListener(){
+            @Override
+            public void received(Connection connection, Object object){
+                //negative ticks are one way traffic
+                if(object instanceof Snapshot && ((Snapshot)object).tick >= 0) connection.sendTCP(object);
+            }
+        });
+        server.bind(0, 0);
+        tcpPort = server.getTcpPort();
+        udpPort = server.getUdpPort();
+        server.start();
+
+        client = new Client(16384, 8192, new TestSerializer());
+        client.start();
+    }
+
+    @After
+    public void close() throws Exception{
+        client.stop();
+        client.dispose();
+        server.stop();
+        server.dispose();
+    }
+
+    @Test
+    public void echoLatency() throws Exception{
+        BlockingQueue<Long> echoes = new LinkedBlockingQueue<>();
+        client.addListener(new NetListener(){
+            @Override
+            public void received(Connection connection, Object object){
+                if(object instanceof Snapshot) echoes.add(System.nanoTime());
+            }
+        });
+        client.connect(5000, "127.0.0.1", tcpPort, udpPort);
+
+        long[] times = measure(echoes, 500, 3);
+        Log.info("Echo latency p50/p99/max: @/@/@us", times[times.length / 2] / 1000, times[times.length * 99 / 100] / 1000, times[times.length - 1] / 1000);
+        assertTrue(times[times.length * 99 / 100] < 20_000_000L);
+    }
+
+    @Test
+    public void echoLatencyWhileSending() throws Exception{
+        BlockingQueue<Long> echoes = new LinkedBlockingQueue<>();
+        client.addListener(new NetListener(){
+            @Override
+            public void received(Connection connection, Object object){
+                if(object instanceof Snapshot) echoes.add(System.nanoTime());
+            }
+        });
+        client.connect(5000, "127.0.0.1", tcpPort, udpPort);
+
+        //a stream of input that the server does not answer, which the update thread must not sleep through
+        Thread sender = new Thread(() -> {
+            Snapshot input = new Snapshot(-1, 4);
+            while(client.isConnected() && !Thread.interrupted()){
+                client.sendTCP(input);
+                LockSupport.parkNanos(50_000);
+            }
+        });
+        sender.start();
+        try{
+            long[] times = measure(echoes, 200, 40);
+            Log.info("Echo latency while sending p50/p99/max: @/@/@us", times[times.length / 2] / 1000, times[times.length * 99 / 100] / 1000, times[times.length - 1] / 1000);
+            assertTrue(times[times.length * 99 / 100] < 20_000_000L);
+        }finally{
+            sender.interrupt();
+            sender.join();
+        }
+    }
+
+    @Test
+    public void polledListener() throws Exception{
+        BlockingQueue<Long> echoes = new LinkedBlockingQueue<>();
+        Thread game = Thread.currentThread();
+        NetListener.PolledListener polled = new NetListener.PolledListener(new NetListener(){
+            @Override
+            public void received(Connection connection, Object object){
+                assertSame(game, Thread.currentThread());
+                if(object instanceof Snapshot) echoes.add(System.nanoTime());
+            }
+        });
+        client.addListener(polled);
+        client.connect(5000, "127.0.0.1", tcpPort, udpPort);
+
+        //nothing is delivered until the game thread asks for it
+        client.sendTCP(new Snapshot(0, 10));
+        Thread.sleep(100);
+        assertEquals(0, echoes.size());
+        assertTrue(polled.dispatch() >= 1);
+        assertEquals(1, echoes.size());
+        echoes.clear();
+
+        //a game loop that polls once per 1ms frame
+        int frames = 200;
+        long[] times = new long[frames];
+        for(int i = 0; i < frames; i++){
+            long start = System.nanoTime();
+            client.sendTCP(new Snapshot(i, 10));
+            while(echoes.isEmpty()){
+                Thread.sleep(1);
+                polled.dispatch();
+            }
+            times[i] = echoes.take() - start;
+        }
+        Arrays.sort(times);
+        Log.info("Polled echo latency p50/p99: @/@us", times[frames / 2] / 1000, times[frames * 99 / 100] / 1000);
+    }
+
+    @Test
+    public void keepAliveOnTime() throws Exception{
+        NetMetrics metrics = new NetMetrics();
+        server.setMetrics(metrics);
+        client.connect(5000, "127.0.0.1", tcpPort, udpPort);
+        client.setKeepAliveTCP(50);
+
+        //the update thread has nothing to read, but must still wake up for each keep alive
+        Thread.sleep(500);
+        NetMetrics.TypeStats stats = metrics.snapshot().types.get(FrameworkMessage.KeepAlive.class);
+        assertNotNull(stats);
+        assertTrue(stats.messagesIn >= 5);
+    }
+
+    /** Sends snapshots at irregular intervals, and returns the sorted times until each came back. */
+    long[] measure(BlockingQueue<Long> echoes, int count, int maxInterval) throws Exception{
+        Random random = new Random(1);
+        long[] times = new long[count];
+        for(int i = 0; i < count; i++){
+            Thread.sleep(random.nextInt(maxInterval));
+            long start = System.nanoTime();
+            client.sendTCP(new Snapshot(i, 10));
+            Long end = echoes.poll(5, TimeUnit.SECONDS);
+            assertNotNull(end);
+            times[i] = end - start;
+        }
+        Arrays.sort(times);
+        return times;
+    }
+}
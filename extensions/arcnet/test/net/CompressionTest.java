@@ -0,0 +1,254 @@
+package net;
+
+import arc.net.FrameworkMessage.*;
+import arc.net.*;
+import arc.struct.*;
+import arc.util.*;
+import net.TestSerializer.*;
+import org.junit.*;
+
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.zip.*;
+
+import static org.junit.Assert.*;
+
+public class CompressionTest{
+    int tcpPort, udpPort;
+
+    Server server;
+    Seq<Client> clients = new Seq<>();
+
+    @After
+    public void close() throws Exception{
+        for(Client client : clients){
+            client.stop();
+            client.dispose();
+        }
+        clients.clear();
+        if(server != null){
+            server.stop();
+            server.dispose();
+            server = null;
+        }
+    }
+
+    @Test
+    public void echo() throws Exception{
+        byte[] dictionary = dictionary();
+        int messages = 2000;
+
+        server = new Server(256 * 1024, 8192, new TestSerializer());
+        server.setCompression(new StreamCompression(6, dictionary));
+        server.addListener(new NetListener(){
+            @Override
+            public void received(Connection connection, Object object){
+                if(object instanceof Snapshot) connection.sendTCP(object);
+            }
+        });
+        server.bind(0, 0);
+        tcpPort = server.getTcpPort();
+        udpPort = server.getUdpPort();
+        server.start();
+
+        //one client with a write buffer, one with a pool
+        CountDownLatch latch = new CountDownLatch(2);
+        AtomicInteger errors = new AtomicInteger();
+        for(int c = 0; c < 2; c++){
+            Client client = new Client(256 * 1024, 8192, new TestSerializer());
+            if(c == 1) client.setBufferPool(new BufferPool(8192, 16));
+            client.setCompression(new StreamCompression(6, dictionary));
+            client.addListener(new NetListener(){
+                int next;
+
+                @Override
+                public void received(Connection connection, Object object){
+                    if(object instanceof Snapshot){
+                        Snapshot s = (Snapshot)object;
+                        if(s.tick != next || s.values.length != size(s.tick) || s.values[s.values.length - 1] != s.tick) errors.incrementAndGet();
+                        if(++next == messages) latch.countDown();
+                    }
+                }
+            });
+            client.start();
+            client.connect(5000, "127.0.0.1", tcpPort, udpPort);
+            clients.add(client);
+
+            //sent before the server has answered the client's reply, so partly uncompressed
+            client.sendTCP(snapshot(0));
+        }
+
+        Time.mark();
+        for(int i = 1; i < messages; i++){
+            for(Client client : clients){
+                while(client.getTcpWriteBufferSize() > 64 * 1024) Thread.yield();
+                client.sendTCP(snapshot(i));
+            }
+        }
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        Log.info("Echoed @ compressed messages to @ clients in @ms", messages, clients.size, Time.elapsed());
+        assertEquals(0, errors.get());
+        for(Client client : clients){
+            assertTrue(client.isCompressed());
+        }
+        for(Connection connection : server.getConnections()){
+            assertTrue(connection.isCompressed());
+        }
+    }
+
+    @Test
+    public void uncompressedPeers() throws Exception{
+        server = new Server(16384, 8192, new TestSerializer());
+        server.setCompression(new StreamCompression(6, dictionary()));
+        server.bind(0);
+        tcpPort = server.getTcpPort();
+        server.start();
+
+        //no compression, and a different dictionary
+        assertFalse(echo(null));
+        assertFalse(echo(new StreamCompression(6, new byte[]{1, 2, 3})));
+        assertTrue(echo(new StreamCompression(6, dictionary())));
+
+        server.setCompression(null);
+        assertFalse(echo(new StreamCompression()));
+    }
+
+    @Test
+    public void wireFormat() throws Exception{
+        TestSerializer serializer = new TestSerializer();
+        server = new Server(256 * 1024, 8192, serializer);
+        server.setCompression(new StreamCompression());
+        server.bind(0);
+        tcpPort = server.getTcpPort();
+        server.start();
+
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", tcpPort));
+        try{
+            RegisterTCP register = (RegisterTCP)serializer.read(readFrame(channel));
+            assertNotEquals(0, register.compression);
+
+            ByteBuffer reply = ByteBuffer.allocate(64);
+            reply.position(2);
+            serializer.write(reply, register);
+            reply.putShort(0, (short)(reply.position() - 2));
+            reply.flip();
+            channel.write(reply);
+
+            //the server's reply is the last uncompressed frame
+            assertTrue(serializer.read(readFrame(channel)) instanceof RegisterTCP);
+
+            int messages = 100, plain = 0;
+            for(int i = 0; i < messages; i++){
+                plain += 2 + 9 + size(i) * 4;
+            }
+            for(int i = 0; i < messages; i++){
+                server.sendToAllTCP(snapshot(i));
+            }
+
+            //a standard zlib stream, readable as soon as a batch arrives
+            Inflater inflater = new Inflater();
+            ByteBuffer in = ByteBuffer.allocate(65536);
+            byte[] out = new byte[plain];
+            int inflated = 0, compressed = 0;
+            while(inflated < plain){
+                in.clear();
+                compressed += channel.read(in);
+                inflater.setInput(in.array(), 0, in.position());
+                while(!inflater.needsInput()){
+                    inflated += inflater.inflate(out, inflated, out.length - inflated);
+                }
+            }
+            Log.info("Compressed @ bytes of snapshots to @", plain, compressed);
+            assertTrue(compressed < plain / 2);
+
+            ByteBuffer decoded = ByteBuffer.wrap(out);
+            for(int i = 0; i < messages; i++){
+                Snapshot s = (Snapshot)serializer.read(frame(decoded));
+                assertEquals(i, s.tick);
+                assertEquals(size(i), s.values.length);
+            }
+        }finally{
+            channel.close();
+        }
+    }
+
+    /** Connects a client, and returns whether the connection it got was compressed once it worked. */
+    boolean echo(StreamCompression compression) throws Exception{
+        Client client = new Client(16384, 8192, new TestSerializer());
+        client.setCompression(compression);
+        CountDownLatch latch = new CountDownLatch(1);
+        client.addListener(new NetListener(){
+            @Override
+            public void received(Connection connection, Object object){
+                if(object instanceof Snapshot) latch.countDown();
+            }
+        });
+        client.start();
+        client.connect(5000, "127.0.0.1", tcpPort);
+        clients.add(client);
+
+        Connection connection = null;
+        long end = System.currentTimeMillis() + 5000;
+        while(connection == null && System.currentTimeMillis() < end){
+            for(Connection c : server.getConnections()){
+                if(c.getID() == client.getID()) connection = c;
+            }
+        }
+        assertNotNull(connection);
+        connection.sendTCP(snapshot(1));
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+        //the server's reply may still be on its way
+        end = System.currentTimeMillis() + 500;
+        while(!(connection.isCompressed() && client.isCompressed()) && System.currentTimeMillis() < end){
+            Thread.sleep(5);
+        }
+        assertEquals(connection.isCompressed(), client.isCompressed());
+        return client.isCompressed();
+    }
+
+    ByteBuffer frame(ByteBuffer buffer){
+        int length = buffer.getShort();
+        ByteBuffer frame = buffer.slice();
+        frame.limit(length);
+        buffer.position(buffer.position() + length);
+        return frame;
+    }
+
+    ByteBuffer readFrame(SocketChannel channel) throws Exception{
+        ByteBuffer header = ByteBuffer.allocate(2);
+        while(header.hasRemaining()) channel.read(header);
+        header.flip();
+        ByteBuffer body = ByteBuffer.allocate(header.getShort());
+        while(body.hasRemaining()) channel.read(body);
+        body.flip();
+        return body;
+    }
+
+    /** A serialized snapshot, as a dictionary of what messages look like. */
+    static byte[] dictionary(){
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        new TestSerializer().write(buffer, snapshot(0));
+        byte[] bytes = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    static Snapshot snapshot(int tick){
+        Snapshot s = new Snapshot(tick, size(tick));
+        for(int i = 0; i < s.values.length; i++){
+            s.values[i] = i % 8;
+        }
+        s.values[s.values.length - 1] = tick;
+        return s;
+    }
+
+    static int size(int tick){
+        return 1 + (tick * 7919) % 600;
+    }
+}
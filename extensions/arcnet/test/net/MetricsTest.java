@@ -0,0 +1,131 @@
+package net;
+
+import arc.net.*;
+import arc.util.*;
+import net.TestSerializer.*;
+import org.junit.*;
+
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class MetricsTest{
+    int tcpPort, udpPort;
+
+    Server server;
+    Client client;
+    NetMetrics serverMetrics = new NetMetrics(), clientMetrics = new NetMetrics();
+
+    @Before
+    public void open() throws Exception{
+        server = new Server(16384, 8192, new TestSerializer());
+        server.setMetrics(serverMetrics);
+        server.bind(0, 0);
+        tcpPort = server.getTcpPort();
+        udpPort = server.getUdpPort();
+        server.start();
+
+        client = new Client(16384, 8192, new TestSerializer());
+        client.setMetrics(clientMetrics);
+        client.start();
+    }
+
+    @After
+    public void close() throws Exception{
+        client.stop();
+        client.dispose();
+        server.stop();
+        server.dispose();
+    }
+
+    @Test
+    public void countsMessages() throws Exception{
+        int messages = 100, size = 100;
+        CountDownLatch latch = new CountDownLatch(messages + 1);
+        server.addListener(new NetListener(){
+            @Override
+            public void received(Connection connection, Object object){
+                if(object instanceof Snapshot) latch.countDown();
+            }
+        });
+        client.addListener(new NetListener(){
+            @Override
+            public void received(Connection connection, Object object){
+                if(object instanceof Snapshot) latch.countDown();
+            }
+        });
+        client.connect(5000, "127.0.0.1", tcpPort, udpPort);
+
+        for(int i = 0; i < messages; i++){
+            client.sendTCP(new Snapshot(i, size));
+        }
+        server.sendToAllTCP(new Snapshot(0, size));
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+        //type, tick and length, then the values, after a length prefix
+        int frame = 2 + 9 + size * 4;
+        NetMetrics.TypeStats sent = clientMetrics.snapshot().types.get(Snapshot.class);
+        NetMetrics.TypeStats received = serverMetrics.snapshot().types.get(Snapshot.class);
+        assertEquals(messages, sent.messagesOut);
+        assertEquals((long)messages * frame, sent.bytesOut);
+        assertEquals(messages, received.messagesIn);
+        assertEquals((long)messages * frame, received.bytesIn);
+
+        //broadcasts count once per connection
+        assertEquals(1, received.messagesOut);
+        assertEquals(frame, received.bytesOut);
+        assertEquals(1, sent.messagesIn);
+
+        NetMetrics.Snapshot snapshot = serverMetrics.snapshot();
+        assertTrue(snapshot.selects > 0);
+        assertTrue(snapshot.pendingHighWater >= frame);
+        assertTrue(client.getPendingHighWaterMark() >= frame);
+    }
+
+    @Test
+    public void countsDatagrams() throws Exception{
+        client.connect(5000, "127.0.0.1", tcpPort, udpPort);
+
+        int messages = 20, size = 50;
+        for(int i = 0; i < messages; i++){
+            client.sendUDP(new Snapshot(i, size));
+        }
+        NetMetrics.TypeStats sent = clientMetrics.snapshot().types.get(Snapshot.class);
+        assertEquals(messages, sent.messagesOut);
+        assertEquals((long)messages * (9 + size * 4), sent.bytesOut);
+
+        //datagrams may be lost, even locally
+        long end = System.currentTimeMillis() + 2000;
+        NetMetrics.TypeStats received;
+        do{
+            Thread.sleep(10);
+            received = serverMetrics.snapshot().types.get(Snapshot.class);
+        }while((received == null || received.messagesIn < messages) && System.currentTimeMillis() < end);
+        assertNotNull(received);
+        assertEquals(received.messagesIn * (9 + size * 4), received.bytesIn);
+    }
+
+    @Test
+    public void measuresRtt() throws Exception{
+        client.connect(5000, "127.0.0.1", tcpPort, udpPort);
+
+        int pings = 10;
+        for(int i = 0; i < pings; i++){
+            client.updateReturnTripTime();
+            long end = System.currentTimeMillis() + 2000;
+            while(clientMetrics.snapshot().getRttSamples() <= i && System.currentTimeMillis() < end){
+                Thread.sleep(2);
+            }
+        }
+
+        NetMetrics.Snapshot snapshot = clientMetrics.snapshot();
+        Log.info("Client metrics:\n@", snapshot);
+        assertEquals(pings, snapshot.getRttSamples());
+        assertTrue(snapshot.getRttPercentile(0.5f) <= snapshot.getRttPercentile(0.99f));
+        assertTrue(snapshot.getRttPercentile(0.99f) < 1000);
+
+        clientMetrics.reset();
+        assertEquals(0, clientMetrics.snapshot().getRttSamples());
+        assertEquals(-1, clientMetrics.snapshot().getRttPercentile(0.5f));
+    }
+}
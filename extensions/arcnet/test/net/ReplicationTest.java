@@ -0,0 +1,277 @@
+package net;
+
+import arc.net.*;
+import arc.struct.*;
+import arc.util.*;
+import org.junit.*;
+
+import java.util.concurrent.atomic.*;
+
+import static org.junit.Assert.*;
+
+public class ReplicationTest{
+    int tcpPort, udpPort;
+    static final int unit = 0;
+
+    Server server;
+    Client client;
+    Replication serverReplication = new Replication(), clientReplication = new Replication();
+    /** Server side objects; x, y, rotation and health. */
+    IntMap<float[]> objects = new IntMap<>();
+    /** What the client has been told. */
+    IntMap<float[]> replicated = new IntMap<>();
+
+    @Before
+    public void open() throws Exception{
+        serverReplication.addType(unit, 0.01f, 0.01f, 0.1f, 1f);
+        clientReplication.addType(unit, 0.01f, 0.01f, 0.1f, 1f);
+        clientReplication.setListener(new Replication.Listener(){
+            @Override
+            public void updated(int id, int type, float[] fields){
+                synchronized(replicated){
+                    replicated.put(id, fields.clone());
+                }
+            }
+
+            @Override
+            public void removed(int id){
+                synchronized(replicated){
+                    replicated.remove(id);
+                }
+            }
+        });
+
+        server = new Server(65536, 65536, new TestSerializer());
+        server.addListener(serverReplication);
+        server.bind(0, 0);
+        tcpPort = server.getTcpPort();
+        udpPort = server.getUdpPort();
+        server.start();
+
+        client = new Client(65536, 65536, new TestSerializer());
+        client.start();
+    }
+
+    @After
+    public void close() throws Exception{
+        client.stop();
+        client.dispose();
+        server.stop();
+        server.dispose();
+    }
+
+    @Test
+    public void replicates() throws Exception{
+        client.addListener(clientReplication);
+        client.connect(5000, "127.0.0.1", tcpPort, udpPort);
+
+        for(int i = 0; i < 200; i++){
+            add(i);
+        }
+        for(int tick = 0; tick < 100; tick++){
+            //a few objects move each tick, and some come and go
+            for(int i = 0; i < 5; i++){
+                float[] object = objects.get((tick * 31 + i * 7) % 200);
+                if(object != null){
+                    object[0] += 0.5f;
+                    object[3] -= 1f;
+                }
+            }
+            if(tick % 10 == 5) remove(tick);
+            if(tick % 10 == 7) add(1000 + tick);
+
+            tick();
+            Thread.sleep(2);
+        }
+        assertSynced();
+    }
+
+    @Test
+    public void fullSnapshotAfterLoss() throws Exception{
+        //drops every packet while set
+        AtomicBoolean dropping = new AtomicBoolean();
+        client.addListener(new NetListener(){
+            @Override
+            public void received(Connection connection, Object object){
+                if(!(object instanceof Replication.Packet && dropping.get())){
+                    clientReplication.received(connection, object);
+                }
+            }
+
+            @Override
+            public void disconnected(Connection connection, DcReason reason){
+                clientReplication.disconnected(connection, reason);
+            }
+        });
+        client.connect(5000, "127.0.0.1", tcpPort, udpPort);
+
+        for(int i = 0; i < 500; i++){
+            add(i);
+        }
+        tick();
+        assertSynced();
+
+        //nothing changes, so a delta is a few bytes once the acknowledgement arrives
+        Connection connection = server.getConnections()[0];
+        int full = serverReplication.packet(fresh()).size();
+        serverReplication.update();
+        long end = System.currentTimeMillis() + 5000;
+        while(serverReplication.packet(connection).size() >= 10 && System.currentTimeMillis() < end){
+            Thread.sleep(5);
+        }
+        int delta = serverReplication.packet(connection).size();
+        Log.info("Full snapshot: @ bytes, delta: @ bytes", full, delta);
+        assertTrue(delta < 10);
+
+        //lose more ticks than are kept as baselines
+        dropping.set(true);
+        for(int tick = 0; tick < Replication.history + 5; tick++){
+            objects.get(tick)[1] += 1f;
+            if(tick == 3) remove(400);
+            tick();
+        }
+        Thread.sleep(50);
+        dropping.set(false);
+
+        serverReplication.update();
+        assertEquals(full, serverReplication.packet(connection).size(), full / 10f);
+
+        tick();
+        assertSynced();
+        assertFalse(replicated.containsKey(400));
+    }
+
+    @Test
+    public void largeWorld() throws Exception{
+        //buffers much smaller than a full snapshot of the world
+        close();
+        server = new Server(16384, 2048, new TestSerializer());
+        server.addListener(serverReplication);
+        server.bind(0, 0);
+        server.start();
+        client = new Client(8192, 2048, new TestSerializer());
+        client.start();
+        client.addListener(clientReplication);
+        client.connect(5000, "127.0.0.1", server.getTcpPort(), server.getUdpPort());
+
+        for(int i = 0; i < 10000; i++){
+            add(i);
+        }
+        serverReplication.update();
+        Connection connection = server.getConnections()[0];
+        Replication.Packet full = serverReplication.packet(connection);
+        Replication.Packet[] fragments = serverReplication.split(full);
+        assertTrue(full.size() > 65536);
+        assertTrue(fragments.length > 64);
+        for(Replication.Packet fragment : fragments){
+            assertTrue(fragment.size() <= 1024);
+            assertEquals(full.tick(), fragment.tick());
+        }
+
+        tick();
+        assertSynced();
+        assertTrue(connection.isConnected());
+
+        //changes after the snapshot are small deltas again
+        objects.get(5)[0] += 1f;
+        tick();
+        assertSynced();
+        assertEquals(1, serverReplication.split(serverReplication.packet(connection)).length);
+    }
+
+    @Test
+    public void benchmark() throws Exception{
+        client.addListener(clientReplication);
+        client.connect(5000, "127.0.0.1", tcpPort, udpPort);
+        Connection connection = server.getConnections()[0];
+
+        //a mostly static world, where 1% of the objects move each tick
+        int count = 10000, ticks = 200;
+        for(int i = 0; i < count; i++){
+            add(i);
+        }
+
+        //warmup
+        run(connection, ticks, true);
+        run(fresh(), ticks, false);
+
+        long[] delta = run(connection, ticks, true);
+        //the same ticks without acknowledgements, which are all full snapshots
+        long[] full = run(fresh(), ticks, false);
+
+        Log.info("@ objects, @ ticks: @ bytes encoded in @ms with deltas, @ bytes in @ms with full snapshots", count, ticks, delta[0], delta[1] / 1000000f, full[0], full[1] / 1000000f);
+        assertTrue(delta[0] * 10 < full[0]);
+    }
+
+    /** Moves 1% of the objects each tick and encodes a packet for the connection. Returns the total size and nanoseconds spent encoding. */
+    long[] run(Connection connection, int ticks, boolean ack){
+        int count = objects.size;
+        long bytes = 0, time = 0;
+        for(int tick = 0; tick < ticks; tick++){
+            for(int i = 0; i < count / 100; i++){
+                objects.get((tick * 97 + i * 101) % count)[0] += 0.25f;
+            }
+            serverReplication.update();
+            long start = System.nanoTime();
+            Replication.Packet packet = serverReplication.packet(connection);
+            time += System.nanoTime() - start;
+            bytes += packet.size();
+            if(ack) serverReplication.received(connection, ack(packet));
+        }
+        return new long[]{bytes, time};
+    }
+
+    void add(int id){
+        float[] object = {id * 1.5f, -id, id % 360, 100};
+        objects.put(id, object);
+        serverReplication.add(id, unit, fields -> System.arraycopy(object, 0, fields, 0, object.length));
+    }
+
+    void remove(int id){
+        objects.remove(id);
+        serverReplication.remove(id);
+    }
+
+    void tick(){
+        serverReplication.update();
+        for(Connection connection : server.getConnections()){
+            serverReplication.send(connection);
+        }
+    }
+
+    /** Waits until the client has been told the current state, sending ticks without changes as needed. */
+    void assertSynced() throws Exception{
+        long end = System.currentTimeMillis() + 5000;
+        while(!synced() && System.currentTimeMillis() < end){
+            tick();
+            Thread.sleep(10);
+        }
+        assertTrue(synced());
+    }
+
+    boolean synced(){
+        synchronized(replicated){
+            if(replicated.size != objects.size) return false;
+            for(IntMap.Entry<float[]> entry : objects.entries()){
+                float[] received = replicated.get(entry.key);
+                if(received == null) return false;
+                for(int i = 0; i < received.length; i++){
+                    if(Math.abs(received[i] - entry.value[i]) > 0.1f) return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /** Acknowledges the packet, as if the client had applied it. */
+    Replication.Ack ack(Replication.Packet packet){
+        Replication.Ack ack = new Replication.Ack();
+        ack.tick = packet.tick();
+        return ack;
+    }
+
+    /** A connection that has never acknowledged anything. */
+    Connection fresh(){
+        return new Connection(){};
+    }
+}
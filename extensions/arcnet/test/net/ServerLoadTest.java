@@ -0,0 +1,132 @@
+package net;
+
+import arc.net.FrameworkMessage.*;
+import arc.net.*;
+import arc.struct.*;
+import arc.util.*;
+import net.TestSerializer.*;
+import org.junit.*;
+
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.concurrent.atomic.*;
+
+import static org.junit.Assert.*;
+
+/** Simulates many clients on loopback with raw channels, without a thread per client. */
+public class ServerLoadTest{
+    static final int clients = 1000;
+
+    int tcpPort, udpPort;
+
+    TestSerializer serializer = new TestSerializer();
+    ByteBuffer buffer = ByteBuffer.allocate(1024);
+    Server server;
+    SocketChannel[] tcp = new SocketChannel[clients];
+    DatagramChannel[] udp = new DatagramChannel[clients];
+    int[] ids = new int[clients];
+
+    @After
+    public void close() throws Exception{
+        for(int i = 0; i < clients; i++){
+            if(tcp[i] != null) tcp[i].close();
+            if(udp[i] != null) udp[i].close();
+        }
+        if(server != null){
+            server.stop();
+            server.dispose();
+        }
+    }
+
+    @Test
+    public void thousandClients() throws Exception{
+        server = new Server(8192, 2048, new TestSerializer());
+        IntIntMap received = new IntIntMap();
+        AtomicInteger mismatched = new AtomicInteger(), total = new AtomicInteger();
+        server.addListener(new NetListener(){
+            @Override
+            public void received(Connection connection, Object object){
+                if(object instanceof Snapshot){
+                    //the tick is the ID the client registered with
+                    if(((Snapshot)object).tick != connection.getID()) mismatched.incrementAndGet();
+                    received.increment(connection.getID());
+                    total.incrementAndGet();
+                }
+            }
+        });
+        server.bind(0, 0);
+        tcpPort = server.getTcpPort();
+        udpPort = server.getUdpPort();
+        server.start();
+
+        Time.mark();
+        for(int i = 0; i < clients; i++){
+            tcp[i] = SocketChannel.open(new InetSocketAddress("127.0.0.1", tcpPort));
+            ids[i] = ((RegisterTCP)readTCP(tcp[i])).connectionID;
+
+            udp[i] = DatagramChannel.open();
+            udp[i].connect(new InetSocketAddress("127.0.0.1", udpPort));
+            RegisterUDP register = new RegisterUDP();
+            register.connectionID = ids[i];
+            sendUDP(udp[i], register);
+
+            assertTrue(readTCP(tcp[i]) instanceof RegisterUDP);
+        }
+        Log.info("Connected @ clients in @ms", clients, Time.elapsed());
+        assertEquals(clients, server.getConnections().length);
+
+        int rounds = 20, batch = 50;
+        Time.mark();
+        for(int r = 0; r < rounds; r++){
+            for(int i = 0; i < clients; i++){
+                sendUDP(udp[i], new Snapshot(ids[i], 4));
+
+                //pace the datagrams so the server's socket buffer never overflows
+                if(i % batch == batch - 1){
+                    int expected = r * clients + i + 1;
+                    long end = System.currentTimeMillis() + 2000;
+                    while(total.get() < expected && System.currentTimeMillis() < end){
+                        Thread.yield();
+                    }
+                }
+            }
+        }
+        Log.info("Received @ datagrams from @ clients in @ms", total.get(), clients, Time.elapsed());
+
+        assertEquals(0, mismatched.get());
+        assertEquals(rounds * clients, total.get());
+        for(int i = 0; i < clients; i++){
+            assertEquals(rounds, received.get(ids[i], 0));
+        }
+
+        //every send by ID reaches the right client
+        Time.mark();
+        for(int i = 0; i < clients; i++){
+            server.sendToTCP(ids[i], new Snapshot(ids[i], 4));
+        }
+        for(int i = 0; i < clients; i++){
+            Object object = readTCP(tcp[i]);
+            while(object instanceof KeepAlive) object = readTCP(tcp[i]);
+            assertEquals(ids[i], ((Snapshot)object).tick);
+        }
+        Log.info("Sent to @ clients by ID in @ms", clients, Time.elapsed());
+    }
+
+    Object readTCP(SocketChannel channel) throws Exception{
+        ByteBuffer header = ByteBuffer.allocate(2);
+        while(header.hasRemaining()) channel.read(header);
+        header.flip();
+        ByteBuffer body = ByteBuffer.allocate(header.getShort());
+        while(body.hasRemaining()) channel.read(body);
+        body.flip();
+        return serializer.read(body);
+    }
+
+    void sendUDP(DatagramChannel channel, Object object) throws Exception{
+        buffer.clear();
+        serializer.write(buffer, object);
+        buffer.flip();
+        channel.write(buffer);
+    }
+}
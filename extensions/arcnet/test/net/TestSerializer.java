@@ -0,0 +1,101 @@
+package net;
+
+import arc.net.FrameworkMessage.*;
+import arc.net.*;
+
+import java.nio.*;
+import java.util.concurrent.atomic.*;
+
+/** Minimal serializer for framework messages, replication, channels and {@link Snapshot}s, which counts how many snapshots it has written. */
+public class TestSerializer implements NetSerializer{
+    public final AtomicInteger snapshotWrites = new AtomicInteger();
+
+    @Override
+    public void write(ByteBuffer buffer, Object object){
+        if(object instanceof Snapshot){
+            Snapshot s = (Snapshot)object;
+            snapshotWrites.incrementAndGet();
+            buffer.put((byte)0);
+            buffer.putInt(s.tick);
+            buffer.putInt(s.values.length);
+            for(float f : s.values){
+                buffer.putFloat(f);
+            }
+        }else if(object instanceof RegisterTCP){
+            buffer.put((byte)1);
+            buffer.putInt(((RegisterTCP)object).connectionID);
+            buffer.putInt(((RegisterTCP)object).compression);
+        }else if(object instanceof RegisterUDP){
+            buffer.put((byte)2);
+            buffer.putInt(((RegisterUDP)object).connectionID);
+        }else if(object instanceof KeepAlive){
+            buffer.put((byte)3);
+        }else if(object instanceof Ping){
+            buffer.put((byte)4);
+            buffer.putInt(((Ping)object).id);
+            buffer.put(((Ping)object).isReply ? (byte)1 : 0);
+        }else if(object instanceof DiscoverHost){
+            buffer.put((byte)5);
+        }else if(object instanceof Replication.Packet){
+            buffer.put((byte)6);
+            ((Replication.Packet)object).write(buffer);
+        }else if(object instanceof Replication.Ack){
+            buffer.put((byte)7);
+            ((Replication.Ack)object).write(buffer);
+        }else if(object instanceof UdpChannels.Packet){
+            buffer.put((byte)8);
+            ((UdpChannels.Packet)object).write(buffer);
+        }else{
+            throw new IllegalArgumentException("Unknown type: " + object.getClass());
+        }
+    }
+
+    @Override
+    public Object read(ByteBuffer buffer){
+        byte type = buffer.get();
+        switch(type){
+            case 0:
+                Snapshot s = new Snapshot(buffer.getInt(), buffer.getInt());
+                for(int i = 0; i < s.values.length; i++){
+                    s.values[i] = buffer.getFloat();
+                }
+                return s;
+            case 1:
+                RegisterTCP tcp = new RegisterTCP();
+                tcp.connectionID = buffer.getInt();
+                tcp.compression = buffer.getInt();
+                return tcp;
+            case 2:
+                RegisterUDP udp = new RegisterUDP();
+                udp.connectionID = buffer.getInt();
+                return udp;
+            case 3:
+                return FrameworkMessage.keepAlive;
+            case 4:
+                Ping ping = new Ping();
+                ping.id = buffer.getInt();
+                ping.isReply = buffer.get() == 1;
+                return ping;
+            case 5:
+                return FrameworkMessage.discoverHost;
+            case 6:
+                return Replication.Packet.read(buffer);
+            case 7:
+                return Replication.Ack.read(buffer);
+            case 8:
+                return UdpChannels.Packet.read(buffer);
+            default:
+                throw new IllegalArgumentException("Unknown type: " + type);
+        }
+    }
+
+    public static class Snapshot{
+        public int tick;
+        public float[] values;
+
+        public Snapshot(int tick, int size){
+            this.tick = tick;
+            this.values = new float[size];
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package net;
+
+import arc.net.*;
+import arc.struct.*;
+import net.TestSerializer.*;
+import org.junit.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import static org.junit.Assert.*;
+
+public class ThreadedServerTest{
+    int tcpPort, udpPort;
+
+    Server server;
+    Seq<Client> clients = new Seq<>();
+
+    @After
+    public void close() throws Exception{
+        for(Client client : clients){
+            client.stop();
+            client.dispose();
+        }
+        clients.clear();
+        if(server != null){
+            server.stop();
+            server.dispose();
+            server = null;
+        }
+    }
+
+    @Test
+    public void dispatchQueue() throws Exception{
+        int count = 16, messages = 50;
+
+        server = new Server(16384, 8192, new TestSerializer());
+        server.setIOThreads(4);
+        server.setDispatchQueue(32);
+
+        Thread game = Thread.currentThread();
+        IntSet connected = new IntSet();
+        IntIntMap received = new IntIntMap();
+        AtomicBoolean wrongThread = new AtomicBoolean();
+
+        server.addListener(new NetListener(){
+            @Override
+            public void connected(Connection connection){
+                if(Thread.currentThread() != game) wrongThread.set(true);
+                connected.add(connection.getID());
+            }
+
+            @Override
+            public void received(Connection connection, Object object){
+                if(Thread.currentThread() != game) wrongThread.set(true);
+                if(object instanceof Snapshot){
+                    assertTrue(connected.contains(connection.getID()));
+                    assertEquals(received.get(connection.getID(), 0), ((Snapshot)object).tick);
+                    received.increment(connection.getID());
+                    connection.sendTCP(object);
+                }
+            }
+        });
+        server.bind(0, 0);
+        tcpPort = server.getTcpPort();
+        udpPort = server.getUdpPort();
+        server.start();
+
+        CountDownLatch replies = new CountDownLatch(count * messages);
+        ExecutorService connector = Executors.newFixedThreadPool(count);
+        Seq<Future<?>> futures = new Seq<>();
+
+        for(int i = 0; i < count; i++){
+            Client client = new Client(16384, 8192, new TestSerializer());
+            client.addListener(new NetListener(){
+                @Override
+                public void received(Connection connection, Object object){
+                    if(object instanceof Snapshot) replies.countDown();
+                }
+            });
+            client.start();
+            clients.add(client);
+            futures.add(connector.submit(() -> {
+                client.connect(5000, "127.0.0.1", tcpPort, udpPort);
+                for(int j = 0; j < messages; j++){
+                    client.sendTCP(new Snapshot(j, 10));
+                }
+                return null;
+            }));
+        }
+
+        //the test thread acts as the game thread
+        long end = System.currentTimeMillis() + 10000;
+        while(replies.getCount() > 0 && System.currentTimeMillis() < end){
+            server.dispatchEvents();
+            Thread.sleep(1);
+        }
+        for(Future<?> future : futures){
+            future.get();
+        }
+        connector.shutdown();
+
+        assertEquals(0, replies.getCount());
+        assertFalse(wrongThread.get());
+        assertEquals(count, connected.size);
+        assertEquals(count, server.getConnections().length);
+        for(Client client : clients){
+            assertEquals(messages, received.get(client.getID(), 0));
+        }
+    }
+
+    @Test
+    public void updateAndDispatch() throws Exception{
+        int messages = 50;
+
+        //one thread updates and dispatches, with a queue smaller than a burst of messages
+        server = new Server(16384, 8192, new TestSerializer());
+        server.setDispatchQueue(4);
+        AtomicInteger received = new AtomicInteger();
+        server.addListener(new NetListener(){
+            @Override
+            public void received(Connection connection, Object object){
+                if(object instanceof Snapshot) received.incrementAndGet();
+            }
+        });
+        server.bind(0);
+        tcpPort = server.getTcpPort();
+
+        Client client = new Client(16384, 8192, new TestSerializer());
+        client.start();
+        clients.add(client);
+
+        ExecutorService sender = Executors.newSingleThreadExecutor();
+        Future<?> connect = sender.submit(() -> {
+            client.connect(5000, "127.0.0.1", tcpPort);
+            for(int i = 0; i < messages; i++){
+                client.sendTCP(new Snapshot(i, 10));
+            }
+            return null;
+        });
+
+        //wait for the whole burst to arrive before the first update, so that it is read at once
+        while(server.getConnections().length == 0 || !connect.isDone()){
+            server.update(0);
+            server.dispatchEvents();
+        }
+        connect.get();
+        sender.shutdown();
+        Thread.sleep(100);
+
+        long end = System.currentTimeMillis() + 5000;
+        while(received.get() < messages && System.currentTimeMillis() < end){
+            server.update(0);
+            server.dispatchEvents();
+        }
+        assertEquals(messages, received.get());
+    }
+
+    @Test
+    public void ioThreadDispatch() throws Exception{
+        int count = 8;
+
+        server = new Server(16384, 8192, new TestSerializer());
+        server.setIOThreads(3);
+
+        CountDownLatch latch = new CountDownLatch(count);
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        server.addListener(new NetListener(){
+            @Override
+            public void received(Connection connection, Object object){
+                if(object instanceof Snapshot){
+                    threads.add(Thread.currentThread());
+                    latch.countDown();
+                }
+            }
+        });
+        server.bind(0);
+        tcpPort = server.getTcpPort();
+        server.start();
+
+        for(int i = 0; i < count; i++){
+            Client client = new Client(16384, 8192, new TestSerializer());
+            client.start();
+            client.connect(5000, "127.0.0.1", tcpPort);
+            client.sendTCP(new Snapshot(0, 10));
+            clients.add(client);
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        //connections are spread over all I/O threads, none of which is the accepting thread
+        assertEquals(3, threads.size());
+        for(Thread thread : threads){
+            assertTrue(thread.getName().startsWith("Server I/O"));
+        }
+    }
+}
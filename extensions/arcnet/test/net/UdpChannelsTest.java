@@ -0,0 +1,184 @@
+package net;
+
+import arc.net.*;
+import arc.net.UdpChannels.*;
+import arc.struct.*;
+import arc.util.*;
+import arc.util.async.*;
+import net.TestSerializer.*;
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+public class UdpChannelsTest{
+    int tcpPort, udpPort;
+
+    Server server;
+    Client client;
+    UdpChannels serverChannels = new UdpChannels(new TestSerializer()), clientChannels = new UdpChannels(new TestSerializer());
+    int ordered, unordered, sequenced;
+    /** Ticks of the snapshots the server received, in order. */
+    IntSeq received = new IntSeq();
+    volatile boolean corrupt;
+    volatile boolean running = true;
+    Thread ticker;
+
+    @Before
+    public void open() throws Exception{
+        for(UdpChannels channels : new UdpChannels[]{serverChannels, clientChannels}){
+            ordered = channels.addChannel(Delivery.reliableOrdered);
+            unordered = channels.addChannel(Delivery.reliableUnordered);
+            sequenced = channels.addChannel(Delivery.unreliableSequenced);
+        }
+        serverChannels.setListener(new NetListener(){
+            @Override
+            public void received(Connection connection, Object object){
+                Snapshot s = (Snapshot)object;
+                if(s.values.length != size(s.tick) || s.values[s.values.length - 1] != s.tick) corrupt = true;
+                synchronized(received){
+                    received.add(s.tick);
+                }
+            }
+        });
+
+        server = new Server(16384, 8192, new TestSerializer());
+        server.addListener(serverChannels);
+        server.bind(0, 0);
+        tcpPort = server.getTcpPort();
+        udpPort = server.getUdpPort();
+        server.start();
+
+        client = new Client(16384, 8192, new TestSerializer());
+        client.addListener(clientChannels);
+        client.start();
+        client.connect(5000, "127.0.0.1", tcpPort, udpPort);
+
+        //stands in for the game threads of both sides
+        ticker = Threads.daemon("Channel Ticker", () -> {
+            while(running){
+                serverChannels.update();
+                clientChannels.update();
+                Threads.sleep(2);
+            }
+        });
+    }
+
+    @After
+    public void close() throws Exception{
+        running = false;
+        ticker.join();
+        client.stop();
+        client.dispose();
+        server.stop();
+        server.dispose();
+    }
+
+    @Test
+    public void reliableOrdered() throws Exception{
+        simulate(0.2f, 10, 10);
+        int messages = 300;
+        for(int i = 0; i < messages; i++){
+            clientChannels.send(client, ordered, snapshot(i));
+        }
+
+        awaitReceived(messages);
+        Log.info("Ordered: @ resends, rtt @ms", clientChannels.getResends(client), clientChannels.getRtt(client));
+        assertFalse(corrupt);
+        synchronized(received){
+            assertEquals(messages, received.size);
+            for(int i = 0; i < messages; i++){
+                assertEquals(i, received.get(i));
+            }
+        }
+        assertTrue(clientChannels.getResends(client) > 0);
+    }
+
+    @Test
+    public void reliableUnordered() throws Exception{
+        simulate(0.2f, 10, 10);
+        int messages = 300;
+        for(int i = 0; i < messages; i++){
+            clientChannels.send(client, unordered, snapshot(i));
+        }
+
+        awaitReceived(messages);
+        assertFalse(corrupt);
+        synchronized(received){
+            assertEquals(messages, received.size);
+            IntSet ticks = new IntSet();
+            for(int i = 0; i < messages; i++){
+                ticks.add(received.get(i));
+            }
+            assertEquals(messages, ticks.size);
+        }
+    }
+
+    @Test
+    public void unreliableSequenced() throws Exception{
+        simulate(0.2f, 10, 20);
+        int messages = 200;
+        for(int i = 0; i < messages; i++){
+            clientChannels.send(client, sequenced, snapshot(i));
+            Thread.sleep(3);
+        }
+        Thread.sleep(200);
+
+        assertFalse(corrupt);
+        synchronized(received){
+            Log.info("Sequenced: @ of @ received", received.size, messages);
+            assertTrue(received.size > 0 && received.size < messages);
+            for(int i = 1; i < received.size; i++){
+                assertTrue(received.get(i) > received.get(i - 1));
+            }
+        }
+    }
+
+    @Test
+    public void batching() throws Exception{
+        NetMetrics metrics = new NetMetrics();
+        client.setMetrics(metrics);
+        int messages = 100;
+        for(int i = 0; i < messages; i++){
+            clientChannels.send(client, ordered, new Snapshot(i, 1));
+        }
+
+        long end = System.currentTimeMillis() + 5000;
+        while(received() < messages && System.currentTimeMillis() < end){
+            Thread.sleep(5);
+        }
+        assertEquals(messages, received());
+        //each message takes 18 bytes, so two packets of 1200
+        long datagrams = metrics.snapshot().types.get(UdpChannels.Packet.class).messagesOut;
+        Log.info("Batched @ messages into @ datagrams", messages, datagrams);
+        assertTrue(datagrams <= 3);
+    }
+
+    void simulate(float loss, int latency, int jitter){
+        serverChannels.setSimulator(new Simulator(loss, latency, jitter, 1));
+        clientChannels.setSimulator(new Simulator(loss, latency, jitter, 2));
+    }
+
+    void awaitReceived(int messages) throws Exception{
+        long end = System.currentTimeMillis() + 20000;
+        while(received() < messages && System.currentTimeMillis() < end){
+            Thread.sleep(10);
+        }
+    }
+
+    int received(){
+        synchronized(received){
+            return received.size;
+        }
+    }
+
+    static Snapshot snapshot(int tick){
+        Snapshot s = new Snapshot(tick, size(tick));
+        s.values[s.values.length - 1] = tick;
+        return s;
+    }
+
+    /** Up to 2.8KB, so some snapshots take several fragments. */
+    static int size(int tick){
+        return 1 + (tick * 37) % 700;
+    }
+}
@@ -0,0 +1,510 @@
+package arc.codec;
+
+import javax.annotation.processing.*;
+import javax.lang.model.*;
+import javax.lang.model.element.*;
+import javax.lang.model.type.*;
+import javax.lang.model.util.*;
+import javax.tools.Diagnostic.*;
+import java.io.*;
+import java.util.*;
+
+/**
+ * Generates binary codecs for classes annotated with arc.util.io.Codec. See that annotation for what is supported,
+ * and arc.util.io.Codecs for the format.
+ */
+@SupportedAnnotationTypes(CodecProcessor.codecName)
+public class CodecProcessor extends AbstractProcessor{
+    static final String codecName = "arc.util.io.Codec", tagName = "arc.util.io.Codec.Tag", codecs = "arc.util.io.Codecs";
+    static final int varint = 0, fixed32 = 1, fixed64 = 2, bytes = 3, message = 4, repeated = 5;
+    /** Tags are shifted into a key, which is an int. */
+    static final int maxTag = (1 << 28) - 1;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion(){
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round){
+        TypeElement codec = processingEnv.getElementUtils().getTypeElement(codecName);
+        if(codec == null) return false;
+
+        for(Element element : round.getElementsAnnotatedWith(codec)){
+            try{
+                generate((TypeElement)element);
+            }catch(CodecException e){
+                processingEnv.getMessager().printMessage(Kind.ERROR, e.getMessage(), e.element);
+            }catch(IOException e){
+                processingEnv.getMessager().printMessage(Kind.ERROR, "Failed to write codec: " + e, element);
+            }
+        }
+        return true;
+    }
+
+    void generate(TypeElement type) throws IOException{
+        if(type.getKind() != ElementKind.CLASS) throw new CodecException("Only classes can have a codec.", type);
+        if(type.getModifiers().contains(Modifier.ABSTRACT)) throw new CodecException("Abstract classes can't have a codec, as they can't be created when reading.", type);
+        if(type.getNestingKind().isNested() && !type.getModifiers().contains(Modifier.STATIC)) throw new CodecException("Inner classes must be static to have a codec.", type);
+        if(!type.getTypeParameters().isEmpty()) throw new CodecException("Generic classes can't have a codec.", type);
+        if(type.getModifiers().contains(Modifier.PRIVATE)) throw new CodecException("Classes with a codec can't be private.", type);
+
+        boolean constructor = false;
+        for(ExecutableElement method : ElementFilter.constructorsIn(type.getEnclosedElements())){
+            if(method.getParameters().isEmpty() && !method.getModifiers().contains(Modifier.PRIVATE)) constructor = true;
+        }
+        if(!constructor) throw new CodecException("Classes with a codec need a constructor without parameters.", type);
+
+        String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        String name = type.getQualifiedName().toString(), simpleName = codecSimpleName(type);
+        List<Field> fields = fields(type, packageName);
+
+        Code code = new Code();
+        if(!packageName.isEmpty()){
+            code.line("package " + packageName + ";");
+            code.line();
+        }
+        code.line("import java.nio.*;");
+        code.line();
+        code.line("/** Reads and writes the tagged fields of {@link " + name + "}. Generated from its annotations, do not edit. */");
+        code.line("public final class " + simpleName + "{");
+
+        //enums are read by their ordinal
+        Map<String, String> enums = new LinkedHashMap<>();
+        for(Field field : fields){
+            if(field.scalar.kind == ScalarKind.enumeration && !enums.containsKey(field.scalar.type)){
+                enums.put(field.scalar.type, "enum" + enums.size());
+            }
+        }
+        for(Field field : fields){
+            field.scalar.values = enums.get(field.scalar.type);
+        }
+        for(Map.Entry<String, String> entry : enums.entrySet()){
+            code.line("private static final " + entry.getKey() + "[] " + entry.getValue() + " = " + entry.getKey() + ".values();");
+        }
+        if(!enums.isEmpty()) code.line();
+
+        code.line("private " + simpleName + "(){");
+        code.line("}");
+        code.line();
+
+        code.line("/** Writes a value, which can't be null. Throws a {@link BufferOverflowException} if it does not fit. */");
+        code.line("public static void write(ByteBuffer buffer, " + name + " value){");
+        for(Field field : fields){
+            writeField(code, field);
+        }
+        code.line("buffer.put((byte)0);");
+        code.line("}");
+        code.line();
+
+        code.line("/** @return the bytes of a value, which can't be null. */");
+        code.line("public static byte[] toBytes(" + name + " value){");
+        code.line("return " + codecs + ".toBytes(value, " + simpleName + "::write);");
+        code.line("}");
+        code.line();
+
+        code.line("public static " + name + " read(ByteBuffer buffer){");
+        code.line("return read(buffer, null);");
+        code.line("}");
+        code.line();
+
+        code.line("public static " + name + " read(byte[] bytes){");
+        code.line("return read(ByteBuffer.wrap(bytes), null);");
+        code.line("}");
+        code.line();
+
+        code.line("/**");
+        code.line(" * Reads into an existing value, reusing its arrays, Seqs and nested values where possible.");
+        code.line(" * Fields that were not written are left as they are.");
+        code.line(" * @param value the value to read into, or null to read a new one.");
+        code.line(" */");
+        code.line("public static " + name + " read(ByteBuffer buffer, " + name + " value){");
+        code.line("if(value == null) value = new " + name + "();");
+        code.line("while(true){");
+        code.line("int key = " + codecs + ".getVar(buffer);");
+        code.line("switch(key){");
+        code.line("case 0:");
+        code.indent++;
+        code.line("return value;");
+        code.indent--;
+        for(Field field : fields){
+            readField(code, field);
+        }
+        code.line("default:");
+        code.indent++;
+        code.line(codecs + ".skip(buffer, key & 7);");
+        code.indent--;
+        code.line("}");
+        code.line("}");
+        code.line("}");
+        code.line("}");
+
+        try(Writer writer = processingEnv.getFiler().createSourceFile(packageName.isEmpty() ? simpleName : packageName + "." + simpleName, type).openWriter()){
+            writer.write(code.toString());
+        }
+    }
+
+    void writeField(Code code, Field field){
+        String value = "value." + field.name, local = "f" + field.tag;
+        code.line("//" + field.name);
+        code.line(codecs + ".putVar(buffer, " + field.key() + ");");
+        switch(field.container){
+            case none:
+                field.scalar.write(code, value);
+                break;
+            case array:
+                code.line(field.scalar.type + "[] " + local + " = " + value + ";");
+                writeRepeated(code, field, local, local + ".length", local + "[i]");
+                break;
+            case seq:
+                code.line("arc.struct.Seq<" + field.scalar.type + "> " + local + " = " + value + ";");
+                writeRepeated(code, field, local, local + ".size", local + ".get(i)");
+                break;
+            default:
+                code.line(field.container.type + " " + local + " = " + value + ";");
+                writeRepeated(code, field, local, local + ".size", local + ".items[i]");
+        }
+    }
+
+    void writeRepeated(Code code, Field field, String local, String size, String element){
+        code.line("if(" + local + " == null){");
+        code.line("buffer.put((byte)0);");
+        code.line("}else{");
+        code.line(codecs + ".putVar(buffer, " + size + " + 1);");
+        code.line("buffer.put((byte)" + field.scalar.wireType() + ");");
+        code.line("for(int i = 0; i < " + size + "; i++){");
+        if(field.scalar.kind == ScalarKind.message){
+            code.line(field.scalar.type + " element = " + element + ";");
+            field.scalar.write(code, "element");
+        }else{
+            field.scalar.write(code, element);
+        }
+        code.line("}");
+        code.line("}");
+    }
+
+    void readField(Code code, Field field){
+        String value = "value." + field.name, local = "f" + field.tag;
+        if(field.container == Container.none){
+            code.line("case " + field.key() + ":");
+            code.indent++;
+            code.line(value + " = " + field.scalar.read(value) + ";");
+            code.line("break;");
+            code.indent--;
+            return;
+        }
+
+        code.line("case " + field.key() + ":{");
+        code.line("int count = " + codecs + ".getVar(buffer) - 1;");
+        code.line("if(count < 0){");
+        code.line(value + " = null;");
+        code.line("break;");
+        code.line("}");
+        code.line("int type = buffer.get();");
+        code.line("if(type != " + field.scalar.wireType() + "){");
+        code.line("for(int i = 0; i < count; i++){");
+        code.line(codecs + ".skip(buffer, type);");
+        code.line("}");
+        code.line("break;");
+        code.line("}");
+        switch(field.container){
+            case array:
+                code.line(field.scalar.type + "[] " + local + " = " + value + " != null && " + value + ".length == count ? " + value + " : " + field.scalar.newArray("count") + ";");
+                code.line("for(int i = 0; i < count; i++){");
+                code.line(local + "[i] = " + field.scalar.read(local + "[i]") + ";");
+                code.line("}");
+                break;
+            case seq:
+                code.line("arc.struct.Seq<" + field.scalar.type + "> " + local + " = " + value + " == null ? new arc.struct.Seq<>(" + field.scalar.type + ".class) : " + value + ";");
+                code.line("int size = " + local + ".size;");
+                code.line(local + ".setSize(count);");
+                code.line("for(int i = 0; i < count; i++){");
+                code.line(local + ".set(i, " + field.scalar.read("i < size ? " + local + ".get(i) : null") + ");");
+                code.line("}");
+                break;
+            default:
+                code.line(field.container.type + " " + local + " = " + value + " == null ? new " + field.container.type + "(count) : " + value + ";");
+                code.line(field.scalar.type + "[] items = " + local + ".setSize(count);");
+                code.line("for(int i = 0; i < count; i++){");
+                code.line("items[i] = " + field.scalar.read(null) + ";");
+                code.line("}");
+        }
+        code.line(value + " = " + local + ";");
+        code.line("break;");
+        code.line("}");
+    }
+
+    /** @return the tagged fields of the class and its superclasses, ordered by tag. */
+    List<Field> fields(TypeElement type, String packageName){
+        List<Field> fields = new ArrayList<>();
+        Map<Integer, VariableElement> tags = new HashMap<>();
+        for(TypeElement current = type; current != null; current = superclass(current)){
+            for(VariableElement variable : ElementFilter.fieldsIn(current.getEnclosedElements())){
+                AnnotationMirror tag = annotation(variable, tagName);
+                if(tag == null) continue;
+
+                int value = -1;
+                for(Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : tag.getElementValues().entrySet()){
+                    if(entry.getKey().getSimpleName().contentEquals("value")) value = (Integer)entry.getValue().getValue();
+                }
+                if(value < 1 || value > maxTag) throw new CodecException("Tags must be between 1 and " + maxTag + ".", variable);
+                if(tags.containsKey(value)) throw new CodecException("Tag " + value + " is already used by " + tags.get(value).getSimpleName() + ".", variable);
+                tags.put(value, variable);
+
+                Set<Modifier> modifiers = variable.getModifiers();
+                if(modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.FINAL) || modifiers.contains(Modifier.STATIC)){
+                    throw new CodecException("Tagged fields can't be private, final or static.", variable);
+                }
+                if(!modifiers.contains(Modifier.PUBLIC) && !processingEnv.getElementUtils().getPackageOf(current).getQualifiedName().contentEquals(packageName)){
+                    throw new CodecException("Tagged fields in other packages must be public.", variable);
+                }
+
+                fields.add(field(variable, value));
+            }
+        }
+        fields.sort(Comparator.comparingInt(f -> f.tag));
+        return fields;
+    }
+
+    Field field(VariableElement variable, int tag){
+        TypeMirror type = variable.asType();
+        Field field = new Field(variable.getSimpleName().toString(), tag);
+        field.container = Container.none;
+
+        if(type.getKind() == TypeKind.ARRAY && ((ArrayType)type).getComponentType().getKind() != TypeKind.BYTE){
+            field.container = Container.array;
+            type = ((ArrayType)type).getComponentType();
+        }else if(type.getKind() == TypeKind.DECLARED){
+            String name = qualifiedName(type);
+            for(Container container : Container.values()){
+                if(name.equals(container.type)) field.container = container;
+            }
+            if(field.container == Container.seq){
+                List<? extends TypeMirror> arguments = ((DeclaredType)type).getTypeArguments();
+                if(arguments.size() != 1) throw new CodecException("Seqs need an element type.", variable);
+                type = arguments.get(0);
+            }
+        }
+
+        field.scalar = field.container.kind != null ? new Scalar(field.container.kind, field.container.elementType) : scalar(type);
+        if(field.scalar == null || (field.container == Container.seq && field.scalar.kind.primitive)){
+            throw new CodecException("Fields of type " + variable.asType() + " can't be written.", variable);
+        }
+        return field;
+    }
+
+    Scalar scalar(TypeMirror type){
+        switch(type.getKind()){
+            case BOOLEAN: return new Scalar(ScalarKind.bool, "boolean");
+            case BYTE: return new Scalar(ScalarKind.int8, "byte");
+            case SHORT: return new Scalar(ScalarKind.int16, "short");
+            case CHAR: return new Scalar(ScalarKind.int16u, "char");
+            case INT: return new Scalar(ScalarKind.int32, "int");
+            case LONG: return new Scalar(ScalarKind.int64, "long");
+            case FLOAT: return new Scalar(ScalarKind.float32, "float");
+            case DOUBLE: return new Scalar(ScalarKind.float64, "double");
+            case ARRAY:
+                return ((ArrayType)type).getComponentType().getKind() == TypeKind.BYTE ? new Scalar(ScalarKind.byteArray, "byte[]") : null;
+            case DECLARED:
+                TypeElement element = (TypeElement)((DeclaredType)type).asElement();
+                String name = element.getQualifiedName().toString();
+                if(name.equals("java.lang.String")) return new Scalar(ScalarKind.string, name);
+                if(element.getKind() == ElementKind.ENUM) return new Scalar(ScalarKind.enumeration, name);
+                if(annotation(element, codecName) != null){
+                    Scalar scalar = new Scalar(ScalarKind.message, name);
+                    String packageName = processingEnv.getElementUtils().getPackageOf(element).getQualifiedName().toString();
+                    scalar.codec = (packageName.isEmpty() ? "" : packageName + ".") + codecSimpleName(element);
+                    return scalar;
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    String qualifiedName(TypeMirror type){
+        return ((TypeElement)((DeclaredType)type).asElement()).getQualifiedName().toString();
+    }
+
+    TypeElement superclass(TypeElement type){
+        TypeMirror superclass = type.getSuperclass();
+        return superclass.getKind() == TypeKind.DECLARED ? (TypeElement)((DeclaredType)superclass).asElement() : null;
+    }
+
+    /** @return the name of the codec of a class, including the names of the classes it is nested in. */
+    static String codecSimpleName(TypeElement type){
+        String name = type.getSimpleName().toString();
+        for(Element outer = type.getEnclosingElement(); outer instanceof TypeElement; outer = outer.getEnclosingElement()){
+            name = outer.getSimpleName() + name;
+        }
+        return name + "Codec";
+    }
+
+    static AnnotationMirror annotation(Element element, String name){
+        for(AnnotationMirror mirror : element.getAnnotationMirrors()){
+            if(((TypeElement)mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(name)) return mirror;
+        }
+        return null;
+    }
+
+    /** What a field holds its values in. */
+    enum Container{
+        none(null, null, null),
+        array(null, null, null),
+        seq("arc.struct.Seq", null, null),
+        intSeq("arc.struct.IntSeq", ScalarKind.int32, "int"),
+        longSeq("arc.struct.LongSeq", ScalarKind.int64, "long"),
+        floatSeq("arc.struct.FloatSeq", ScalarKind.float32, "float");
+
+        final String type;
+        /** The elements of primitive Seqs. */
+        final ScalarKind kind;
+        final String elementType;
+
+        Container(String type, ScalarKind kind, String elementType){
+            this.type = type;
+            this.kind = kind;
+            this.elementType = elementType;
+        }
+    }
+
+    enum ScalarKind{
+        bool(varint, true),
+        int8(varint, true),
+        int16(varint, true),
+        int16u(varint, true),
+        int32(varint, true),
+        int64(varint, true),
+        float32(fixed32, true),
+        float64(fixed64, true),
+        byteArray(bytes, false),
+        string(bytes, false),
+        enumeration(varint, false),
+        message(CodecProcessor.message, false);
+
+        final int wireType;
+        final boolean primitive;
+
+        ScalarKind(int wireType, boolean primitive){
+            this.wireType = wireType;
+            this.primitive = primitive;
+        }
+    }
+
+    /** A single value, which is either a field or an element of one. */
+    static class Scalar{
+        final ScalarKind kind;
+        final String type;
+        /** The codec of messages. */
+        String codec;
+        /** The constants of enums. */
+        String values;
+
+        Scalar(ScalarKind kind, String type){
+            this.kind = kind;
+            this.type = type;
+        }
+
+        int wireType(){
+            return kind.wireType;
+        }
+
+        String newArray(String length){
+            return type.endsWith("[]") ? "new byte[" + length + "][]" : "new " + type + "[" + length + "]";
+        }
+
+        void write(Code code, String value){
+            switch(kind){
+                case bool: code.line("buffer.put((byte)(" + value + " ? 1 : 0));"); break;
+                case int8:
+                case int16:
+                case int32: code.line(codecs + ".putVar(buffer, " + codecs + ".zigzag(" + value + "));"); break;
+                case int16u: code.line(codecs + ".putVar(buffer, " + value + ");"); break;
+                case int64: code.line(codecs + ".putVarLong(buffer, " + codecs + ".zigzag(" + value + "));"); break;
+                case float32: code.line("buffer.putFloat(" + value + ");"); break;
+                case float64: code.line("buffer.putDouble(" + value + ");"); break;
+                case byteArray: code.line(codecs + ".putBytes(buffer, " + value + ");"); break;
+                case string: code.line(codecs + ".putString(buffer, " + value + ");"); break;
+                case enumeration: code.line(codecs + ".putEnum(buffer, " + value + ");"); break;
+                case message:
+                    code.line("if(" + value + " == null){");
+                    code.line("buffer.put((byte)0);");
+                    code.line("}else{");
+                    code.line("buffer.put((byte)1);");
+                    code.line(codec + ".write(buffer, " + value + ");");
+                    code.line("}");
+                    break;
+            }
+        }
+
+        /** @param existing the current value, which arrays and messages are read into. */
+        String read(String existing){
+            switch(kind){
+                case bool: return codecs + ".getVar(buffer) != 0";
+                case int8: return "(byte)" + codecs + ".unzigzag(" + codecs + ".getVar(buffer))";
+                case int16: return "(short)" + codecs + ".unzigzag(" + codecs + ".getVar(buffer))";
+                case int16u: return "(char)" + codecs + ".getVar(buffer)";
+                case int32: return codecs + ".unzigzag(" + codecs + ".getVar(buffer))";
+                case int64: return codecs + ".unzigzag(" + codecs + ".getVarLong(buffer))";
+                case float32: return "buffer.getFloat()";
+                case float64: return "buffer.getDouble()";
+                case byteArray: return codecs + ".getBytes(buffer, " + existing + ")";
+                case string: return codecs + ".getString(buffer)";
+                case enumeration: return codecs + ".getEnum(buffer, " + values + ")";
+                case message: return "buffer.get() == 0 ? null : " + codec + ".read(buffer, " + existing + ")";
+                default: throw new IllegalArgumentException(kind.name());
+            }
+        }
+    }
+
+    static class Field{
+        final String name;
+        final int tag;
+        Container container;
+        Scalar scalar;
+
+        Field(String name, int tag){
+            this.name = name;
+            this.tag = tag;
+        }
+
+        int key(){
+            return tag << 3 | (container == Container.none ? scalar.wireType() : repeated);
+        }
+    }
+
+    /** Builds indented source code. */
+    static class Code{
+        final StringBuilder builder = new StringBuilder();
+        int indent;
+
+        void line(){
+            builder.append('\n');
+        }
+
+        void line(String line){
+            if(line.startsWith("}")) indent--;
+            for(int i = 0; i < indent; i++){
+                builder.append("    ");
+            }
+            builder.append(line).append('\n');
+            if(line.endsWith("{")) indent++;
+        }
+
+        @Override
+        public String toString(){
+            return builder.toString();
+        }
+    }
+
+    static class CodecException extends RuntimeException{
+        private static final long serialVersionUID = -3206154620793181232L;
+
+        final transient Element element;
+
+        CodecException(String message, Element element){
+            super(message);
+            this.element = element;
+        }
+    }
+}
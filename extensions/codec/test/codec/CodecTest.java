@@ -0,0 +1,394 @@
+package codec;
+
+import arc.struct.*;
+import arc.util.*;
+import arc.util.io.*;
+import org.junit.*;
+
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class CodecTest{
+
+    @Test
+    public void roundTrip(){
+        Entity entity = entity(1);
+        Entity read = CodecTestEntityCodec.read(CodecTestEntityCodec.toBytes(entity));
+        assertEquals(entity, read);
+
+        //direct buffers and other byte orders
+        ByteBuffer buffer = ByteBuffer.allocateDirect(4096).order(ByteOrder.LITTLE_ENDIAN);
+        CodecTestEntityCodec.write(buffer, entity);
+        buffer.flip();
+        assertEquals(entity, CodecTestEntityCodec.read(buffer));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void nulls(){
+        Entity entity = new Entity();
+        entity.name = null;
+        entity.state = null;
+        entity.data = null;
+        entity.tags = null;
+        entity.items = null;
+        entity.ids = null;
+        entity.main = null;
+        entity.inventory = new Item[]{null, new Item()};
+
+        Entity read = CodecTestEntityCodec.read(CodecTestEntityCodec.toBytes(entity));
+        assertEquals(entity, read);
+        assertNull(read.name);
+        assertNull(read.main);
+    }
+
+    @Test
+    public void strings(){
+        Entity entity = new Entity();
+        StringBuilder builder = new StringBuilder();
+        for(int i = 0; i < 100000; i++){
+            builder.append((char)('a' + i % 26));
+        }
+        //longer than writeUTF allows, with 2, 3 and 4 byte characters and an unpaired surrogate
+        entity.name = builder + "\u00e9\u4e16\ud83d\ude00\ud800";
+
+        Entity read = CodecTestEntityCodec.read(CodecTestEntityCodec.toBytes(entity));
+        assertEquals(builder + "\u00e9\u4e16\ud83d\ude00?", read.name);
+
+        //unpaired surrogates in otherwise ASCII strings
+        String[][] names = {{"a\ud800", "a?"}, {"\ud83d", "?"}, {"\ude00b", "?b"}};
+        for(String[] name : names){
+            entity.name = name[0];
+            read = CodecTestEntityCodec.read(CodecTestEntityCodec.toBytes(entity));
+            assertEquals(name[1], read.name);
+        }
+    }
+
+    @Test
+    public void readInto(){
+        Entity entity = entity(2);
+        byte[] bytes = CodecTestEntityCodec.toBytes(entity);
+
+        Entity target = entity(3);
+        int[] data = target.data;
+        Seq<Item> items = target.items;
+        Item first = target.items.first(), main = target.main;
+        IntSeq ids = target.ids;
+
+        assertSame(target, CodecTestEntityCodec.read(ByteBuffer.wrap(bytes), target));
+        assertEquals(entity, target);
+        assertSame(data, target.data);
+        assertSame(items, target.items);
+        assertSame(first, target.items.first());
+        assertSame(main, target.main);
+        assertSame(ids, target.ids);
+    }
+
+    @Test
+    public void evolution(){
+        OldEntity old = new OldEntity();
+        old.health = 50;
+        old.count = -7;
+        old.removed = "gone";
+        old.points = new int[]{1, 2, 3};
+
+        //the new version has no removed field, and a new field with a default value
+        NewEntity read = CodecTestNewEntityCodec.read(CodecTestOldEntityCodec.toBytes(old));
+        assertEquals(50, read.health);
+        assertEquals(-7L, read.count);
+        assertEquals(IntSeq.with(1, 2, 3), read.points);
+        assertEquals("default", read.added);
+        assertNotNull(read.nested);
+
+        NewEntity entity = new NewEntity();
+        entity.health = 10;
+        entity.count = 123456789L;
+        entity.added = "new";
+        entity.nested.state = State.done;
+        entity.nested.items.add(new Item());
+
+        OldEntity readOld = CodecTestOldEntityCodec.read(CodecTestNewEntityCodec.toBytes(entity));
+        assertEquals(10, readOld.health);
+        assertEquals(123456789, readOld.count);
+        assertEquals("removed", readOld.removed);
+    }
+
+    @Test
+    public void inheritance(){
+        Child child = new Child();
+        child.id = 5;
+        child.name = "child";
+
+        Child read = CodecTestChildCodec.read(CodecTestChildCodec.toBytes(child));
+        assertEquals(5, read.id);
+        assertEquals("child", read.name);
+    }
+
+    @Test
+    public void benchmark(){
+        int count = 2000;
+        Entity[] entities = new Entity[count];
+        for(int i = 0; i < count; i++){
+            entities[i] = entity(i);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(4 * 1024 * 1024);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        Entity target = new Entity();
+
+        long codecWrite = Long.MAX_VALUE, codecRead = Long.MAX_VALUE, streamWrite = Long.MAX_VALUE, streamRead = Long.MAX_VALUE;
+        int codecSize = 0, streamSize = 0;
+        for(int run = 0; run < 30; run++){
+            long start = Time.nanos();
+            buffer.clear();
+            for(Entity entity : entities){
+                CodecTestEntityCodec.write(buffer, entity);
+            }
+            codecWrite = Math.min(codecWrite, Time.timeSinceNanos(start));
+            codecSize = buffer.position();
+
+            start = Time.nanos();
+            buffer.flip();
+            for(int i = 0; i < count; i++){
+                CodecTestEntityCodec.read(buffer, target);
+            }
+            codecRead = Math.min(codecRead, Time.timeSinceNanos(start));
+            assertEquals(entities[count - 1], target);
+
+            start = Time.nanos();
+            stream.reset();
+            Writes write = new Writes(new DataOutputStream(stream));
+            for(Entity entity : entities){
+                entity.write(write);
+            }
+            streamWrite = Math.min(streamWrite, Time.timeSinceNanos(start));
+            streamSize = stream.size();
+
+            start = Time.nanos();
+            Reads read = new Reads(new DataInputStream(new ByteArrayInputStream(stream.toByteArray())));
+            for(int i = 0; i < count; i++){
+                target.read(read);
+            }
+            streamRead = Math.min(streamRead, Time.timeSinceNanos(start));
+            assertEquals(entities[count - 1], target);
+        }
+        Log.info("@ entities: codec write @us read @us (@ bytes), Writes/Reads write @us read @us (@ bytes)",
+            count, codecWrite / 1000, codecRead / 1000, codecSize, streamWrite / 1000, streamRead / 1000, streamSize);
+    }
+
+    static Entity entity(int seed){
+        Random random = new Random(seed);
+        Entity entity = new Entity();
+        entity.alive = random.nextBoolean();
+        entity.team = (byte)random.nextInt();
+        entity.rotation = (short)random.nextInt();
+        entity.symbol = (char)random.nextInt(0xd000);
+        entity.health = random.nextInt(1000) - 500;
+        entity.id = random.nextLong();
+        entity.x = random.nextFloat() * 1000;
+        entity.y = random.nextDouble() * 1000;
+        entity.name = "entity" + seed;
+        entity.state = State.values()[random.nextInt(State.values().length)];
+        entity.data = new int[]{random.nextInt(), random.nextInt(100), -1};
+        entity.tags = new String[]{"a", "b" + seed};
+        entity.ids.addAll(seed, seed + 1, seed + 2);
+        entity.weights.addAll(0.5f, seed);
+        entity.times.add(System.currentTimeMillis());
+        entity.main.amount = seed;
+        for(int i = 0; i < 3; i++){
+            Item item = new Item();
+            item.name = "item" + i;
+            item.amount = random.nextInt(100);
+            entity.items.add(item);
+        }
+        entity.inventory = new Item[]{entity.items.first()};
+        entity.states = new State[]{State.idle, null};
+        entity.bytes = new byte[][]{{1, 2}, {}};
+        return entity;
+    }
+
+    public enum State{
+        idle, moving, done
+    }
+
+    @Codec
+    public static class Item{
+        @Codec.Tag(1) public String name = "item";
+        @Codec.Tag(2) public int amount;
+
+        @Override
+        public boolean equals(Object o){
+            return o instanceof Item && Objects.equals(name, ((Item)o).name) && amount == ((Item)o).amount;
+        }
+
+        @Override
+        public int hashCode(){
+            return Objects.hash(name, amount);
+        }
+    }
+
+    @Codec
+    public static class Entity{
+        @Codec.Tag(1) public boolean alive;
+        @Codec.Tag(2) public byte team;
+        @Codec.Tag(3) public short rotation;
+        @Codec.Tag(4) public char symbol;
+        @Codec.Tag(5) public int health;
+        @Codec.Tag(6) public long id;
+        @Codec.Tag(7) public float x;
+        @Codec.Tag(8) public double y;
+        @Codec.Tag(9) public String name = "";
+        @Codec.Tag(10) public State state = State.idle;
+        @Codec.Tag(11) public int[] data = {};
+        @Codec.Tag(12) public String[] tags = {};
+        @Codec.Tag(13) public Seq<Item> items = new Seq<>();
+        @Codec.Tag(14) public IntSeq ids = new IntSeq();
+        @Codec.Tag(15) public FloatSeq weights = new FloatSeq();
+        @Codec.Tag(16) public LongSeq times = new LongSeq();
+        @Codec.Tag(17) public Item main = new Item();
+        @Codec.Tag(18) public Item[] inventory = {};
+        @Codec.Tag(19) public State[] states = {};
+        @Codec.Tag(20) public byte[][] bytes = {};
+        /** Not written. */
+        public int cache;
+
+        /** What would be written by hand, for comparison. */
+        void write(Writes write){
+            write.bool(alive);
+            write.b(team);
+            write.s(rotation);
+            write.s(symbol);
+            write.i(health);
+            write.l(id);
+            write.f(x);
+            write.d(y);
+            write.str(name);
+            write.b(state.ordinal());
+            write.i(data.length);
+            for(int value : data) write.i(value);
+            write.i(tags.length);
+            for(String tag : tags) write.str(tag);
+            write.i(items.size);
+            for(Item item : items){
+                write.str(item.name);
+                write.i(item.amount);
+            }
+            write.i(ids.size);
+            for(int i = 0; i < ids.size; i++) write.i(ids.items[i]);
+            write.i(weights.size);
+            for(int i = 0; i < weights.size; i++) write.f(weights.items[i]);
+            write.i(times.size);
+            for(int i = 0; i < times.size; i++) write.l(times.items[i]);
+            write.str(main.name);
+            write.i(main.amount);
+            write.i(inventory.length);
+            for(Item item : inventory){
+                write.str(item.name);
+                write.i(item.amount);
+            }
+            write.i(states.length);
+            for(State state : states) write.b(state == null ? -1 : state.ordinal());
+            write.i(bytes.length);
+            for(byte[] array : bytes){
+                write.i(array.length);
+                write.b(array);
+            }
+        }
+
+        void read(Reads read){
+            alive = read.bool();
+            team = read.b();
+            rotation = read.s();
+            symbol = (char)read.s();
+            health = read.i();
+            id = read.l();
+            x = read.f();
+            y = read.d();
+            name = read.str();
+            state = State.values()[read.b()];
+            data = new int[read.i()];
+            for(int i = 0; i < data.length; i++) data[i] = read.i();
+            tags = new String[read.i()];
+            for(int i = 0; i < tags.length; i++) tags[i] = read.str();
+            items.clear();
+            for(int i = read.i(); i > 0; i--){
+                Item item = new Item();
+                item.name = read.str();
+                item.amount = read.i();
+                items.add(item);
+            }
+            ids.clear();
+            for(int i = read.i(); i > 0; i--) ids.add(read.i());
+            weights.clear();
+            for(int i = read.i(); i > 0; i--) weights.add(read.f());
+            times.clear();
+            for(int i = read.i(); i > 0; i--) times.add(read.l());
+            main.name = read.str();
+            main.amount = read.i();
+            inventory = new Item[read.i()];
+            for(int i = 0; i < inventory.length; i++){
+                inventory[i] = new Item();
+                inventory[i].name = read.str();
+                inventory[i].amount = read.i();
+            }
+            states = new State[read.i()];
+            for(int i = 0; i < states.length; i++){
+                int ordinal = read.b();
+                states[i] = ordinal < 0 ? null : State.values()[ordinal];
+            }
+            bytes = new byte[read.i()][];
+            for(int i = 0; i < bytes.length; i++) bytes[i] = read.b(read.i());
+        }
+
+        @Override
+        public boolean equals(Object o){
+            if(!(o instanceof Entity)) return false;
+            Entity e = (Entity)o;
+            return alive == e.alive && team == e.team && rotation == e.rotation && symbol == e.symbol && health == e.health && id == e.id &&
+                Float.compare(x, e.x) == 0 && Double.compare(y, e.y) == 0 && Objects.equals(name, e.name) && state == e.state &&
+                Arrays.equals(data, e.data) && Arrays.equals(tags, e.tags) && Objects.equals(items, e.items) && Objects.equals(ids, e.ids) &&
+                Objects.equals(weights, e.weights) && Objects.equals(times, e.times) && Objects.equals(main, e.main) &&
+                Arrays.equals(inventory, e.inventory) && Arrays.equals(states, e.states) && Arrays.deepEquals(bytes, e.bytes);
+        }
+
+        @Override
+        public int hashCode(){
+            return Objects.hash(health, id, name);
+        }
+    }
+
+    @Codec
+    public static class OldEntity{
+        @Codec.Tag(1) public int health;
+        @Codec.Tag(2) public int count;
+        @Codec.Tag(3) public String removed = "removed";
+        @Codec.Tag(4) public int[] points;
+    }
+
+    @Codec
+    public static class NewEntity{
+        @Codec.Tag(1) public int health;
+        @Codec.Tag(2) public long count;
+        @Codec.Tag(4) public IntSeq points;
+        @Codec.Tag(5) public String added = "default";
+        @Codec.Tag(6) public Nested nested = new Nested();
+    }
+
+    @Codec
+    public static class Nested{
+        @Codec.Tag(1) public State state = State.idle;
+        @Codec.Tag(2) public Seq<Item> items = new Seq<>();
+    }
+
+    @Codec
+    public static class Parent{
+        @Codec.Tag(1) public int id;
+    }
+
+    @Codec
+    public static class Child extends Parent{
+        @Codec.Tag(2) public String name;
+    }
+}